@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.benchmarks;
+
+import static org.apache.datasketches.benchmarks.BenchmarkUtil.ADD_MODULES;
+import static org.apache.datasketches.benchmarks.BenchmarkUtil.GEN_SEED;
+import static org.apache.datasketches.benchmarks.BenchmarkUtil.ITEMS_PER_SKETCH;
+import static org.apache.datasketches.benchmarks.BenchmarkUtil.NUM_ITEMS;
+import static org.apache.datasketches.benchmarks.BenchmarkUtil.NUM_SKETCHES;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
+import org.apache.datasketches.tuple.arrayofdoubles.ArrayOfDoublesCompactSketch;
+import org.apache.datasketches.tuple.arrayofdoubles.ArrayOfDoublesSetOperationBuilder;
+import org.apache.datasketches.tuple.arrayofdoubles.ArrayOfDoublesSketch;
+import org.apache.datasketches.tuple.arrayofdoubles.ArrayOfDoublesSketches;
+import org.apache.datasketches.tuple.arrayofdoubles.ArrayOfDoublesUnion;
+import org.apache.datasketches.tuple.arrayofdoubles.ArrayOfDoublesUpdatableSketch;
+import org.apache.datasketches.tuple.arrayofdoubles.ArrayOfDoublesUpdatableSketchBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Update, union, serialization and query benchmarks for the Tuple sketch family,
+ * using the ArrayOfDoubles sketch as its representative.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = ADD_MODULES)
+public class ArrayOfDoublesSketchBenchmark {
+
+  @Param({"12", "16"})
+  int lgK;
+
+  @Param({"1", "3"})
+  int numValues;
+
+  @Param({"HEAP", "DIRECT"})
+  StorageMode storage;
+
+  @Param({"UNIFORM", "ZIPF"})
+  ItemDistribution distribution;
+
+  private long[] items;
+  private double[] values;
+  private WritableMemory sketchMem;
+  private ArrayOfDoublesUpdatableSketch sketch;
+  private ArrayOfDoublesCompactSketch[] inputSketches;
+  private Memory compactMem;
+
+  @Setup
+  public void setup() {
+    items = distribution.longs(NUM_ITEMS, GEN_SEED);
+    values = new double[numValues];
+    Arrays.fill(values, 1.0);
+    final int k = 1 << lgK;
+    sketchMem = storage.allocate(ArrayOfDoublesUnion.getMaxBytes(k, numValues));
+    final ArrayOfDoublesUpdatableSketchBuilder bldr =
+        new ArrayOfDoublesUpdatableSketchBuilder().setNominalEntries(k).setNumberOfValues(numValues);
+    sketch = (sketchMem == null) ? bldr.build() : bldr.build(sketchMem);
+    for (final long item : items) { sketch.update(item, values); }
+
+    inputSketches = new ArrayOfDoublesCompactSketch[NUM_SKETCHES];
+    for (int i = 0; i < NUM_SKETCHES; i++) {
+      final ArrayOfDoublesUpdatableSketch input = bldr.build();
+      final long[] inputItems = distribution.longs(ITEMS_PER_SKETCH, GEN_SEED + i + 1);
+      for (final long item : inputItems) { input.update(item, values); }
+      inputSketches[i] = input.compact();
+    }
+    compactMem = Memory.wrap(sketch.compact().toByteArray());
+  }
+
+  @TearDown
+  public void tearDown() {
+    StorageMode.release(sketchMem);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_ITEMS)
+  public void update(final Blackhole bh) {
+    sketch.reset();
+    for (final long item : items) { sketch.update(item, values); }
+    bh.consume(sketch);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_SKETCHES)
+  public ArrayOfDoublesCompactSketch union() {
+    final ArrayOfDoublesUnion union = new ArrayOfDoublesSetOperationBuilder()
+        .setNominalEntries(1 << lgK).setNumberOfValues(numValues).buildUnion();
+    for (final ArrayOfDoublesCompactSketch input : inputSketches) { union.union(input); }
+    return union.getResult();
+  }
+
+  @Benchmark
+  public byte[] compactToByteArray() {
+    return sketch.compact().toByteArray();
+  }
+
+  @Benchmark
+  public ArrayOfDoublesSketch heapify() {
+    return ArrayOfDoublesSketches.heapifySketch(compactMem);
+  }
+
+  @Benchmark
+  public ArrayOfDoublesSketch wrap() {
+    return ArrayOfDoublesSketches.wrapSketch(compactMem);
+  }
+
+  @Benchmark
+  public double getEstimate() {
+    return sketch.getEstimate();
+  }
+}
@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.benchmarks;
+
+/**
+ * Constants shared by all benchmarks.
+ */
+final class BenchmarkUtil {
+
+  private BenchmarkUtil() { }
+
+  /**
+   * The datasketches-memory component requires the incubating foreign memory module in every forked JVM.
+   */
+  static final String ADD_MODULES = "--add-modules=jdk.incubator.foreign";
+
+  /** The number of items fed to a sketch per update benchmark invocation. */
+  static final int NUM_ITEMS = 1 << 20;
+
+  /** The number of input sketches combined per union/merge benchmark invocation. */
+  static final int NUM_SKETCHES = 32;
+
+  /** The number of distinct items given to each input sketch of a union/merge benchmark. */
+  static final int ITEMS_PER_SKETCH = 1 << 16;
+
+  /** The seed of the input generators. */
+  static final long GEN_SEED = 0x5EEDL;
+}
@@ -0,0 +1,216 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.benchmarks;
+
+import static org.apache.datasketches.benchmarks.BenchmarkUtil.ADD_MODULES;
+import static org.apache.datasketches.benchmarks.BenchmarkUtil.GEN_SEED;
+import static org.apache.datasketches.benchmarks.BenchmarkUtil.NUM_ITEMS;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.datasketches.filters.bloomfilter.BlockedBloomFilter;
+import org.apache.datasketches.filters.bloomfilter.BloomFilter;
+import org.apache.datasketches.filters.bloomfilter.BloomFilterBuilder;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Update, union, serialization and query benchmarks for the Bloom filter.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = ADD_MODULES)
+public class BloomFilterBenchmark {
+
+  /** The number of distinct items the filter is sized for. */
+  @Param({"1000000", "100000000"})
+  long maxDistinctItems;
+
+  @Param({"0.01"})
+  double targetFpp;
+
+  @Param({"HEAP", "DIRECT"})
+  StorageMode storage;
+
+  @Param({"UNIFORM", "ZIPF"})
+  ItemDistribution distribution;
+
+  private long[] items;
+  private long[] probes;
+  private double[] doubleProbes;
+  private String[] stringProbes;
+  private boolean[] results;
+  private long[] resultBits;
+  private WritableMemory filterMem;
+  private WritableMemory blockedMem;
+  private WritableMemory splitBlockMem;
+  private BlockedBloomFilter blocked;
+  private BlockedBloomFilter splitBlock;
+  private BloomFilter filter;
+  private BloomFilter other;
+  private Memory serializedMem;
+
+  @Setup
+  public void setup() {
+    items = distribution.longs(NUM_ITEMS, GEN_SEED);
+    probes = distribution.longs(NUM_ITEMS, GEN_SEED + 1);
+    doubleProbes = new double[NUM_ITEMS];
+    stringProbes = new String[NUM_ITEMS];
+    for (int i = 0; i < NUM_ITEMS; i++) {
+      doubleProbes[i] = probes[i];
+      stringProbes[i] = "key-" + probes[i];
+    }
+    results = new boolean[NUM_ITEMS];
+    resultBits = new long[NUM_ITEMS >>> 6];
+    filterMem = storage.allocate(
+        BloomFilterBuilder.getSerializedFilterSizeByAccuracy(maxDistinctItems, targetFpp));
+    filter = (filterMem == null)
+        ? BloomFilterBuilder.createByAccuracy(maxDistinctItems, targetFpp, GEN_SEED)
+        : BloomFilterBuilder.initializeByAccuracy(maxDistinctItems, targetFpp, GEN_SEED, filterMem);
+    for (final long item : items) { filter.update(item); }
+    other = BloomFilterBuilder.createByAccuracy(maxDistinctItems, targetFpp, GEN_SEED);
+    for (final long item : probes) { other.update(item); }
+    serializedMem = Memory.wrap(filter.toByteArray());
+
+    // blocked filters of the same size and number of hashes as the standard filter
+    final long numBits = BloomFilterBuilder.suggestNumFilterBits(maxDistinctItems, targetFpp);
+    final short numHashes = BloomFilterBuilder.suggestNumHashes(maxDistinctItems, numBits);
+    blockedMem = storage.allocate(BloomFilterBuilder.getSerializedBlockedFilterSize(numBits));
+    splitBlockMem = storage.allocate(BloomFilterBuilder.getSerializedBlockedFilterSize(numBits));
+    blocked = (blockedMem == null)
+        ? BloomFilterBuilder.createBlockedBySize(numBits, numHashes, GEN_SEED)
+        : BloomFilterBuilder.initializeBlockedBySize(numBits, numHashes, GEN_SEED, blockedMem);
+    splitBlock = (splitBlockMem == null)
+        ? BloomFilterBuilder.createSplitBlockBySize(numBits, GEN_SEED)
+        : BloomFilterBuilder.initializeSplitBlockBySize(numBits, GEN_SEED, splitBlockMem);
+    for (final long item : items) {
+      blocked.update(item);
+      splitBlock.update(item);
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    StorageMode.release(filterMem);
+    StorageMode.release(blockedMem);
+    StorageMode.release(splitBlockMem);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_ITEMS)
+  public void update(final Blackhole bh) {
+    for (final long item : items) { filter.update(item); }
+    bh.consume(filter);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_ITEMS)
+  public void query(final Blackhole bh) {
+    for (final long probe : probes) { bh.consume(filter.query(probe)); }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_ITEMS)
+  public int queryAll() {
+    return filter.queryAll(probes, 0, NUM_ITEMS, results);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_ITEMS)
+  public int queryAllBits() {
+    return filter.queryAll(probes, 0, NUM_ITEMS, resultBits);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_ITEMS)
+  public void updateBlocked(final Blackhole bh) {
+    for (final long item : items) { blocked.update(item); }
+    bh.consume(blocked);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_ITEMS)
+  public void queryBlocked(final Blackhole bh) {
+    for (final long probe : probes) { bh.consume(blocked.query(probe)); }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_ITEMS)
+  public void updateSplitBlock(final Blackhole bh) {
+    for (final long item : items) { splitBlock.update(item); }
+    bh.consume(splitBlock);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_ITEMS)
+  public void querySplitBlock(final Blackhole bh) {
+    for (final long probe : probes) { bh.consume(splitBlock.query(probe)); }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_ITEMS)
+  public void queryDouble(final Blackhole bh) {
+    for (final double probe : doubleProbes) { bh.consume(filter.query(probe)); }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_ITEMS)
+  public void queryString(final Blackhole bh) {
+    for (final String probe : stringProbes) { bh.consume(filter.query(probe)); }
+  }
+
+  @Benchmark
+  public BloomFilter union() {
+    filter.union(other);
+    return filter;
+  }
+
+  @Benchmark
+  public byte[] toByteArray() {
+    return filter.toByteArray();
+  }
+
+  @Benchmark
+  public BloomFilter heapify() {
+    return BloomFilter.heapify(serializedMem);
+  }
+
+  @Benchmark
+  public BloomFilter wrap() {
+    return BloomFilter.wrap(serializedMem);
+  }
+}
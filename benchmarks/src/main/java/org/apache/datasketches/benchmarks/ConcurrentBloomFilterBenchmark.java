@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.benchmarks;
+
+import static org.apache.datasketches.benchmarks.BenchmarkUtil.ADD_MODULES;
+import static org.apache.datasketches.benchmarks.BenchmarkUtil.GEN_SEED;
+import static org.apache.datasketches.benchmarks.BenchmarkUtil.NUM_ITEMS;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.datasketches.filters.bloomfilter.BloomFilter;
+import org.apache.datasketches.filters.bloomfilter.BloomFilterBuilder;
+import org.apache.datasketches.memory.WritableMemory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ * Multi-threaded update benchmarks for a Bloom filter shared by all benchmark threads: a
+ * concurrent filter against a standard filter guarded by a lock. Run with <code>-t</code> to vary
+ * the number of threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = ADD_MODULES)
+@Threads(4)
+public class ConcurrentBloomFilterBenchmark {
+
+  /** The number of distinct items the filter is sized for. */
+  @Param({"1000000", "100000000"})
+  long maxDistinctItems;
+
+  @Param({"0.01"})
+  double targetFpp;
+
+  @Param({"HEAP", "DIRECT"})
+  StorageMode storage;
+
+  private WritableMemory concurrentMem;
+  private WritableMemory lockedMem;
+  private BloomFilter concurrent;
+  private BloomFilter locked;
+
+  /**
+   * The items presented by one benchmark thread.
+   */
+  @State(Scope.Thread)
+  public static class ThreadItems {
+    long[] items;
+
+    @Setup
+    public void setup(final ThreadParams params) {
+      items = ItemDistribution.UNIFORM.longs(NUM_ITEMS, GEN_SEED + params.getThreadIndex());
+    }
+  }
+
+  @Setup
+  public void setup() {
+    final long numBits = BloomFilterBuilder.suggestNumFilterBits(maxDistinctItems, targetFpp);
+    final short numHashes = BloomFilterBuilder.suggestNumHashes(maxDistinctItems, numBits);
+    concurrentMem = storage.allocateShared(BloomFilter.getSerializedSize(numBits));
+    lockedMem = storage.allocateShared(BloomFilter.getSerializedSize(numBits));
+    concurrent = (concurrentMem == null)
+        ? BloomFilterBuilder.createConcurrentBySize(numBits, numHashes, GEN_SEED)
+        : BloomFilterBuilder.initializeConcurrentBySize(numBits, numHashes, GEN_SEED, concurrentMem);
+    locked = (lockedMem == null)
+        ? BloomFilterBuilder.createBySize(numBits, numHashes, GEN_SEED)
+        : BloomFilterBuilder.initializeBySize(numBits, numHashes, GEN_SEED, lockedMem);
+  }
+
+  @TearDown
+  public void tearDown() {
+    StorageMode.release(concurrentMem);
+    StorageMode.release(lockedMem);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_ITEMS)
+  public void updateConcurrent(final ThreadItems state, final Blackhole bh) {
+    for (final long item : state.items) { concurrent.update(item); }
+    bh.consume(concurrent);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_ITEMS)
+  public void updateLocked(final ThreadItems state, final Blackhole bh) {
+    for (final long item : state.items) {
+      synchronized (locked) { locked.update(item); }
+    }
+    bh.consume(locked);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_ITEMS)
+  public void queryAndUpdateConcurrent(final ThreadItems state, final Blackhole bh) {
+    for (final long item : state.items) { bh.consume(concurrent.queryAndUpdate(item)); }
+  }
+}
@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.datasketches.benchmarks;
+
+import static org.apache.datasketches.benchmarks.BenchmarkUtil.ADD_MODULES;
+import static org.apache.datasketches.benchmarks.BenchmarkUtil.GEN_SEED;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.datasketches.hllmap.ConcurrentUniqueCountMap;
+import org.apache.datasketches.hllmap.UniqueCountMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ * Multi-threaded update benchmarks for a map shared by all benchmark threads: a
+ * ConcurrentUniqueCountMap against a UniqueCountMap guarded by a lock, with 1, 2, 4 and 8 threads.
+ * The keys of each thread are Zipf distributed over a common set of keys.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = ADD_MODULES)
+public class ConcurrentUniqueCountMapBenchmark {
+
+  /** The number of updates presented by one benchmark thread per invocation. */
+  static final int THREAD_ITEMS = 1 << 16;
+
+  /** The number of distinct keys the Zipf ranks are folded onto. */
+  static final int NUM_KEYS = 1 << 16;
+
+  static final int KEY_SIZE_BYTES = 4;
+
+  @Param({"16", "64"})
+  int numShards;
+
+  private ConcurrentUniqueCountMap concurrent;
+  private UniqueCountMap locked;
+
+  /**
+   * The keys and identifiers presented by one benchmark thread.
+   */
+  @State(Scope.Thread)
+  public static class ThreadItems {
+    byte[][] keys;
+    byte[][] identifiers;
+
+    @Setup
+    public void setup(final ThreadParams params) {
+      final long seed = GEN_SEED + params.getThreadIndex();
+      final long[] ranks = ItemDistribution.ZIPF.longs(THREAD_ITEMS, seed);
+      final long[] ids = ItemDistribution.UNIFORM.longs(THREAD_ITEMS, seed + 1);
+      keys = new byte[THREAD_ITEMS][];
+      identifiers = new byte[THREAD_ITEMS][];
+      for (int i = 0; i < THREAD_ITEMS; i++) {
+        keys[i] = toBytes(ranks[i] % NUM_KEYS, KEY_SIZE_BYTES);
+        identifiers[i] = toBytes(ids[i], Long.BYTES);
+      }
+    }
+  }
+
+  @Setup
+  public void setup() {
+    concurrent = new ConcurrentUniqueCountMap(numShards, NUM_KEYS, KEY_SIZE_BYTES);
+    locked = new UniqueCountMap(NUM_KEYS, KEY_SIZE_BYTES);
+  }
+
+  //the little-endian bytes of the value
+  static byte[] toBytes(final long value, final int sizeBytes) {
+    final byte[] bytes = new byte[sizeBytes];
+    for (int i = 0; i < sizeBytes; i++) { bytes[i] = (byte) (value >>> (i << 3)); }
+    return bytes;
+  }
+
+  private void updateConcurrent(final ThreadItems state, final Blackhole bh) {
+    for (int i = 0; i < THREAD_ITEMS; i++) {
+      bh.consume(concurrent.update(state.keys[i], state.identifiers[i]));
+    }
+  }
+
+  private void updateLocked(final ThreadItems state, final Blackhole bh) {
+    for (int i = 0; i < THREAD_ITEMS; i++) {
+      synchronized (locked) { bh.consume(locked.update(state.keys[i], state.identifiers[i])); }
+    }
+  }
+
+  @Benchmark
+  @Threads(1)
+  @OperationsPerInvocation(THREAD_ITEMS)
+  public void updateConcurrent1(final ThreadItems state, final Blackhole bh) {
+    updateConcurrent(state, bh);
+  }
+
+  @Benchmark
+  @Threads(2)
+  @OperationsPerInvocation(THREAD_ITEMS)
+  public void updateConcurrent2(final ThreadItems state, final Blackhole bh) {
+    updateConcurrent(state, bh);
+  }
+
+  @Benchmark
+  @Threads(4)
+  @OperationsPerInvocation(THREAD_ITEMS)
+  public void updateConcurrent4(final ThreadItems state, final Blackhole bh) {
+    updateConcurrent(state, bh);
+  }
+
+  @Benchmark
+  @Threads(8)
+  @OperationsPerInvocation(THREAD_ITEMS)
+  public void updateConcurrent8(final ThreadItems state, final Blackhole bh) {
+    updateConcurrent(state, bh);
+  }
+
+  @Benchmark
+  @Threads(1)
+  @OperationsPerInvocation(THREAD_ITEMS)
+  public void updateLocked1(final ThreadItems state, final Blackhole bh) {
+    updateLocked(state, bh);
+  }
+
+  @Benchmark
+  @Threads(2)
+  @OperationsPerInvocation(THREAD_ITEMS)
+  public void updateLocked2(final ThreadItems state, final Blackhole bh) {
+    updateLocked(state, bh);
+  }
+
+  @Benchmark
+  @Threads(4)
+  @OperationsPerInvocation(THREAD_ITEMS)
+  public void updateLocked4(final ThreadItems state, final Blackhole bh) {
+    updateLocked(state, bh);
+  }
+
+  @Benchmark
+  @Threads(8)
+  @OperationsPerInvocation(THREAD_ITEMS)
+  public void updateLocked8(final ThreadItems state, final Blackhole bh) {
+    updateLocked(state, bh);
+  }
+}
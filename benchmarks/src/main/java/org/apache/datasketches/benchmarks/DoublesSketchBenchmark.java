@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.benchmarks;
+
+import static org.apache.datasketches.benchmarks.BenchmarkUtil.ADD_MODULES;
+import static org.apache.datasketches.benchmarks.BenchmarkUtil.GEN_SEED;
+import static org.apache.datasketches.benchmarks.BenchmarkUtil.ITEMS_PER_SKETCH;
+import static org.apache.datasketches.benchmarks.BenchmarkUtil.NUM_ITEMS;
+import static org.apache.datasketches.benchmarks.BenchmarkUtil.NUM_SKETCHES;
+import static org.apache.datasketches.quantilescommon.QuantileSearchCriteria.INCLUSIVE;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
+import org.apache.datasketches.quantiles.DoublesSketch;
+import org.apache.datasketches.quantiles.DoublesUnion;
+import org.apache.datasketches.quantiles.UpdateDoublesSketch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Update, union, serialization and query benchmarks for the classic quantiles doubles sketch.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = ADD_MODULES)
+public class DoublesSketchBenchmark {
+
+  @Param({"128", "1024"})
+  int k;
+
+  @Param({"HEAP", "DIRECT"})
+  StorageMode storage;
+
+  @Param({"UNIFORM", "ZIPF"})
+  ItemDistribution distribution;
+
+  private double[] items;
+  private WritableMemory sketchMem;
+  private UpdateDoublesSketch sketch;
+  private DoublesSketch[] inputSketches;
+  private Memory compactMem;
+
+  @Setup
+  public void setup() {
+    items = distribution.doubles(NUM_ITEMS, GEN_SEED);
+    sketchMem = storage.allocate(DoublesSketch.getUpdatableStorageBytes(k, NUM_ITEMS));
+    sketch = (sketchMem == null)
+        ? DoublesSketch.builder().setK(k).build()
+        : DoublesSketch.builder().setK(k).build(sketchMem);
+    for (final double item : items) { sketch.update(item); }
+
+    inputSketches = new DoublesSketch[NUM_SKETCHES];
+    for (int i = 0; i < NUM_SKETCHES; i++) {
+      final UpdateDoublesSketch input = DoublesSketch.builder().setK(k).build();
+      final double[] inputItems = distribution.doubles(ITEMS_PER_SKETCH, GEN_SEED + i + 1);
+      for (final double item : inputItems) { input.update(item); }
+      inputSketches[i] = input.compact();
+    }
+    compactMem = Memory.wrap(sketch.toByteArray(true));
+  }
+
+  @TearDown
+  public void tearDown() {
+    StorageMode.release(sketchMem);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_ITEMS)
+  public void update(final Blackhole bh) {
+    sketch.reset();
+    for (final double item : items) { sketch.update(item); }
+    bh.consume(sketch);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_SKETCHES)
+  public DoublesSketch union() {
+    final DoublesUnion union = DoublesUnion.builder().setMaxK(k).build();
+    for (final DoublesSketch input : inputSketches) { union.union(input); }
+    return union.getResult();
+  }
+
+  @Benchmark
+  public byte[] toCompactByteArray() {
+    return sketch.toByteArray(true);
+  }
+
+  @Benchmark
+  public DoublesSketch heapify() {
+    return DoublesSketch.heapify(compactMem);
+  }
+
+  @Benchmark
+  public DoublesSketch wrap() {
+    return DoublesSketch.wrap(compactMem);
+  }
+
+  @Benchmark
+  public double getQuantile() {
+    return sketch.getQuantile(0.5, INCLUSIVE);
+  }
+
+  @Benchmark
+  public double getRank() {
+    return sketch.getRank(items[0], INCLUSIVE);
+  }
+}
@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.benchmarks;
+
+import static org.apache.datasketches.benchmarks.BenchmarkUtil.ADD_MODULES;
+import static org.apache.datasketches.benchmarks.BenchmarkUtil.GEN_SEED;
+import static org.apache.datasketches.benchmarks.BenchmarkUtil.ITEMS_PER_SKETCH;
+import static org.apache.datasketches.benchmarks.BenchmarkUtil.NUM_ITEMS;
+import static org.apache.datasketches.benchmarks.BenchmarkUtil.NUM_SKETCHES;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.datasketches.hll.HllSketch;
+import org.apache.datasketches.hll.TgtHllType;
+import org.apache.datasketches.hll.ParallelUnion;
+import org.apache.datasketches.hll.Union;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Update, union, serialization and query benchmarks for the HLL sketch family.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = ADD_MODULES)
+public class HllSketchBenchmark {
+
+  @Param({"12", "16", "21"})
+  int lgK;
+
+  @Param({"HLL_4", "HLL_6", "HLL_8"})
+  TgtHllType tgtHllType;
+
+  @Param({"HEAP", "DIRECT"})
+  StorageMode storage;
+
+  @Param({"UNIFORM", "ZIPF"})
+  ItemDistribution distribution;
+
+  private long[] items;
+  private WritableMemory sketchMem;
+  private WritableMemory unionMem;
+  private HllSketch sketch;
+  private HllSketch[] inputSketches;
+  private HllSketch[] hllModeSketches;
+  private List<HllSketch> hllModeSketchList;
+  private Memory compactMem;
+  private Memory updatableMem;
+
+  @Setup
+  public void setup() {
+    items = distribution.longs(NUM_ITEMS, GEN_SEED);
+    sketchMem = storage.allocate(HllSketch.getMaxUpdatableSerializationBytes(lgK, tgtHllType));
+    unionMem = storage.allocate(Union.getMaxSerializationBytes(lgK));
+    sketch = (sketchMem == null)
+        ? new HllSketch(lgK, tgtHllType)
+        : new HllSketch(lgK, tgtHllType, sketchMem);
+    for (final long item : items) { sketch.update(item); }
+
+    inputSketches = new HllSketch[NUM_SKETCHES];
+    for (int i = 0; i < NUM_SKETCHES; i++) {
+      final HllSketch input = new HllSketch(lgK, tgtHllType);
+      final long[] inputItems = distribution.longs(ITEMS_PER_SKETCH, GEN_SEED + i + 1);
+      for (final long item : inputItems) { input.update(item); }
+      inputSketches[i] = input;
+    }
+    hllModeSketches = new HllSketch[NUM_SKETCHES];
+    for (int i = 0; i < NUM_SKETCHES; i++) {
+      final HllSketch input = new HllSketch(lgK, tgtHllType);
+      final long[] inputItems = distribution.longs(NUM_ITEMS, GEN_SEED + i + 1);
+      for (final long item : inputItems) { input.update(item); }
+      hllModeSketches[i] = (storage == StorageMode.DIRECT)
+          ? HllSketch.wrap(Memory.wrap(input.toUpdatableByteArray()))
+          : input;
+    }
+    hllModeSketchList = Arrays.asList(hllModeSketches);
+    compactMem = Memory.wrap(sketch.toCompactByteArray());
+    updatableMem = Memory.wrap(sketch.toUpdatableByteArray());
+  }
+
+  @TearDown
+  public void tearDown() {
+    StorageMode.release(sketchMem);
+    StorageMode.release(unionMem);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_ITEMS)
+  public void update(final Blackhole bh) {
+    sketch.reset();
+    for (final long item : items) { sketch.update(item); }
+    bh.consume(sketch);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_ITEMS)
+  public void updateAll(final Blackhole bh) {
+    sketch.reset();
+    sketch.updateAll(items, 0, items.length);
+    bh.consume(sketch);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_SKETCHES)
+  public HllSketch union() {
+    final Union union = (unionMem == null) ? new Union(lgK) : new Union(lgK, unionMem);
+    for (final HllSketch input : inputSketches) { union.update(input); }
+    return union.getResult(tgtHllType);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_SKETCHES)
+  public HllSketch unionHllMode() {
+    final Union union = (unionMem == null) ? new Union(lgK) : new Union(lgK, unionMem);
+    for (final HllSketch input : hllModeSketches) { union.update(input); }
+    return union.getResult(tgtHllType);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_SKETCHES)
+  public HllSketch parallelUnionHllMode() {
+    return new ParallelUnion(lgK).union(hllModeSketchList).getResult(tgtHllType);
+  }
+
+  @Benchmark
+  public byte[] toCompactByteArray() {
+    return sketch.toCompactByteArray();
+  }
+
+  @Benchmark
+  public HllSketch heapify() {
+    return HllSketch.heapify(compactMem);
+  }
+
+  @Benchmark
+  public HllSketch wrap() {
+    return HllSketch.wrap(updatableMem);
+  }
+
+  @Benchmark
+  public double getEstimate() {
+    return sketch.getEstimate();
+  }
+
+  @Benchmark
+  public double getCompositeEstimate() {
+    return sketch.getCompositeEstimate();
+  }
+}
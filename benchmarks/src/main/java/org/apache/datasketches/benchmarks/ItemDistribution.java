@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.benchmarks;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * The distributions of input items used by the benchmarks.
+ * All generators are seeded so that every fork and every release sees the same stream.
+ */
+public enum ItemDistribution {
+
+  /** Consecutive longs starting at zero; every item is distinct. */
+  SEQUENTIAL {
+    @Override
+    long[] longs(final int n, final long seed) {
+      final long[] arr = new long[n];
+      final long start = new SplittableRandom(seed).nextLong();
+      for (int i = 0; i < n; i++) { arr[i] = start + i; }
+      return arr;
+    }
+  },
+
+  /** Uniformly random longs; effectively every item is distinct. */
+  UNIFORM {
+    @Override
+    long[] longs(final int n, final long seed) {
+      final SplittableRandom rand = new SplittableRandom(seed);
+      final long[] arr = new long[n];
+      for (int i = 0; i < n; i++) { arr[i] = rand.nextLong(); }
+      return arr;
+    }
+  },
+
+  /** Zipf distributed ranks (exponent 1.1) over a domain of n items; many duplicates. */
+  ZIPF {
+    @Override
+    long[] longs(final int n, final long seed) {
+      final SplittableRandom rand = new SplittableRandom(seed);
+      final double s = 1.1;
+      final double[] cdf = new double[n];
+      double sum = 0;
+      for (int i = 0; i < n; i++) {
+        sum += 1.0 / Math.pow(i + 1, s);
+        cdf[i] = sum;
+      }
+      final long[] arr = new long[n];
+      for (int i = 0; i < n; i++) {
+        final double u = rand.nextDouble() * sum;
+        int idx = Arrays.binarySearch(cdf, u);
+        if (idx < 0) { idx = -idx - 1; }
+        arr[i] = Math.min(idx, n - 1);
+      }
+      return arr;
+    }
+  };
+
+  /**
+   * Returns n items drawn from this distribution.
+   * @param n the number of items
+   * @param seed the seed of the generator
+   * @return n items drawn from this distribution.
+   */
+  abstract long[] longs(int n, long seed);
+
+  /**
+   * Returns n items drawn from this distribution, converted to doubles.
+   * Used as input to the quantiles sketches.
+   * @param n the number of items
+   * @param seed the seed of the generator
+   * @return n items drawn from this distribution.
+   */
+  double[] doubles(final int n, final long seed) {
+    final long[] longs = longs(n, seed);
+    final double[] arr = new double[n];
+    final SplittableRandom rand = new SplittableRandom(seed);
+    for (int i = 0; i < n; i++) {
+      //SEQUENTIAL and ZIPF are already integral, UNIFORM is mapped into [0, 1)
+      arr[i] = (this == UNIFORM) ? rand.nextDouble() : longs[i];
+    }
+    return arr;
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.benchmarks;
+
+import static org.apache.datasketches.benchmarks.BenchmarkUtil.ADD_MODULES;
+import static org.apache.datasketches.benchmarks.BenchmarkUtil.GEN_SEED;
+import static org.apache.datasketches.benchmarks.BenchmarkUtil.ITEMS_PER_SKETCH;
+import static org.apache.datasketches.benchmarks.BenchmarkUtil.NUM_ITEMS;
+import static org.apache.datasketches.benchmarks.BenchmarkUtil.NUM_SKETCHES;
+import static org.apache.datasketches.quantilescommon.QuantileSearchCriteria.INCLUSIVE;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.req.ReqSketch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Update, merge, serialization and query benchmarks for the REQ sketch.
+ * The REQ sketch is heap only, so there is no storage parameter.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = ADD_MODULES)
+public class ReqSketchBenchmark {
+
+  @Param({"12", "48"})
+  int k;
+
+  @Param({"true", "false"})
+  boolean highRankAccuracy;
+
+  @Param({"UNIFORM", "ZIPF"})
+  ItemDistribution distribution;
+
+  private float[] items;
+  private ReqSketch sketch;
+  private ReqSketch[] inputSketches;
+  private Memory serializedMem;
+
+  @Setup
+  public void setup() {
+    items = toFloats(distribution.doubles(NUM_ITEMS, GEN_SEED));
+    sketch = newSketch();
+    for (final float item : items) { sketch.update(item); }
+
+    inputSketches = new ReqSketch[NUM_SKETCHES];
+    for (int i = 0; i < NUM_SKETCHES; i++) {
+      final ReqSketch input = newSketch();
+      final float[] inputItems = toFloats(distribution.doubles(ITEMS_PER_SKETCH, GEN_SEED + i + 1));
+      for (final float item : inputItems) { input.update(item); }
+      inputSketches[i] = input;
+    }
+    serializedMem = Memory.wrap(sketch.toByteArray());
+  }
+
+  private ReqSketch newSketch() {
+    return ReqSketch.builder().setK(k).setHighRankAccuracy(highRankAccuracy).build();
+  }
+
+  private static float[] toFloats(final double[] doubles) {
+    final float[] floats = new float[doubles.length];
+    for (int i = 0; i < doubles.length; i++) { floats[i] = (float) doubles[i]; }
+    return floats;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_ITEMS)
+  public void update(final Blackhole bh) {
+    sketch.reset();
+    for (final float item : items) { sketch.update(item); }
+    bh.consume(sketch);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_SKETCHES)
+  public ReqSketch merge() {
+    final ReqSketch target = newSketch();
+    for (final ReqSketch input : inputSketches) { target.merge(input); }
+    return target;
+  }
+
+  @Benchmark
+  public byte[] toByteArray() {
+    return sketch.toByteArray();
+  }
+
+  @Benchmark
+  public ReqSketch heapify() {
+    return ReqSketch.heapify(serializedMem);
+  }
+
+  @Benchmark
+  public float getQuantile() {
+    return sketch.getQuantile(0.5, INCLUSIVE);
+  }
+
+  @Benchmark
+  public double getRank() {
+    return sketch.getRank(items[0], INCLUSIVE);
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.benchmarks;
+
+import static org.apache.datasketches.benchmarks.BenchmarkUtil.ADD_MODULES;
+import static org.apache.datasketches.benchmarks.BenchmarkUtil.GEN_SEED;
+import static org.apache.datasketches.benchmarks.BenchmarkUtil.ITEMS_PER_SKETCH;
+import static org.apache.datasketches.benchmarks.BenchmarkUtil.NUM_ITEMS;
+import static org.apache.datasketches.benchmarks.BenchmarkUtil.NUM_SKETCHES;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.sampling.ReservoirLongsSketch;
+import org.apache.datasketches.sampling.ReservoirLongsUnion;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Update, union, serialization and query benchmarks for the reservoir longs sampling sketch.
+ * The reservoir sketch is heap only, so there is no storage parameter.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = ADD_MODULES)
+public class ReservoirLongsBenchmark {
+
+  @Param({"256", "4096"})
+  int k;
+
+  @Param({"UNIFORM", "ZIPF"})
+  ItemDistribution distribution;
+
+  private long[] items;
+  private ReservoirLongsSketch sketch;
+  private ReservoirLongsSketch[] inputSketches;
+  private Memory serializedMem;
+
+  @Setup
+  public void setup() {
+    items = distribution.longs(NUM_ITEMS, GEN_SEED);
+    sketch = ReservoirLongsSketch.newInstance(k);
+    for (final long item : items) { sketch.update(item); }
+
+    inputSketches = new ReservoirLongsSketch[NUM_SKETCHES];
+    for (int i = 0; i < NUM_SKETCHES; i++) {
+      final ReservoirLongsSketch input = ReservoirLongsSketch.newInstance(k);
+      final long[] inputItems = distribution.longs(ITEMS_PER_SKETCH, GEN_SEED + i + 1);
+      for (final long item : inputItems) { input.update(item); }
+      inputSketches[i] = input;
+    }
+    serializedMem = Memory.wrap(sketch.toByteArray());
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_ITEMS)
+  public void update(final Blackhole bh) {
+    sketch.reset();
+    for (final long item : items) { sketch.update(item); }
+    bh.consume(sketch);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_SKETCHES)
+  public ReservoirLongsSketch union() {
+    final ReservoirLongsUnion union = ReservoirLongsUnion.newInstance(k);
+    for (final ReservoirLongsSketch input : inputSketches) { union.update(input); }
+    return union.getResult();
+  }
+
+  @Benchmark
+  public byte[] toByteArray() {
+    return sketch.toByteArray();
+  }
+
+  @Benchmark
+  public ReservoirLongsSketch heapify() {
+    return ReservoirLongsSketch.heapify(serializedMem);
+  }
+
+  @Benchmark
+  public long[] getSamples() {
+    return sketch.getSamples();
+  }
+}
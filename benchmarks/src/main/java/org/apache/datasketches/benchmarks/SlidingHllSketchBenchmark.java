@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.benchmarks;
+
+import static org.apache.datasketches.benchmarks.BenchmarkUtil.ADD_MODULES;
+import static org.apache.datasketches.benchmarks.BenchmarkUtil.GEN_SEED;
+import static org.apache.datasketches.benchmarks.BenchmarkUtil.NUM_ITEMS;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.datasketches.hll.HllSketch;
+import org.apache.datasketches.hll.SlidingHllSketch;
+import org.apache.datasketches.hll.TgtHllType;
+import org.apache.datasketches.hll.Union;
+import org.apache.datasketches.memory.WritableMemory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of distinct counts over the most recent buckets: a sliding HLL sketch against an
+ * HLL_8 sketch per bucket whose union is rebuilt for each estimate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = ADD_MODULES)
+public class SlidingHllSketchBenchmark {
+
+  @Param({"12"})
+  int lgK;
+
+  @Param({"60"})
+  int numBuckets;
+
+  @Param({"HEAP", "DIRECT"})
+  StorageMode storage;
+
+  private long[] items;
+  private WritableMemory mem;
+  private SlidingHllSketch sliding;
+  private HllSketch[] buckets;
+
+  @Setup
+  public void setup() {
+    items = ItemDistribution.UNIFORM.longs(NUM_ITEMS, GEN_SEED);
+    mem = storage.allocate(SlidingHllSketch.getSerializationBytes(lgK));
+    sliding = (mem == null)
+        ? new SlidingHllSketch(lgK, numBuckets)
+        : SlidingHllSketch.initialize(lgK, numBuckets, mem);
+    buckets = new HllSketch[numBuckets];
+    final int itemsPerBucket = NUM_ITEMS / numBuckets;
+    for (int b = 0; b < numBuckets; b++) {
+      buckets[b] = new HllSketch(lgK, TgtHllType.HLL_8);
+      for (int i = b * itemsPerBucket; i < ((b + 1) * itemsPerBucket); i++) {
+        buckets[b].update(items[i]);
+        sliding.update(b, items[i]);
+      }
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    StorageMode.release(mem);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_ITEMS)
+  public void update(final Blackhole bh) {
+    final long bucket = sliding.getLatestBucket() + 1;
+    for (final long item : items) { sliding.update(bucket, item); }
+    bh.consume(sliding);
+  }
+
+  @Benchmark
+  public double getEstimateSliding() {
+    return sliding.getEstimate(numBuckets);
+  }
+
+  @Benchmark
+  public double getEstimateUnionOfBuckets() {
+    final Union union = new Union(lgK);
+    for (final HllSketch sk : buckets) { union.update(sk); }
+    return union.getEstimate();
+  }
+}
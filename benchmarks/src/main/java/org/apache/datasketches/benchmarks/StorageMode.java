@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.benchmarks;
+
+import java.nio.ByteOrder;
+
+import org.apache.datasketches.memory.WritableMemory;
+
+import jdk.incubator.foreign.ResourceScope;
+
+/**
+ * Where an updatable sketch keeps its state during a benchmark.
+ */
+public enum StorageMode {
+
+  /** The sketch is a plain heap object. */
+  HEAP,
+
+  /** The sketch lives in a WritableMemory allocated off-heap. */
+  DIRECT;
+
+  /**
+   * Allocates off-heap memory of the given size for DIRECT mode, or returns null for HEAP mode.
+   * @param bytes the capacity in bytes
+   * @return off-heap WritableMemory, or null.
+   */
+  WritableMemory allocate(final long bytes) {
+    return (this == DIRECT) ? WritableMemory.allocateDirect(bytes) : null;
+  }
+
+  /**
+   * Allocates off-heap memory of the given size for DIRECT mode in a shared scope, so that it may be
+   * accessed by several benchmark threads, or returns null for HEAP mode.
+   * @param bytes the capacity in bytes
+   * @return shared off-heap WritableMemory, or null.
+   */
+  WritableMemory allocateShared(final long bytes) {
+    return (this == DIRECT)
+        ? WritableMemory.allocateDirect(bytes, Long.BYTES, ResourceScope.newSharedScope(), ByteOrder.nativeOrder(), null)
+        : null;
+  }
+
+  /**
+   * Releases memory obtained from {@link #allocate(long)}, if any.
+   * @param wmem the memory to release, may be null
+   */
+  static void release(final WritableMemory wmem) {
+    if (wmem != null && wmem.isCloseable() && wmem.isAlive()) { wmem.close(); }
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.benchmarks;
+
+import static org.apache.datasketches.benchmarks.BenchmarkUtil.ADD_MODULES;
+import static org.apache.datasketches.benchmarks.BenchmarkUtil.GEN_SEED;
+import static org.apache.datasketches.benchmarks.BenchmarkUtil.ITEMS_PER_SKETCH;
+import static org.apache.datasketches.benchmarks.BenchmarkUtil.NUM_ITEMS;
+import static org.apache.datasketches.benchmarks.BenchmarkUtil.NUM_SKETCHES;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.tdigest.TDigestDouble;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Update, merge, serialization and query benchmarks for the t-digest.
+ * The t-digest is heap only, so there is no storage parameter.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = ADD_MODULES)
+public class TDigestBenchmark {
+
+  @Param({"100", "200"})
+  short k;
+
+  @Param({"UNIFORM", "ZIPF"})
+  ItemDistribution distribution;
+
+  private double[] items;
+  private TDigestDouble digest;
+  private TDigestDouble[] inputDigests;
+  private Memory serializedMem;
+
+  @Setup
+  public void setup() {
+    items = distribution.doubles(NUM_ITEMS, GEN_SEED);
+    digest = new TDigestDouble(k);
+    for (final double item : items) { digest.update(item); }
+
+    inputDigests = new TDigestDouble[NUM_SKETCHES];
+    for (int i = 0; i < NUM_SKETCHES; i++) {
+      final TDigestDouble input = new TDigestDouble(k);
+      final double[] inputItems = distribution.doubles(ITEMS_PER_SKETCH, GEN_SEED + i + 1);
+      for (final double item : inputItems) { input.update(item); }
+      inputDigests[i] = input;
+    }
+    serializedMem = Memory.wrap(digest.toByteArray());
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_ITEMS)
+  public TDigestDouble update() {
+    final TDigestDouble td = new TDigestDouble(k);
+    for (final double item : items) { td.update(item); }
+    return td;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_SKETCHES)
+  public TDigestDouble merge() {
+    final TDigestDouble target = new TDigestDouble(k);
+    for (final TDigestDouble input : inputDigests) { target.merge(input); }
+    return target;
+  }
+
+  @Benchmark
+  public byte[] toByteArray() {
+    return digest.toByteArray();
+  }
+
+  @Benchmark
+  public TDigestDouble heapify() {
+    return TDigestDouble.heapify(serializedMem);
+  }
+
+  @Benchmark
+  public double getQuantile() {
+    return digest.getQuantile(0.5);
+  }
+
+  @Benchmark
+  public double getRank() {
+    return digest.getRank(items[0]);
+  }
+}
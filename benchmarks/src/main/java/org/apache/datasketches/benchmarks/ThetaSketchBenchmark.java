@@ -0,0 +1,252 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.benchmarks;
+
+import static org.apache.datasketches.benchmarks.BenchmarkUtil.ADD_MODULES;
+import static org.apache.datasketches.benchmarks.BenchmarkUtil.GEN_SEED;
+import static org.apache.datasketches.benchmarks.BenchmarkUtil.ITEMS_PER_SKETCH;
+import static org.apache.datasketches.benchmarks.BenchmarkUtil.NUM_ITEMS;
+import static org.apache.datasketches.benchmarks.BenchmarkUtil.NUM_SKETCHES;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
+import org.apache.datasketches.theta.CompactSketch;
+import org.apache.datasketches.theta.Intersection;
+import org.apache.datasketches.theta.ParallelUnion;
+import org.apache.datasketches.theta.SetOperation;
+import org.apache.datasketches.theta.Sketch;
+import org.apache.datasketches.theta.Union;
+import org.apache.datasketches.theta.UpdateSketch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Update, union, serialization and query benchmarks for the Theta sketch family.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = ADD_MODULES)
+public class ThetaSketchBenchmark {
+
+  @Param({"12", "16"})
+  int lgK;
+
+  @Param({"HEAP", "DIRECT"})
+  StorageMode storage;
+
+  @Param({"UNIFORM", "ZIPF"})
+  ItemDistribution distribution;
+
+  private long[] items;
+  private WritableMemory sketchMem;
+  private WritableMemory unionMem;
+  private UpdateSketch sketch;
+  private CompactSketch[] compactSketches;
+  private List<CompactSketch> compactSketchList;
+  private CompactSketch smallCompactSketch;
+  private CompactSketch compactSketch;
+  private byte[] compactBytes;
+  private Memory compactMem;
+  private Memory compressedMem;
+  private CompactSketch[] compressedSketches;
+
+  @Setup
+  public void setup() {
+    items = distribution.longs(NUM_ITEMS, GEN_SEED);
+    final int k = 1 << lgK;
+    sketchMem = storage.allocate(Sketch.getMaxUpdateSketchBytes(k));
+    unionMem = storage.allocate(SetOperation.getMaxUnionBytes(k));
+    sketch = (sketchMem == null)
+        ? UpdateSketch.builder().setNominalEntries(k).build()
+        : UpdateSketch.builder().setNominalEntries(k).build(sketchMem);
+    for (final long item : items) { sketch.update(item); }
+
+    compactSketches = new CompactSketch[NUM_SKETCHES];
+    for (int i = 0; i < NUM_SKETCHES; i++) {
+      final UpdateSketch input = UpdateSketch.builder().setNominalEntries(k).build();
+      final long[] inputItems = distribution.longs(ITEMS_PER_SKETCH, GEN_SEED + i + 1);
+      for (final long item : inputItems) { input.update(item); }
+      compactSketches[i] = input.compact();
+    }
+    compactSketchList = Arrays.asList(compactSketches);
+    final UpdateSketch small = UpdateSketch.builder().setNominalEntries(k).build();
+    final long[] smallItems = distribution.longs(k >>> 6, GEN_SEED + 1);
+    for (final long item : smallItems) { small.update(item); }
+    smallCompactSketch = small.compact();
+    compactSketch = sketch.compact();
+    compactBytes = compactSketch.toByteArray();
+    compactMem = Memory.wrap(compactBytes);
+    compressedMem = Memory.wrap(sketch.compact().toByteArrayCompressed());
+    compressedSketches = new CompactSketch[NUM_SKETCHES];
+    for (int i = 0; i < NUM_SKETCHES; i++) {
+      compressedSketches[i] =
+          CompactSketch.wrap(Memory.wrap(compactSketches[i].toByteArrayCompressed()));
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    StorageMode.release(sketchMem);
+    StorageMode.release(unionMem);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_ITEMS)
+  public void update(final Blackhole bh) {
+    sketch.reset();
+    for (final long item : items) { sketch.update(item); }
+    bh.consume(sketch);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_ITEMS)
+  public void updateAll(final Blackhole bh) {
+    sketch.reset();
+    bh.consume(sketch.updateAll(items, 0, items.length));
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_SKETCHES)
+  public CompactSketch union() {
+    final int k = 1 << lgK;
+    final Union union = (unionMem == null)
+        ? SetOperation.builder().setNominalEntries(k).buildUnion()
+        : SetOperation.builder().setNominalEntries(k).buildUnion(unionMem);
+    for (final CompactSketch input : compactSketches) { union.union(input); }
+    return union.getResult();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_SKETCHES)
+  public CompactSketch unionCompressed() {
+    final int k = 1 << lgK;
+    final Union union = (unionMem == null)
+        ? SetOperation.builder().setNominalEntries(k).buildUnion()
+        : SetOperation.builder().setNominalEntries(k).buildUnion(unionMem);
+    for (final CompactSketch input : compressedSketches) { union.union(input); }
+    return union.getResult();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_SKETCHES)
+  public CompactSketch unionOrderedMerge() {
+    final int k = 1 << lgK;
+    final Union union = (unionMem == null)
+        ? SetOperation.builder().setNominalEntries(k).buildUnion()
+        : SetOperation.builder().setNominalEntries(k).buildUnion(unionMem);
+    return union.union(compactSketchList, true, null);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_SKETCHES)
+  public CompactSketch parallelUnion() {
+    final int k = 1 << lgK;
+    return new ParallelUnion(SetOperation.builder().setNominalEntries(k)).union(compactSketchList);
+  }
+
+  @Benchmark
+  public CompactSketch intersectSimilar() {
+    final Intersection inter = SetOperation.builder().buildIntersection();
+    return inter.intersect(compactSketches[0], compactSketches[1]);
+  }
+
+  @Benchmark
+  public CompactSketch intersectSimilarStateful() {
+    final Intersection inter = SetOperation.builder().buildIntersection();
+    inter.intersect(compactSketches[0]);
+    inter.intersect(compactSketches[1]);
+    return inter.getResult();
+  }
+
+  @Benchmark
+  public CompactSketch intersectSmallLarge() {
+    final Intersection inter = SetOperation.builder().buildIntersection();
+    return inter.intersect(smallCompactSketch, compactSketches[0]);
+  }
+
+  @Benchmark
+  public CompactSketch intersectSmallLargeStateful() {
+    final Intersection inter = SetOperation.builder().buildIntersection();
+    inter.intersect(compactSketches[0]);
+    inter.intersect(smallCompactSketch);
+    return inter.getResult();
+  }
+
+  @Benchmark
+  public byte[] compactToByteArray() {
+    return sketch.compact().toByteArray();
+  }
+
+  @Benchmark
+  public byte[] compactToByteArrayCompressed() {
+    return compactSketch.toByteArrayCompressed();
+  }
+
+  @Benchmark
+  public Sketch heapify() {
+    return Sketch.heapify(compactMem);
+  }
+
+  @Benchmark
+  public Sketch wrap() {
+    return Sketch.wrap(compactMem);
+  }
+
+  @Benchmark
+  public double getEstimate() {
+    return sketch.getEstimate();
+  }
+
+  @Benchmark
+  public double getBoundsFromWrap() {
+    final Sketch wrapped = Sketch.wrap(compactMem);
+    return wrapped.getLowerBound(2) + wrapped.getUpperBound(2);
+  }
+
+  @Benchmark
+  public Sketch heapifyCompressed() {
+    return Sketch.heapify(compressedMem);
+  }
+
+  @Benchmark
+  public double getBoundsFromCompressedWrap() {
+    final Sketch wrapped = Sketch.wrap(compressedMem);
+    return wrapped.getLowerBound(2) + wrapped.getUpperBound(2);
+  }
+}
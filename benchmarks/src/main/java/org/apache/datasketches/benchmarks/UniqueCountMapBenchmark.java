@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.datasketches.benchmarks;
+
+import static org.apache.datasketches.benchmarks.BenchmarkUtil.ADD_MODULES;
+import static org.apache.datasketches.benchmarks.BenchmarkUtil.GEN_SEED;
+import static org.apache.datasketches.benchmarks.BenchmarkUtil.NUM_ITEMS;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.datasketches.hllmap.UniqueCountMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Update and query benchmarks for the UniqueCountMap on the Java heap. The keys are Zipf
+ * distributed, so that the keys are spread over all of the internal maps, from the single coupon
+ * map to the HLL map.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = ADD_MODULES)
+public class UniqueCountMapBenchmark {
+
+  /** The number of distinct keys the Zipf ranks are folded onto. */
+  static final int NUM_KEYS = 1 << 16;
+
+  @Param({"4", "16"})
+  int keySizeBytes;
+
+  private byte[][] keys;        //the key of each update
+  private byte[][] identifiers; //the identifier of each update
+  private byte[][] distinctKeys;
+  private UniqueCountMap map;
+
+  @Setup
+  public void setup() {
+    distinctKeys = new byte[NUM_KEYS][];
+    for (int i = 0; i < NUM_KEYS; i++) { distinctKeys[i] = toKey(i, keySizeBytes); }
+    final long[] ranks = ItemDistribution.ZIPF.longs(NUM_ITEMS, GEN_SEED);
+    final long[] ids = ItemDistribution.UNIFORM.longs(NUM_ITEMS, GEN_SEED + 1);
+    keys = new byte[NUM_ITEMS][];
+    identifiers = new byte[NUM_ITEMS][];
+    for (int i = 0; i < NUM_ITEMS; i++) {
+      keys[i] = distinctKeys[(int) (ranks[i] % NUM_KEYS)];
+      identifiers[i] = toKey(ids[i], Long.BYTES);
+    }
+    map = newMap();
+  }
+
+  private UniqueCountMap newMap() {
+    final UniqueCountMap newMap = new UniqueCountMap(keySizeBytes);
+    for (int i = 0; i < NUM_ITEMS; i++) { newMap.update(keys[i], identifiers[i]); }
+    return newMap;
+  }
+
+  //the little-endian bytes of the value, padded with zeros to the given size
+  private static byte[] toKey(final long value, final int sizeBytes) {
+    final byte[] key = new byte[sizeBytes];
+    for (int i = 0; i < Math.min(sizeBytes, Long.BYTES); i++) { key[i] = (byte) (value >>> (i << 3)); }
+    return key;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_ITEMS)
+  public void update(final Blackhole bh) {
+    bh.consume(newMap());
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_KEYS)
+  public void getEstimate(final Blackhole bh) {
+    for (final byte[] key : distinctKeys) { bh.consume(map.getEstimate(key)); }
+  }
+}
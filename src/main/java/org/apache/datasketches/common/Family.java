@@ -161,7 +161,12 @@ public enum Family {
   /**
    * Bloom Filter
    */
-  BLOOMFILTER(21, "BLOOMFILTER", 3, 4);
+  BLOOMFILTER(21, "BLOOMFILTER", 3, 4),
+
+  /**
+   * Cache-line blocked Bloom Filter
+   */
+  BLOCKED_BLOOMFILTER(22, "BLOCKED_BLOOMFILTER", 7, 8);
 
   private static final Map<Integer, Family> lookupID = new HashMap<>();
   private static final Map<String, Family> lookupFamName = new HashMap<>();
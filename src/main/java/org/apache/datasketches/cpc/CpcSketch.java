@@ -29,6 +29,8 @@ import static org.apache.datasketches.cpc.CpcUtil.bitMatrixOfSketch;
 import static org.apache.datasketches.cpc.CpcUtil.checkLgK;
 import static org.apache.datasketches.cpc.CpcUtil.countBitsSetInMatrix;
 import static org.apache.datasketches.hash.MurmurHash3.hash;
+import static org.apache.datasketches.thetacommon.ThetaUtil.checkUpdateHashLength;
+import static org.apache.datasketches.thetacommon.ThetaUtil.checkUpdateHashSeed;
 
 import java.nio.ByteBuffer;
 import java.util.Arrays;
@@ -63,7 +65,7 @@ import org.apache.datasketches.thetacommon.ThetaUtil;
  * @author Lee Rhodes
  * @author Kevin Lang
  */
-public final class CpcSketch {
+public final class CpcSketch extends CpcSource {
   private static final double[] kxpByteLookup = new double[256];
 
   /**
@@ -153,6 +155,7 @@ public final class CpcSketch {
    * Return the parameter LgK.
    * @return the parameter LgK.
    */
+  @Override
   public int getLgK() {
     return lgK;
   }
@@ -247,11 +250,16 @@ public final class CpcSketch {
 
   /**
    * Return the given Memory as a CpcSketch on the Java heap.
+   * The Memory can hold either a compressed image or the updatable image of a
+   * {@link DirectCpcSketch}.
    * @param mem the given Memory
    * @param seed the seed used to create the original sketch from which the Memory was derived.
    * @return the given Memory as a CpcSketch on the Java heap.
    */
   public static CpcSketch heapify(final Memory mem, final long seed) {
+    if (!PreambleUtil.isCompressed(mem)) { //the updatable image of a DirectCpcSketch
+      return DirectCpcSketch.heapify(mem, seed);
+    }
     final CompressedState state = CompressedState.importFromMemory(mem);
     return uncompress(state, seed);
   }
@@ -414,6 +422,38 @@ public final class CpcSketch {
     hashUpdate(arr[0], arr[1]);
   }
 
+  /**
+   * Present a datum that has already been hashed by the caller with
+   * {@link org.apache.datasketches.hash.MurmurHash3 MurmurHash3} as a potential unique item.
+   * This produces the same result as calling one of the update methods with the original datum,
+   * and allows a single hash computation to drive several sketches, including the Theta and HLL
+   * sketches, which accept the same 128-bit hash.
+   *
+   * @param hash0 the first 64 bits of the 128-bit MurmurHash3 of the datum.
+   * @param hash1 the second 64 bits of the 128-bit MurmurHash3 of the datum.
+   * @param seed the seed used to compute the hash, which must equal the seed of this sketch.
+   */
+  public void updateHash(final long hash0, final long hash1, final long seed) {
+    checkUpdateHashSeed(seed, this.seed);
+    hashUpdate(hash0, hash1);
+  }
+
+  /**
+   * Present a datum that has already been hashed by the caller with
+   * {@link org.apache.datasketches.hash.MurmurHash3 MurmurHash3} as a potential unique item.
+   * If the hash array is null or empty no update attempt is made and the method returns.
+   *
+   * @param hash the 128-bit MurmurHash3 of the datum as returned by the <i>hash</i> methods of
+   * {@link org.apache.datasketches.hash.MurmurHash3 MurmurHash3}.
+   * @param seed the seed used to compute the hash, which must equal the seed of this sketch.
+   * @see #updateHash(long, long, long)
+   */
+  public void updateHash(final long[] hash, final long seed) {
+    if ((hash == null) || (hash.length == 0)) { return; }
+    checkUpdateHashLength(hash);
+    updateHash(hash[0], hash[1], seed);
+  }
+
   /**
    * Convience function that this Sketch is valid. This is a troubleshooting tool
    * for sketches that have been heapified from serialized images.
@@ -434,10 +474,41 @@ public final class CpcSketch {
    * Returns the current Flavor of this sketch.
    * @return the current Flavor of this sketch.
    */
+  @Override
   Flavor getFlavor() {
     return CpcUtil.determineFlavor(lgK, numCoupons);
   }
 
+  @Override
+  long getSeed() {
+    return seed;
+  }
+
+  @Override
+  int getWindowOffset() {
+    return windowOffset;
+  }
+
+  @Override
+  byte getWindowByte(final int row) {
+    return slidingWindow[row];
+  }
+
+  @Override
+  int getTableLgSizeInts() {
+    return pairTable.getLgSizeInts();
+  }
+
+  @Override
+  int getTableSlot(final int slot) {
+    return pairTable.getSlotsArr()[slot];
+  }
+
+  @Override
+  long[] bitMatrix() {
+    return CpcUtil.bitMatrixOfSketch(this);
+  }
+
   /**
    * Returns the Format of the serialized form of this sketch.
    * @return the Format of the serialized form of this sketch.
@@ -509,7 +580,12 @@ public final class CpcSketch {
    */
   //Also used in test
   static void refreshKXP(final CpcSketch sketch, final long[] bitMatrix) {
-    final int k = (1 << sketch.lgK);
+    sketch.kxp = computeKXP(sketch.lgK, bitMatrix);
+  }
+
+  //Also used by DirectCpcSketch
+  static double computeKXP(final int lgK, final long[] bitMatrix) {
+    final int k = (1 << lgK);
 
     // for improved numerical accuracy, we separately sum the bytes of the U64's
     final double[] byteSums = new double[8];
@@ -531,7 +607,7 @@ public final class CpcSketch {
       final double factor = invPow2(8 * j); // pow(256, -j) == pow(2, -8 * j);
       total += factor * byteSums[j];
     }
-    sketch.kxp = total;
+    return total;
   }
 
   /**
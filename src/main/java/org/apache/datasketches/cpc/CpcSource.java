@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.cpc;
+
+/**
+ * The read-only view of an updatable CPC sketch that the unions merge from, so that the
+ * {@link CpcUnion} and the {@link DirectCpcUnion} read a {@link CpcSketch} on the Java heap and a
+ * {@link DirectCpcSketch} in its Memory in the same way.
+ */
+abstract class CpcSource {
+
+  /**
+   * Return the parameter LgK.
+   * @return the parameter LgK.
+   */
+  public abstract int getLgK();
+
+  abstract long getSeed();
+
+  abstract Flavor getFlavor();
+
+  abstract int getWindowOffset();
+
+  //returns the byte of the sliding window at the given row, only valid past the SPARSE flavor
+  abstract byte getWindowByte(int row);
+
+  abstract int getTableLgSizeInts();
+
+  //returns the pair at the given slot of the table of surprising values, or -1 if the slot is empty
+  abstract int getTableSlot(int slot);
+
+  /**
+   * This produces a full-size k-by-64 bit matrix from this sketch.
+   * @return the bit matrix as an array of longs.
+   */
+  abstract long[] bitMatrix();
+
+}
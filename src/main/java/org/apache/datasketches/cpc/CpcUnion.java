@@ -135,6 +135,14 @@ public class CpcUnion {
     mergeInto(this, sketch);
   }
 
+  /**
+   * Update this union with a DirectCpcSketch.
+   * @param sketch the given DirectCpcSketch.
+   */
+  public void update(final DirectCpcSketch sketch) {
+    mergeInto(this, sketch);
+  }
+
   /**
    * Returns the result of union operations as a CPC sketch.
    * @return the result of union operations as a CPC sketch.
@@ -178,9 +186,8 @@ public class CpcUnion {
         : CpcUtil.bitMatrixOfSketch(union.accumulator);
   }
 
-  private static void walkTableUpdatingSketch(final CpcSketch dest, final PairTable table) {
-    final int[] slots = table.getSlotsArr();
-    final int numSlots = (1 << table.getLgSizeInts());
+  private static void walkTableUpdatingSketch(final CpcSketch dest, final CpcSource source) {
+    final int numSlots = (1 << source.getTableLgSizeInts());
     assert dest.lgK <= 26;
     final int destMask = (((1 << dest.lgK) - 1) << 6) | 63; //downsamples when destlgK < srcLgK
 
@@ -194,19 +201,18 @@ public class CpcUnion {
 
     for (int i = 0, j = 0; i < numSlots; i++, j += stride) {
       j &= (numSlots - 1);
-      final int rowCol = slots[j];
+      final int rowCol = source.getTableSlot(j);
       if (rowCol != -1) {
         dest.rowColUpdate(rowCol & destMask);
       }
     }
   }
 
-  private static void orTableIntoMatrix(final long[] bitMatrix, final int destLgK, final PairTable table) {
-    final int[] slots = table.getSlotsArr();
-    final int numSlots = 1 << table.getLgSizeInts();
+  private static void orTableIntoMatrix(final long[] bitMatrix, final int destLgK, final CpcSource source) {
+    final int numSlots = 1 << source.getTableLgSizeInts();
     final int destMask = (1 << destLgK) - 1;  // downsamples when destlgK < srcLgK
     for (int i = 0; i < numSlots; i++) {
-      final int rowCol = slots[i];
+      final int rowCol = source.getTableSlot(i);
       if (rowCol != -1) {
         final int col = rowCol & 63;
         final int row = rowCol >>> 6;
@@ -216,12 +222,14 @@ public class CpcUnion {
   }
 
   private static void orWindowIntoMatrix(final long[] destMatrix, final int destLgK,
-      final byte[] srcWindow, final int srcOffset, final int srcLgK) {
+      final CpcSource source) {
+    final int srcLgK = source.getLgK();
     assert (destLgK <= srcLgK);
+    final int srcOffset = source.getWindowOffset();
     final int destMask = (1 << destLgK) - 1;  // downsamples when destlgK < srcLgK
     final int srcK = 1 << srcLgK;
     for (int srcRow = 0; srcRow < srcK; srcRow++) {
-      destMatrix[srcRow & destMask] |= ((srcWindow[srcRow] & 0XFFL) << srcOffset);
+      destMatrix[srcRow & destMask] |= ((source.getWindowByte(srcRow) & 0XFFL) << srcOffset);
     }
   }
 
@@ -257,7 +265,7 @@ public class CpcUnion {
       }
 
       final CpcSketch newSketch = new CpcSketch(newLgK, oldSketch.seed);
-      walkTableUpdatingSketch(newSketch, oldSketch.pairTable);
+      walkTableUpdatingSketch(newSketch, oldSketch);
 
       final Flavor finalNewFlavor = newSketch.getFlavor();
       assert (finalNewFlavor != EMPTY); //SV table had to have something in it
@@ -275,9 +283,9 @@ public class CpcUnion {
     }
   }
 
-  private static void mergeInto(final CpcUnion union, final CpcSketch source) {
+  private static void mergeInto(final CpcUnion union, final CpcSource source) {
     if (source == null) { return; }
-    checkSeeds(union.seed, source.seed);
+    checkSeeds(union.seed, source.getSeed());
 
     final int sourceFlavorOrd = source.getFlavor().ordinal();
     if (sourceFlavorOrd == 0) { return; } //EMPTY
@@ -287,7 +295,8 @@ public class CpcUnion {
     //if (Accumulator != null) union must be EMPTY or SPARSE,
     checkUnionState(union);
 
-    if (source.lgK < union.lgK) { reduceUnionK(union, source.lgK); }
+    final int sourceLgK = source.getLgK();
+    if (sourceLgK < union.lgK) { reduceUnionK(union, sourceLgK); }
 
     // if source is past SPARSE mode, make sure that union is a bitMatrix.
     if ((sourceFlavorOrd > 1) && (union.accumulator != null)) {
@@ -303,11 +312,11 @@ public class CpcUnion {
           throw new SketchesStateException("union.accumulator can never be null here.");
         }
         if ((union.accumulator.getFlavor() == EMPTY)
-            && (union.lgK == source.lgK)) {
-          union.accumulator = source.copy();
+            && (union.lgK == sourceLgK) && (source instanceof CpcSketch)) {
+          union.accumulator = ((CpcSketch) source).copy();
           break;
         }
-        walkTableUpdatingSketch(union.accumulator, source.pairTable);
+        walkTableUpdatingSketch(union.accumulator, source);
         // if the accumulator has graduated beyond sparse, switch union to a bitMatrix
         if (union.accumulator.getFlavor().ordinal() > 1) {
           union.bitMatrix = CpcUtil.bitMatrixOfSketch(union.accumulator);
@@ -316,21 +325,19 @@ public class CpcUnion {
         break;
       }
       case 1 : { //B: Sparse, bitMatrix valid, accumulator == null
-        orTableIntoMatrix(union.bitMatrix, union.lgK, source.pairTable);
+        orTableIntoMatrix(union.bitMatrix, union.lgK, source);
         break;
       }
       case 3 :   //C: Hybrid, bitMatrix valid, accumulator == null
       case 5 : { //C: Pinned, bitMatrix valid, accumulator == null
-        orWindowIntoMatrix(union.bitMatrix, union.lgK, source.slidingWindow,
-            source.windowOffset, source.lgK);
-        orTableIntoMatrix(union.bitMatrix, union.lgK, source.pairTable);
+        orWindowIntoMatrix(union.bitMatrix, union.lgK, source);
+        orTableIntoMatrix(union.bitMatrix, union.lgK, source);
         break;
       }
       case 7 : { //D: Sliding, bitMatrix valid, accumulator == null
         // SLIDING mode involves inverted logic, so we can't just walk the source sketch.
         // Instead, we convert it to a bitMatrix that can be OR'ed into the destination.
-        final long[] sourceMatrix = CpcUtil.bitMatrixOfSketch(source);
-        orMatrixIntoMatrix(union.bitMatrix, union.lgK, sourceMatrix, source.lgK);
+        orMatrixIntoMatrix(union.bitMatrix, union.lgK, source.bitMatrix(), sourceLgK);
         break;
       }
       default: throw new SketchesStateException("Illegal Union state: " + state);
@@ -353,9 +360,13 @@ public class CpcUnion {
     } // end of case where union contains a sketch
 
     // start of case where union contains a bitMatrix
-    final long[] matrix = union.bitMatrix;
-    final int lgK = union.lgK;
-    final CpcSketch result = new CpcSketch(union.lgK, union.seed);
+    return getResult(union.bitMatrix, union.lgK, union.seed);
+    // end of case where union contains a bitMatrix
+  }
+
+  //Also used by DirectCpcUnion
+  static CpcSketch getResult(final long[] matrix, final int lgK, final long seed) {
+    final CpcSketch result = new CpcSketch(lgK, seed);
 
     final long numCoupons = countBitsSetInMatrix(matrix);
     result.numCoupons = numCoupons;
@@ -410,7 +421,6 @@ public class CpcUnion {
 
     result.mergeFlag = true;
     return result;
-    // end of case where union contains a bitMatrix
   }
 
   private static void checkSeeds(final long seedA, final long seedB) {
@@ -25,19 +25,24 @@ import static org.apache.datasketches.cpc.CpcConfidence.getIconConfidenceLB;
 import static org.apache.datasketches.cpc.CpcConfidence.getIconConfidenceUB;
 import static org.apache.datasketches.cpc.IconEstimator.getIconEstimate;
 import static org.apache.datasketches.cpc.PreambleUtil.checkLoPreamble;
-import static org.apache.datasketches.cpc.PreambleUtil.getHipAccum;
-import static org.apache.datasketches.cpc.PreambleUtil.getNumCoupons;
+import static org.apache.datasketches.cpc.PreambleUtil.getFormat;
+import static org.apache.datasketches.cpc.PreambleUtil.getHiFieldOffset;
 import static org.apache.datasketches.cpc.PreambleUtil.hasHip;
 import static org.apache.datasketches.cpc.PreambleUtil.isCompressed;
 import static org.apache.datasketches.cpc.RuntimeAsserts.rtAssert;
 
 import org.apache.datasketches.common.Family;
 import org.apache.datasketches.common.SuppressFBWarnings;
+import org.apache.datasketches.cpc.PreambleUtil.HiField;
 import org.apache.datasketches.memory.Memory;
 
 /**
  * This provides a read-only view of a serialized image of a CpcSketch, which can be
  * on-heap or off-heap represented as a Memory object, or on-heap represented as a byte array.
+ *
+ * <p>The estimate and bounds are computed from the preamble alone; the compressed coupon streams
+ * are never read. The static methods that take a Memory do the same without allocating a wrapper,
+ * which suits scanning large numbers of stored images.</p>
  * @author Lee Rhodes
  * @author Kevin Lang
  */
@@ -51,9 +56,7 @@ public final class CpcWrapper {
   @SuppressFBWarnings(value = "EI_EXPOSE_REP2", justification = "This is OK here")
   public CpcWrapper(final Memory mem) {
     this.mem = mem;
-    checkLoPreamble(mem);
-    rtAssert(isCompressed(mem));
-
+    checkImage(mem);
   }
 
   /**
@@ -69,10 +72,18 @@ public final class CpcWrapper {
    * @return the best estimate of the cardinality of the sketch.
    */
   public double getEstimate() {
-    if (!hasHip(mem)) {
-      return getIconEstimate(PreambleUtil.getLgK(mem), getNumCoupons(mem));
-    }
-    return getHipAccum(mem);
+    return estimate(mem);
+  }
+
+  /**
+   * Returns the best estimate of the cardinality of the compressed sketch image in the given
+   * Memory. Only the preamble is read.
+   * @param mem the given Memory containing a compressed CpcSketch image
+   * @return the best estimate of the cardinality of the sketch image.
+   */
+  public static double getEstimate(final Memory mem) {
+    checkImage(mem);
+    return estimate(mem);
   }
 
   /**
@@ -98,10 +109,19 @@ public final class CpcWrapper {
    * @return the best estimate of the lower bound of the confidence interval given <i>kappa</i>.
    */
   public double getLowerBound(final int kappa) {
-    if (!hasHip(mem)) {
-      return getIconConfidenceLB(PreambleUtil.getLgK(mem), getNumCoupons(mem), kappa);
-    }
-    return getHipConfidenceLB(PreambleUtil.getLgK(mem), getNumCoupons(mem), getHipAccum(mem), kappa);
+    return lowerBound(mem, kappa);
+  }
+
+  /**
+   * Returns the best estimate of the lower bound of the confidence interval given <i>kappa</i>
+   * for the compressed sketch image in the given Memory. Only the preamble is read.
+   * @param mem the given Memory containing a compressed CpcSketch image
+   * @param kappa the given number of standard deviations from the mean: 1, 2 or 3.
+   * @return the best estimate of the lower bound of the confidence interval given <i>kappa</i>.
+   */
+  public static double getLowerBound(final Memory mem, final int kappa) {
+    checkImage(mem);
+    return lowerBound(mem, kappa);
   }
 
   /**
@@ -111,10 +131,64 @@ public final class CpcWrapper {
    * @return the best estimate of the upper bound of the confidence interval given <i>kappa</i>.
    */
   public double getUpperBound(final int kappa) {
+    return upperBound(mem, kappa);
+  }
+
+  /**
+   * Returns the best estimate of the upper bound of the confidence interval given <i>kappa</i>
+   * for the compressed sketch image in the given Memory. Only the preamble is read.
+   * @param mem the given Memory containing a compressed CpcSketch image
+   * @param kappa the given number of standard deviations from the mean: 1, 2 or 3.
+   * @return the best estimate of the upper bound of the confidence interval given <i>kappa</i>.
+   */
+  public static double getUpperBound(final Memory mem, final int kappa) {
+    checkImage(mem);
+    return upperBound(mem, kappa);
+  }
+
+  private static void checkImage(final Memory mem) {
+    checkLoPreamble(mem);
+    rtAssert(isCompressed(mem));
+  }
+
+  private static double estimate(final Memory mem) {
+    final Format format = getFormat(mem);
+    final long numCoupons = numCoupons(mem, format);
+    if (numCoupons == 0) { return 0.0; }
     if (!hasHip(mem)) {
-      return getIconConfidenceUB(PreambleUtil.getLgK(mem), getNumCoupons(mem), kappa);
+      return getIconEstimate(PreambleUtil.getLgK(mem), numCoupons);
     }
-    return getHipConfidenceUB(PreambleUtil.getLgK(mem), getNumCoupons(mem), getHipAccum(mem), kappa);
+    return mem.getDouble(getHiFieldOffset(format, HiField.HIP_ACCUM));
+  }
+
+  private static double lowerBound(final Memory mem, final int kappa) {
+    final Format format = getFormat(mem);
+    final long numCoupons = numCoupons(mem, format);
+    if (numCoupons == 0) { return 0.0; }
+    final int lgK = PreambleUtil.getLgK(mem);
+    if (!hasHip(mem)) {
+      return getIconConfidenceLB(lgK, numCoupons, kappa);
+    }
+    final double hipEstAccum = mem.getDouble(getHiFieldOffset(format, HiField.HIP_ACCUM));
+    return getHipConfidenceLB(lgK, numCoupons, hipEstAccum, kappa);
+  }
+
+  private static double upperBound(final Memory mem, final int kappa) {
+    final Format format = getFormat(mem);
+    final long numCoupons = numCoupons(mem, format);
+    if (numCoupons == 0) { return 0.0; }
+    final int lgK = PreambleUtil.getLgK(mem);
+    if (!hasHip(mem)) {
+      return getIconConfidenceUB(lgK, numCoupons, kappa);
+    }
+    final double hipEstAccum = mem.getDouble(getHiFieldOffset(format, HiField.HIP_ACCUM));
+    return getHipConfidenceUB(lgK, numCoupons, hipEstAccum, kappa);
+  }
+
+  //the empty formats carry no hi-fields
+  private static long numCoupons(final Memory mem, final Format format) {
+    if ((format == Format.EMPTY_MERGED) || (format == Format.EMPTY_HIP)) { return 0; }
+    return mem.getInt(getHiFieldOffset(format, HiField.NUM_COUPONS)) & 0XFFFF_FFFFL;
   }
 
 }
@@ -0,0 +1,888 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.cpc;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.datasketches.common.Util.invPow2;
+import static org.apache.datasketches.cpc.CpcUtil.checkLgK;
+import static org.apache.datasketches.cpc.CpcUtil.countBitsSetInMatrix;
+import static org.apache.datasketches.cpc.PreambleUtil.HIP_FLAG_MASK;
+import static org.apache.datasketches.cpc.PreambleUtil.SER_VER;
+import static org.apache.datasketches.cpc.PreambleUtil.SUP_VAL_FLAG_MASK;
+import static org.apache.datasketches.cpc.PreambleUtil.UNION_FLAG_MASK;
+import static org.apache.datasketches.cpc.PreambleUtil.UPDATABLE_PRE_INTS;
+import static org.apache.datasketches.cpc.PreambleUtil.UPD_DATA_START;
+import static org.apache.datasketches.cpc.PreambleUtil.UPD_HIP_ACCUM_DOUBLE;
+import static org.apache.datasketches.cpc.PreambleUtil.UPD_KXP_DOUBLE;
+import static org.apache.datasketches.cpc.PreambleUtil.UPD_LG_SIZE_INTS_INT;
+import static org.apache.datasketches.cpc.PreambleUtil.UPD_NUM_COUPONS_INT;
+import static org.apache.datasketches.cpc.PreambleUtil.UPD_NUM_SV_INT;
+import static org.apache.datasketches.cpc.PreambleUtil.UPD_WINDOW_OFFSET_INT;
+import static org.apache.datasketches.cpc.PreambleUtil.WINDOW_FLAG_MASK;
+import static org.apache.datasketches.cpc.PreambleUtil.checkCapacity;
+import static org.apache.datasketches.cpc.PreambleUtil.checkUpdatablePreamble;
+import static org.apache.datasketches.cpc.PreambleUtil.getLoFieldOffset;
+import static org.apache.datasketches.cpc.RuntimeAsserts.rtAssert;
+import static org.apache.datasketches.hash.MurmurHash3.hash;
+import static org.apache.datasketches.thetacommon.ThetaUtil.checkUpdateHashLength;
+import static org.apache.datasketches.thetacommon.ThetaUtil.checkUpdateHashSeed;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+
+import org.apache.datasketches.common.Family;
+import org.apache.datasketches.common.SketchesArgumentException;
+import org.apache.datasketches.cpc.PreambleUtil.LoField;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.MemoryRequestServer;
+import org.apache.datasketches.memory.WritableMemory;
+import org.apache.datasketches.thetacommon.ThetaUtil;
+
+/**
+ * An updatable CPC sketch that keeps all of its state in a WritableMemory provided by the caller,
+ * for example off the Java heap. It has the same update, estimate and serialization behavior as
+ * the {@link CpcSketch} on the Java heap.
+ *
+ * <p>The Memory holds the uncompressed, updatable image of the sketch: the preamble, the sliding
+ * window and the table of surprising values. The sketch starts small and, as the table of
+ * surprising values grows or the sketch acquires its sliding window of K bytes, it asks the given
+ * MemoryRequestServer for a larger WritableMemory. After that the original WritableMemory is no
+ * longer used by this sketch, which can be checked with {@link #isSameResource(Memory)}.</p>
+ *
+ * <p>The image can be wrapped again with {@link #writableWrap(WritableMemory, MemoryRequestServer)}
+ * or copied to the Java heap with {@link CpcSketch#heapify(Memory)}. {@link #toByteArray()}
+ * returns the same compressed image as the CpcSketch on the Java heap.</p>
+ */
+public final class DirectCpcSketch extends CpcSource {
+  private static final int upsizeNumer = 3;
+  private static final int upsizeDenom = 4;
+  private static final int downsizeNumer = 1;
+  private static final int downsizeDenom = 4;
+
+  final long seed;
+  final int lgK;
+  private final MemoryRequestServer memReqSvr;
+  private WritableMemory wmem;
+
+  private DirectCpcSketch(final int lgK, final long seed, final WritableMemory wmem,
+      final MemoryRequestServer memReqSvr) {
+    this.lgK = lgK;
+    this.seed = seed;
+    this.wmem = wmem;
+    this.memReqSvr = memReqSvr;
+  }
+
+  /**
+   * Returns the minimum number of bytes of the WritableMemory of a new sketch.
+   * The sketch requests more memory as it grows.
+   * @return the minimum number of bytes of the WritableMemory of a new sketch.
+   */
+  public static int getMinMemoryBytes() {
+    return UPD_DATA_START;
+  }
+
+  /**
+   * Returns the number of bytes of the largest image of a sketch with the given lgK for almost all
+   * input streams: the preamble, the sliding window of K bytes and a table of surprising values of
+   * K/4 slots, which is larger than the table of almost all sketches. Providing this many bytes
+   * avoids requests for more memory.
+   * @param lgK the given log_base2 of k
+   * @return the number of bytes of the largest image of a sketch for almost all input streams.
+   */
+  public static int getMaxMemoryBytes(final int lgK) {
+    checkLgK(lgK);
+    return UPD_DATA_START + (1 << lgK) + ((1 << Math.max(lgK - 2, 2)) * Integer.BYTES);
+  }
+
+  /**
+   * Creates a new empty sketch in the given WritableMemory using the DEFAULT_UPDATE_SEED.
+   * @param lgK the given log_base2 of k
+   * @param dstMem the given destination WritableMemory of at least {@link #getMinMemoryBytes()}
+   * @param memReqSvr the given MemoryRequestServer to request a larger WritableMemory
+   * @return a new empty sketch in the given WritableMemory
+   */
+  public static DirectCpcSketch newInstance(final int lgK, final WritableMemory dstMem,
+      final MemoryRequestServer memReqSvr) {
+    return newInstance(lgK, ThetaUtil.DEFAULT_UPDATE_SEED, dstMem, memReqSvr);
+  }
+
+  /**
+   * Creates a new empty sketch in the given WritableMemory.
+   * @param lgK the given log_base2 of k
+   * @param seed the given seed
+   * @param dstMem the given destination WritableMemory of at least {@link #getMinMemoryBytes()}
+   * @param memReqSvr the given MemoryRequestServer to request a larger WritableMemory
+   * @return a new empty sketch in the given WritableMemory
+   */
+  public static DirectCpcSketch newInstance(final int lgK, final long seed,
+      final WritableMemory dstMem, final MemoryRequestServer memReqSvr) {
+    Objects.requireNonNull(dstMem, "Parameter 'dstMem' must not be null");
+    Objects.requireNonNull(memReqSvr, "Parameter 'memReqSvr' must not be null");
+    checkLgK(lgK);
+    checkCapacity(dstMem.getCapacity(), UPD_DATA_START);
+    return initialize(lgK, seed, dstMem, memReqSvr, 0);
+  }
+
+  /**
+   * Wraps the updatable image of a sketch in the given WritableMemory using the
+   * DEFAULT_UPDATE_SEED.
+   * @param srcMem the given WritableMemory that holds the updatable image of a sketch
+   * @param memReqSvr the given MemoryRequestServer to request a larger WritableMemory
+   * @return a sketch that continues to update the given WritableMemory
+   */
+  public static DirectCpcSketch writableWrap(final WritableMemory srcMem,
+      final MemoryRequestServer memReqSvr) {
+    return writableWrap(srcMem, memReqSvr, ThetaUtil.DEFAULT_UPDATE_SEED);
+  }
+
+  /**
+   * Wraps the updatable image of a sketch in the given WritableMemory.
+   * @param srcMem the given WritableMemory that holds the updatable image of a sketch
+   * @param memReqSvr the given MemoryRequestServer to request a larger WritableMemory
+   * @param seed the seed used to create the sketch
+   * @return a sketch that continues to update the given WritableMemory
+   */
+  public static DirectCpcSketch writableWrap(final WritableMemory srcMem,
+      final MemoryRequestServer memReqSvr, final long seed) {
+    Objects.requireNonNull(memReqSvr, "Parameter 'memReqSvr' must not be null");
+    checkUpdatablePreamble(srcMem, false);
+    return wrap(srcMem, memReqSvr, seed);
+  }
+
+  //also used by the union, which does not check the union flag here
+  static DirectCpcSketch wrap(final WritableMemory srcMem, final MemoryRequestServer memReqSvr,
+      final long seed) {
+    ThetaUtil.checkSeedHashes(ThetaUtil.computeSeedHash(seed), PreambleUtil.getSeedHash(srcMem));
+    checkCapacity(srcMem.getCapacity(), getRequiredBytes(srcMem));
+    return new DirectCpcSketch(PreambleUtil.getLgK(srcMem), seed, srcMem, memReqSvr);
+  }
+
+  //writes the preamble of an empty sketch, extraFlags are kept by all following updates
+  static DirectCpcSketch initialize(final int lgK, final long seed, final WritableMemory wmem,
+      final MemoryRequestServer memReqSvr, final int extraFlags) {
+    wmem.putByte(getLoFieldOffset(LoField.PRE_INTS), UPDATABLE_PRE_INTS);
+    wmem.putByte(getLoFieldOffset(LoField.SER_VERSION), SER_VER);
+    wmem.putByte(getLoFieldOffset(LoField.FAMILY), (byte) Family.CPC.getID());
+    wmem.putByte(getLoFieldOffset(LoField.LG_K), (byte) lgK);
+    wmem.putShort(getLoFieldOffset(LoField.SEED_HASH), ThetaUtil.computeSeedHash(seed));
+    final DirectCpcSketch sketch = new DirectCpcSketch(lgK, seed, wmem, memReqSvr);
+    sketch.putFlags(extraFlags);
+    sketch.reset();
+    return sketch;
+  }
+
+  /**
+   * Returns the best estimate of the cardinality of the sketch.
+   * @return the best estimate of the cardinality of the sketch.
+   */
+  public double getEstimate() {
+    if (isMerged()) { return IconEstimator.getIconEstimate(lgK, getNumCoupons()); }
+    return getHipEstAccum();
+  }
+
+  /**
+   * Returns the best estimate of the lower bound of the confidence interval given <i>kappa</i>,
+   * the number of standard deviations from the mean.
+   * @param kappa the given number of standard deviations from the mean: 1, 2 or 3.
+   * @return the best estimate of the lower bound of the confidence interval given <i>kappa</i>.
+   */
+  public double getLowerBound(final int kappa) {
+    if (isMerged()) {
+      return CpcConfidence.getIconConfidenceLB(lgK, getNumCoupons(), kappa);
+    }
+    return CpcConfidence.getHipConfidenceLB(lgK, getNumCoupons(), getHipEstAccum(), kappa);
+  }
+
+  /**
+   * Returns the best estimate of the upper bound of the confidence interval given <i>kappa</i>,
+   * the number of standard deviations from the mean.
+   * @param kappa the given number of standard deviations from the mean: 1, 2 or 3.
+   * @return the best estimate of the upper bound of the confidence interval given <i>kappa</i>.
+   */
+  public double getUpperBound(final int kappa) {
+    if (isMerged()) {
+      return CpcConfidence.getIconConfidenceUB(lgK, getNumCoupons(), kappa);
+    }
+    return CpcConfidence.getHipConfidenceUB(lgK, getNumCoupons(), getHipEstAccum(), kappa);
+  }
+
+  /**
+   * Return the parameter LgK.
+   * @return the parameter LgK.
+   */
+  @Override
+  public int getLgK() {
+    return lgK;
+  }
+
+  /**
+   * Return true if this sketch is empty
+   * @return true if this sketch is empty
+   */
+  public boolean isEmpty() {
+    return getNumCoupons() == 0;
+  }
+
+  /**
+   * Returns true if the WritableMemory of this sketch is off-heap.
+   * @return true if the WritableMemory of this sketch is off-heap.
+   */
+  public boolean isOffHeap() {
+    return wmem.isDirect();
+  }
+
+  /**
+   * Returns true if this sketch still uses the given Memory, which is not the case after the
+   * sketch requested a larger WritableMemory.
+   * @param mem the given Memory
+   * @return true if this sketch uses the given Memory.
+   */
+  public boolean isSameResource(final Memory mem) {
+    return wmem.isSameResource(mem);
+  }
+
+  /**
+   * Resets this sketch to empty but retains the original LgK and Seed.
+   * The WritableMemory of this sketch is kept.
+   */
+  public void reset() {
+    putNumCoupons(0);
+    putFlags((getFlags() & UNION_FLAG_MASK) | HIP_FLAG_MASK);
+    putFiCol(0);
+    putWindowOffset(0);
+    putKxp(1 << lgK);
+    putHipEstAccum(0);
+    wmem.putInt(UPD_LG_SIZE_INTS_INT, 0);
+    wmem.putInt(UPD_NUM_SV_INT, 0);
+  }
+
+  /**
+   * Return this sketch as a compressed byte array, which is the same as the compressed byte array
+   * of the equivalent CpcSketch on the Java heap.
+   * @return this sketch as a compressed byte array.
+   */
+  public byte[] toByteArray() {
+    return toHeap().toByteArray();
+  }
+
+  /**
+   * Present the given long as a potential unique item.
+   *
+   * @param datum The given long datum.
+   */
+  public void update(final long datum) {
+    final long[] data = { datum };
+    final long[] arr = hash(data, seed);
+    hashUpdate(arr[0], arr[1]);
+  }
+
+  /**
+   * Present the given double (or float) datum as a potential unique item.
+   * See {@link CpcSketch#update(double)}.
+   *
+   * @param datum The given double datum.
+   */
+  public void update(final double datum) {
+    final double d = (datum == 0.0) ? 0.0 : datum; // canonicalize -0.0, 0.0
+    final long[] data = { Double.doubleToLongBits(d) };// canonicalize all NaN forms
+    final long[] arr = hash(data, seed);
+    hashUpdate(arr[0], arr[1]);
+  }
+
+  /**
+   * Present the given String as a potential unique item.
+   * The string is converted to a byte array using UTF8 encoding.
+   * If the string is null or empty no update attempt is made and the method returns.
+   *
+   * @param datum The given String.
+   */
+  public void update(final String datum) {
+    if ((datum == null) || datum.isEmpty()) { return; }
+    final byte[] data = datum.getBytes(UTF_8);
+    final long[] arr = hash(data, seed);
+    hashUpdate(arr[0], arr[1]);
+  }
+
+  /**
+   * Present the given byte array as a potential unique item.
+   * If the byte array is null or empty no update attempt is made and the method returns.
+   *
+   * @param data The given byte array.
+   */
+  public void update(final byte[] data) {
+    if ((data == null) || (data.length == 0)) { return; }
+    final long[] arr = hash(data, seed);
+    hashUpdate(arr[0], arr[1]);
+  }
+
+  /**
+   * Present the given ByteBuffer as a potential unique item
+   * If the ByteBuffer is null or empty no update attempt is made and the method returns
+   *
+   * @param data The given ByteBuffer
+   */
+  public void update(final ByteBuffer data) {
+    if ((data == null) || data.hasRemaining() == false) { return; }
+    final long[] arr = hash(data, seed);
+    hashUpdate(arr[0], arr[1]);
+  }
+
+  /**
+   * Present the given char array as a potential unique item.
+   * If the char array is null or empty no update attempt is made and the method returns.
+   *
+   * @param data The given char array.
+   */
+  public void update(final char[] data) {
+    if ((data == null) || (data.length == 0)) { return; }
+    final long[] arr = hash(data, seed);
+    hashUpdate(arr[0], arr[1]);
+  }
+
+  /**
+   * Present the given integer array as a potential unique item.
+   * If the integer array is null or empty no update attempt is made and the method returns.
+   *
+   * @param data The given int array.
+   */
+  public void update(final int[] data) {
+    if ((data == null) || (data.length == 0)) { return; }
+    final long[] arr = hash(data, seed);
+    hashUpdate(arr[0], arr[1]);
+  }
+
+  /**
+   * Present the given long array as a potential unique item.
+   * If the long array is null or empty no update attempt is made and the method returns.
+   *
+   * @param data The given long array.
+   */
+  public void update(final long[] data) {
+    if ((data == null) || (data.length == 0)) { return; }
+    final long[] arr = hash(data, seed);
+    hashUpdate(arr[0], arr[1]);
+  }
+
+  /**
+   * Present a datum that has already been hashed by the caller with
+   * {@link org.apache.datasketches.hash.MurmurHash3 MurmurHash3} as a potential unique item.
+   * See {@link CpcSketch#updateHash(long, long, long)}.
+   *
+   * @param hash0 the first 64 bits of the 128-bit MurmurHash3 of the datum.
+   * @param hash1 the second 64 bits of the 128-bit MurmurHash3 of the datum.
+   * @param seed the seed used to compute the hash, which must equal the seed of this sketch.
+   */
+  public void updateHash(final long hash0, final long hash1, final long seed) {
+    checkUpdateHashSeed(seed, this.seed);
+    hashUpdate(hash0, hash1);
+  }
+
+  /**
+   * Present a datum that has already been hashed by the caller with
+   * {@link org.apache.datasketches.hash.MurmurHash3 MurmurHash3} as a potential unique item.
+   * If the hash array is null or empty no update attempt is made and the method returns.
+   *
+   * @param hash the 128-bit MurmurHash3 of the datum.
+   * @param seed the seed used to compute the hash, which must equal the seed of this sketch.
+   * @see #updateHash(long, long, long)
+   */
+  public void updateHash(final long[] hash, final long seed) {
+    if ((hash == null) || (hash.length == 0)) { return; }
+    checkUpdateHashLength(hash);
+    updateHash(hash[0], hash[1], seed);
+  }
+
+  /**
+   * Convience function that this Sketch is valid.
+   * See {@link CpcSketch#validate()}.
+   * @return true if this sketch is validated.
+   */
+  public boolean validate() {
+    return countBitsSetInMatrix(bitMatrix()) == getNumCoupons();
+  }
+
+  /**
+   * Return a human-readable string summary of this sketch
+   */
+  @Override
+  public String toString() {
+    return toHeap().toString();
+  }
+
+  //Used here and by the union
+
+  void hashUpdate(final long hash0, final long hash1) {
+    int col = Long.numberOfLeadingZeros(hash1);
+    if (col < getFiCol()) { return; } // important speed optimization
+    if (col > 63) { col = 63; } // clip so that 0 <= col <= 63
+    final long c = getNumCoupons();
+    if (c == 0) { promoteEmptyToSparse(); }
+    final long k = 1L << lgK;
+    final int row = (int) (hash0 & (k - 1L));
+    int rowCol = (row << 6) | col;
+
+    // Avoid the hash table's "empty" value, see CpcSketch.hashUpdate().
+    if (rowCol == -1) { rowCol ^= (1 << 6); } //set the LSB of row to 0
+
+    if ((c << 5) < (3L * k)) { updateSparse(rowCol); }
+    else { updateWindowed(rowCol); }
+  }
+
+  void rowColUpdate(final int rowCol) {
+    final int col = rowCol & 63;
+    if (col < getFiCol()) { return; } // important speed optimization
+    final long c = getNumCoupons();
+    if (c == 0) { promoteEmptyToSparse(); }
+    final long k = 1L << lgK;
+    if ((c << 5) < (3L * k)) { updateSparse(rowCol); }
+    else { updateWindowed(rowCol); }
+  }
+
+  @Override
+  Flavor getFlavor() {
+    return CpcUtil.determineFlavor(lgK, getNumCoupons());
+  }
+
+  WritableMemory getWritableMemory() {
+    return wmem;
+  }
+
+  @Override
+  long getSeed() {
+    return seed;
+  }
+
+  @Override
+  byte getWindowByte(final int row) {
+    return wmem.getByte(UPD_DATA_START + row);
+  }
+
+  @Override
+  int getTableSlot(final int slot) {
+    return wmem.getInt(getTableStart() + ((long) slot << 2));
+  }
+
+  //returns the surprising values, which are all values when the flavor is SPARSE
+  int[] getPairs() {
+    if (!hasTable()) { return new int[0]; }
+    final int[] pairs = new int[getNumPairs()];
+    final long tableStart = getTableStart();
+    final int numSlots = 1 << getTableLgSizeInts();
+    int j = 0;
+    for (int i = 0; i < numSlots; i++) {
+      final int rowCol = wmem.getInt(tableStart + ((long) i << 2));
+      if (rowCol != -1) { pairs[j++] = rowCol; }
+    }
+    return pairs;
+  }
+
+  /**
+   * This produces a full-size k-by-64 bit matrix from this sketch.
+   * See {@link CpcUtil#bitMatrixOfSketch(CpcSketch)}.
+   * @return the bit matrix as an array of longs.
+   */
+  @Override
+  long[] bitMatrix() {
+    final int k = 1 << lgK;
+    final int offset = getWindowOffset();
+    final long[] matrix = new long[k];
+    if (getNumCoupons() == 0) { return matrix; }
+
+    final long defaultRow = (1L << offset) - 1L;
+    Arrays.fill(matrix, defaultRow);
+    if (hasWindow()) {
+      for (int i = 0; i < k; i++) {
+        matrix[i] |= ((wmem.getByte(UPD_DATA_START + i) & 0XFFL) << offset);
+      }
+    }
+    final long tableStart = getTableStart();
+    final int numSlots = 1 << getTableLgSizeInts();
+    for (int i = 0; i < numSlots; i++) {
+      final int rowCol = wmem.getInt(tableStart + ((long) i << 2));
+      if (rowCol != -1) {
+        matrix[rowCol >>> 6] ^= (1L << (rowCol & 63)); // Flip the bit from its default value.
+      }
+    }
+    return matrix;
+  }
+
+  CpcSketch toHeap() {
+    return toHeap(wmem, seed);
+  }
+
+  //Returns the updatable image of a sketch in the given Memory as a CpcSketch on the Java heap
+  static CpcSketch heapify(final Memory mem, final long seed) {
+    checkUpdatablePreamble(mem, false);
+    ThetaUtil.checkSeedHashes(ThetaUtil.computeSeedHash(seed), PreambleUtil.getSeedHash(mem));
+    checkCapacity(mem.getCapacity(), getRequiredBytes(mem));
+    return toHeap(mem, seed);
+  }
+
+  private static CpcSketch toHeap(final Memory mem, final long seed) {
+    final int lgK = PreambleUtil.getLgK(mem);
+    final int flags = PreambleUtil.getFlags(mem);
+    final CpcSketch sketch = new CpcSketch(lgK, seed);
+    sketch.numCoupons = mem.getInt(UPD_NUM_COUPONS_INT) & 0XFFFF_FFFFL;
+    sketch.mergeFlag = (flags & HIP_FLAG_MASK) == 0;
+    sketch.fiCol = PreambleUtil.getFiCol(mem);
+    sketch.windowOffset = mem.getInt(UPD_WINDOW_OFFSET_INT);
+    sketch.kxp = mem.getDouble(UPD_KXP_DOUBLE);
+    sketch.hipEstAccum = mem.getDouble(UPD_HIP_ACCUM_DOUBLE);
+    long tableStart = UPD_DATA_START;
+    if ((flags & WINDOW_FLAG_MASK) > 0) {
+      final int k = 1 << lgK;
+      sketch.slidingWindow = new byte[k];
+      mem.getByteArray(UPD_DATA_START, sketch.slidingWindow, 0, k);
+      tableStart += k;
+    }
+    if ((flags & SUP_VAL_FLAG_MASK) > 0) {
+      final int numSlots = 1 << mem.getInt(UPD_LG_SIZE_INTS_INT);
+      final int numPairs = mem.getInt(UPD_NUM_SV_INT);
+      final int[] pairs = new int[numPairs];
+      int j = 0;
+      for (int i = 0; i < numSlots; i++) {
+        final int rowCol = mem.getInt(tableStart + ((long) i << 2));
+        if (rowCol != -1) { pairs[j++] = rowCol; }
+      }
+      rtAssert(j == numPairs);
+      sketch.pairTable = PairTable.newInstanceFromPairsArray(pairs, numPairs, lgK);
+    }
+    return sketch;
+  }
+
+  private static long getRequiredBytes(final Memory mem) {
+    final int flags = PreambleUtil.getFlags(mem);
+    long bytes = UPD_DATA_START;
+    if ((flags & WINDOW_FLAG_MASK) > 0) { bytes += 1 << PreambleUtil.getLgK(mem); }
+    if ((flags & SUP_VAL_FLAG_MASK) > 0) {
+      bytes += (long) Integer.BYTES << mem.getInt(UPD_LG_SIZE_INTS_INT);
+    }
+    return bytes;
+  }
+
+  /**
+   * Returns the given WritableMemory or, if it is smaller than the given number of bytes, a new
+   * WritableMemory from the given MemoryRequestServer, into which the given number of bytes to keep
+   * are copied.
+   */
+  static WritableMemory requestCapacity(final WritableMemory wmem,
+      final MemoryRequestServer memReqSvr, final long requiredBytes, final long bytesToKeep) {
+    if (requiredBytes <= wmem.getCapacity()) { return wmem; }
+    final WritableMemory newWmem = memReqSvr.request(wmem, requiredBytes);
+    if (newWmem.getCapacity() < requiredBytes) {
+      throw new SketchesArgumentException("The MemoryRequestServer returned "
+          + newWmem.getCapacity() + " bytes, required: " + requiredBytes);
+    }
+    wmem.copyTo(0, newWmem, 0, bytesToKeep);
+    memReqSvr.requestClose(wmem, newWmem);
+    return newWmem;
+  }
+
+  private void promoteEmptyToSparse() {
+    assert getNumCoupons() == 0;
+    assert !hasTable();
+    initTable(2);
+    putFlags(getFlags() | SUP_VAL_FLAG_MASK);
+  }
+
+  //In terms of flavor, this promotes SPARSE to HYBRID.
+  private void promoteSparseToWindowed() {
+    final int k = (1 << lgK);
+    assert !hasWindow();
+    final int[] oldPairs = getPairs(); // the window overwrites the old table
+
+    wmem = requestCapacity(wmem, memReqSvr, UPD_DATA_START + k + (4L << 2), UPD_DATA_START);
+    wmem.clear(UPD_DATA_START, k);
+    putFlags(getFlags() | WINDOW_FLAG_MASK);
+    initTable(2);
+
+    for (int i = 0; i < oldPairs.length; i++) {
+      final int rowCol = oldPairs[i];
+      final int col = rowCol & 63;
+      if (col < 8) {
+        final long offset = UPD_DATA_START + (rowCol >>> 6);
+        wmem.putByte(offset, (byte) (wmem.getByte(offset) | (1 << col)));
+      }
+      else {
+        final boolean isNovel = tableMaybeInsert(rowCol);
+        assert (isNovel == true);
+      }
+    }
+  }
+
+  /**
+   * This moves the sliding window. See CpcSketch.modifyOffset().
+   * @param newOffset the new offset, which must be oldOffset + 1
+   */
+  private void modifyOffset(final int newOffset) {
+    assert ((newOffset >= 0) && (newOffset <= 56));
+    assert (newOffset == (getWindowOffset() + 1));
+    assert (newOffset == CpcUtil.determineCorrectOffset(lgK, getNumCoupons()));
+    final int k = 1 << lgK;
+
+    final long[] bitMatrix = bitMatrix();
+
+    // refresh the KXP register on every 8th window shift.
+    if ((newOffset & 0x7) == 0) { putKxp(CpcSketch.computeKXP(lgK, bitMatrix)); }
+
+    initTable(getTableLgSizeInts());
+
+    final long maskForClearingWindow = (0XFFL << newOffset) ^ -1L;
+    final long maskForFlippingEarlyZone = (1L << newOffset) - 1L;
+    long allSurprisesORed = 0;
+
+    for (int i = 0; i < k; i++) {
+      long pattern = bitMatrix[i];
+      wmem.putByte(UPD_DATA_START + i, (byte) ((pattern >>> newOffset) & 0XFFL));
+      pattern &= maskForClearingWindow;
+      pattern ^= maskForFlippingEarlyZone; // converts surprising 0's to 1's in the "early zone"
+      allSurprisesORed |= pattern; // a cheap way to recalculate fiCol
+      while (pattern != 0) {
+        final int col = Long.numberOfTrailingZeros(pattern);
+        pattern = pattern ^ (1L << col); // erase the 1.
+        final int rowCol = (i << 6) | col;
+        final boolean isNovel = tableMaybeInsert(rowCol);
+        assert isNovel == true;
+      }
+    }
+    putWindowOffset(newOffset);
+    putFiCol(Math.min(Long.numberOfTrailingZeros(allSurprisesORed), newOffset));
+  }
+
+  //Call this whenever a new coupon has been collected.
+  private void updateHIP(final int rowCol) {
+    final int k = 1 << lgK;
+    final int col = rowCol & 63;
+    final double kxp = getKxp();
+    putHipEstAccum(getHipEstAccum() + (k / kxp));
+    putKxp(kxp - invPow2(col + 1)); // notice the "+1"
+  }
+
+  private void updateSparse(final int rowCol) {
+    final int k = 1 << lgK;
+    assert ((getNumCoupons() << 5) < (3L * k)); // flavor == SPARSE
+    if (tableMaybeInsert(rowCol)) {
+      final long numCoupons = getNumCoupons() + 1;
+      putNumCoupons(numCoupons);
+      updateHIP(rowCol);
+      if ((numCoupons << 5) >= (3L * k)) { promoteSparseToWindowed(); } // C >= 3K/32
+    }
+  }
+
+  //The flavor is HYBRID, PINNED, or SLIDING.
+  private void updateWindowed(final int rowCol) {
+    final int windowOffset = getWindowOffset();
+    assert ((windowOffset >= 0) && (windowOffset <= 56));
+    final int k = 1 << lgK;
+    final int w8pre = windowOffset << 3;
+
+    boolean isNovel = false; //novel if new coupon
+    final int col = rowCol & 63;
+
+    if (col < windowOffset) { // track the surprising 0's "before" the window
+      isNovel = tableMaybeDelete(rowCol); // inverted logic
+    }
+    else if (col < (windowOffset + 8)) { // track the 8 bits inside the window
+      final long offset = UPD_DATA_START + (rowCol >>> 6);
+      final byte oldBits = wmem.getByte(offset);
+      final byte newBits = (byte) (oldBits | (1 << (col - windowOffset)));
+      if (newBits != oldBits) {
+        wmem.putByte(offset, newBits);
+        isNovel = true;
+      }
+    }
+    else { // track the surprising 1's "after" the window
+      isNovel = tableMaybeInsert(rowCol); // normal logic
+    }
+
+    if (isNovel) {
+      final long numCoupons = getNumCoupons() + 1;
+      putNumCoupons(numCoupons);
+      updateHIP(rowCol);
+      if ((numCoupons << 3) >= ((27L + w8pre) * k)) {
+        modifyOffset(windowOffset + 1);
+      }
+    }
+  }
+
+  //PAIR TABLE, see PairTable
+
+  private void initTable(final int lgSizeInts) {
+    final long tableStart = getTableStart();
+    final long tableBytes = 4L << lgSizeInts;
+    wmem = requestCapacity(wmem, memReqSvr, tableStart + tableBytes, tableStart);
+    wmem.fill(tableStart, tableBytes, (byte) -1);
+    wmem.putInt(UPD_LG_SIZE_INTS_INT, lgSizeInts);
+    wmem.putInt(UPD_NUM_SV_INT, 0);
+  }
+
+  //returns the slot of the given item, or the empty slot where it would be inserted
+  private int tableFind(final int item, final long tableStart, final int lgSizeInts) {
+    final int mask = (1 << lgSizeInts) - 1;
+    final int shift = (6 + lgK) - lgSizeInts;
+    assert shift > 0;
+    int probe = item >>> shift; //extract high tablesize bits
+    int fetched = wmem.getInt(tableStart + ((long) probe << 2));
+    while ((fetched != item) && (fetched != -1)) {
+      probe = (probe + 1) & mask;
+      fetched = wmem.getInt(tableStart + ((long) probe << 2));
+    }
+    return probe;
+  }
+
+  private boolean tableMaybeInsert(final int item) {
+    final long tableStart = getTableStart();
+    final int lgSizeInts = getTableLgSizeInts();
+    final long slotOffset = tableStart + ((long) tableFind(item, tableStart, lgSizeInts) << 2);
+    if (wmem.getInt(slotOffset) == item) { return false; }
+    wmem.putInt(slotOffset, item);
+    final int numPairs = getNumPairs() + 1;
+    wmem.putInt(UPD_NUM_SV_INT, numPairs);
+    if ((upsizeDenom * numPairs) > (upsizeNumer * (1 << lgSizeInts))) {
+      tableRebuild(lgSizeInts + 1);
+    }
+    return true;
+  }
+
+  private boolean tableMaybeDelete(final int item) {
+    final long tableStart = getTableStart();
+    final int lgSizeInts = getTableLgSizeInts();
+    final int mask = (1 << lgSizeInts) - 1;
+    int probe = tableFind(item, tableStart, lgSizeInts);
+    if (wmem.getInt(tableStart + ((long) probe << 2)) == -1) { return false; }
+    wmem.putInt(tableStart + ((long) probe << 2), -1);
+    final int numPairs = getNumPairs() - 1;
+    wmem.putInt(UPD_NUM_SV_INT, numPairs);
+    // re-insert all items between the freed slot and the next empty slot
+    probe = (probe + 1) & mask;
+    int fetched = wmem.getInt(tableStart + ((long) probe << 2));
+    while (fetched != -1) {
+      wmem.putInt(tableStart + ((long) probe << 2), -1);
+      wmem.putInt(tableStart + ((long) tableFind(fetched, tableStart, lgSizeInts) << 2), fetched);
+      probe = (probe + 1) & mask;
+      fetched = wmem.getInt(tableStart + ((long) probe << 2));
+    }
+    // shrink if necessary
+    int newLgSizeInts = lgSizeInts;
+    while (((downsizeDenom * numPairs) < (downsizeNumer * (1 << newLgSizeInts)))
+        && (newLgSizeInts > 2)) {
+      newLgSizeInts--;
+    }
+    if (newLgSizeInts < lgSizeInts) { tableRebuild(newLgSizeInts); }
+    return true;
+  }
+
+  private void tableRebuild(final int newLgSizeInts) {
+    if ((newLgSizeInts < 2) || (newLgSizeInts > 26)) {
+      throw new SketchesArgumentException("Illegal LgSizeInts: " + newLgSizeInts);
+    }
+    final int[] pairs = getPairs();
+    rtAssert((1 << newLgSizeInts) > pairs.length);
+    initTable(newLgSizeInts);
+    final long tableStart = getTableStart();
+    for (int i = 0; i < pairs.length; i++) {
+      final int slot = tableFind(pairs[i], tableStart, newLgSizeInts);
+      wmem.putInt(tableStart + ((long) slot << 2), pairs[i]);
+    }
+    wmem.putInt(UPD_NUM_SV_INT, pairs.length);
+  }
+
+  //PREAMBLE FIELDS
+
+  private int getFlags() {
+    return wmem.getByte(getLoFieldOffset(LoField.FLAGS)) & 0XFF;
+  }
+
+  private void putFlags(final int flags) {
+    wmem.putByte(getLoFieldOffset(LoField.FLAGS), (byte) flags);
+  }
+
+  boolean isMerged() {
+    return (getFlags() & HIP_FLAG_MASK) == 0;
+  }
+
+  void putMerged(final boolean merged) {
+    putFlags(merged ? (getFlags() & ~HIP_FLAG_MASK) : (getFlags() | HIP_FLAG_MASK));
+  }
+
+  boolean hasWindow() {
+    return (getFlags() & WINDOW_FLAG_MASK) > 0;
+  }
+
+  boolean hasTable() {
+    return (getFlags() & SUP_VAL_FLAG_MASK) > 0;
+  }
+
+  private int getFiCol() {
+    return wmem.getByte(getLoFieldOffset(LoField.FI_COL)) & 0XFF;
+  }
+
+  private void putFiCol(final int fiCol) {
+    wmem.putByte(getLoFieldOffset(LoField.FI_COL), (byte) fiCol);
+  }
+
+  long getNumCoupons() {
+    return wmem.getInt(UPD_NUM_COUPONS_INT) & 0XFFFF_FFFFL;
+  }
+
+  private void putNumCoupons(final long numCoupons) {
+    wmem.putInt(UPD_NUM_COUPONS_INT, (int) numCoupons);
+  }
+
+  @Override
+  int getWindowOffset() {
+    return wmem.getInt(UPD_WINDOW_OFFSET_INT);
+  }
+
+  private void putWindowOffset(final int windowOffset) {
+    wmem.putInt(UPD_WINDOW_OFFSET_INT, windowOffset);
+  }
+
+  private double getKxp() {
+    return wmem.getDouble(UPD_KXP_DOUBLE);
+  }
+
+  private void putKxp(final double kxp) {
+    wmem.putDouble(UPD_KXP_DOUBLE, kxp);
+  }
+
+  private double getHipEstAccum() {
+    return wmem.getDouble(UPD_HIP_ACCUM_DOUBLE);
+  }
+
+  private void putHipEstAccum(final double hipEstAccum) {
+    wmem.putDouble(UPD_HIP_ACCUM_DOUBLE, hipEstAccum);
+  }
+
+  @Override
+  int getTableLgSizeInts() {
+    return wmem.getInt(UPD_LG_SIZE_INTS_INT);
+  }
+
+  private int getNumPairs() {
+    return wmem.getInt(UPD_NUM_SV_INT);
+  }
+
+  long getTableStart() {
+    return hasWindow() ? UPD_DATA_START + (1L << lgK) : UPD_DATA_START;
+  }
+
+}
@@ -0,0 +1,359 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.cpc;
+
+import static org.apache.datasketches.common.Util.INVERSE_GOLDEN;
+import static org.apache.datasketches.cpc.CpcUtil.checkLgK;
+import static org.apache.datasketches.cpc.Flavor.SPARSE;
+import static org.apache.datasketches.cpc.PreambleUtil.BIT_MATRIX_FLAG_MASK;
+import static org.apache.datasketches.cpc.PreambleUtil.UNION_FLAG_MASK;
+import static org.apache.datasketches.cpc.PreambleUtil.UPD_DATA_START;
+import static org.apache.datasketches.cpc.PreambleUtil.checkCapacity;
+import static org.apache.datasketches.cpc.PreambleUtil.checkUpdatablePreamble;
+import static org.apache.datasketches.cpc.PreambleUtil.getLoFieldOffset;
+
+import java.util.Objects;
+
+import org.apache.datasketches.common.SketchesArgumentException;
+import org.apache.datasketches.common.SketchesStateException;
+import org.apache.datasketches.cpc.PreambleUtil.LoField;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.MemoryRequestServer;
+import org.apache.datasketches.memory.WritableMemory;
+import org.apache.datasketches.thetacommon.ThetaUtil;
+
+/**
+ * The union (merge) operation for the CPC sketches that keeps all of its state in a WritableMemory
+ * provided by the caller, for example off the Java heap. It merges in the same way as the
+ * {@link CpcUnion} on the Java heap.
+ *
+ * <p>Like the CpcUnion, the union starts with a sparse sketch, which is kept in the WritableMemory
+ * as a {@link DirectCpcSketch}, and converts it into a bit matrix of K longs once it is no longer
+ * sparse. The union asks the given MemoryRequestServer for a larger WritableMemory as it grows.
+ * The image can be wrapped again with {@link #writableWrap(WritableMemory, MemoryRequestServer)}.
+ * </p>
+ */
+public final class DirectCpcUnion {
+  private final long seed;
+  private final MemoryRequestServer memReqSvr;
+  private int lgK;
+
+  // The union either holds a sparse sketch in its memory, or a bit matrix
+  private DirectCpcSketch accumulator; //null when the memory holds a bit matrix
+  private WritableMemory wmem;         //only valid when the memory holds a bit matrix
+
+  private DirectCpcUnion(final int lgK, final long seed, final DirectCpcSketch accumulator,
+      final WritableMemory wmem, final MemoryRequestServer memReqSvr) {
+    this.lgK = lgK;
+    this.seed = seed;
+    this.accumulator = accumulator;
+    this.wmem = wmem;
+    this.memReqSvr = memReqSvr;
+  }
+
+  /**
+   * Returns the number of bytes of the WritableMemory of a union with the given lgK once it holds
+   * a bit matrix. Providing this many bytes avoids requests for more memory.
+   * @param lgK the given log_base2 of k
+   * @return the number of bytes of the WritableMemory of a union that holds a bit matrix.
+   */
+  public static int getMaxMemoryBytes(final int lgK) {
+    checkLgK(lgK);
+    return UPD_DATA_START + ((1 << lgK) * Long.BYTES);
+  }
+
+  /**
+   * Creates a new empty union in the given WritableMemory using the DEFAULT_UPDATE_SEED.
+   * @param lgK the given log_base2 of k
+   * @param dstMem the given destination WritableMemory of at least
+   * {@link DirectCpcSketch#getMinMemoryBytes()}
+   * @param memReqSvr the given MemoryRequestServer to request a larger WritableMemory
+   * @return a new empty union in the given WritableMemory
+   */
+  public static DirectCpcUnion newInstance(final int lgK, final WritableMemory dstMem,
+      final MemoryRequestServer memReqSvr) {
+    return newInstance(lgK, ThetaUtil.DEFAULT_UPDATE_SEED, dstMem, memReqSvr);
+  }
+
+  /**
+   * Creates a new empty union in the given WritableMemory.
+   * @param lgK the given log_base2 of k
+   * @param seed the given seed
+   * @param dstMem the given destination WritableMemory of at least
+   * {@link DirectCpcSketch#getMinMemoryBytes()}
+   * @param memReqSvr the given MemoryRequestServer to request a larger WritableMemory
+   * @return a new empty union in the given WritableMemory
+   */
+  public static DirectCpcUnion newInstance(final int lgK, final long seed,
+      final WritableMemory dstMem, final MemoryRequestServer memReqSvr) {
+    Objects.requireNonNull(dstMem, "Parameter 'dstMem' must not be null");
+    Objects.requireNonNull(memReqSvr, "Parameter 'memReqSvr' must not be null");
+    checkLgK(lgK);
+    checkCapacity(dstMem.getCapacity(), UPD_DATA_START);
+    final DirectCpcSketch accumulator =
+        DirectCpcSketch.initialize(lgK, seed, dstMem, memReqSvr, UNION_FLAG_MASK);
+    return new DirectCpcUnion(lgK, seed, accumulator, null, memReqSvr);
+  }
+
+  /**
+   * Wraps the image of a union in the given WritableMemory using the DEFAULT_UPDATE_SEED.
+   * @param srcMem the given WritableMemory that holds the image of a union
+   * @param memReqSvr the given MemoryRequestServer to request a larger WritableMemory
+   * @return a union that continues to update the given WritableMemory
+   */
+  public static DirectCpcUnion writableWrap(final WritableMemory srcMem,
+      final MemoryRequestServer memReqSvr) {
+    return writableWrap(srcMem, memReqSvr, ThetaUtil.DEFAULT_UPDATE_SEED);
+  }
+
+  /**
+   * Wraps the image of a union in the given WritableMemory.
+   * @param srcMem the given WritableMemory that holds the image of a union
+   * @param memReqSvr the given MemoryRequestServer to request a larger WritableMemory
+   * @param seed the seed used to create the union
+   * @return a union that continues to update the given WritableMemory
+   */
+  public static DirectCpcUnion writableWrap(final WritableMemory srcMem,
+      final MemoryRequestServer memReqSvr, final long seed) {
+    Objects.requireNonNull(memReqSvr, "Parameter 'memReqSvr' must not be null");
+    checkUpdatablePreamble(srcMem, true);
+    final int lgK = PreambleUtil.getLgK(srcMem);
+    if ((PreambleUtil.getFlags(srcMem) & BIT_MATRIX_FLAG_MASK) > 0) {
+      ThetaUtil.checkSeedHashes(ThetaUtil.computeSeedHash(seed), PreambleUtil.getSeedHash(srcMem));
+      checkCapacity(srcMem.getCapacity(), getMaxMemoryBytes(lgK));
+      return new DirectCpcUnion(lgK, seed, null, srcMem, memReqSvr);
+    }
+    final DirectCpcSketch accumulator = DirectCpcSketch.wrap(srcMem, memReqSvr, seed);
+    return new DirectCpcUnion(lgK, seed, accumulator, null, memReqSvr);
+  }
+
+  /**
+   * Update this union with a CpcSketch.
+   * @param sketch the given CpcSketch.
+   */
+  public void update(final CpcSketch sketch) {
+    mergeInto(sketch);
+  }
+
+  /**
+   * Update this union with a DirectCpcSketch.
+   * @param sketch the given DirectCpcSketch.
+   */
+  public void update(final DirectCpcSketch sketch) {
+    mergeInto(sketch);
+  }
+
+  /**
+   * Returns the result of union operations as a CPC sketch on the Java heap.
+   * @return the result of union operations as a CPC sketch on the Java heap.
+   */
+  public CpcSketch getResult() {
+    if (accumulator != null) {
+      final CpcSketch result = (accumulator.getNumCoupons() == 0)
+          ? new CpcSketch(lgK, seed)
+          : accumulator.toHeap();
+      assert (result.numCoupons == 0) || (result.getFlavor() == SPARSE);
+      result.mergeFlag = true;
+      return result;
+    }
+    return CpcUnion.getResult(getBitMatrix(), lgK, seed);
+  }
+
+  /**
+   * Returns the current value of LgK, which can be smaller than the LgK of the union when it was
+   * created, if it was updated with a sketch with a smaller LgK.
+   * @return the current value of LgK.
+   */
+  public int getLgK() {
+    return lgK;
+  }
+
+  /**
+   * Returns true if the WritableMemory of this union is off-heap.
+   * @return true if the WritableMemory of this union is off-heap.
+   */
+  public boolean isOffHeap() {
+    return getWritableMemory().isDirect();
+  }
+
+  /**
+   * Returns true if this union still uses the given Memory, which is not the case after the
+   * union requested a larger WritableMemory.
+   * @param mem the given Memory
+   * @return true if this union uses the given Memory.
+   */
+  public boolean isSameResource(final Memory mem) {
+    return getWritableMemory().isSameResource(mem);
+  }
+
+  //used for testing only
+  long getNumCoupons() {
+    if (accumulator != null) { return accumulator.getNumCoupons(); }
+    return CpcUtil.countBitsSetInMatrix(getBitMatrix());
+  }
+
+  private WritableMemory getWritableMemory() {
+    return (accumulator != null) ? accumulator.getWritableMemory() : wmem;
+  }
+
+  private long[] getBitMatrix() {
+    final long[] matrix = new long[1 << lgK];
+    wmem.getLongArray(UPD_DATA_START, matrix, 0, matrix.length);
+    return matrix;
+  }
+
+  //See CpcUnion.mergeInto()
+  private void mergeInto(final CpcSource source) {
+    if (source == null) { return; }
+    if (seed != source.getSeed()) {
+      throw new SketchesArgumentException("Hash Seeds do not match.");
+    }
+    final int sourceFlavorOrd = source.getFlavor().ordinal();
+    if (sourceFlavorOrd == 0) { return; } //EMPTY
+
+    final int sourceLgK = source.getLgK();
+    if (sourceLgK < lgK) { reduceUnionK(sourceLgK); }
+
+    // if source is past SPARSE mode, make sure that union is a bitMatrix.
+    if ((sourceFlavorOrd > 1) && (accumulator != null)) {
+      switchToBitMatrix(accumulator.bitMatrix());
+    }
+
+    final int state = ((sourceFlavorOrd - 1) << 1) | ((accumulator == null) ? 1 : 0);
+    switch (state) {
+      case 0 : { //A: Sparse, bitMatrix == null, accumulator valid
+        walkTableUpdatingSketch(accumulator, source);
+        // if the accumulator has graduated beyond sparse, switch union to a bitMatrix
+        if (accumulator.getFlavor().ordinal() > 1) {
+          switchToBitMatrix(accumulator.bitMatrix());
+        }
+        break;
+      }
+      case 1 : { //B: Sparse, bitMatrix valid, accumulator == null
+        orTableIntoMatrix(source);
+        break;
+      }
+      case 3 :   //C: Hybrid, bitMatrix valid, accumulator == null
+      case 5 : { //C: Pinned, bitMatrix valid, accumulator == null
+        orWindowIntoMatrix(source);
+        orTableIntoMatrix(source);
+        break;
+      }
+      case 7 : { //D: Sliding, bitMatrix valid, accumulator == null
+        orMatrixIntoMatrix(source.bitMatrix(), sourceLgK);
+        break;
+      }
+      default: throw new SketchesStateException("Illegal Union state: " + state);
+    }
+  }
+
+  private void reduceUnionK(final int newLgK) {
+    assert (newLgK < lgK);
+    if (accumulator == null) { // downsample the union's bit matrix in place
+      final int oldK = 1 << lgK;
+      final int newK = 1 << newLgK;
+      orMatrixIntoMatrix(getBitMatrix(), lgK, newLgK);
+      wmem.clear(UPD_DATA_START + ((long) newK << 3), (long) (oldK - newK) << 3);
+      wmem.putByte(getLoFieldOffset(LoField.LG_K), (byte) newLgK);
+      lgK = newLgK;
+      return;
+    }
+    // downsample the union's accumulator
+    final int[] oldPairs = accumulator.getPairs();
+    accumulator = DirectCpcSketch.initialize(newLgK, seed, accumulator.getWritableMemory(),
+        memReqSvr, UNION_FLAG_MASK);
+    lgK = newLgK;
+    final int destMask = (((1 << newLgK) - 1) << 6) | 63;
+    for (int i = 0; i < oldPairs.length; i++) {
+      accumulator.rowColUpdate(oldPairs[i] & destMask);
+    }
+    if (accumulator.getFlavor().ordinal() > 1) { // graduated beyond sparse
+      switchToBitMatrix(accumulator.bitMatrix());
+    }
+  }
+
+  private void switchToBitMatrix(final long[] matrix) {
+    final WritableMemory accumMem = accumulator.getWritableMemory();
+    wmem = DirectCpcSketch.requestCapacity(accumMem, memReqSvr, getMaxMemoryBytes(lgK),
+        UPD_DATA_START);
+    accumulator = null;
+    wmem.putByte(getLoFieldOffset(LoField.FLAGS), (byte) (UNION_FLAG_MASK | BIT_MATRIX_FLAG_MASK));
+    wmem.putLongArray(UPD_DATA_START, matrix, 0, matrix.length);
+  }
+
+  //See CpcUnion.walkTableUpdatingSketch()
+  private static void walkTableUpdatingSketch(final DirectCpcSketch dest, final CpcSource source) {
+    final int numSlots = (1 << source.getTableLgSizeInts());
+    final int destMask = (((1 << dest.lgK) - 1) << 6) | 63; //downsamples when destlgK < srcLgK
+    int stride =  (int) (INVERSE_GOLDEN * numSlots);
+    assert stride >= 2;
+    if (stride == ((stride >>> 1) << 1)) { stride += 1; } //force the stride to be odd
+    assert (stride >= 3) && (stride < numSlots);
+
+    for (int i = 0, j = 0; i < numSlots; i++, j += stride) {
+      j &= (numSlots - 1);
+      final int rowCol = source.getTableSlot(j);
+      if (rowCol != -1) {
+        dest.rowColUpdate(rowCol & destMask);
+      }
+    }
+  }
+
+  private void orTableIntoMatrix(final CpcSource source) {
+    final int numSlots = 1 << source.getTableLgSizeInts();
+    final int destMask = (1 << lgK) - 1;  // downsamples when destlgK < srcLgK
+    for (int i = 0; i < numSlots; i++) {
+      final int rowCol = source.getTableSlot(i);
+      if (rowCol != -1) {
+        orIntoRow((rowCol >>> 6) & destMask, 1L << (rowCol & 63)); // Set the bit.
+      }
+    }
+  }
+
+  private void orWindowIntoMatrix(final CpcSource source) {
+    final int srcLgK = source.getLgK();
+    assert (lgK <= srcLgK);
+    final int srcOffset = source.getWindowOffset();
+    final int destMask = (1 << lgK) - 1;  // downsamples when destlgK < srcLgK
+    final int srcK = 1 << srcLgK;
+    for (int srcRow = 0; srcRow < srcK; srcRow++) {
+      orIntoRow(srcRow & destMask, (source.getWindowByte(srcRow) & 0XFFL) << srcOffset);
+    }
+  }
+
+  private void orMatrixIntoMatrix(final long[] srcMatrix, final int srcLgK) {
+    orMatrixIntoMatrix(srcMatrix, srcLgK, lgK);
+  }
+
+  private void orMatrixIntoMatrix(final long[] srcMatrix, final int srcLgK, final int destLgK) {
+    assert (destLgK <= srcLgK);
+    final int destMask = (1 << destLgK) - 1; // downsamples when destlgK < srcLgK
+    final int srcK = 1 << srcLgK;
+    for (int srcRow = 0; srcRow < srcK; srcRow++) {
+      orIntoRow(srcRow & destMask, srcMatrix[srcRow]);
+    }
+  }
+
+  private void orIntoRow(final int row, final long bits) {
+    final long offset = UPD_DATA_START + ((long) row << 3);
+    wmem.putLong(offset, wmem.getLong(offset) | bits);
+  }
+
+}
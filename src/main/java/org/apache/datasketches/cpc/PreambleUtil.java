@@ -249,6 +249,72 @@ final class PreambleUtil {
     return (getFlags(mem) & COMPRESSED_FLAG_MASK) > 0;
   }
 
+  //UPDATABLE FORMAT
+
+  /*
+   * The updatable (uncompressed) image used by DirectCpcSketch and DirectCpcUnion shares the first
+   * 8 bytes with the compressed formats, but the COMPRESSED flag is clear.
+   * The HIP flag is set if the sketch is not the result of merging, the SV flag is set if the
+   * PairTable is valid and the Window flag is set if the sliding window is valid.
+   * PI = 12
+   * Long adr ||
+   *          ||    7   |    6   |    5   |    4   |    3   |    2   |    1   |    0   |
+   *      0   ||---SEED HASH-----|-Flags--|-FIcol--|---lgK--|-FamID--|-SerVer-|---PI---|
+   *
+   *          ||   15   |   14   |   13   |   12   |   11   |   10   |    9   |    8   |
+   *      1   ||-----------Window Offset-----------|------------numCoupons-------------|
+   *
+   *          ||   23   |   22   |   21   |   20   |   19   |   18   |   17   |   16   |
+   *      2   ||----------------------------------KxP----------------------------------|
+   *
+   *          ||   31   |   30   |   29   |   28   |   27   |   26   |   25   |   24   |
+   *      3   ||-------------------------------HIP Accum-------------------------------|
+   *
+   *          ||   39   |   38   |   37   |   36   |   35   |   34   |   33   |   32   |
+   *      4   ||---------------numSV---------------|------------lgSizeInts-------------|
+   *
+   *          ||   47   |   46   |   45   |   44   |   43   |   42   |   41   |   40   |
+   *      5   ||                                 unused                                |
+   *
+   *          ||   XX   |   XX   |   XX   |   XX   |   XX   |   XX   |   49   |   48   |
+   *      6   ||---Window (K bytes), if valid----|-----PairTable (4 * 2^lgSizeInts)----|
+   *
+   * The image of a union has the Union flag set. While the union holds a sparse sketch, the rest
+   * of the image is the image of that sketch. Once it holds a bit matrix, the BitMatrix flag is
+   * set and the K longs of the matrix start at byte 48.
+   */
+
+  static final byte UPDATABLE_PRE_INTS      = 12;
+  static final int UNION_FLAG_MASK          = 32;
+  static final int BIT_MATRIX_FLAG_MASK     = 64;
+
+  static final int UPD_NUM_COUPONS_INT      = 8;
+  static final int UPD_WINDOW_OFFSET_INT    = 12;
+  static final int UPD_KXP_DOUBLE           = 16;
+  static final int UPD_HIP_ACCUM_DOUBLE     = 24;
+  static final int UPD_LG_SIZE_INTS_INT     = 32;
+  static final int UPD_NUM_SV_INT           = 36;
+  static final int UPD_DATA_START           = UPDATABLE_PRE_INTS << 2;
+
+  //basic checks of an updatable image of a sketch or a union
+  static void checkUpdatablePreamble(final Memory mem, final boolean isUnion) {
+    Objects.requireNonNull(mem, "Source Memory must not be null");
+    checkCapacity(mem.getCapacity(), UPD_DATA_START);
+    if (isCompressed(mem)) {
+      throw new SketchesArgumentException("Image is compressed, it must be heapified.");
+    }
+    final int flags = getFlags(mem);
+    if (((flags & UNION_FLAG_MASK) > 0) != isUnion) {
+      throw new SketchesArgumentException("Image is not of a " + (isUnion ? "union" : "sketch"));
+    }
+    if ((getPreInts(mem) != UPDATABLE_PRE_INTS) || (getSerVer(mem) != SER_VER)
+        || (getFamily(mem) != Family.CPC)) {
+      throw new SketchesArgumentException("Not an updatable CPC image: PreInts = "
+          + getPreInts(mem) + ", SerVer = " + getSerVer(mem));
+    }
+    CpcUtil.checkLgK(getLgK(mem));
+  }
+
   //PREAMBLE HI_FIELD DEFINITIONS
 
   /**
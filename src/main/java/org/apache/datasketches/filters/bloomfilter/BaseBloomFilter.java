@@ -0,0 +1,671 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.filters.bloomfilter;
+
+import static org.apache.datasketches.hash.XxHash.hashByteArr;
+
+import org.apache.datasketches.common.Family;
+import org.apache.datasketches.common.SketchesArgumentException;
+import org.apache.datasketches.common.SketchesStateException;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableBuffer;
+import org.apache.datasketches.memory.WritableMemory;
+import org.apache.datasketches.memory.XxHash;
+
+/**
+ * The common public API of BloomFilter and BlockedBloomFilter. This class hashes the items,
+ * holds the bit array and serializes the filter. The subclasses map the two hashes of an item
+ * to the bits that are probed.
+ */
+abstract class BaseBloomFilter {
+  static final int SER_VER = 1;
+  static final int EMPTY_FLAG_MASK = 4;
+  static final int FLAGS_BYTE = 3;
+  private static final int MAX_CACHED_UTF8_BYTES = 1 << 16;
+  private static final ThreadLocal<byte[]> UTF8_BUFFER = ThreadLocal.withInitial(() -> new byte[256]);
+
+  final long seed_;            // hash seed
+  final short numHashes_;      // number of hash values
+  final BitArray bitArray_;    // the actual data bits
+  final WritableMemory wmem_;  // used only for direct mode BitArray
+
+  BaseBloomFilter(final short numHashes, final long seed, final BitArray bitArray, final WritableMemory wmem) {
+    seed_ = seed;
+    numHashes_ = numHashes;
+    bitArray_ = bitArray;
+    wmem_ = wmem;
+  }
+
+  /**
+   * Resets the filter to an empty state
+   */
+  public void reset() {
+    bitArray_.reset();
+  }
+
+  /**
+   * Checks if the filter has processed any items
+   * @return True if the filter is empty, otherwise False
+   */
+  public boolean isEmpty() { return bitArray_.isEmpty(); }
+
+  /**
+   * Returns the number of bits in the filter that are set to 1.
+   * @return The number of bits in use in this filter
+   */
+  public long getBitsUsed() { return bitArray_.getNumBitsSet(); }
+
+  /**
+   * Returns the total number of bits in the filter.
+   * @return The total size of the filter
+   */
+  public long getCapacity() { return bitArray_.getCapacity(); }
+
+  /**
+   * Returns the configured number of hash functions for this filter
+   * @return The number of hash functions to apply to inputs
+   */
+  public short getNumHashes() { return numHashes_; }
+
+  /**
+   * Returns the hash seed for this filter.
+   * @return The hash seed for this filter
+   */
+  public long getSeed() { return seed_; }
+
+  /**
+   * Returns whether the filter has a backing Memory object
+   * @return true if backed by Memory, otherwise false
+   */
+  public boolean hasMemory() { return wmem_ != null; }
+
+  /**
+   * Returns whether the filter is in read-only mode. That is possible
+   * only if there is a backing Memory in read-only mode.
+   * @return true if read-only, otherwise false
+   */
+  public boolean isReadOnly() {
+    return wmem_ != null && bitArray_.isReadOnly();
+  }
+
+  /**
+   * Returns whether the filter is a direct (off-heap) or on-heap object.
+   * That is possible only if there is a backing Memory.
+   * @return true if using direct memory access, otherwise false
+   */
+  public boolean isDirect() {
+    return wmem_ != null && bitArray_.isDirect();
+  }
+
+  /**
+   * Returns the percentage of all bits in the filter set to 1.
+   * @return the percentage of bits in the filter set to 1
+   */
+  public double getFillPercentage() {
+    return (double) bitArray_.getNumBitsSet() / bitArray_.getCapacity();
+  }
+
+  // UPDATE METHODS
+  /**
+   * Updates the filter with the provided long value.
+   * @param item an item with which to update the filter
+   */
+  public void update(final long item) {
+    final long h0 = XxHash.hashLong(item, seed_);
+    final long h1 = XxHash.hashLong(item, h0);
+    updateInternal(h0, h1);
+  }
+
+  /**
+   * Updates the filter with the provided double value. The value is
+   * canonicalized (NaN and infinities) prior to updating.
+   * @param item an item with which to update the filter
+   */
+  public void update(final double item) {
+    // canonicalize all NaN forms; hashing the bits directly matches hashing them as a long[1]
+    final long bits = Double.doubleToLongBits(item);
+    final long h0 = XxHash.hashLong(bits, seed_);
+    final long h1 = XxHash.hashLong(bits, h0);
+    updateInternal(h0, h1);
+  }
+
+  /**
+   * Updates the filter with the provided String.
+   * The string is converted to a byte array using UTF8 encoding.
+   *
+   * <p>Note: this will not produce the same output hash values as the {@link #update(char[])}
+   * method and will generally be a little slower depending on the complexity of the UTF8 encoding.
+   * </p>
+   *
+   * @param item an item with which to update the filter
+   */
+  public void update(final String item) {
+    update((CharSequence) item);
+  }
+
+  /**
+   * Updates the filter with the provided CharSequence.
+   * The characters are encoded as UTF-8 into a reusable per-thread buffer, so no objects are
+   * allocated for the typical key. The hash values, and therefore the filter, are identical to
+   * those produced by {@link #update(String)} and by {@link #update(byte[])} with the bytes of
+   * <i>item.toString().getBytes(StandardCharsets.UTF_8)</i>, including the replacement of any
+   * unpaired surrogate by '?'.
+   *
+   * @param item an item with which to update the filter
+   */
+  public void update(final CharSequence item) {
+    if (item == null || item.length() == 0) { return; }
+    final byte[] buf = utf8Buffer(item);
+    final int len = encodeUtf8(item, buf);
+    final long h0 = hashByteArr(buf, 0, len, seed_);
+    final long h1 = hashByteArr(buf, 0, len, h0);
+    updateInternal(h0, h1);
+  }
+
+  /**
+   * Updates the filter with the provided byte[].
+   * @param data an array with which to update the filter
+   */
+  public void update(final byte[] data) {
+    if (data == null) { return; }
+    final long h0 = hashByteArr(data, 0, data.length, seed_);
+    final long h1 = hashByteArr(data, 0, data.length, h0);
+    updateInternal(h0, h1);
+  }
+
+  /**
+   * Updates the filter with the provided char[].
+   * @param data an array with which to update the filter
+   */
+  public void update(final char[] data) {
+    if (data == null) { return; }
+    final long h0 = XxHash.hashCharArr(data, 0, data.length, seed_);
+    final long h1 = XxHash.hashCharArr(data, 0, data.length, h0);
+    updateInternal(h0, h1);
+  }
+
+  /**
+   * Updates the filter with the provided short[].
+   * @param data an array with which to update the filter
+   */
+  public void update(final short[] data) {
+    if (data == null) { return; }
+    final long h0 = XxHash.hashShortArr(data, 0, data.length, seed_);
+    final long h1 = XxHash.hashShortArr(data, 0, data.length, h0);
+    updateInternal(h0, h1);
+  }
+
+  /**
+   * Updates the filter with the provided int[].
+   * @param data an array with which to update the filter
+   */
+  public void update(final int[] data) {
+    if (data == null) { return; }
+    final long h0 = XxHash.hashIntArr(data, 0, data.length, seed_);
+    final long h1 = XxHash.hashIntArr(data, 0, data.length, h0);
+    updateInternal(h0, h1);
+  }
+
+  /**
+   * Updates the filter with the provided long[].
+   * @param data an array with which to update the filter
+   */
+  public void update(final long[] data) {
+    if (data == null) { return; }
+    final long h0 = XxHash.hashLongArr(data, 0, data.length, seed_);
+    final long h1 = XxHash.hashLongArr(data, 0, data.length, h0);
+    updateInternal(h0, h1);
+  }
+
+  /**
+   * Updates the filter with the data in the provided Memory.
+   * @param mem a Memory object with which to update the filter
+   */
+  public void update(final Memory mem) {
+    if (mem == null) { return; }
+    final long h0 = mem.xxHash64(0, mem.getCapacity(), seed_);
+    final long h1 = mem.xxHash64(0, mem.getCapacity(), h0);
+    updateInternal(h0, h1);
+  }
+
+  // Internal method to apply updates given pre-computed hashes
+  abstract void updateInternal(long h0, long h1);
+
+  // QUERY-AND-UPDATE METHODS
+
+  /**
+   * Updates the filter with the provided long and
+   * returns the result from quering that value prior to the update.
+   * @param item an item with which to update the filter
+   * @return The query result prior to applying the update
+   */
+  public boolean queryAndUpdate(final long item) {
+    final long h0 = XxHash.hashLong(item, seed_);
+    final long h1 = XxHash.hashLong(item, h0);
+    return queryAndUpdateInternal(h0, h1);
+  }
+
+  /**
+   * Updates the filter with the provided double and
+   * returns the result from quering that value prior to the update.
+   * The double is canonicalized (NaN and +/- infinity) in the call.
+   * @param item an item with which to update the filter
+   * @return The query result prior to applying the update
+   */
+  public boolean queryAndUpdate(final double item) {
+    // canonicalize all NaN forms; hashing the bits directly matches hashing them as a long[1]
+    final long bits = Double.doubleToLongBits(item);
+    final long h0 = XxHash.hashLong(bits, seed_);
+    final long h1 = XxHash.hashLong(bits, h0);
+    return queryAndUpdateInternal(h0, h1);
+  }
+
+  /**
+   * Updates the filter with the provided String and
+   * returns the result from quering that value prior to the update.
+   * The string is converted to a byte array using UTF8 encoding.
+   *
+   * <p>Note: this will not produce the same output hash values as the {@link #queryAndUpdate(char[])}
+   * method and will generally be a little slower depending on the complexity of the UTF8 encoding.
+   * </p>
+   *
+   * @param item an item with which to update the filter
+   * @return The query result prior to applying the update, or false if item is null
+   */
+  public boolean queryAndUpdate(final String item) {
+    return queryAndUpdate((CharSequence) item);
+  }
+
+  /**
+   * Updates the filter with the provided CharSequence and
+   * returns the result from quering that value prior to the update.
+   * The hash values are identical to those of {@link #queryAndUpdate(String)}, and no objects
+   * are allocated for the typical key. See {@link #update(CharSequence)}.
+   *
+   * @param item an item with which to update the filter
+   * @return The query result prior to applying the update, or false if item is null
+   */
+  public boolean queryAndUpdate(final CharSequence item) {
+    if (item == null || item.length() == 0) { return false; }
+    final byte[] buf = utf8Buffer(item);
+    final int len = encodeUtf8(item, buf);
+    final long h0 = hashByteArr(buf, 0, len, seed_);
+    final long h1 = hashByteArr(buf, 0, len, h0);
+    return queryAndUpdateInternal(h0, h1);
+  }
+
+  /**
+   * Updates the filter with the provided byte[] and
+   * returns the result from quering that array prior to the update.
+   * @param data an array with which to update the filter
+   * @return The query result prior to applying the update, or false if data is null
+   */
+  public boolean queryAndUpdate(final byte[] data) {
+    if (data == null) { return false; }
+    final long h0 = hashByteArr(data, 0, data.length, seed_);
+    final long h1 = hashByteArr(data, 0, data.length, h0);
+    return queryAndUpdateInternal(h0, h1);
+  }
+
+  /**
+   * Updates the filter with the provided char[] and
+   * returns the result from quering that array prior to the update.
+   * @param data an array with which to update the filter
+   * @return The query result prior to applying the update, or false if data is null
+   */
+  public boolean queryAndUpdate(final char[] data) {
+    if (data == null) { return false; }
+    final long h0 = XxHash.hashCharArr(data, 0, data.length, seed_);
+    final long h1 = XxHash.hashCharArr(data, 0, data.length, h0);
+    return queryAndUpdateInternal(h0, h1);
+  }
+
+  /**
+   * Updates the filter with the provided short[] and
+   * returns the result from quering that array prior to the update.
+   * @param data an array with which to update the filter
+   * @return The query result prior to applying the update, or false if data is null
+   */
+  public boolean queryAndUpdate(final short[] data) {
+    if (data == null) { return false; }
+    final long h0 = XxHash.hashShortArr(data, 0, data.length, seed_);
+    final long h1 = XxHash.hashShortArr(data, 0, data.length, h0);
+    return queryAndUpdateInternal(h0, h1);
+  }
+
+  /**
+   * Updates the filter with the provided int[] and
+   * returns the result from quering that array prior to the update.
+   * @param data an array with which to update the filter
+   * @return The query result prior to applying the update, or false if data is null
+   */
+  public boolean queryAndUpdate(final int[] data) {
+    if (data == null) { return false; }
+    final long h0 = XxHash.hashIntArr(data, 0, data.length, seed_);
+    final long h1 = XxHash.hashIntArr(data, 0, data.length, h0);
+    return queryAndUpdateInternal(h0, h1);
+  }
+
+  /**
+   * Updates the filter with the provided long[] and
+   * returns the result from quering that array prior to the update.
+   * @param data an array with which to update the filter
+   * @return The query result prior to applying the update, or false if data is null
+   */
+  public boolean queryAndUpdate(final long[] data) {
+    if (data == null) { return false; }
+    final long h0 = XxHash.hashLongArr(data, 0, data.length, seed_);
+    final long h1 = XxHash.hashLongArr(data, 0, data.length, h0);
+    return queryAndUpdateInternal(h0, h1);
+  }
+
+  /**
+   * Updates the filter with the provided Memory and
+   * returns the result from quering that Memory prior to the update.
+   * @param mem an array with which to update the filter
+   * @return The query result prior to applying the update, or false if mem is null
+   */
+  public boolean queryAndUpdate(final Memory mem) {
+    if (mem == null) { return false; }
+    final long h0 = mem.xxHash64(0, mem.getCapacity(), seed_);
+    final long h1 = mem.xxHash64(0, mem.getCapacity(), h0);
+    return queryAndUpdateInternal(h0, h1);
+  }
+
+  // Internal query-and-update method given pre-computed hashes
+  abstract boolean queryAndUpdateInternal(long h0, long h1);
+
+  // QUERY METHODS
+  /**
+   * Queries the filter with the provided long and returns whether the
+   * value <em>might</em> have been seen previously. The filter's expected
+   * False Positive Probability determines the chances of a true result being
+   * a false positive. False negatives are never possible.
+   * @param item an item with which to query the filter
+   * @return The result of querying the filter with the given item
+   */
+  public boolean query(final long item) {
+    final long h0 = XxHash.hashLong(item, seed_);
+    final long h1 = XxHash.hashLong(item, h0);
+    return queryInternal(h0, h1);
+  }
+
+  /**
+   * Queries the filter with the provided double and returns whether the
+   * value <em>might</em> have been seen previously. The filter's expected
+   * False Positive Probability determines the chances of a true result being
+   * a false positive. False negatives are never possible. Double values are
+   * canonicalized (NaN and +/- infinity) before querying.
+   * @param item an item with which to query the filter
+   * @return The result of querying the filter with the given item
+   */
+  public boolean query(final double item) {
+    // canonicalize all NaN forms; hashing the bits directly matches hashing them as a long[1]
+    final long bits = Double.doubleToLongBits(item);
+    final long h0 = XxHash.hashLong(bits, seed_);
+    final long h1 = XxHash.hashLong(bits, h0);
+    return queryInternal(h0, h1);
+  }
+
+  /**
+   * Queries the filter with the provided String and returns whether the
+   * value <em>might</em> have been seen previously. The filter's expected
+   * False Positive Probability determines the chances of a true result being
+   * a false positive. False negatives are never possible.
+   * The string is converted to a byte array using UTF8 encoding.
+   *
+   * <p>Note: this will not produce the same output hash values as the {@link #update(char[])}
+   * method and will generally be a little slower depending on the complexity of the UTF8 encoding.
+   * </p>
+   *
+   * @param item an item with which to query the filter
+   * @return The result of querying the filter with the given item, or false if item is null
+   */
+  public boolean query(final String item) {
+    return query((CharSequence) item);
+  }
+
+  /**
+   * Queries the filter with the provided CharSequence and returns whether the
+   * value <em>might</em> have been seen previously.
+   * The hash values are identical to those of {@link #query(String)}, and no objects
+   * are allocated for the typical key. See {@link #update(CharSequence)}.
+   *
+   * @param item an item with which to query the filter
+   * @return The result of querying the filter with the given item, or false if item is null
+   */
+  public boolean query(final CharSequence item) {
+    if (item == null || item.length() == 0) { return false; }
+    final byte[] buf = utf8Buffer(item);
+    final int len = encodeUtf8(item, buf);
+    final long h0 = hashByteArr(buf, 0, len, seed_);
+    final long h1 = hashByteArr(buf, 0, len, h0);
+    return queryInternal(h0, h1);
+  }
+
+  /**
+   * Queries the filter with the provided byte[] and returns whether the
+   * array <em>might</em> have been seen previously. The filter's expected
+   * False Positive Probability determines the chances of a true result being
+   * a false positive. False negatives are never possible.
+   * @param data an array with which to query the filter
+   * @return The result of querying the filter with the given data, or false if data is null
+   */
+  public boolean query(final byte[] data) {
+    if (data == null) { return false; }
+    final long h0 = hashByteArr(data, 0, data.length, seed_);
+    final long h1 = hashByteArr(data, 0, data.length, h0);
+    return queryInternal(h0, h1);
+  }
+
+  /**
+   * Queries the filter with the provided char[] and returns whether the
+   * array <em>might</em> have been seen previously. The filter's expected
+   * False Positive Probability determines the chances of a true result being
+   * a false positive. False negatives are never possible.
+   * @param data an array with which to query the filter
+   * @return The result of querying the filter with the given data, or false if data is null
+   */
+  public boolean query(final char[] data) {
+    if (data == null) { return false; }
+    final long h0 = XxHash.hashCharArr(data, 0, data.length, seed_);
+    final long h1 = XxHash.hashCharArr(data, 0, data.length, h0);
+    return queryInternal(h0, h1);
+  }
+
+  /**
+   * Queries the filter with the provided short[] and returns whether the
+   * array <em>might</em> have been seen previously. The filter's expected
+   * False Positive Probability determines the chances of a true result being
+   * a false positive. False negatives are never possible.
+   * @param data an array with which to query the filter
+   * @return The result of querying the filter with the given data, or false if data is null
+   */
+  public boolean query(final short[] data) {
+    if (data == null) { return false; }
+    final long h0 = XxHash.hashShortArr(data, 0, data.length, seed_);
+    final long h1 = XxHash.hashShortArr(data, 0, data.length, h0);
+    return queryInternal(h0, h1);
+  }
+
+  /**
+   * Queries the filter with the provided int[] and returns whether the
+   * array <em>might</em> have been seen previously. The filter's expected
+   * False Positive Probability determines the chances of a true result being
+   * a false positive. False negatives are never possible.
+   * @param data an array with which to query the filter
+   * @return The result of querying the filter with the given data, or false if data is null
+   */
+  public boolean query(final int[] data) {
+    if (data == null) { return false; }
+    final long h0 = XxHash.hashIntArr(data, 0, data.length, seed_);
+    final long h1 = XxHash.hashIntArr(data, 0, data.length, h0);
+    return queryInternal(h0, h1);
+  }
+
+  /**
+   * Queries the filter with the provided long[] and returns whether the
+   * array <em>might</em> have been seen previously. The filter's expected
+   * False Positive Probability determines the chances of a true result being
+   * a false positive. False negatives are never possible.
+   * @param data an array with which to query the filter
+   * @return The result of querying the filter with the given data, or false if data is null
+   */
+  public boolean query(final long[] data) {
+    if (data == null) { return false; }
+    final long h0 = XxHash.hashLongArr(data, 0, data.length, seed_);
+    final long h1 = XxHash.hashLongArr(data, 0, data.length, h0);
+    return queryInternal(h0, h1);
+  }
+
+  /**
+   * Queries the filter with the provided Memory and returns whether the
+   * data <em>might</em> have been seen previously. The filter's expected
+   * False Positive Probability determines the chances of a true result being
+   * a false positive. False negatives are never possible.
+   * @param mem a Memory array with which to query the filter
+   * @return The result of querying the filter with the given Memory, or false if data is null
+   */
+  public boolean query(final Memory mem) {
+    if (mem == null) { return false; }
+    final long h0 = mem.xxHash64(0, mem.getCapacity(), seed_);
+    final long h1 = mem.xxHash64(0, mem.getCapacity(), h0);
+    return queryInternal(h0, h1);
+  }
+
+  // Internal method to query the filter given pre-computed hashes
+  abstract boolean queryInternal(long h0, long h1);
+
+  // SERIALIZATION
+  /**
+   * Returns the length of this filter when serialized, in bytes
+   * @return The length of this filter when serialized, in bytes
+   */
+  public abstract long getSerializedSizeBytes();
+
+  /**
+   * Serializes the current filter to an array of bytes.
+   *
+   * <p>Note: Method throws if the serialized size exceeds <code>Integer.MAX_VALUE</code>.</p>
+   * @return A serialized image of the current filter as byte[]
+   */
+  public byte[] toByteArray() {
+    final long sizeBytes = getSerializedSizeBytes();
+    if (sizeBytes > Integer.MAX_VALUE) {
+      throw new SketchesStateException("Cannot serialize a " + getClass().getSimpleName()
+          + " of this size using toByteArray(); use toLongArray() instead.");
+    }
+
+    final byte[] bytes = new byte[(int) sizeBytes];
+    if (wmem_ == null) {
+      writeHeapImage(WritableMemory.writableWrap(bytes).asWritableBuffer());
+    } else {
+      wmem_.getByteArray(0, bytes, 0, (int) sizeBytes);
+      if (isEmpty()) {
+        bytes[FLAGS_BYTE] |= EMPTY_FLAG_MASK;
+      }
+    }
+    return bytes;
+  }
+
+  /**
+   * Serializes the current filter to an array of longs. Unlike {@link #toByteArray()},
+   * this method can handle any size filter.
+   *
+   * @return A serialized image of the current filter as long[]
+   */
+  public long[] toLongArray() {
+    final long sizeBytes = getSerializedSizeBytes();
+
+    final long[] longs = new long[(int) (sizeBytes >>> 3)];
+    if (wmem_ == null) {
+      writeHeapImage(WritableMemory.writableWrap(longs).asWritableBuffer());
+    } else {
+      wmem_.getLongArray(0, longs, 0, (int) (sizeBytes >>> 3));
+      if (isEmpty()) {
+        longs[0] |= (EMPTY_FLAG_MASK << (FLAGS_BYTE << 3));
+      }
+    }
+    return longs;
+  }
+
+  // Writes the image of an on-heap filter to the given zero-initialized buffer
+  abstract void writeHeapImage(WritableBuffer wbuf);
+
+  // Writes the first two preamble longs, which are common to all filters. A filter that is not
+  // empty has the maximum number of preamble longs of its family.
+  static void writePreamble(final WritableBuffer wbuf, final Family family, final boolean isEmpty,
+      final int layoutFlags, final short numHashes, final long seed) {
+    wbuf.putByte((byte) (isEmpty ? family.getMinPreLongs() : family.getMaxPreLongs()));
+    wbuf.putByte((byte) SER_VER);
+    wbuf.putByte((byte) family.getID());
+    wbuf.putByte((byte) ((isEmpty ? EMPTY_FLAG_MASK : 0) | layoutFlags));
+    wbuf.putShort(numHashes);
+    wbuf.putShort((short) 0); // unused
+    wbuf.putLong(seed);
+  }
+
+  // Returns a buffer large enough for the UTF-8 encoding of the given item: the per-thread buffer,
+  // grown if needed, or a new array for items longer than MAX_CACHED_UTF8_BYTES allows.
+  static byte[] utf8Buffer(final CharSequence item) {
+    final long maxBytes = 3L * item.length(); //a surrogate pair takes 4 bytes for 2 chars
+    if (maxBytes > MAX_CACHED_UTF8_BYTES) { return new byte[(int) maxBytes]; }
+    final byte[] buf = UTF8_BUFFER.get();
+    if (buf.length >= maxBytes) { return buf; }
+    final byte[] grown = new byte[(int) Math.max(maxBytes, 2L * buf.length)];
+    UTF8_BUFFER.set(grown);
+    return grown;
+  }
+
+  // Encodes the given item as UTF-8 into the given buffer and returns the number of bytes.
+  // Unpaired surrogates are replaced by '?', as by String.getBytes(StandardCharsets.UTF_8).
+  static int encodeUtf8(final CharSequence item, final byte[] buf) {
+    final int len = item.length();
+    int pos = 0;
+    for (int i = 0; i < len; i++) {
+      final char c = item.charAt(i);
+      if (c < 0x80) {
+        buf[pos++] = (byte) c;
+      } else if (c < 0x800) {
+        buf[pos++] = (byte) (0xC0 | (c >>> 6));
+        buf[pos++] = (byte) (0x80 | (c & 0x3F));
+      } else if (!Character.isSurrogate(c)) {
+        buf[pos++] = (byte) (0xE0 | (c >>> 12));
+        buf[pos++] = (byte) (0x80 | ((c >>> 6) & 0x3F));
+        buf[pos++] = (byte) (0x80 | (c & 0x3F));
+      } else if (Character.isHighSurrogate(c) && (i + 1 < len)
+          && Character.isLowSurrogate(item.charAt(i + 1))) {
+        final int cp = Character.toCodePoint(c, item.charAt(++i));
+        buf[pos++] = (byte) (0xF0 | (cp >>> 18));
+        buf[pos++] = (byte) (0x80 | ((cp >>> 12) & 0x3F));
+        buf[pos++] = (byte) (0x80 | ((cp >>> 6) & 0x3F));
+        buf[pos++] = (byte) (0x80 | (cp & 0x3F));
+      } else {
+        buf[pos++] = (byte) '?';
+      }
+    }
+    return pos;
+  }
+
+  // Throws an exception with the provided message if the given condition is true
+  static void checkArgument(final boolean condition, final String message) {
+    if (condition) { throw new SketchesArgumentException(message); }
+  }
+}
@@ -24,6 +24,7 @@ import static org.apache.datasketches.common.Util.LS;
 import org.apache.datasketches.common.SketchesArgumentException;
 import org.apache.datasketches.memory.Buffer;
 import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableBuffer;
 import org.apache.datasketches.memory.WritableMemory;
 
 /**
@@ -112,6 +113,19 @@ abstract class BitArray {
     return Long.BYTES * (numLongs + 2L);
   }
 
+  // writes the array length and, if non-empty, the number of bits set and the data to the buffer
+  void writeToBuffer(final WritableBuffer wbuf) {
+    wbuf.putInt(getArrayLength());
+    wbuf.putInt(0); // unused
+
+    if (!isEmpty()) {
+      wbuf.putLong(isDirty() ? -1 : getNumBitsSet());
+      for (int i = 0; i < getArrayLength(); ++i) {
+        wbuf.putLong(getLong(i));
+      }
+    }
+  }
+
   abstract protected boolean isDirty();
 
   // used to get a long from the array regardless of underlying storage
@@ -0,0 +1,428 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.filters.bloomfilter;
+
+import static org.apache.datasketches.common.Util.LS;
+
+import org.apache.datasketches.common.Family;
+import org.apache.datasketches.common.SketchesArgumentException;
+import org.apache.datasketches.memory.Buffer;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableBuffer;
+import org.apache.datasketches.memory.WritableMemory;
+
+/**
+ * A cache-line blocked Bloom filter.
+ *
+ * <p>A standard {@link BloomFilter} spreads the probes for an item across the whole bit array, so a
+ * query on a filter much larger than the CPU caches may cost up to <i>numHashes</i> cache misses.
+ * This filter divides the bit array into blocks of 512 bits (64 bytes, one cache line on common
+ * hardware). The first hash of an item selects a block and all of the item's probes fall within
+ * that block, so an update or query touches a single cache line.</p>
+ *
+ * <p>Two probe layouts are supported:</p>
+ * <ul>
+ * <li><b>blocked</b>: <i>numHashes</i> bit positions anywhere in the block, derived from the
+ * second hash by double hashing.</li>
+ * <li><b>split-block</b>: the block is treated as eight 64-bit words and exactly one bit is set in
+ * each word, selected by multiplying the second hash by a fixed odd constant per word. The eight
+ * masks are independent, which keeps the inner loop free of data dependencies. The number of
+ * hashes is always 8. This is the layout used by Apache Parquet and Apache Impala.</li>
+ * </ul>
+ *
+ * <p>Confining the probes to one block makes the bit load less uniform, so at the same size and
+ * number of hashes the false positive probability is somewhat higher than that of a standard
+ * Bloom filter, typically by a few tens of percent at a 1% target. Size the filter for a lower
+ * target, or add bits, if the difference matters.</p>
+ *
+ * <p>In the serialized image and in WritableMemory mode the bit data starts 64 bytes from the
+ * start of the image, so when the backing memory is 64-byte aligned every block occupies exactly
+ * one cache line. On-heap arrays give no alignment guarantee, and a block may then span two lines.</p>
+ *
+ * <p>See the BloomFilterBuilder class for methods to create a filter. Filters may only be unioned
+ * or intersected with other blocked filters of the same size, layout, number of hashes and seed.</p>
+ *
+ * <p>This implementation uses xxHash64. See Putze, Sanders and Singler, "Cache-, Hash- and
+ * Space-Efficient Bloom Filters," WEA 2007, pp. 108-121.</p>
+ */
+public final class BlockedBloomFilter extends BaseBloomFilter {
+  /**
+   * The number of bits in a block.
+   */
+  public static final int BLOCK_BITS = 512;
+
+  private static final int LG_BLOCK_BITS = 9;
+  private static final int BLOCK_LONGS = BLOCK_BITS / Long.SIZE;
+
+  /**
+   * The number of hash functions used by the split-block layout.
+   */
+  public static final int SPLIT_BLOCK_NUM_HASHES = 8;
+
+  /**
+   * The maximum size of a blocked bloom filter in bits.
+   */
+  public static final long MAX_SIZE_BITS =
+      ((Integer.MAX_VALUE - Family.BLOCKED_BLOOMFILTER.getMaxPreLongs()) / BLOCK_LONGS) * (long) BLOCK_BITS;
+
+  private static final int SPLIT_BLOCK_FLAG_MASK = 8;
+  private static final long BIT_ARRAY_OFFSET = 48;
+
+
+  // odd multipliers, one per word of a split block, as used by Parquet's split block Bloom filter
+  private static final int[] SALT = {
+      0x47b6137b, 0x44974d91, 0x8824ad5b, 0xa2b7289d, 0x705495c7, 0x2df1424b, 0x9efc4947, 0x5c6bfb31 };
+
+  private final boolean splitBlock_;   // true if using the split-block layout
+  private final long numBlocks_;       // number of 512-bit blocks
+
+  /**
+   * Creates a BlockedBloomFilter with the given number of bits and hash functions,
+   * and a user-specified seed.
+   *
+   * @param numBits The size of the filter, in bits. Rounded up to a multiple of BLOCK_BITS.
+   * @param numHashes The number of hash functions to apply to items
+   * @param splitBlock true to use the split-block layout, in which case numHashes must be 8
+   * @param seed The base hash seed
+   */
+  BlockedBloomFilter(final long numBits, final int numHashes, final boolean splitBlock, final long seed) {
+    this((short) numHashes, splitBlock, seed, new HeapBitArray(roundToBlocks(numBits)), null);
+  }
+
+  /**
+   * Creates a BlockedBloomFilter with the given number of bits and hash functions,
+   * and a user-specified seed in the provided WritableMemory.
+   *
+   * @param numBits The size of the filter, in bits. Rounded up to a multiple of BLOCK_BITS.
+   * @param numHashes The number of hash functions to apply to items
+   * @param splitBlock true to use the split-block layout, in which case numHashes must be 8
+   * @param seed The base hash seed
+   * @param wmem A WritableMemory that will be initialized to hold the filter
+   */
+  BlockedBloomFilter(final long numBits, final int numHashes, final boolean splitBlock, final long seed,
+      final WritableMemory wmem) {
+    this((short) numHashes, splitBlock, seed, initializeDirect(numBits, numHashes, splitBlock, seed, wmem), wmem);
+  }
+
+  // Writes the preamble to the given WritableMemory and returns the bit array that follows it
+  private static BitArray initializeDirect(final long numBits, final int numHashes, final boolean splitBlock,
+      final long seed, final WritableMemory wmem) {
+    if (wmem.getCapacity() < getSerializedSize(numBits)) {
+      throw new SketchesArgumentException("Provided WritableMemory capacity insufficient to initialize BlockedBloomFilter");
+    }
+
+    // we don't resize so initialize with non-empty preLongs value
+    // and no empty flag
+    writePreamble(wmem.asWritableBuffer(), Family.BLOCKED_BLOOMFILTER, false,
+        splitBlock ? SPLIT_BLOCK_FLAG_MASK : 0, (short) numHashes, seed);
+    wmem.clear(2L * Long.BYTES, BIT_ARRAY_OFFSET - (2L * Long.BYTES)); // alignment padding
+
+    return DirectBitArray.initialize(roundToBlocks(numBits),
+        wmem.writableRegion(BIT_ARRAY_OFFSET, wmem.getCapacity() - BIT_ARRAY_OFFSET));
+  }
+
+  // Constructor used with internalHeapifyOrWrap()
+  private BlockedBloomFilter(final short numHashes, final boolean splitBlock, final long seed,
+      final BitArray bitArray, final WritableMemory wmem) {
+    super(numHashes, seed, bitArray, wmem);
+    splitBlock_ = splitBlock;
+    numBlocks_ = bitArray_.getArrayLength() / BLOCK_LONGS;
+  }
+
+  /**
+   * Reads a serialized image of a BlockedBloomFilter from the provided Memory
+   * @param mem Memory containing a previously serialized BlockedBloomFilter
+   * @return a BlockedBloomFilter object
+   */
+  public static BlockedBloomFilter heapify(final Memory mem) {
+    // casting to writable, but heapify so only reading
+    return internalHeapifyOrWrap((WritableMemory) mem, false, false);
+  }
+
+  /**
+   * Wraps the given Memory into this filter class.  The class itself only contains a few metadata items and holds
+   * a reference to the Memory object, which contains all the data.
+   * @param mem the given Memory object
+   * @return the wrapping BlockedBloomFilter class.
+   */
+  public static BlockedBloomFilter wrap(final Memory mem) {
+    // casting to writable, but tracking that the object is read-only
+    return internalHeapifyOrWrap((WritableMemory) mem, true, false);
+  }
+
+  /**
+   * Wraps the given WritableMemory into this filter class.  The class itself only contains a few metadata items and
+   * holds a reference to the Memory object, which contains all the data.
+   * @param wmem the given WritableMemory object
+   * @return the wrapping BlockedBloomFilter class.
+   */
+  public static BlockedBloomFilter writableWrap(final WritableMemory wmem) {
+    return internalHeapifyOrWrap(wmem, true, true);
+  }
+
+  private static BlockedBloomFilter internalHeapifyOrWrap(final WritableMemory wmem, final boolean isWrap,
+      final boolean isWritable) {
+    final Buffer buf = wmem.asBuffer();
+    final int preLongs = buf.getByte();
+    final int serVer = buf.getByte();
+    final int familyID = buf.getByte();
+    final int flags = buf.getByte();
+
+    checkArgument(preLongs < Family.BLOCKED_BLOOMFILTER.getMinPreLongs()
+        || preLongs > Family.BLOCKED_BLOOMFILTER.getMaxPreLongs(),
+      "Possible corruption: Incorrect number of preamble bytes specified in header");
+    checkArgument(serVer != SER_VER, "Possible corruption: Unrecognized serialization version: " + serVer);
+    checkArgument(familyID != Family.BLOCKED_BLOOMFILTER.getID(),
+        "Possible corruption: Incorrect FamilyID for blocked bloom filter. Found: " + familyID);
+
+    final short numHashes = buf.getShort();
+    buf.getShort(); // unused
+    final boolean splitBlock = (flags & SPLIT_BLOCK_FLAG_MASK) != 0;
+    checkArgument(numHashes < 1, "Possible corruption: Need strictly positive number of hash functions. Found: " + numHashes);
+    checkArgument(splitBlock && numHashes != SPLIT_BLOCK_NUM_HASHES,
+        "Possible corruption: Split-block filter must use " + SPLIT_BLOCK_NUM_HASHES + " hash functions. Found: " + numHashes);
+
+    final long seed = buf.getLong();
+    final int arrayLength = wmem.getInt(BIT_ARRAY_OFFSET);
+    checkArgument(arrayLength <= 0 || (arrayLength % BLOCK_LONGS) != 0,
+        "Possible corruption: Array length must be a positive multiple of " + BLOCK_LONGS + ". Found: " + arrayLength);
+
+    final boolean isEmpty = (flags & EMPTY_FLAG_MASK) != 0;
+
+    final BitArray bitArray;
+    if (isWrap) {
+      if (isWritable) {
+        bitArray = BitArray.writableWrap(wmem.writableRegion(BIT_ARRAY_OFFSET, wmem.getCapacity() - BIT_ARRAY_OFFSET),
+            isEmpty);
+      } else {
+        bitArray = BitArray.wrap(wmem.region(BIT_ARRAY_OFFSET, wmem.getCapacity() - BIT_ARRAY_OFFSET), isEmpty);
+      }
+      return new BlockedBloomFilter(numHashes, splitBlock, seed, bitArray, wmem);
+    } else { // if heapify
+      buf.setPosition(BIT_ARRAY_OFFSET);
+      bitArray = BitArray.heapify(buf, isEmpty);
+      return new BlockedBloomFilter(numHashes, splitBlock, seed, bitArray, null);
+    }
+  }
+
+  /**
+   * Returns the number of blocks in the filter.
+   * @return The number of BLOCK_BITS-bit blocks in the filter
+   */
+  public long getNumBlocks() { return numBlocks_; }
+
+  /**
+   * Returns whether this filter uses the split-block layout.
+   * @return true if each block is split into eight words with one bit set per word
+   */
+  public boolean isSplitBlock() { return splitBlock_; }
+
+  @Override
+  void updateInternal(final long h0, final long h1) {
+    final long blockStart = blockStart(h0);
+    if (splitBlock_) {
+      final int key = (int) h1;
+      for (int w = 0; w < SPLIT_BLOCK_NUM_HASHES; ++w) {
+        bitArray_.setBit(blockStart + ((long) w << 6) + ((key * SALT[w]) >>> 26));
+      }
+    } else {
+      final int a = (int) h1;
+      final int b = (int) (h1 >>> 32) | 1;
+      for (int i = 1; i <= numHashes_; ++i) {
+        bitArray_.setBit(blockStart + ((a + i * b) >>> (Integer.SIZE - LG_BLOCK_BITS)));
+      }
+    }
+  }
+
+  @Override
+  boolean queryAndUpdateInternal(final long h0, final long h1) {
+    final long blockStart = blockStart(h0);
+    boolean valueAlreadyExists = true;
+    if (splitBlock_) {
+      final int key = (int) h1;
+      for (int w = 0; w < SPLIT_BLOCK_NUM_HASHES; ++w) {
+        valueAlreadyExists &= bitArray_.getAndSetBit(blockStart + ((long) w << 6) + ((key * SALT[w]) >>> 26));
+      }
+    } else {
+      final int a = (int) h1;
+      final int b = (int) (h1 >>> 32) | 1;
+      for (int i = 1; i <= numHashes_; ++i) {
+        valueAlreadyExists &= bitArray_.getAndSetBit(blockStart + ((a + i * b) >>> (Integer.SIZE - LG_BLOCK_BITS)));
+      }
+    }
+    return valueAlreadyExists;
+  }
+
+  @Override
+  boolean queryInternal(final long h0, final long h1) {
+    final long blockStart = blockStart(h0);
+    if (splitBlock_) {
+      final int key = (int) h1;
+      for (int w = 0; w < SPLIT_BLOCK_NUM_HASHES; ++w) {
+        if (!bitArray_.getBit(blockStart + ((long) w << 6) + ((key * SALT[w]) >>> 26))) {
+          return false;
+        }
+      }
+    } else {
+      final int a = (int) h1;
+      final int b = (int) (h1 >>> 32) | 1;
+      for (int i = 1; i <= numHashes_; ++i) {
+        if (!bitArray_.getBit(blockStart + ((a + i * b) >>> (Integer.SIZE - LG_BLOCK_BITS)))) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  // Returns the index of the first bit of the block selected by the given hash
+  private long blockStart(final long h0) {
+    // right-shift to ensure non-negative value
+    return ((h0 >>> 1) % numBlocks_) << LG_BLOCK_BITS;
+  }
+
+  // OTHER OPERATIONS
+  /**
+   * Unions two BlockedBloomFilters by applying a logical OR. The result will recognized
+   * any values seen by either filter (as well as false positives).
+   * @param other A BlockedBloomFilter to union with this one
+   */
+  public void union(final BlockedBloomFilter other) {
+    if (other == null) { return; }
+    if (!isCompatible(other)) {
+      throw new SketchesArgumentException(
+          "Cannot union filters with different seeds, hash functions, layouts or sizes");
+    }
+
+    bitArray_.union(other.bitArray_);
+  }
+
+  /**
+   * Intersects two BlockedBloomFilters by applying a logical AND. The result will recognize
+   * only values seen by both filters (as well as false positives).
+   * @param other A BlockedBloomFilter to intersect with this one
+   */
+  public void intersect(final BlockedBloomFilter other) {
+    if (other == null) { return; }
+    if (!isCompatible(other)) {
+      throw new SketchesArgumentException(
+          "Cannot intersect filters with different seeds, hash functions, layouts or sizes");
+    }
+
+    bitArray_.intersect(other.bitArray_);
+  }
+
+  /**
+   * Helps identify if two BlockedBloomFilters may be unioned or intersected.
+   * @param other A BlockedBloomFilter to check for compatibility with this one
+   * @return True if the filters are compatible, otherwise false
+   */
+  public boolean isCompatible(final BlockedBloomFilter other) {
+    if (other == null
+        || seed_ != other.seed_
+        || numHashes_ != other.numHashes_
+        || splitBlock_ != other.splitBlock_
+        || bitArray_.getArrayLength() != other.bitArray_.getArrayLength()) {
+          return false;
+    }
+    return true;
+  }
+
+  @Override
+  public long getSerializedSizeBytes() {
+    return BIT_ARRAY_OFFSET + bitArray_.getSerializedSizeBytes();
+  }
+
+  /**
+   * Returns the serialized length of a non-empty BlockedBloomFilter of the given size, in bytes
+   * @param numBits The number of bits of to use for size computation, rounded up to a multiple of BLOCK_BITS
+   * @return The serialized length of a non-empty BlockedBloomFilter of the given size, in bytes
+   */
+  public static long getSerializedSize(final long numBits) {
+    return BIT_ARRAY_OFFSET + BitArray.getSerializedSizeBytes(roundToBlocks(numBits));
+  }
+
+/*
+ * A Blocked Bloom Filter's serialized image always uses 7 longs of preamble when empty,
+ * otherwise 8 longs. Longs 2 through 5 are padding so the bit data starts at byte 64:
+ *
+ * <pre>
+ * Long || Start Byte Adr:
+ * Adr:
+ *      ||       0        |    1   |    2   |    3   |    4   |    5   |    6   |    7   |
+ *  0   || Preamble_Longs | SerVer | FamID  |  Flags |----Num Hashes---|-----Unused------|
+ *
+ *      ||       8        |    9   |   10   |   11   |   12   |   13   |   14   |   15   |
+ *  1   ||---------------------------------Hash Seed-------------------------------------|
+ *
+ *      ||   16 .. 47                                                                    |
+ * 2-5  ||---------------------------------Unused----------------------------------------|
+ *
+ *      ||      48        |   49   |   50   |   51   |   52   |   53   |   54   |   55   |
+ *  6   ||-------BitArray Length (in longs)----------|-----------Unused------------------|
+ *
+ *      ||      56        |   57   |   58   |   59   |   60   |   61   |   62   |   63   |
+ *  7   ||---------------------------------NumBitsSet------------------------------------|
+ *  </pre>
+ *
+ * Flags: bit 2 is the empty flag, bit 3 is the split-block flag.
+ * The raw BitArray bits, if non-empty, start at byte 64.
+ */
+
+  @Override
+  void writeHeapImage(final WritableBuffer wbuf) {
+    writePreamble(wbuf, Family.BLOCKED_BLOOMFILTER, isEmpty(), splitBlock_ ? SPLIT_BLOCK_FLAG_MASK : 0,
+        numHashes_, seed_);
+    wbuf.setPosition(BIT_ARRAY_OFFSET);
+
+    bitArray_.writeToBuffer(wbuf);
+  }
+
+  // Rounds the requested number of bits up to a whole number of blocks
+  static long roundToBlocks(final long numBits) {
+    if (numBits <= 0) {
+      throw new SketchesArgumentException("Number of bits must be strictly positive. Found: " + numBits);
+    }
+    if (numBits > MAX_SIZE_BITS) {
+      throw new SketchesArgumentException("Size of BlockedBloomFilter must be <= "
+              + MAX_SIZE_BITS + ". Requested: " + numBits);
+    }
+    return ((numBits + BLOCK_BITS - 1) >>> LG_BLOCK_BITS) << LG_BLOCK_BITS;
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder sb = new StringBuilder();
+
+    sb.append(LS);
+    final String thisSimpleName = this.getClass().getSimpleName();
+    sb.append("### ").append(thisSimpleName).append(" SUMMARY: ").append(LS);
+    sb.append("   numBits      : ").append(bitArray_.getCapacity()).append(LS);
+    sb.append("   numBlocks    : ").append(numBlocks_).append(LS);
+    sb.append("   numHashes    : ").append(numHashes_).append(LS);
+    sb.append("   splitBlock   : ").append(splitBlock_).append(LS);
+    sb.append("   seed         : ").append(seed_).append(LS);
+    sb.append("   bitsUsed     : ").append(bitArray_.getNumBitsSet()).append(LS);
+    sb.append("   fill %       : ").append(getFillPercentage()).append(LS);
+    sb.append("### END SKETCH SUMMARY").append(LS);
+
+    return sb.toString();
+  }
+}
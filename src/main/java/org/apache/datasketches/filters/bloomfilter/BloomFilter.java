@@ -20,12 +20,13 @@
 package org.apache.datasketches.filters.bloomfilter;
 
 import static org.apache.datasketches.common.Util.LS;
+import static org.apache.datasketches.common.Util.checkBounds;
 
-import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
 
 import org.apache.datasketches.common.Family;
 import org.apache.datasketches.common.SketchesArgumentException;
-import org.apache.datasketches.common.SketchesStateException;
 import org.apache.datasketches.memory.Buffer;
 import org.apache.datasketches.memory.Memory;
 import org.apache.datasketches.memory.WritableBuffer;
@@ -56,20 +57,13 @@ import org.apache.datasketches.memory.XxHash;
  * <p>This implementation uses xxHash64 and follows the approach in Kirsch and Mitzenmacher,
  * "Less Hashing, Same Performance: Building a Better Bloom Filter," Wiley Interscience, 2008, pp. 187-218.</p>
  */
-public final class BloomFilter {
+public final class BloomFilter extends BaseBloomFilter {
   /**
    * The maximum size of a bloom filter in bits.
    */
   public static final long MAX_SIZE_BITS = (Integer.MAX_VALUE - Family.BLOOMFILTER.getMaxPreLongs()) * (long) Long.SIZE;
-  private static final int SER_VER = 1;
-  private static final int EMPTY_FLAG_MASK = 4;
   private static final long BIT_ARRAY_OFFSET = 16;
-  private static final int FLAGS_BYTE = 3;
-
-  private final long seed_;            // hash seed
-  private final short numHashes_;      // number of hash values
-  private final BitArray bitArray_;    // the actual data bits
-  private final WritableMemory wmem_;  // used only for direct mode BitArray
+  private static final int QUERY_BLOCK_SIZE = 64;
 
   /**
    * Creates a BloomFilter with given number of bits and number of hash functions,
@@ -80,10 +74,21 @@ public final class BloomFilter {
    * @param seed The base hash seed
    */
   BloomFilter(final long numBits, final int numHashes, final long seed) {
-    seed_ = seed;
-    numHashes_ = (short) numHashes;
-    bitArray_ = new HeapBitArray(numBits);
-    wmem_ = null;
+    this(numBits, numHashes, seed, false);
+  }
+
+  /**
+   * Creates a BloomFilter with given number of bits and number of hash functions,
+   * and a user-specified seed, optionally safe for concurrent updates.
+   *
+   * @param numBits The size of the BloomFilter, in bits
+   * @param numHashes The number of hash functions to apply to items
+   * @param seed The base hash seed
+   * @param concurrent true if the filter may be updated and queried by several threads at once
+   */
+  BloomFilter(final long numBits, final int numHashes, final long seed, final boolean concurrent) {
+    super((short) numHashes, seed,
+        concurrent ? new ConcurrentHeapBitArray(numBits) : new HeapBitArray(numBits), null);
   }
 
   /**
@@ -96,33 +101,44 @@ public final class BloomFilter {
    * @param wmem A WritableMemory that will be initialized to hold the filter
    */
   BloomFilter(final long numBits, final int numHashes, final long seed, final WritableMemory wmem) {
+    this(numBits, numHashes, seed, false, wmem);
+  }
+
+  /**
+   * Creates a BloomFilter with given number of bits and number of hash functions,
+   * and a user-specified seed in the provided WritableMemory, optionally safe for concurrent updates.
+   *
+   * @param numBits The size of the BloomFilter, in bits
+   * @param numHashes The number of hash functions to apply to items
+   * @param seed The base hash seed
+   * @param concurrent true if the filter may be updated and queried by several threads at once
+   * @param wmem A WritableMemory that will be initialized to hold the filter
+   */
+  BloomFilter(final long numBits, final int numHashes, final long seed, final boolean concurrent,
+      final WritableMemory wmem) {
+    super((short) numHashes, seed, initializeDirect(numBits, numHashes, seed, concurrent, wmem), wmem);
+  }
+
+  // Writes the preamble to the given WritableMemory and returns the bit array that follows it
+  private static BitArray initializeDirect(final long numBits, final int numHashes, final long seed,
+      final boolean concurrent, final WritableMemory wmem) {
     if (wmem.getCapacity() < Family.BLOOMFILTER.getMaxPreLongs()) {
       throw new SketchesArgumentException("Provided WritableMemory capacity insufficient to initialize BloomFilter");
     }
 
     // we don't resize so initialize with non-empty preLongs value
     // and no empty flag
-    final WritableBuffer wbuf = wmem.asWritableBuffer();
-    wbuf.putByte((byte) Family.BLOOMFILTER.getMaxPreLongs());
-    wbuf.putByte((byte) SER_VER);
-    wbuf.putByte((byte) Family.BLOOMFILTER.getID());
-    wbuf.putByte((byte) 0); // instead of (bitArray_.isEmpty() ? EMPTY_FLAG_MASK : 0);
-    wbuf.putShort((short) numHashes);
-    wbuf.putShort((short) 0); // unused
-    wbuf.putLong(seed);
-
-    seed_ = seed;
-    numHashes_ = (short) numHashes;
-    bitArray_ = DirectBitArray.initialize(numBits, wmem.writableRegion(BIT_ARRAY_OFFSET, wmem.getCapacity() - BIT_ARRAY_OFFSET));
-    wmem_ = wmem;
+    writePreamble(wmem.asWritableBuffer(), Family.BLOOMFILTER, false, 0, (short) numHashes, seed);
+
+    final WritableMemory bitArrayMem = wmem.writableRegion(BIT_ARRAY_OFFSET, wmem.getCapacity() - BIT_ARRAY_OFFSET);
+    return concurrent
+        ? ConcurrentDirectBitArray.initialize(numBits, bitArrayMem)
+        : DirectBitArray.initialize(numBits, bitArrayMem);
   }
 
   // Constructor used with internalHeapifyOrWrap()
   BloomFilter(final short numHashes, final long seed, final BitArray bitArray, final WritableMemory wmem) {
-    seed_ = seed;
-    numHashes_ = numHashes;
-    bitArray_ = bitArray;
-    wmem_ = wmem;
+    super(numHashes, seed, bitArray, wmem);
   }
 
   /**
@@ -191,184 +207,17 @@ public final class BloomFilter {
   }
 
   /**
-   * Resets the BloomFilter to an empty state
-   */
-  public void reset() {
-    bitArray_.reset();
-  }
-
-  /**
-   * Checks if the BloomFilter has processed any items
-   * @return True if the BloomFilter is empty, otherwise False
-   */
-  public boolean isEmpty() { return bitArray_.isEmpty(); }
-
-  /**
-   * Returns the number of bits in the BloomFilter that are set to 1.
-   * @return The number of bits in use in this filter
-   */
-  public long getBitsUsed() { return bitArray_.getNumBitsSet(); }
-
-  /**
-   * Returns the total number of bits in the BloomFilter.
-   * @return The total size of the BloomFilter
-   */
-  public long getCapacity() { return bitArray_.getCapacity(); }
-
-  /**
-   * Returns the configured number of hash functions for this BloomFilter
-   * @return The number of hash functions to apply to inputs
-   */
-  public short getNumHashes() { return numHashes_; }
-
-  /**
-   * Returns the hash seed for this BloomFilter.
-   * @return The hash seed for this filter
-   */
-  public long getSeed() { return seed_; }
-
-  /**
-   * Returns whether the filter has a backing Memory object
-   * @return true if backed by Memory, otherwise false
-   */
-  public boolean hasMemory() { return wmem_ != null; }
-
-  /**
-   * Returns whether the filter is in read-only mode. That is possible
-   * only if there is a backing Memory in read-only mode.
-   * @return true if read-only, otherwise false
-   */
-  public boolean isReadOnly() {
-    return wmem_ != null && bitArray_.isReadOnly();
-  }
-
-  /**
-   * Returns whether the filter is a direct (off-heap) or on-heap object.
-   * That is possible only if there is a backing Memory.
-   * @return true if using direct memory access, otherwise false
+   * Returns whether the filter is safe for concurrent use. A concurrent filter may be updated and
+   * queried by any number of threads at once without external locking; see
+   * {@link BloomFilterBuilder#createConcurrentBySize(long, int, long)}.
+   * @return true if the filter supports concurrent updates, otherwise false
    */
-  public boolean isDirect() {
-    return wmem_ != null && bitArray_.isDirect();
+  public boolean isConcurrent() {
+    return bitArray_ instanceof ConcurrentHeapBitArray || bitArray_ instanceof ConcurrentDirectBitArray;
   }
 
-  /**
-   * Returns the percentage of all bits in the BloomFilter set to 1.
-   * @return the percentage of bits in the filter set to 1
-   */
-  public double getFillPercentage() {
-    return (double) bitArray_.getNumBitsSet() / bitArray_.getCapacity();
-  }
-
-  // UPDATE METHODS
-  /**
-   * Updates the filter with the provided long value.
-   * @param item an item with which to update the filter
-   */
-  public void update(final long item) {
-    final long h0 = XxHash.hashLong(item, seed_);
-    final long h1 = XxHash.hashLong(item, h0);
-    updateInternal(h0, h1);
-  }
-
-  /**
-   * Updates the filter with the provided double value. The value is
-   * canonicalized (NaN and infinities) prior to updating.
-   * @param item an item with which to update the filter
-   */
-  public void update(final double item) {
-    // canonicalize all NaN & +/- infinity forms
-    final long[] data = { Double.doubleToLongBits(item) };
-    final long h0 = XxHash.hashLongArr(data, 0, 1, seed_);
-    final long h1 = XxHash.hashLongArr(data, 0, 1, h0);
-    updateInternal(h0, h1);
-  }
-
-  /**
-   * Updates the filter with the provided String.
-   * The string is converted to a byte array using UTF8 encoding.
-   *
-   * <p>Note: this will not produce the same output hash values as the {@link #update(char[])}
-   * method and will generally be a little slower depending on the complexity of the UTF8 encoding.
-   * </p>
-   *
-   * @param item an item with which to update the filter
-   */
-  public void update(final String item) {
-    if (item == null || item.isEmpty()) { return; }
-    final byte[] strBytes = item.getBytes(StandardCharsets.UTF_8);
-    final long h0 = XxHash.hashByteArr(strBytes, 0, strBytes.length, seed_);
-    final long h1 = XxHash.hashByteArr(strBytes, 0, strBytes.length, h0);
-    updateInternal(h0, h1);
-  }
-
-  /**
-   * Updates the filter with the provided byte[].
-   * @param data an array with which to update the filter
-   */
-  public void update(final byte[] data) {
-    if (data == null) { return; }
-    final long h0 = XxHash.hashByteArr(data, 0, data.length, seed_);
-    final long h1 = XxHash.hashByteArr(data, 0, data.length, h0);
-    updateInternal(h0, h1);
-  }
-
-  /**
-   * Updates the filter with the provided char[].
-   * @param data an array with which to update the filter
-   */
-  public void update(final char[] data) {
-    if (data == null) { return; }
-    final long h0 = XxHash.hashCharArr(data, 0, data.length, seed_);
-    final long h1 = XxHash.hashCharArr(data, 0, data.length, h0);
-    updateInternal(h0, h1);
-  }
-
-  /**
-   * Updates the filter with the provided short[].
-   * @param data an array with which to update the filter
-   */
-  public void update(final short[] data) {
-    if (data == null) { return; }
-    final long h0 = XxHash.hashShortArr(data, 0, data.length, seed_);
-    final long h1 = XxHash.hashShortArr(data, 0, data.length, h0);
-    updateInternal(h0, h1);
-  }
-
-  /**
-   * Updates the filter with the provided int[].
-   * @param data an array with which to update the filter
-   */
-  public void update(final int[] data) {
-    if (data == null) { return; }
-    final long h0 = XxHash.hashIntArr(data, 0, data.length, seed_);
-    final long h1 = XxHash.hashIntArr(data, 0, data.length, h0);
-    updateInternal(h0, h1);
-  }
-
-  /**
-   * Updates the filter with the provided long[].
-   * @param data an array with which to update the filter
-   */
-  public void update(final long[] data) {
-    if (data == null) { return; }
-    final long h0 = XxHash.hashLongArr(data, 0, data.length, seed_);
-    final long h1 = XxHash.hashLongArr(data, 0, data.length, h0);
-    updateInternal(h0, h1);
-  }
-
-  /**
-   * Updates the filter with the data in the provided Memory.
-   * @param mem a Memory object with which to update the filter
-   */
-  public void update(final Memory mem) {
-    if (mem == null) { return; }
-    final long h0 = mem.xxHash64(0, mem.getCapacity(), seed_);
-    final long h1 = mem.xxHash64(0, mem.getCapacity(), h0);
-    updateInternal(h0, h1);
-  }
-
-  // Internal method to apply updates given pre-computed hashes
-  private void updateInternal(final long h0, final long h1) {
+  @Override
+  void updateInternal(final long h0, final long h1) {
     final long numBits = bitArray_.getCapacity();
     for (int i = 1; i <= numHashes_; ++i) {
       // right-shift to ensure non-negative value
@@ -377,134 +226,8 @@ public final class BloomFilter {
     }
   }
 
-  // QUERY-AND-UPDATE METHODS
-
-  /**
-   * Updates the filter with the provided long and
-   * returns the result from quering that value prior to the update.
-   * @param item an item with which to update the filter
-   * @return The query result prior to applying the update
-   */
-  public boolean queryAndUpdate(final long item) {
-    final long h0 = XxHash.hashLong(item, seed_);
-    final long h1 = XxHash.hashLong(item, h0);
-    return queryAndUpdateInternal(h0, h1);
-  }
-
-  /**
-   * Updates the filter with the provided double and
-   * returns the result from quering that value prior to the update.
-   * The double is canonicalized (NaN and +/- infinity) in the call.
-   * @param item an item with which to update the filter
-   * @return The query result prior to applying the update
-   */
-  public boolean queryAndUpdate(final double item) {
-    // canonicalize all NaN & +/- infinity forms
-    final long[] data = { Double.doubleToLongBits(item) };
-    final long h0 = XxHash.hashLongArr(data, 0, 1, seed_);
-    final long h1 = XxHash.hashLongArr(data, 0, 1, h0);
-    return queryAndUpdateInternal(h0, h1);
-  }
-
-  /**
-   * Updates the filter with the provided String and
-   * returns the result from quering that value prior to the update.
-   * The string is converted to a byte array using UTF8 encoding.
-   *
-   * <p>Note: this will not produce the same output hash values as the {@link #queryAndUpdate(char[])}
-   * method and will generally be a little slower depending on the complexity of the UTF8 encoding.
-   * </p>
-   *
-   * @param item an item with which to update the filter
-   * @return The query result prior to applying the update, or false if item is null
-   */
-  public boolean queryAndUpdate(final String item) {
-    if (item == null || item.isEmpty()) { return false; }
-    final byte[] strBytes = item.getBytes(StandardCharsets.UTF_8);
-    final long h0 = XxHash.hashByteArr(strBytes, 0, strBytes.length, seed_);
-    final long h1 = XxHash.hashByteArr(strBytes, 0, strBytes.length, h0);
-    return queryAndUpdateInternal(h0, h1);
-  }
-
-  /**
-   * Updates the filter with the provided byte[] and
-   * returns the result from quering that array prior to the update.
-   * @param data an array with which to update the filter
-   * @return The query result prior to applying the update, or false if data is null
-   */
-  public boolean queryAndUpdate(final byte[] data) {
-    final long h0 = XxHash.hashByteArr(data, 0, data.length, seed_);
-    final long h1 = XxHash.hashByteArr(data, 0, data.length, h0);
-    return queryAndUpdateInternal(h0, h1);
-  }
-
-  /**
-   * Updates the filter with the provided char[] and
-   * returns the result from quering that array prior to the update.
-   * @param data an array with which to update the filter
-   * @return The query result prior to applying the update, or false if data is null
-   */
-  public boolean queryAndUpdate(final char[] data) {
-    if (data == null) { return false; }
-    final long h0 = XxHash.hashCharArr(data, 0, data.length, seed_);
-    final long h1 = XxHash.hashCharArr(data, 0, data.length, h0);
-    return queryAndUpdateInternal(h0, h1);
-  }
-
-  /**
-   * Updates the filter with the provided short[] and
-   * returns the result from quering that array prior to the update.
-   * @param data an array with which to update the filter
-   * @return The query result prior to applying the update, or false if data is null
-   */
-  public boolean queryAndUpdate(final short[] data) {
-    if (data == null) { return false; }
-    final long h0 = XxHash.hashShortArr(data, 0, data.length, seed_);
-    final long h1 = XxHash.hashShortArr(data, 0, data.length, h0);
-    return queryAndUpdateInternal(h0, h1);
-  }
-
-  /**
-   * Updates the filter with the provided int[] and
-   * returns the result from quering that array prior to the update.
-   * @param data an array with which to update the filter
-   * @return The query result prior to applying the update, or false if data is null
-   */
-  public boolean queryAndUpdate(final int[] data) {
-    if (data == null) { return false; }
-    final long h0 = XxHash.hashIntArr(data, 0, data.length, seed_);
-    final long h1 = XxHash.hashIntArr(data, 0, data.length, h0);
-    return queryAndUpdateInternal(h0, h1);
-  }
-
-  /**
-   * Updates the filter with the provided long[] and
-   * returns the result from quering that array prior to the update.
-   * @param data an array with which to update the filter
-   * @return The query result prior to applying the update, or false if data is null
-   */
-  public boolean queryAndUpdate(final long[] data) {
-    if (data == null) { return false; }
-    final long h0 = XxHash.hashLongArr(data, 0, data.length, seed_);
-    final long h1 = XxHash.hashLongArr(data, 0, data.length, h0);
-    return queryAndUpdateInternal(h0, h1);
-  }
-
-  /**
-   * Updates the filter with the provided Memory and
-   * returns the result from quering that Memory prior to the update.
-   * @param mem an array with which to update the filter
-   * @return The query result prior to applying the update, or false if mem is null
-   */
-  public boolean queryAndUpdate(final Memory mem) {
-    if (mem == null) { return false; }
-    final long h0 = mem.xxHash64(0, mem.getCapacity(), seed_);
-    final long h1 = mem.xxHash64(0, mem.getCapacity(), h0);
-    return queryAndUpdateInternal(h0, h1);
-  }
-
-  // Internal query-and-update method given pre-computed hashes
-  private boolean queryAndUpdateInternal(final long h0, final long h1) {
+  @Override
+  boolean queryAndUpdateInternal(final long h0, final long h1) {
     final long numBits = bitArray_.getCapacity();
     boolean valueAlreadyExists = true;
     for (int i = 1; i <= numHashes_; ++i) {
@@ -515,161 +238,128 @@ public final class BloomFilter {
     return valueAlreadyExists;
   }
 
-  // QUERY METHODS
-  /**
-   * Queries the filter with the provided long and returns whether the
-   * value <em>might</em> have been seen previously. The filter's expected
-   * False Positive Probability determines the chances of a true result being
-   * a false positive. False negatives are never possible.
-   * @param item an item with which to query the filter
-   * @return The result of querying the filter with the given item
-   */
-  public boolean query(final long item) {
-    final long h0 = XxHash.hashLong(item, seed_);
-    final long h1 = XxHash.hashLong(item, h0);
-    return queryInternal(h0, h1);
-  }
-
-  /**
-   * Queries the filter with the provided double and returns whether the
-   * value <em>might</em> have been seen previously. The filter's expected
-   * False Positive Probability determines the chances of a true result being
-   * a false positive. False negatives are never possible. Double values are
-   * canonicalized (NaN and +/- infinity) before querying.
-   * @param item an item with which to query the filter
-   * @return The result of querying the filter with the given item
-   */
-  public boolean query(final double item) {
-    // canonicalize all NaN & +/- infinity forms
-    final long[] data = { Double.doubleToLongBits(item) };
-    final long h0 = XxHash.hashLongArr(data, 0, 1, seed_);
-    final long h1 = XxHash.hashLongArr(data, 0, 1, h0);
-    return queryInternal(h0, h1);
+  @Override
+  boolean queryInternal(final long h0, final long h1) {
+    final long numBits = bitArray_.getCapacity();
+    for (int i = 1; i <= numHashes_; ++i) {
+      final long hashIndex = ((h0 + i * h1) >>> 1) % numBits;
+      // returns old value of bit
+      if (!bitArray_.getBit(hashIndex)) {
+        return false;
+      }
+    }
+    return true;
   }
 
+  // BATCH QUERY METHODS
   /**
-   * Queries the filter with the provided double and returns whether the
-   * value <em>might</em> have been seen previously. The filter's expected
-   * False Positive Probability determines the chances of a true result being
-   * a false positive. False negatives are never possible.
-   * The string is converted to a byte array using UTF8 encoding.
+   * Queries the filter with each long in the given range and records whether each value
+   * <em>might</em> have been seen previously. The result for <i>items[offset + i]</i> is written to
+   * <i>results[i]</i> and is the same as that of {@link #query(long)}.
    *
-   * <p>Note: this will not produce the same output hash values as the {@link #update(char[])}
-   * method and will generally be a little slower depending on the complexity of the UTF8 encoding.
-   * </p>
+   * <p>In a loop of scalar queries each key's probes must resolve, often as cache misses on a
+   * filter larger than the CPU caches, before the branch for the next key. This method hashes a
+   * block of keys first and then issues the first probe of every key in the block, so those
+   * independent loads are in flight together and the processor overlaps their misses. Only the
+   * keys whose first probe finds a set bit go on to the remaining probes. This mostly benefits
+   * large filters queried with keys that are usually absent.</p>
    *
-   * @param item an item with which to query the filter
-   * @return The result of querying the filter with the given item, or false if item is null
-   */
-  public boolean query(final String item) {
-    if (item == null || item.isEmpty()) { return false; }
-    final byte[] strBytes = item.getBytes(StandardCharsets.UTF_8);
-    final long h0 = XxHash.hashByteArr(strBytes, 0, strBytes.length, seed_);
-    final long h1 = XxHash.hashByteArr(strBytes, 0, strBytes.length, h0);
-    return queryInternal(h0, h1);
-  }
-
-  /**
-   * Queries the filter with the provided byte[] and returns whether the
-   * array <em>might</em> have been seen previously. The filter's expected
-   * False Positive Probability determines the chances of a true result being
-   * a false positive. False negatives are never possible.
-   * @param data an array with which to query the filter
-   * @return The result of querying the filter with the given data, or false if data is null
-   */
-  public boolean query(final byte[] data) {
-    if (data == null) { return false; }
-    final long h0 = XxHash.hashByteArr(data, 0, data.length, seed_);
-    final long h1 = XxHash.hashByteArr(data, 0, data.length, h0);
-    return queryInternal(h0, h1);
-  }
-
-  /**
-   * Queries the filter with the provided char[] and returns whether the
-   * array <em>might</em> have been seen previously. The filter's expected
-   * False Positive Probability determines the chances of a true result being
-   * a false positive. False negatives are never possible.
-   * @param data an array with which to query the filter
-   * @return The result of querying the filter with the given data, or false if data is null
-   */
-  public boolean query(final char[] data) {
-    if (data == null) { return false; }
-    final long h0 = XxHash.hashCharArr(data, 0, data.length, seed_);
-    final long h1 = XxHash.hashCharArr(data, 0, data.length, h0);
-    return queryInternal(h0, h1);
-  }
-
-  /**
-   * Queries the filter with the provided short[] and returns whether the
-   * array <em>might</em> have been seen previously. The filter's expected
-   * False Positive Probability determines the chances of a true result being
-   * a false positive. False negatives are never possible.
-   * @param data an array with which to query the filter
-   * @return The result of querying the filter with the given data, or false if data is null
-   */
-  public boolean query(final short[] data) {
-    if (data == null) { return false; }
-    final long h0 = XxHash.hashShortArr(data, 0, data.length, seed_);
-    final long h1 = XxHash.hashShortArr(data, 0, data.length, h0);
-    return queryInternal(h0, h1);
-  }
-
-  /**
-   * Queries the filter with the provided int[] and returns whether the
-   * array <em>might</em> have been seen previously. The filter's expected
-   * False Positive Probability determines the chances of a true result being
-   * a false positive. False negatives are never possible.
-   * @param data an array with which to query the filter
-   * @return The result of querying the filter with the given data, or false if data is null
-   */
-  public boolean query(final int[] data) {
-    if (data == null) { return false; }
-    final long h0 = XxHash.hashIntArr(data, 0, data.length, seed_);
-    final long h1 = XxHash.hashIntArr(data, 0, data.length, h0);
-    return queryInternal(h0, h1);
-  }
-
-  /**
-   * Queries the filter with the provided long[] and returns whether the
-   * array <em>might</em> have been seen previously. The filter's expected
-   * False Positive Probability determines the chances of a true result being
-   * a false positive. False negatives are never possible.
-   * @param data an array with which to query the filter
-   * @return The result of querying the filter with the given data, or false if data is null
-   */
-  public boolean query(final long[] data) {
-    if (data == null) { return false; }
-    final long h0 = XxHash.hashLongArr(data, 0, data.length, seed_);
-    final long h1 = XxHash.hashLongArr(data, 0, data.length, h0);
-    return queryInternal(h0, h1);
+   * @param items the array of items with which to query the filter
+   * @param offset the index of the first item to query
+   * @param length the number of items to query
+   * @param results an array of at least <i>length</i> elements to receive the query results
+   * @return the number of items for which the query returned true
+   */
+  public int queryAll(final long[] items, final int offset, final int length, final boolean[] results) {
+    Objects.requireNonNull(items, "Parameter 'items' must not be null");
+    Objects.requireNonNull(results, "Parameter 'results' must not be null");
+    checkBounds(offset, length, items.length);
+    checkBounds(0, length, results.length);
+    final long[] h0 = new long[Math.min(length, QUERY_BLOCK_SIZE)];
+    final long[] h1 = new long[h0.length];
+    final int[] alive = new int[h0.length];
+    int count = 0;
+    for (int start = 0; start < length; start += QUERY_BLOCK_SIZE) {
+      final int blockSize = Math.min(QUERY_BLOCK_SIZE, length - start);
+      final int numAlive = queryBlock(items, offset + start, blockSize, h0, h1, alive);
+      Arrays.fill(results, start, start + blockSize, false);
+      for (int k = 0; k < numAlive; ++k) {
+        results[start + alive[k]] = true;
+      }
+      count += numAlive;
+    }
+    return count;
   }
 
   /**
-   * Queries the filter with the provided Memory and returns whether the
-   * data <em>might</em> have been seen previously. The filter's expected
-   * False Positive Probability determines the chances of a true result being
-   * a false positive. False negatives are never possible.
-   * @param mem a Memory array with which to query the filter
-   * @return The result of querying the filter with the given Memory, or false if data is null
-   */
-  public boolean query(final Memory mem) {
-    if (mem == null) { return false; }
-    final long h0 = mem.xxHash64(0, mem.getCapacity(), seed_);
-    final long h1 = mem.xxHash64(0, mem.getCapacity(), h0);
-    return queryInternal(h0, h1);
-  }
-
-  // Internal method to query the filter given pre-computed hashes
-  private boolean queryInternal(final long h0, final long h1) {
+   * Queries the filter with each long in the given range and records whether each value
+   * <em>might</em> have been seen previously as a bit set. The result for <i>items[offset + i]</i> is
+   * bit <i>(i &amp; 63)</i> of <i>resultBits[i &gt;&gt;&gt; 6]</i>. See
+   * {@link #queryAll(long[], int, int, boolean[])}.
+   *
+   * @param items the array of items with which to query the filter
+   * @param offset the index of the first item to query
+   * @param length the number of items to query
+   * @param resultBits an array of at least <i>ceil(length / 64)</i> elements to receive the query results
+   * @return the number of items for which the query returned true
+   */
+  public int queryAll(final long[] items, final int offset, final int length, final long[] resultBits) {
+    Objects.requireNonNull(items, "Parameter 'items' must not be null");
+    Objects.requireNonNull(resultBits, "Parameter 'resultBits' must not be null");
+    checkBounds(offset, length, items.length);
+    checkBounds(0, (length + 63L) >>> 6, resultBits.length);
+    final long[] h0 = new long[Math.min(length, QUERY_BLOCK_SIZE)];
+    final long[] h1 = new long[h0.length];
+    final int[] alive = new int[h0.length];
+    int count = 0;
+    // QUERY_BLOCK_SIZE is 64, so each block fills exactly one word of the result
+    for (int start = 0; start < length; start += QUERY_BLOCK_SIZE) {
+      final int blockSize = Math.min(QUERY_BLOCK_SIZE, length - start);
+      final int numAlive = queryBlock(items, offset + start, blockSize, h0, h1, alive);
+      long word = 0;
+      for (int k = 0; k < numAlive; ++k) {
+        word |= 1L << alive[k];
+      }
+      resultBits[start >>> 6] = word;
+      count += numAlive;
+    }
+    return count;
+  }
+
+  // Queries a block of items given scratch arrays for the hashes and the indices of the items
+  // that may be present. Returns the number of items for which the query is true, with their
+  // indices relative to start in the first entries of alive.
+  private int queryBlock(final long[] items, final int start, final int blockSize,
+      final long[] h0, final long[] h1, final int[] alive) {
+    for (int j = 0; j < blockSize; ++j) {
+      final long item = items[start + j];
+      h0[j] = XxHash.hashLong(item, seed_);
+      h1[j] = XxHash.hashLong(item, h0[j]);
+      alive[j] = j;
+    }
     final long numBits = bitArray_.getCapacity();
-    for (int i = 1; i <= numHashes_; ++i) {
-      final long hashIndex = ((h0 + i * h1) >>> 1) % numBits;
-      // returns old value of bit
-      if (!bitArray_.getBit(hashIndex)) {
-        return false;
+    // first probe for every key, with no dependencies between keys
+    int numAlive = 0;
+    for (int j = 0; j < blockSize; ++j) {
+      if (bitArray_.getBit(((h0[j] + h1[j]) >>> 1) % numBits)) {
+        alive[numAlive++] = j;
       }
     }
-    return true;
+    // remaining probes for the keys that survived
+    int next = 0;
+    for (int k = 0; k < numAlive; ++k) {
+      final int j = alive[k];
+      boolean found = true;
+      for (int i = 2; i <= numHashes_; ++i) {
+        if (!bitArray_.getBit(((h0[j] + i * h1[j]) >>> 1) % numBits)) {
+          found = false;
+          break;
+        }
+      }
+      if (found) { alive[next++] = j; }
+    }
+    numAlive = next;
+    return numAlive;
   }
 
   // OTHER OPERATIONS
@@ -723,10 +413,7 @@ public final class BloomFilter {
     return true;
   }
 
-  /**
-   * Returns the length of this BloomFilter when serialized, in bytes
-   * @return The length of this BloomFilter when serialized, in bytes
-   */
+  @Override
   public long getSerializedSizeBytes() {
     long sizeBytes = 2L * Long.BYTES; // basic sketch info + baseSeed
     sizeBytes += bitArray_.getSerializedSizeBytes();
@@ -765,77 +452,10 @@ public final class BloomFilter {
  * The raw BitArray bits, if non-empty start at byte 24.
  */
 
-  /**
-   * Serializes the current BloomFilter to an array of bytes.
-   *
-   * <p>Note: Method throws if the serialized size exceeds <code>Integer.MAX_VALUE</code>.</p>
-   * @return A serialized image of the current BloomFilter as byte[]
-   */
-  public byte[] toByteArray() {
-    final long sizeBytes = getSerializedSizeBytes();
-    if (sizeBytes > Integer.MAX_VALUE) {
-      throw new SketchesStateException("Cannot serialize a BloomFilter of this size using toByteArray(); use toLongArray() instead.");
-    }
-
-    final byte[] bytes = new byte[(int) sizeBytes];
-
-    if (wmem_ == null) {
-      final WritableBuffer wbuf = WritableMemory.writableWrap(bytes).asWritableBuffer();
-
-      final int numPreLongs = isEmpty() ? Family.BLOOMFILTER.getMinPreLongs() : Family.BLOOMFILTER.getMaxPreLongs();
-      wbuf.putByte((byte) numPreLongs);
-      wbuf.putByte((byte) SER_VER);
-      wbuf.putByte((byte) Family.BLOOMFILTER.getID());
-      wbuf.putByte((byte) (bitArray_.isEmpty() ? EMPTY_FLAG_MASK : 0));
-      wbuf.putShort(numHashes_);
-      wbuf.putShort((short) 0); // unused
-      wbuf.putLong(seed_);
-
-      ((HeapBitArray) bitArray_).writeToBuffer(wbuf);
-    } else {
-      wmem_.getByteArray(0, bytes, 0, (int) sizeBytes);
-      if (isEmpty()) {
-        bytes[FLAGS_BYTE] |= EMPTY_FLAG_MASK;
-      }
-    }
-    return bytes;
-  }
-
-  /**
-   * Serializes the current BloomFilter to an array of longs. Unlike {@link #toByteArray()},
-   * this method can handle any size filter.
-   *
-   * @return A serialized image of the current BloomFilter as long[]
-   */
-  public long[] toLongArray() {
-    final long sizeBytes = getSerializedSizeBytes();
-
-    final long[] longs = new long[(int) (sizeBytes >> 3)];
-    if (wmem_ == null) {
-      final WritableBuffer wbuf = WritableMemory.writableWrap(longs).asWritableBuffer();
-
-      final int numPreLongs = isEmpty() ? Family.BLOOMFILTER.getMinPreLongs() : Family.BLOOMFILTER.getMaxPreLongs();
-      wbuf.putByte((byte) numPreLongs);
-      wbuf.putByte((byte) SER_VER); // to do: add constant
-      wbuf.putByte((byte) Family.BLOOMFILTER.getID());
-      wbuf.putByte((byte) (bitArray_.isEmpty() ? EMPTY_FLAG_MASK : 0));
-      wbuf.putShort(numHashes_);
-      wbuf.putShort((short) 0); // unused
-      wbuf.putLong(seed_);
-
-      ((HeapBitArray) bitArray_).writeToBuffer(wbuf);
-    } else {
-      wmem_.getLongArray(0, longs, 0, (int) (sizeBytes >>> 3));
-      if (isEmpty()) {
-        longs[0] |= (EMPTY_FLAG_MASK << (FLAGS_BYTE << 3));
-      }
-    }
-    return longs;
-  }
-
-  // Throws an exception with the provided message if the given condition is false
-  private static void checkArgument(final boolean condition, final String message) {
-    if (condition) { throw new SketchesArgumentException(message); }
+  @Override
+  void writeHeapImage(final WritableBuffer wbuf) {
+    writePreamble(wbuf, Family.BLOOMFILTER, isEmpty(), 0, numHashes_, seed_);
+    bitArray_.writeToBuffer(wbuf);
   }
 
   @Override
@@ -221,6 +221,165 @@ public final class BloomFilterBuilder {
     return new BloomFilter(numBits, numHashes, seed, dstMem);
   }
 
+  /**
+   * Creates a new concurrent BloomFilter with an optimal number of bits and hash functions for the given inputs,
+   * using the provided base seed for the hash function.
+   * See {@link #createConcurrentBySize(long, int, long)}.
+   * @param maxDistinctItems The maximum expected number of distinct items to add to the filter
+   * @param targetFalsePositiveProb A desired false positive probability per item
+   * @param seed A base hash seed
+   * @return A new concurrent BloomFilter configured for the given input parameters
+   */
+  public static BloomFilter createConcurrentByAccuracy(final long maxDistinctItems,
+      final double targetFalsePositiveProb, final long seed) {
+    validateAccuracyInputs(maxDistinctItems, targetFalsePositiveProb);
+    final long numBits = suggestNumFilterBits(maxDistinctItems, targetFalsePositiveProb);
+    final short numHashes = suggestNumHashes(maxDistinctItems, numBits);
+    return new BloomFilter(numBits, numHashes, seed, true);
+  }
+
+  /**
+   * Creates a concurrent BloomFilter with given number of bits and number of hash functions,
+   * using the provided base seed for the hash function.
+   *
+   * <p>The update, queryAndUpdate and query methods of a concurrent filter may be called by any
+   * number of threads at once without external locking. Bits are set with an atomic OR and the
+   * number of bits used is kept in striped counters. The filter holds the same bits, and serializes
+   * to the same image, as a standard filter given the same items. The reset, union, intersect and
+   * invert methods, and serialization, must not run concurrently with updates.</p>
+   *
+   * @param numBits The size of the BloomFilter, in bits
+   * @param numHashes The number of hash functions to apply to items
+   * @param seed A base hash seed
+   * @return A new concurrent BloomFilter configured for the given input parameters
+   */
+  public static BloomFilter createConcurrentBySize(final long numBits, final int numHashes, final long seed) {
+    validateSizeInputs(numBits, numHashes);
+    return new BloomFilter(numBits, numHashes, seed, true);
+  }
+
+  /**
+   * Initializes a concurrent BloomFilter with given number of bits and number of hash functions,
+   * using the provided base seed for the hash function and writing into the provided WritableMemory.
+   * The WritableMemory must be off-heap or backed by a byte[], must be 8-byte aligned, and may be at
+   * most <code>Integer.MAX_VALUE</code> bytes. Off-heap memory must be allocated in a shared
+   * ResourceScope to be accessible from several threads. See {@link #createConcurrentBySize(long, int, long)}.
+   *
+   * @param numBits The size of the BloomFilter, in bits
+   * @param numHashes The number of hash functions to apply to items
+   * @param seed A base hash seed
+   * @param dstMem A WritableMemory to hold the initialized filter
+   * @return A new concurrent BloomFilter configured for the given input parameters
+   */
+  public static BloomFilter initializeConcurrentBySize(final long numBits, final int numHashes, final long seed,
+      final WritableMemory dstMem) {
+    validateSizeInputs(numBits, numHashes);
+
+    if (dstMem.getCapacity() < BloomFilter.getSerializedSize(numBits)) {
+      throw new SketchesArgumentException("Provided WritableMemory is insufficient to hold requested filter");
+    }
+
+    return new BloomFilter(numBits, numHashes, seed, true, dstMem);
+  }
+
+  /**
+   * Returns the minimum memory size, in bytes, needed for a serialized BlockedBloomFilter with the given number of
+   * bits, rounded up to a whole number of blocks. This is also the minimum size of a WritableMemory for in-place
+   * filter initialization.
+   * @param numBits The number of bits in the target BlockedBloomFilter's bit array.
+   * @return The size, in bytes, required to hold the specified BlockedBloomFilter when serialized
+   */
+  public static long getSerializedBlockedFilterSize(final long numBits) {
+    validateBlockedSizeInputs(numBits, 1); // dummy numHashes value
+    return BlockedBloomFilter.getSerializedSize(numBits);
+  }
+
+  /**
+   * Creates a new BlockedBloomFilter with the number of bits and hash functions that would be optimal for a standard
+   * BloomFilter with the given inputs, using the provided base seed for the hash function. The realized false
+   * positive probability of the blocked filter will be somewhat higher than the target.
+   * @param maxDistinctItems The maximum expected number of distinct items to add to the filter
+   * @param targetFalsePositiveProb A desired false positive probability per item
+   * @param seed A base hash seed
+   * @return A new BlockedBloomFilter configured for the given input parameters
+   */
+  public static BlockedBloomFilter createBlockedByAccuracy(final long maxDistinctItems,
+      final double targetFalsePositiveProb, final long seed) {
+    validateAccuracyInputs(maxDistinctItems, targetFalsePositiveProb);
+    final long numBits = suggestNumFilterBits(maxDistinctItems, targetFalsePositiveProb);
+    final short numHashes = suggestNumHashes(maxDistinctItems, numBits);
+    validateBlockedSizeInputs(numBits, numHashes);
+    return new BlockedBloomFilter(numBits, numHashes, false, seed);
+  }
+
+  /**
+   * Creates a BlockedBloomFilter with given number of bits and number of hash functions,
+   * using the provided base seed for the hash function.
+   *
+   * @param numBits The size of the filter, in bits, rounded up to a multiple of BlockedBloomFilter.BLOCK_BITS
+   * @param numHashes The number of hash functions to apply to items
+   * @param seed A base hash seed
+   * @return A new BlockedBloomFilter configured for the given input parameters
+   */
+  public static BlockedBloomFilter createBlockedBySize(final long numBits, final int numHashes, final long seed) {
+    validateBlockedSizeInputs(numBits, numHashes);
+    return new BlockedBloomFilter(numBits, numHashes, false, seed);
+  }
+
+  /**
+   * Creates a split-block BlockedBloomFilter with given number of bits, using the provided base seed for the
+   * hash function. Split-block filters always use BlockedBloomFilter.SPLIT_BLOCK_NUM_HASHES hash functions.
+   *
+   * @param numBits The size of the filter, in bits, rounded up to a multiple of BlockedBloomFilter.BLOCK_BITS
+   * @param seed A base hash seed
+   * @return A new BlockedBloomFilter configured for the given input parameters
+   */
+  public static BlockedBloomFilter createSplitBlockBySize(final long numBits, final long seed) {
+    validateBlockedSizeInputs(numBits, BlockedBloomFilter.SPLIT_BLOCK_NUM_HASHES);
+    return new BlockedBloomFilter(numBits, BlockedBloomFilter.SPLIT_BLOCK_NUM_HASHES, true, seed);
+  }
+
+  /**
+   * Initializes a BlockedBloomFilter with given number of bits and number of hash functions,
+   * using the provided base seed for the hash function and writing into the provided WritableMemory.
+   *
+   * @param numBits The size of the filter, in bits, rounded up to a multiple of BlockedBloomFilter.BLOCK_BITS
+   * @param numHashes The number of hash functions to apply to items
+   * @param seed A base hash seed
+   * @param dstMem A WritableMemory to hold the initialized filter
+   * @return A new BlockedBloomFilter configured for the given input parameters
+   */
+  public static BlockedBloomFilter initializeBlockedBySize(final long numBits, final int numHashes, final long seed,
+      final WritableMemory dstMem) {
+    validateBlockedSizeInputs(numBits, numHashes);
+
+    if (dstMem.getCapacity() < BlockedBloomFilter.getSerializedSize(numBits)) {
+      throw new SketchesArgumentException("Provided WritableMemory is insufficient to hold requested filter");
+    }
+
+    return new BlockedBloomFilter(numBits, numHashes, false, seed, dstMem);
+  }
+
+  /**
+   * Initializes a split-block BlockedBloomFilter with given number of bits, using the provided base seed for the
+   * hash function and writing into the provided WritableMemory.
+   *
+   * @param numBits The size of the filter, in bits, rounded up to a multiple of BlockedBloomFilter.BLOCK_BITS
+   * @param seed A base hash seed
+   * @param dstMem A WritableMemory to hold the initialized filter
+   * @return A new BlockedBloomFilter configured for the given input parameters
+   */
+  public static BlockedBloomFilter initializeSplitBlockBySize(final long numBits, final long seed,
+      final WritableMemory dstMem) {
+    validateBlockedSizeInputs(numBits, BlockedBloomFilter.SPLIT_BLOCK_NUM_HASHES);
+
+    if (dstMem.getCapacity() < BlockedBloomFilter.getSerializedSize(numBits)) {
+      throw new SketchesArgumentException("Provided WritableMemory is insufficient to hold requested filter");
+    }
+
+    return new BlockedBloomFilter(numBits, BlockedBloomFilter.SPLIT_BLOCK_NUM_HASHES, true, seed, dstMem);
+  }
+
   private static void validateAccuracyInputs(final long maxDistinctItems, final double targetFalsePositiveProb) {
     if (maxDistinctItems <= 0) {
       throw new SketchesArgumentException("maxDistinctItems must be strictly positive");
@@ -248,4 +407,23 @@ public final class BloomFilterBuilder {
               + ". Requested: " + numHashes);
     }
   }
+
+  private static void validateBlockedSizeInputs(final long numBits, final int numHashes) {
+    if (numBits <= 0) {
+      throw new SketchesArgumentException("Size of BlockedBloomFilter must be strictly positive. "
+              + "Requested: " + numBits);
+    }
+    if (numBits > BlockedBloomFilter.MAX_SIZE_BITS) {
+      throw new SketchesArgumentException("Size of BlockedBloomFilter must be <= "
+              + BlockedBloomFilter.MAX_SIZE_BITS + ". Requested: " + numBits);
+    }
+    if (numHashes < 1) {
+      throw new SketchesArgumentException("Must specify a strictly positive number of hash functions. "
+              + "Requested: " + numHashes);
+    }
+    if (numHashes > Short.MAX_VALUE) {
+      throw new SketchesArgumentException("Number of hashes cannot exceed " + Short.MAX_VALUE
+              + ". Requested: " + numHashes);
+    }
+  }
 }
@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.filters.bloomfilter;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.datasketches.common.SketchesArgumentException;
+import org.apache.datasketches.memory.WritableMemory;
+
+/**
+ * A BitArray in WritableMemory that may be updated by many threads at once.
+ *
+ * <p>The Memory API has no atomic operations, so the data words are accessed through a
+ * little-endian VarHandle on a ByteBuffer view of the same memory. The bit layout is therefore
+ * identical to that of DirectBitArray. Bits are set with an atomic OR, implemented with
+ * compare-and-set where the hardware has no direct equivalent, and the number of bits set is kept
+ * exact in a striped counter. The count stored in the memory image is left marked as unknown
+ * (-1) so that any other reader of the image recomputes it.</p>
+ *
+ * <p>The bulk operations reset(), union(), intersect() and invert() are not atomic and must not run
+ * concurrently with any other operation on the array.</p>
+ */
+final class ConcurrentDirectBitArray extends DirectBitArrayR {
+  private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+  private final ByteBuffer bb_;
+  private final LongAdder count_;
+
+  private ConcurrentDirectBitArray(final int dataLength, final WritableMemory wmem) {
+    super(dataLength, 0, wmem);
+
+    wmem_.putInt(0, dataLength_);
+    wmem_.putLong(NUM_BITS_OFFSET, -1L);
+    wmem_.clear(DATA_OFFSET, (long) dataLength_ * Long.BYTES);
+    count_ = new LongAdder();
+
+    // a ByteBuffer view is limited to Integer.MAX_VALUE bytes and is unavailable for memory
+    // wrapping a primitive array other than byte[]
+    final ByteBuffer bb;
+    try {
+      bb = wmem_.asByteBufferView(ByteOrder.LITTLE_ENDIAN);
+    } catch (final UnsupportedOperationException e) {
+      throw new SketchesArgumentException("Concurrent filters require direct or byte[]-backed WritableMemory "
+          + "of at most " + Integer.MAX_VALUE + " bytes");
+    }
+    if (bb.alignmentOffset((int) DATA_OFFSET, Long.BYTES) != 0) {
+      throw new SketchesArgumentException("Concurrent filters require the bit array to be 8-byte aligned");
+    }
+    bb_ = bb;
+  }
+
+  static ConcurrentDirectBitArray initialize(final long numBits, final WritableMemory wmem) {
+    if (numBits <= 0) {
+      throw new SketchesArgumentException("Number of bits must be strictly positive. Found: " + numBits);
+    }
+    if (numBits > MAX_BITS) {
+      throw new SketchesArgumentException("Maximum size of a single filter is " + MAX_BITS + " + bits. "
+              + "Requested: " + numBits);
+    }
+
+    final int arrayLength = (int) Math.ceil(numBits / 64.0); // we know it'll fit in an int based on above checks
+    final long requiredBytes = (2L + arrayLength) * Long.BYTES;
+    if (wmem.getCapacity() < requiredBytes) {
+      throw new SketchesArgumentException("Provided WritableMemory too small for requested array length. "
+        + "Requited: " + requiredBytes + ", provided capcity: " + wmem.getCapacity());
+    }
+
+    return new ConcurrentDirectBitArray(arrayLength, wmem.writableRegion(0, requiredBytes));
+  }
+
+  @Override
+  long getNumBitsSet() {
+    return count_.sum();
+  }
+
+  @Override
+  protected boolean isDirty() {
+    return false; // the count is always exact
+  }
+
+  @Override
+  public boolean isReadOnly() {
+    return false;
+  }
+
+  @Override
+  boolean getBit(final long index) {
+    return (getLong((int) (index >>> 6)) & (1L << index)) != 0;
+  }
+
+  @Override
+  void setBit(final long index) {
+    final int byteOffset = (int) (DATA_OFFSET + ((index >>> 6) << 3));
+    final long mask = 1L << index;
+    // skip the atomic write, and the cache line invalidation, if the bit is already set
+    if (((long) LONGS.getOpaque(bb_, byteOffset) & mask) == 0
+        && ((long) LONGS.getAndBitwiseOr(bb_, byteOffset, mask) & mask) == 0) {
+      count_.increment();
+    }
+  }
+
+  @Override
+  boolean getAndSetBit(final long index) {
+    final int byteOffset = (int) (DATA_OFFSET + ((index >>> 6) << 3));
+    final long mask = 1L << index;
+    if (((long) LONGS.getOpaque(bb_, byteOffset) & mask) != 0
+        || ((long) LONGS.getAndBitwiseOr(bb_, byteOffset, mask) & mask) != 0) {
+      return true; // already seen
+    }
+    count_.increment();
+    return false; // new set
+  }
+
+  @Override
+  protected long getLong(final int arrayIndex) {
+    return (long) LONGS.getOpaque(bb_, (int) DATA_OFFSET + (arrayIndex << 3));
+  }
+
+  @Override
+  protected void setLong(final int arrayIndex, final long value) {
+    wmem_.putLong(DATA_OFFSET + ((long) arrayIndex << 3), value);
+  }
+
+  @Override
+  void reset() {
+    wmem_.clear(DATA_OFFSET, (long) dataLength_ * Long.BYTES);
+    count_.reset();
+  }
+
+  @Override
+  void union(final BitArray other) {
+    if (getCapacity() != other.getCapacity()) {
+      throw new SketchesArgumentException("Cannot union bit arrays with unequal lengths");
+    }
+
+    long numBitsSet = 0;
+    for (int i = 0; i < dataLength_; ++i) {
+      final long val = getLong(i) | other.getLong(i);
+      numBitsSet += Long.bitCount(val);
+      setLong(i, val);
+    }
+    setCount(numBitsSet);
+  }
+
+  @Override
+  void intersect(final BitArray other) {
+    if (getCapacity() != other.getCapacity()) {
+      throw new SketchesArgumentException("Cannot intersect bit arrays with unequal lengths");
+    }
+
+    long numBitsSet = 0;
+    for (int i = 0; i < dataLength_; ++i) {
+      final long val = getLong(i) & other.getLong(i);
+      numBitsSet += Long.bitCount(val);
+      setLong(i, val);
+    }
+    setCount(numBitsSet);
+  }
+
+  @Override
+  void invert() {
+    long numBitsSet = 0;
+    for (int i = 0; i < dataLength_; ++i) {
+      final long val = ~getLong(i);
+      numBitsSet += Long.bitCount(val);
+      setLong(i, val);
+    }
+    setCount(numBitsSet);
+  }
+
+  private void setCount(final long numBitsSet) {
+    count_.reset();
+    count_.add(numBitsSet);
+  }
+}
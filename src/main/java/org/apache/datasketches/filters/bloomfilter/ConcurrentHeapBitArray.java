@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.filters.bloomfilter;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.datasketches.common.SketchesArgumentException;
+
+/**
+ * An on-heap BitArray that may be updated by many threads at once.
+ *
+ * <p>Bits are set with an atomic OR, so concurrent calls to setBit() and getAndSetBit() never lose
+ * an update. Because the atomic OR returns the previous word, each thread knows whether it set a
+ * new bit and the number of bits set is kept exact in a striped counter, which avoids contention
+ * on a single shared count. getBit() may run concurrently with updates.</p>
+ *
+ * <p>The bulk operations reset(), union(), intersect() and invert() are not atomic and must not run
+ * concurrently with any other operation on the array.</p>
+ */
+final class ConcurrentHeapBitArray extends BitArray {
+  private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+
+  private final LongAdder numBitsSet_;
+  private final long[] data_;
+
+  // creates an array of a given size
+  ConcurrentHeapBitArray(final long numBits) {
+    super();
+
+    if (numBits <= 0) {
+      throw new SketchesArgumentException("Number of bits must be strictly positive. Found: " + numBits);
+    }
+    if (numBits > MAX_BITS) {
+      throw new SketchesArgumentException("Number of bits may not exceed " + MAX_BITS + ". Found: " + numBits);
+    }
+
+    numBitsSet_ = new LongAdder();
+    data_ = new long[(int) Math.ceil(numBits / 64.0)];
+  }
+
+  @Override
+  protected boolean isDirty() {
+    return false; // the count is always exact
+  }
+
+  @Override
+  boolean hasMemory() {
+    return false;
+  }
+
+  @Override
+  boolean isDirect() {
+    return false;
+  }
+
+  @Override
+  boolean isReadOnly() { return false; }
+
+  @Override
+  boolean getBit(final long index) {
+    return ((long) LONGS.getOpaque(data_, (int) (index >>> 6)) & (1L << index)) != 0;
+  }
+
+  @Override
+  void setBit(final long index) {
+    final int offset = (int) (index >>> 6);
+    final long mask = 1L << index;
+    // skip the atomic write, and the cache line invalidation, if the bit is already set
+    if (((long) LONGS.getOpaque(data_, offset) & mask) == 0
+        && ((long) LONGS.getAndBitwiseOr(data_, offset, mask) & mask) == 0) {
+      numBitsSet_.increment();
+    }
+  }
+
+  @Override
+  boolean getAndSetBit(final long index) {
+    final int offset = (int) (index >>> 6);
+    final long mask = 1L << index;
+    if (((long) LONGS.getOpaque(data_, offset) & mask) != 0
+        || ((long) LONGS.getAndBitwiseOr(data_, offset, mask) & mask) != 0) {
+      return true; // already seen
+    }
+    numBitsSet_.increment();
+    return false; // new set
+  }
+
+  @Override
+  long getNumBitsSet() {
+    return numBitsSet_.sum();
+  }
+
+  @Override
+  long getCapacity() { return (long) data_.length * Long.SIZE; }
+
+  @Override
+  int getArrayLength() { return data_.length; }
+
+  @Override
+  void union(final BitArray other) {
+    if (getCapacity() != other.getCapacity()) {
+      throw new SketchesArgumentException("Cannot union bit arrays with unequal lengths");
+    }
+
+    long numBitsSet = 0;
+    for (int i = 0; i < data_.length; ++i) {
+      final long val = data_[i] | other.getLong(i);
+      numBitsSet += Long.bitCount(val);
+      data_[i] = val;
+    }
+    setNumBitsSet(numBitsSet);
+  }
+
+  @Override
+  void intersect(final BitArray other) {
+    if (getCapacity() != other.getCapacity()) {
+      throw new SketchesArgumentException("Cannot intersect bit arrays with unequal lengths");
+    }
+
+    long numBitsSet = 0;
+    for (int i = 0; i < data_.length; ++i) {
+      final long val = data_[i] & other.getLong(i);
+      numBitsSet += Long.bitCount(val);
+      data_[i] = val;
+    }
+    setNumBitsSet(numBitsSet);
+  }
+
+  @Override
+  void invert() {
+    long numBitsSet = 0;
+    for (int i = 0; i < data_.length; ++i) {
+      data_[i] = ~data_[i];
+      numBitsSet += Long.bitCount(data_[i]);
+    }
+    setNumBitsSet(numBitsSet);
+  }
+
+  @Override
+  protected long getLong(final int arrayIndex) {
+    return (long) LONGS.getOpaque(data_, arrayIndex);
+  }
+
+  @Override
+  protected void setLong(final int arrayIndex, final long value) {
+    data_[arrayIndex] = value;
+  }
+
+  // clears the array
+  @Override
+  void reset() {
+    Arrays.fill(data_, 0);
+    numBitsSet_.reset();
+  }
+
+  private void setNumBitsSet(final long numBitsSet) {
+    numBitsSet_.reset();
+    numBitsSet_.add(numBitsSet);
+  }
+}
@@ -200,6 +200,7 @@ final class HeapBitArray extends BitArray {
     }
   }
 
+  @Override
   void writeToBuffer(final WritableBuffer wbuf) {
     wbuf.putInt(data_.length);
     wbuf.putInt(0); // unused
@@ -81,6 +81,33 @@ public final class MurmurHash3 implements Serializable {
     return hashState.finalMix128(key, 0, Long.BYTES);
   }
 
+  /**
+   * Hash the given long into the given output array without allocating.
+   * The result is identical to {@link #hash(long, long)}. The mixing of a single long is done
+   * in local variables, so no hash state object is created.
+   *
+   * @param key The input long.
+   * @param seed A long valued seed.
+   * @param hashOut the array that receives the 128-bit hash. It must have a length of at least 2.
+   * @return the given hashOut array.
+   */
+  public static long[] hash(final long key, final long seed, final long[] hashOut) {
+    //HashState.finalMix128(key, 0, Long.BYTES) with h1 = h2 = seed; mixK2(0) is 0.
+    long h1 = seed ^ HashState.mixK1(key);
+    long h2 = seed;
+    h1 ^= Long.BYTES;
+    h2 ^= Long.BYTES;
+    h1 += h2;
+    h2 += h1;
+    h1 = HashState.finalMix64(h1);
+    h2 = HashState.finalMix64(h2);
+    h1 += h2;
+    h2 += h1;
+    hashOut[0] = h1;
+    hashOut[1] = h2;
+    return hashOut;
+  }
+
   //--Hash of long[]-------------------------------------------------------
   /**
    * Hash the given long[] array.
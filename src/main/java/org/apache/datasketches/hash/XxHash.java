@@ -19,6 +19,10 @@
 
 package org.apache.datasketches.hash;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
 import org.apache.datasketches.memory.Memory;
 
 /**
@@ -32,6 +36,15 @@ import org.apache.datasketches.memory.Memory;
  * @author Lee Rhodes
  */
 public class XxHash {
+  private static final long P1 = 0x9E3779B185EBCA87L;
+  private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+  private static final long P3 = 0x165667B19E3779F9L;
+  private static final long P4 = 0x85EBCA77C2B2AE63L;
+  private static final long P5 = 0x27D4EB2F165667C5L;
+  private static final VarHandle LONG_LE =
+      MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+  private static final VarHandle INT_LE =
+      MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
 
   /**
    * Compute the hash of the given Memory object.
@@ -56,4 +69,71 @@ public class XxHash {
     return org.apache.datasketches.memory.XxHash.hashLong(in, seed);
   }
 
+  /**
+   * Returns the 64-bit hash of the given region of a byte array.
+   * The result is identical to hashing the same bytes with {@link #hash(Memory, long, long, long)},
+   * but the array is read directly, so no Memory object is created for each call.
+   * @param arr the given byte array
+   * @param offsetBytes starting at this offset in bytes
+   * @param lengthBytes continuing for this number of bytes
+   * @param seed use this seed for the hash function
+   * @return the resulting 64-bit hash value.
+   */
+  public static long hashByteArr(final byte[] arr, final int offsetBytes, final int lengthBytes,
+      final long seed) {
+    final int end = offsetBytes + lengthBytes;
+    int pos = offsetBytes;
+    long hash;
+    if (lengthBytes >= 32) {
+      long v1 = seed + P1 + P2;
+      long v2 = seed + P2;
+      long v3 = seed;
+      long v4 = seed - P1;
+      final int limit = end - 32;
+      do {
+        v1 = round(v1, (long) LONG_LE.get(arr, pos));
+        v2 = round(v2, (long) LONG_LE.get(arr, pos + 8));
+        v3 = round(v3, (long) LONG_LE.get(arr, pos + 16));
+        v4 = round(v4, (long) LONG_LE.get(arr, pos + 24));
+        pos += 32;
+      } while (pos <= limit);
+      hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7)
+          + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+      hash = mergeRound(hash, v1);
+      hash = mergeRound(hash, v2);
+      hash = mergeRound(hash, v3);
+      hash = mergeRound(hash, v4);
+    } else {
+      hash = seed + P5;
+    }
+    hash += lengthBytes;
+    for (; pos + 8 <= end; pos += 8) {
+      hash ^= round(0, (long) LONG_LE.get(arr, pos));
+      hash = (Long.rotateLeft(hash, 27) * P1) + P4;
+    }
+    if (pos + 4 <= end) {
+      hash ^= ((int) INT_LE.get(arr, pos) & 0XFFFF_FFFFL) * P1;
+      hash = (Long.rotateLeft(hash, 23) * P2) + P3;
+      pos += 4;
+    }
+    for (; pos < end; pos++) {
+      hash ^= (arr[pos] & 0XFFL) * P5;
+      hash = Long.rotateLeft(hash, 11) * P1;
+    }
+    hash ^= hash >>> 33;
+    hash *= P2;
+    hash ^= hash >>> 29;
+    hash *= P3;
+    hash ^= hash >>> 32;
+    return hash;
+  }
+
+  private static long round(final long acc, final long input) {
+    return Long.rotateLeft(acc + (input * P2), 31) * P1;
+  }
+
+  private static long mergeRound(final long acc, final long val) {
+    return ((acc ^ round(0, val)) * P1) + P4;
+  }
+
 }
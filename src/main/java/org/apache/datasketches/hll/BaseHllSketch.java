@@ -20,13 +20,17 @@
 package org.apache.datasketches.hll;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.datasketches.common.Util.checkBounds;
 import static org.apache.datasketches.hash.MurmurHash3.hash;
 import static org.apache.datasketches.hll.HllUtil.HLL_HIP_RSE_FACTOR;
 import static org.apache.datasketches.hll.HllUtil.HLL_NON_HIP_RSE_FACTOR;
 import static org.apache.datasketches.hll.HllUtil.KEY_BITS_26;
 import static org.apache.datasketches.hll.HllUtil.KEY_MASK_26;
+import static org.apache.datasketches.thetacommon.ThetaUtil.checkUpdateHashLength;
+import static org.apache.datasketches.thetacommon.ThetaUtil.checkUpdateHashSeed;
 
 import java.nio.ByteBuffer;
+import java.util.Objects;
 
 import org.apache.datasketches.memory.Memory;
 import org.apache.datasketches.thetacommon.ThetaUtil;
@@ -401,9 +405,169 @@ abstract class BaseHllSketch {
     couponUpdate(coupon(hash(data, ThetaUtil.DEFAULT_UPDATE_SEED)));
   }
 
-  private static final int coupon(final long[] hash) {
-    final int addr26 = (int) ((hash[0] & KEY_MASK_26));
-    final int lz = Long.numberOfLeadingZeros(hash[1]);
+  /**
+   * Present a datum that has already been hashed by the caller with
+   * {@link org.apache.datasketches.hash.MurmurHash3 MurmurHash3} as a potential unique item.
+   * This produces the same result as calling one of the update methods with the original datum,
+   * and allows a single hash computation to drive several sketches, including the Theta and CPC
+   * sketches, which accept the same 128-bit hash.
+   *
+   * @param hash0 the first 64 bits of the 128-bit MurmurHash3 of the datum.
+   * @param hash1 the second 64 bits of the 128-bit MurmurHash3 of the datum.
+   * @param seed the seed used to compute the hash. HLL sketches always use the
+   * {@link org.apache.datasketches.thetacommon.ThetaUtil#DEFAULT_UPDATE_SEED}.
+   */
+  public void updateHash(final long hash0, final long hash1, final long seed) {
+    checkUpdateHashSeed(seed, ThetaUtil.DEFAULT_UPDATE_SEED);
+    couponUpdate(coupon(hash0, hash1));
+  }
+
+  /**
+   * Present a datum that has already been hashed by the caller with
+   * {@link org.apache.datasketches.hash.MurmurHash3 MurmurHash3} as a potential unique item.
+   * If the hash array is null or empty no update attempt is made and the method returns.
+   *
+   * @param hash the 128-bit MurmurHash3 of the datum as returned by the <i>hash</i> methods of
+   * {@link org.apache.datasketches.hash.MurmurHash3 MurmurHash3}.
+   * @param seed the seed used to compute the hash. HLL sketches always use the
+   * {@link org.apache.datasketches.thetacommon.ThetaUtil#DEFAULT_UPDATE_SEED}.
+   * @see #updateHash(long, long, long)
+   */
+  public void updateHash(final long[] hash, final long seed) {
+    if ((hash == null) || (hash.length == 0)) { return; }
+    checkUpdateHashLength(hash);
+    updateHash(hash[0], hash[1], seed);
+  }
+
+  /**
+   * Present this sketch with the given range of longs, each as a separate datum.
+   * This produces the same result as calling {@link #update(long)} for each item of the range,
+   * but hashes the items in blocks and then applies the whole block of coupons, which is
+   * considerably faster for columnar data.
+   *
+   * <p>Note: this is different from {@link #update(long[])}, which treats the whole array
+   * as a single datum.</p>
+   *
+   * @param items the given array of long items.
+   * @param offset the index of the first item to update
+   * @param length the number of items to update
+   */
+  public void updateAll(final long[] items, final int offset, final int length) {
+    Objects.requireNonNull(items, "Parameter 'items' must not be null");
+    checkBounds(offset, length, items.length);
+    final int[] coupons = new int[Math.min(length, UPDATE_BLOCK_SIZE)];
+    final long[] hashOut = new long[2];
+    for (int start = offset; start < offset + length; start += UPDATE_BLOCK_SIZE) {
+      final int numCoupons = Math.min(UPDATE_BLOCK_SIZE, offset + length - start);
+      for (int i = 0; i < numCoupons; i++) {
+        coupons[i] = coupon(hash(items[start + i], ThetaUtil.DEFAULT_UPDATE_SEED, hashOut));
+      }
+      couponUpdateAll(coupons, numCoupons);
+    }
+  }
+
+  /**
+   * Present this sketch with the given range of ints, each as a separate datum.
+   * This produces the same result as calling {@link #update(long)} for each item of the range
+   * widened to a long.
+   *
+   * <p>Note: this is different from {@link #update(int[])}, which treats the whole array
+   * as a single datum.</p>
+   *
+   * @param items the given array of int items.
+   * @param offset the index of the first item to update
+   * @param length the number of items to update
+   */
+  public void updateAll(final int[] items, final int offset, final int length) {
+    Objects.requireNonNull(items, "Parameter 'items' must not be null");
+    checkBounds(offset, length, items.length);
+    final int[] coupons = new int[Math.min(length, UPDATE_BLOCK_SIZE)];
+    final long[] hashOut = new long[2];
+    for (int start = offset; start < offset + length; start += UPDATE_BLOCK_SIZE) {
+      final int numCoupons = Math.min(UPDATE_BLOCK_SIZE, offset + length - start);
+      for (int i = 0; i < numCoupons; i++) {
+        coupons[i] = coupon(hash(items[start + i], ThetaUtil.DEFAULT_UPDATE_SEED, hashOut));
+      }
+      couponUpdateAll(coupons, numCoupons);
+    }
+  }
+
+  /**
+   * Present this sketch with the given range of doubles, each as a separate datum.
+   * This produces the same result as calling {@link #update(double)} for each item of the range,
+   * including the canonicalization of -0.0 and of NaN values.
+   *
+   * @param items the given array of double items.
+   * @param offset the index of the first item to update
+   * @param length the number of items to update
+   */
+  public void updateAll(final double[] items, final int offset, final int length) {
+    Objects.requireNonNull(items, "Parameter 'items' must not be null");
+    checkBounds(offset, length, items.length);
+    final int[] coupons = new int[Math.min(length, UPDATE_BLOCK_SIZE)];
+    final long[] hashOut = new long[2];
+    for (int start = offset; start < offset + length; start += UPDATE_BLOCK_SIZE) {
+      final int numCoupons = Math.min(UPDATE_BLOCK_SIZE, offset + length - start);
+      for (int i = 0; i < numCoupons; i++) {
+        final double d = items[start + i];
+        final long bits = Double.doubleToLongBits((d == 0.0) ? 0.0 : d); //canonicalize
+        coupons[i] = coupon(hash(bits, ThetaUtil.DEFAULT_UPDATE_SEED, hashOut));
+      }
+      couponUpdateAll(coupons, numCoupons);
+    }
+  }
+
+  /**
+   * Present this sketch with the given range of Strings, each as a separate datum.
+   * This produces the same result as calling {@link #update(String)} for each item of the range.
+   * Null or empty Strings are ignored.
+   *
+   * @param items the given array of String items.
+   * @param offset the index of the first item to update
+   * @param length the number of items to update
+   */
+  public void updateAll(final String[] items, final int offset, final int length) {
+    Objects.requireNonNull(items, "Parameter 'items' must not be null");
+    checkBounds(offset, length, items.length);
+    final int[] coupons = new int[Math.min(length, UPDATE_BLOCK_SIZE)];
+    for (int start = offset; start < offset + length; start += UPDATE_BLOCK_SIZE) {
+      final int blockLen = Math.min(UPDATE_BLOCK_SIZE, offset + length - start);
+      int numCoupons = 0;
+      for (int i = 0; i < blockLen; i++) {
+        final String datum = items[start + i];
+        if ((datum == null) || datum.isEmpty()) { continue; }
+        coupons[numCoupons++] = coupon(hash(datum.getBytes(UTF_8), ThetaUtil.DEFAULT_UPDATE_SEED));
+      }
+      couponUpdateAll(coupons, numCoupons);
+    }
+  }
+
+  /**
+   * The number of items hashed together by the updateAll methods before the coupons are
+   * applied to the sketch.
+   */
+  static final int UPDATE_BLOCK_SIZE = 256;
+
+  /**
+   * Applies the given coupons to this sketch. Subclasses override this to resolve the current
+   * mode once per block rather than once per coupon.
+   *
+   * @param coupons the given coupons, none of which is empty
+   * @param numCoupons the number of valid coupons at the start of the given array
+   */
+  void couponUpdateAll(final int[] coupons, final int numCoupons) {
+    for (int i = 0; i < numCoupons; i++) {
+      couponUpdate(coupons[i]);
+    }
+  }
+
+  static final int coupon(final long[] hash) {
+    return coupon(hash[0], hash[1]);
+  }
+
+  private static final int coupon(final long hash0, final long hash1) {
+    final int addr26 = (int) ((hash0 & KEY_MASK_26));
+    final int lz = Long.numberOfLeadingZeros(hash1);
     final int value = ((lz > 62 ? 62 : lz) + 1);
     return (value << KEY_BITS_26) | addr26;
   }
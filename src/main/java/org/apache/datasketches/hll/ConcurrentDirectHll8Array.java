@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.hll;
+
+import static org.apache.datasketches.hll.HllUtil.VAL_MASK_6;
+import static org.apache.datasketches.hll.PreambleUtil.HLL_BYTE_ARR_START;
+import static org.apache.datasketches.hll.PreambleUtil.insertOooFlag;
+import static org.apache.datasketches.hll.PreambleUtil.insertRebuildCurMinNumKxQFlag;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.apache.datasketches.common.SketchesArgumentException;
+import org.apache.datasketches.memory.WritableMemory;
+
+/**
+ * An HLL_8 array in WritableMemory that may be updated by many threads at once.
+ *
+ * <p>The Memory API has no atomic operations, so each register is raised with a compare-and-set
+ * of the little-endian long that holds it, through a VarHandle on a ByteBuffer view of the same
+ * memory. The memory image is identical to that of DirectHll8Array. As for ConcurrentHll8Array,
+ * the KxQ registers and the number of zero registers are kept current in striped counters and the
+ * array is always out-of-order. The counters are not written to the memory image, which instead
+ * keeps its rebuild flag set so that any sketch that later wraps or heapifies the image
+ * recomputes them from the registers.</p>
+ *
+ * <p>reset() must not run concurrently with any other operation.</p>
+ */
+final class ConcurrentDirectHll8Array extends DirectHll8Array {
+  private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+  private final ByteBuffer bb_;
+  private final ConcurrentKxQ kxq_;
+
+  private ConcurrentDirectHll8Array(final int lgConfigK, final WritableMemory wmem) {
+    super(lgConfigK, wmem);
+    kxq_ = new ConcurrentKxQ(lgConfigK);
+
+    // a ByteBuffer view is limited to Integer.MAX_VALUE bytes and is unavailable for memory
+    // wrapping a primitive array other than byte[]
+    final ByteBuffer bb;
+    try {
+      bb = wmem.asByteBufferView(ByteOrder.LITTLE_ENDIAN);
+    } catch (final UnsupportedOperationException e) {
+      throw new SketchesArgumentException("Concurrent sketches require direct or byte[]-backed WritableMemory "
+          + "of at most " + Integer.MAX_VALUE + " bytes");
+    }
+    if (bb.alignmentOffset(HLL_BYTE_ARR_START, Long.BYTES) != 0) {
+      throw new SketchesArgumentException("Concurrent sketches require the HLL array to be 8-byte aligned");
+    }
+    bb_ = bb;
+  }
+
+  /**
+   * Writes an empty HLL_8 image in HLL mode to the given memory and returns a concurrent array on it.
+   * @param lgConfigK the configured Lg K
+   * @param dstMem the destination memory, which must have at least the capacity given by
+   * {@link HllSketch#getMaxUpdatableSerializationBytes(int, TgtHllType)}
+   * @return a concurrent array on the given memory
+   */
+  static ConcurrentDirectHll8Array initialize(final int lgConfigK, final WritableMemory dstMem) {
+    final long minBytes = HllSketch.getMaxUpdatableSerializationBytes(lgConfigK, TgtHllType.HLL_8);
+    HllUtil.checkMemSize(minBytes, dstMem.getCapacity());
+    dstMem.clear(0, minBytes);
+    final DirectCouponList list = DirectCouponList.newInstance(lgConfigK, TgtHllType.HLL_8, dstMem);
+    DirectCouponList.promoteListOrSetToHll(list);
+    insertOooFlag(dstMem, true);
+    insertRebuildCurMinNumKxQFlag(dstMem, true);
+    return new ConcurrentDirectHll8Array(lgConfigK, dstMem);
+  }
+
+  @Override
+  HllSketchImpl copy() {
+    //a snapshot that is no longer concurrent, with KxQ rebuilt from the copied registers
+    final HllSketch snapshot = new HllSketch(Hll8Array.heapify(mem));
+    Union.checkRebuildCurMinNumKxQ(snapshot);
+    return snapshot.hllSketchImpl;
+  }
+
+  @Override
+  HllSketchImpl couponUpdate(final int coupon) {
+    final int newValue = HllUtil.getPairValue(coupon);
+    final int slotNo = HllUtil.getPairLow26(coupon) & ((1 << lgConfigK) - 1);
+    final int byteOffset = HLL_BYTE_ARR_START + (slotNo & ~7);
+    final int shift = (slotNo & 7) << 3;
+    long word = (long) LONGS.getOpaque(bb_, byteOffset);
+    int oldValue = (int) (word >>> shift) & VAL_MASK_6;
+    while (newValue > oldValue) {
+      final long newWord = (word & ~(0xFFL << shift)) | ((long) (newValue & VAL_MASK_6) << shift);
+      final long witness = (long) LONGS.compareAndExchange(bb_, byteOffset, word, newWord);
+      if (witness == word) {
+        kxq_.update(oldValue, newValue);
+        break;
+      }
+      word = witness; //another register of the same word may have changed
+      oldValue = (int) (word >>> shift) & VAL_MASK_6;
+    }
+    return this;
+  }
+
+  @Override
+  double getKxQ0() {
+    return kxq_.getKxQ0();
+  }
+
+  @Override
+  double getKxQ1() {
+    return kxq_.getKxQ1();
+  }
+
+  @Override
+  int getNumAtCurMin() {
+    return kxq_.getNumZeros();
+  }
+
+  @Override
+  boolean isEmpty() {
+    return kxq_.getNumZeros() == (1 << lgConfigK);
+  }
+
+  @Override
+  boolean isOutOfOrder() {
+    return true;
+  }
+
+  @Override
+  void putKxQ0(final double kxq0) {
+    kxq_.putKxQ0(kxq0);
+  }
+
+  @Override
+  void putKxQ1(final double kxq1) {
+    kxq_.putKxQ1(kxq1);
+  }
+
+  @Override
+  void putNumAtCurMin(final int numAtCurMin) {
+    kxq_.putNumZeros(numAtCurMin);
+  }
+
+  @Override
+  void putRebuildCurMinNumKxQFlag(final boolean rebuild) {
+    //the counters are never written to the image, so it always needs a rebuild
+  }
+
+  @Override
+  HllSketchImpl reset() {
+    return initialize(lgConfigK, wmem);
+  }
+
+}
@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.hll;
+
+import static org.apache.datasketches.hll.HllUtil.KEY_BITS_26;
+import static org.apache.datasketches.hll.HllUtil.VAL_MASK_6;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * An on-heap HLL_8 array that may be updated by many threads at once.
+ *
+ * <p>Each register is raised with a compare-and-set loop, so concurrent updates never lose a
+ * larger value. The thread whose compare-and-set succeeds knows both the old and the new value of
+ * the register, so the KxQ registers and the number of zero registers are kept current in striped
+ * counters. The HIP estimator depends on the order of the updates and is not kept: the array is
+ * always marked out-of-order and estimates use the composite estimator.</p>
+ *
+ * <p>Reading the estimate, the registers or serializing may run concurrently with updates and
+ * sees some recent state of the array. reset() must not run concurrently with any other
+ * operation.</p>
+ */
+final class ConcurrentHll8Array extends Hll8Array {
+  private static final VarHandle BYTES = MethodHandles.arrayElementVarHandle(byte[].class);
+
+  private final ConcurrentKxQ kxq_;
+
+  ConcurrentHll8Array(final int lgConfigK) {
+    super(lgConfigK);
+    kxq_ = new ConcurrentKxQ(lgConfigK);
+    oooFlag = true;
+  }
+
+  @Override
+  Hll8Array copy() {
+    //a snapshot that is no longer concurrent, with KxQ rebuilt to match the copied registers
+    final HllSketch snapshot = new HllSketch(new Hll8Array(this));
+    Union.checkRebuildCurMinNumKxQ(snapshot);
+    return (Hll8Array) snapshot.hllSketchImpl;
+  }
+
+  @Override
+  HllSketchImpl couponUpdate(final int coupon) {
+    final int newValue = coupon >>> KEY_BITS_26;
+    final int slotNo = coupon & ((1 << lgConfigK) - 1);
+    int oldValue = (byte) BYTES.getOpaque(hllByteArr, slotNo);
+    while (newValue > oldValue) {
+      final int witness = (byte) BYTES.compareAndExchange(hllByteArr, slotNo, (byte) oldValue,
+          (byte) (newValue & VAL_MASK_6));
+      if (witness == oldValue) {
+        kxq_.update(oldValue, newValue);
+        break;
+      }
+      oldValue = witness;
+    }
+    return this;
+  }
+
+  @Override
+  double getKxQ0() {
+    return kxq_.getKxQ0();
+  }
+
+  @Override
+  double getKxQ1() {
+    return kxq_.getKxQ1();
+  }
+
+  @Override
+  int getNumAtCurMin() {
+    return kxq_.getNumZeros();
+  }
+
+  @Override
+  boolean isEmpty() {
+    return kxq_.getNumZeros() == (1 << lgConfigK);
+  }
+
+  @Override
+  boolean isOutOfOrder() {
+    return true;
+  }
+
+  @Override
+  boolean isRebuildCurMinNumKxQFlag() {
+    //the counters may lag the registers in a serialized image, so readers rebuild them
+    return true;
+  }
+
+  @Override
+  void putKxQ0(final double kxq0) {
+    kxq_.putKxQ0(kxq0);
+  }
+
+  @Override
+  void putKxQ1(final double kxq1) {
+    kxq_.putKxQ1(kxq1);
+  }
+
+  @Override
+  void putNumAtCurMin(final int numAtCurMin) {
+    kxq_.putNumZeros(numAtCurMin);
+  }
+
+  @Override
+  void putRebuildCurMinNumKxQFlag(final boolean rebuild) {
+    //always rebuilt from a serialized image
+  }
+
+  @Override
+  HllSketchImpl reset() {
+    return new ConcurrentHll8Array(lgConfigK);
+  }
+
+}
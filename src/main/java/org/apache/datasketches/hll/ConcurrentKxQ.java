@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.hll;
+
+import static org.apache.datasketches.common.Util.invPow2;
+
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The KxQ registers and the number of zero registers of a concurrent HLL_8 array, kept in striped
+ * counters so that threads raising different registers do not contend on a single shared value.
+ * For HLL_8 curMin is always zero, so numAtCurMin is the number of zero registers.
+ */
+final class ConcurrentKxQ {
+  private final DoubleAdder kxq0_ = new DoubleAdder();
+  private final DoubleAdder kxq1_ = new DoubleAdder();
+  private final LongAdder numZeros_ = new LongAdder();
+
+  ConcurrentKxQ(final int lgConfigK) {
+    kxq0_.add(1 << lgConfigK);
+    numZeros_.add(1 << lgConfigK);
+  }
+
+  //Records that one register was raised from oldValue to newValue, as incrementalUpdateKxQ does.
+  void update(final int oldValue, final int newValue) {
+    if (newValue < 32) {
+      kxq0_.add(invPow2(newValue) - invPow2(oldValue));
+    } else if (oldValue >= 32) {
+      kxq1_.add(invPow2(newValue) - invPow2(oldValue));
+    } else {
+      kxq0_.add(-invPow2(oldValue));
+      kxq1_.add(invPow2(newValue));
+    }
+    if (oldValue == 0) { numZeros_.decrement(); }
+  }
+
+  double getKxQ0() {
+    return kxq0_.sum();
+  }
+
+  double getKxQ1() {
+    return kxq1_.sum();
+  }
+
+  int getNumZeros() {
+    return (int) numZeros_.sum();
+  }
+
+  void putKxQ0(final double kxq0) {
+    kxq0_.reset();
+    kxq0_.add(kxq0);
+  }
+
+  void putKxQ1(final double kxq1) {
+    kxq1_.reset();
+    kxq1_.add(kxq1);
+  }
+
+  void putNumZeros(final int numZeros) {
+    numZeros_.reset();
+    numZeros_.add(numZeros);
+  }
+}
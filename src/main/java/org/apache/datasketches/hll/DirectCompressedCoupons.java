@@ -0,0 +1,293 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.hll;
+
+import static org.apache.datasketches.common.Util.checkBounds;
+import static org.apache.datasketches.hll.HllUtil.noWriteAccess;
+import static org.apache.datasketches.hll.PreambleUtil.COMPRESSED_DATA_START;
+import static org.apache.datasketches.hll.PreambleUtil.COMPRESSED_PREINTS;
+import static org.apache.datasketches.hll.PreambleUtil.HASH_SET_INT_ARR_START;
+import static org.apache.datasketches.hll.PreambleUtil.HASH_SET_PREINTS;
+import static org.apache.datasketches.hll.PreambleUtil.LIST_INT_ARR_START;
+import static org.apache.datasketches.hll.PreambleUtil.LIST_PREINTS;
+import static org.apache.datasketches.hll.PreambleUtil.SER_VER_COMPRESSED;
+import static org.apache.datasketches.hll.PreambleUtil.extractCompactFlag;
+import static org.apache.datasketches.hll.PreambleUtil.extractCompressedBytes;
+import static org.apache.datasketches.hll.PreambleUtil.extractCompressedCount;
+import static org.apache.datasketches.hll.PreambleUtil.extractCurMode;
+import static org.apache.datasketches.hll.PreambleUtil.extractFamilyId;
+import static org.apache.datasketches.hll.PreambleUtil.extractLgArr;
+import static org.apache.datasketches.hll.PreambleUtil.extractLgK;
+import static org.apache.datasketches.hll.PreambleUtil.extractPreInts;
+import static org.apache.datasketches.hll.PreambleUtil.extractSerVer;
+import static org.apache.datasketches.hll.PreambleUtil.extractTgtHllType;
+
+import org.apache.datasketches.common.Family;
+import org.apache.datasketches.common.SketchesArgumentException;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
+
+/**
+ * A read-only LIST or SET mode sketch in a compressed coupons image, see the Compressed Coupons
+ * Layout in PreambleUtil. The coupons are decoded one at a time as they are iterated, so the
+ * image can be merged into a union or promoted without first being decoded into an int array.
+ */
+final class DirectCompressedCoupons extends AbstractCoupons {
+  private final Memory mem;
+  private final int couponCount;
+
+  private DirectCompressedCoupons(final int lgConfigK, final TgtHllType tgtHllType,
+      final CurMode curMode, final Memory mem) {
+    super(lgConfigK, tgtHllType, curMode);
+    this.mem = mem;
+    couponCount = extractCompressedCount(mem);
+  }
+
+  /**
+   * Wraps the given compressed coupons image.
+   * @param mem the given image, which must have a serialization version of SER_VER_COMPRESSED
+   * @return a read-only sketch implementation backed by the given image
+   */
+  static DirectCompressedCoupons wrap(final Memory mem) {
+    checkPreamble(mem);
+    return new DirectCompressedCoupons(extractLgK(mem), extractTgtHllType(mem), extractCurMode(mem), mem);
+  }
+
+  /**
+   * Heapifies the given compressed coupons image into a CouponList or CouponHashSet.
+   * @param mem the given image, which must have a serialization version of SER_VER_COMPRESSED
+   * @return an on-heap sketch implementation in the mode of the image
+   */
+  static HllSketchImpl heapify(final Memory mem) {
+    return wrap(mem).copy();
+  }
+
+  private static void checkPreamble(final Memory mem) {
+    checkBounds(0, COMPRESSED_DATA_START, mem.getCapacity());
+    HllUtil.checkLgK(extractLgK(mem));
+    final CurMode curMode = extractCurMode(mem);
+    if ((extractFamilyId(mem) != Family.HLL.getID())
+        || (extractSerVer(mem) != SER_VER_COMPRESSED)
+        || (extractPreInts(mem) != COMPRESSED_PREINTS)
+        || (curMode == CurMode.HLL)
+        || !extractCompactFlag(mem)
+        || (extractCompressedCount(mem) < 0)
+        || (extractCompressedBytes(mem) < 0)) {
+      throw new SketchesArgumentException("Possible Corruption, Invalid Preamble:"
+          + PreambleUtil.toString(mem));
+    }
+    checkBounds(COMPRESSED_DATA_START, extractCompressedBytes(mem), mem.getCapacity());
+  }
+
+  @Override //returns an on-heap List or Set
+  HllSketchImpl copy() {
+    return copyAs(tgtHllType);
+  }
+
+  @Override //returns an on-heap List or Set
+  HllSketchImpl copyAs(final TgtHllType tgtHllType) {
+    HllSketchImpl impl = (curMode == CurMode.LIST)
+        ? new CouponList(lgConfigK, tgtHllType, CurMode.LIST)
+        : new CouponHashSet(lgConfigK, tgtHllType);
+    final PairIterator itr = iterator();
+    while (itr.nextValid()) {
+      impl = impl.couponUpdate(itr.getPair());
+    }
+    return impl;
+  }
+
+  @Override
+  HllSketchImpl couponUpdate(final int coupon) {
+    noWriteAccess();
+    return this;
+  }
+
+  @Override
+  int getCompactSerializationBytes() {
+    return getMemDataStart() + (couponCount << 2);
+  }
+
+  @Override
+  int getCouponCount() {
+    return couponCount;
+  }
+
+  @Override
+  int[] getCouponIntArr() { //here only to satisfy the abstract, should not be used
+    return null;
+  }
+
+  @Override
+  int getLgCouponArrInts() {
+    return extractLgArr(mem);
+  }
+
+  @Override //of the standard serialization, which is what toByteArray produces
+  int getMemDataStart() {
+    return (curMode == CurMode.LIST) ? LIST_INT_ARR_START : HASH_SET_INT_ARR_START;
+  }
+
+  @Override
+  Memory getMemory() {
+    return mem;
+  }
+
+  @Override //of the standard serialization, which is what toByteArray produces
+  int getPreInts() {
+    return (curMode == CurMode.LIST) ? LIST_PREINTS : HASH_SET_PREINTS;
+  }
+
+  @Override
+  WritableMemory getWritableMemory() {
+    return null;
+  }
+
+  @Override
+  boolean isCompact() {
+    return true;
+  }
+
+  @Override
+  boolean isMemory() {
+    return true;
+  }
+
+  @Override
+  boolean isOffHeap() {
+    return mem.isDirect();
+  }
+
+  @Override
+  boolean isSameResource(final Memory mem) {
+    return this.mem.isSameResource(mem);
+  }
+
+  @Override
+  PairIterator iterator() {
+    return new CompressedPairIterator();
+  }
+
+  @Override
+  void mergeTo(final HllSketch that) {
+    final PairIterator itr = iterator();
+    while (itr.nextValid()) {
+      that.couponUpdate(itr.getPair());
+    }
+  }
+
+  @Override
+  HllSketchImpl reset() {
+    throw new SketchesArgumentException("Cannot reset a read-only sketch");
+  }
+
+  @Override
+  byte[] toCompactByteArray() {
+    return copy().toCompactByteArray();
+  }
+
+  @Override
+  byte[] toUpdatableByteArray() {
+    return copy().toUpdatableByteArray();
+  }
+
+  /**
+   * Decodes the coupons of the image in sorted order. Every pair is valid.
+   * Decoding never reads past the encoded bytes given by the preamble.
+   */
+  private final class CompressedPairIterator extends PairIterator {
+    private final int slotMask = (1 << lgConfigK) - 1;
+    private final long endOffset = COMPRESSED_DATA_START + extractCompressedBytes(mem);
+    private long offset = COMPRESSED_DATA_START;
+    private int index = -1;
+    private int key = 0;
+    private int pair;
+
+    @Override
+    int getIndex() {
+      return index;
+    }
+
+    @Override
+    int getKey() {
+      return key;
+    }
+
+    @Override
+    int getPair() {
+      return pair;
+    }
+
+    @Override
+    int getSlot() {
+      return key & slotMask;
+    }
+
+    @Override
+    int getValue() {
+      return HllUtil.getPairValue(pair);
+    }
+
+    @Override
+    boolean nextAll() {
+      if (++index >= couponCount) { return false; }
+      int token = 0;
+      int shift = 0;
+      byte b;
+      do {
+        if (shift > 28) { throw corrupt(); } //a token is at most 5 bytes
+        b = nextByte();
+        token |= (b & 0x7F) << shift;
+        shift += 7;
+      } while (b < 0);
+      key += token >>> 2;
+      final int lo = token & 3;
+      final int value = (lo < 3) ? lo + 1 : nextEscapedValue();
+      pair = HllUtil.pair(key, value);
+      return true;
+    }
+
+    private byte nextByte() {
+      if (offset >= endOffset) { throw corrupt(); }
+      return mem.getByte(offset++);
+    }
+
+    //a value larger than 3 follows its token in one byte
+    private int nextEscapedValue() {
+      final int value = nextByte();
+      if ((value <= 3) || (value > 63)) {
+        throw new SketchesArgumentException("Possible Corruption, coupon " + index + " of "
+            + couponCount + " has an escaped value of " + value + ", which is not in [4, 63]");
+      }
+      return value;
+    }
+
+    private SketchesArgumentException corrupt() {
+      return new SketchesArgumentException("Possible Corruption, coupon " + index + " of "
+          + couponCount + " is not within the " + (endOffset - COMPRESSED_DATA_START)
+          + " encoded bytes");
+    }
+
+    @Override
+    boolean nextValid() {
+      return nextAll();
+    }
+  }
+
+}
@@ -26,8 +26,10 @@ import static org.apache.datasketches.hll.HllUtil.KEY_BITS_26;
 import static org.apache.datasketches.hll.HllUtil.LG_AUX_ARR_INTS;
 import static org.apache.datasketches.hll.HllUtil.checkPreamble;
 import static org.apache.datasketches.hll.PreambleUtil.HLL_BYTE_ARR_START;
+import static org.apache.datasketches.hll.PreambleUtil.SER_VER_COMPRESSED;
 import static org.apache.datasketches.hll.PreambleUtil.extractCompactFlag;
 import static org.apache.datasketches.hll.PreambleUtil.extractLgK;
+import static org.apache.datasketches.hll.PreambleUtil.extractSerVer;
 import static org.apache.datasketches.hll.PreambleUtil.extractTgtHllType;
 
 import java.util.Objects;
@@ -168,6 +170,46 @@ public class HllSketch extends BaseHllSketch {
     hllSketchImpl = DirectCouponList.newInstance(lgConfigK, tgtHllType, dstMem);
   }
 
+  /**
+   * Returns a new on-heap HLL_8 sketch that many threads may update at the same time.
+   *
+   * <p>The sketch starts directly in HLL mode, without the sparse warm-up of other sketches, and
+   * each register is raised atomically so that no update is lost. The HIP estimator depends on
+   * the order of the updates, so this sketch is always out-of-order and its estimates and bounds
+   * come from the composite estimator, whose inputs are kept exact as the registers change.
+   * Estimates, bounds and serialization may be read while other threads update the sketch and
+   * reflect some recent state of it. {@link #reset()} must not run concurrently with any other
+   * operation, and {@link #copy()} returns a snapshot that is no longer concurrent.</p>
+   *
+   * @param lgConfigK The Log2 of K for the target HLL sketch. This value must be
+   * between 4 and 21 inclusively.
+   * @return a new on-heap concurrent HLL_8 sketch.
+   */
+  public static final HllSketch newConcurrent(final int lgConfigK) {
+    return new HllSketch(new ConcurrentHll8Array(HllUtil.checkLgK(lgConfigK)));
+  }
+
+  /**
+   * Returns a new HLL_8 sketch in the given WritableMemory that many threads may update at the
+   * same time. It behaves as the sketch returned by {@link #newConcurrent(int)}.
+   *
+   * <p>The image in <i>dstMem</i> is a valid updatable HLL_8 image at all times and may be
+   * heapified, which rebuilds the composite estimator from the registers. The given
+   * <i>dstMem</i> is checked for the required capacity as determined by
+   * {@link #getMaxUpdatableSerializationBytes(int, TgtHllType)}. It must be off-heap or backed by a
+   * byte array, no larger than 2GB, and off-heap memory must belong to a shared ResourceScope so
+   * that other threads may access it.</p>
+   *
+   * @param lgConfigK The Log2 of K for the target HLL sketch. This value must be
+   * between 4 and 21 inclusively.
+   * @param dstMem the destination memory for the sketch.
+   * @return a new concurrent HLL_8 sketch in the given WritableMemory.
+   */
+  public static final HllSketch newConcurrent(final int lgConfigK, final WritableMemory dstMem) {
+    Objects.requireNonNull(dstMem, "Destination Memory must not be null");
+    return new HllSketch(ConcurrentDirectHll8Array.initialize(HllUtil.checkLgK(lgConfigK), dstMem));
+  }
+
   /**
    * Copy constructor used by copy().
    * @param that another HllSketch
@@ -207,6 +249,9 @@ public class HllSketch extends BaseHllSketch {
   static final HllSketch heapify(final Memory srcMem, final boolean checkRebuild) {
     Objects.requireNonNull(srcMem, "Source Memory must not be null");
     checkBounds(0, 8, srcMem.getCapacity()); //need min 8 bytes
+    if (extractSerVer(srcMem) == SER_VER_COMPRESSED) {
+      return new HllSketch(DirectCompressedCoupons.heapify(srcMem));
+    }
     final CurMode curMode = checkPreamble(srcMem);
     final HllSketch heapSketch;
     if (curMode == CurMode.HLL) {
@@ -292,6 +337,9 @@ public class HllSketch extends BaseHllSketch {
   public static final HllSketch wrap(final Memory srcMem) {
     Objects.requireNonNull(srcMem, "Source Memory must not be null");
     checkBounds(0, 8, srcMem.getCapacity()); //need min 8 bytes
+    if (extractSerVer(srcMem) == SER_VER_COMPRESSED) {
+      return new HllSketch(DirectCompressedCoupons.wrap(srcMem));
+    }
     final int lgConfigK = extractLgK(srcMem);
     final TgtHllType tgtHllType = extractTgtHllType(srcMem);
 
@@ -417,6 +465,15 @@ public class HllSketch extends BaseHllSketch {
     return hllSketchImpl.isCompact();
   }
 
+  /**
+   * Returns true if this sketch may be updated by many threads at the same time.
+   * @return true if this sketch was created by one of the <i>newConcurrent</i> methods.
+   */
+  public boolean isConcurrent() {
+    final HllSketchImpl impl = hllSketchImpl;
+    return (impl instanceof ConcurrentHll8Array) || (impl instanceof ConcurrentDirectHll8Array);
+  }
+
   @Override
   public boolean isEmpty() {
     return hllSketchImpl.isEmpty();
@@ -466,6 +523,32 @@ public class HllSketch extends BaseHllSketch {
     return hllSketchImpl.toUpdatableByteArray();
   }
 
+  /**
+   * Serializes this sketch in a compressed form that is considerably smaller than
+   * {@link #toCompactByteArray()} while the sketch is in its sparse LIST or SET mode, which is
+   * where most small sketches remain. The coupons are sorted and delta encoded as variable-length
+   * integers, which takes about 2 to 4 bytes per coupon rather than 4, with the smaller sizes for
+   * the larger SET modes of large <i>lgConfigK</i>. Its preamble is 16 bytes, so a sketch with
+   * only a few coupons may be a few bytes larger than in compact form.
+   *
+   * <p>Once the sketch is in HLL mode this returns the same as {@link #toCompactByteArray()}.</p>
+   *
+   * <p>The compressed form has its own serialization version. It may be given to
+   * {@link #heapify(Memory)}, which restores the LIST or SET mode sketch, or to
+   * {@link #wrap(Memory)}, which returns a read-only sketch that decodes the coupons as they are
+   * read, so that it can be given to {@link Union#update(HllSketch)} without decoding it first.
+   * It cannot be given to {@link #writableWrap(WritableMemory)}.</p>
+   *
+   * @return this sketch in compressed form if in LIST or SET mode, otherwise in compact form.
+   */
+  public byte[] toCompressedByteArray() {
+    final HllSketchImpl impl = hllSketchImpl;
+    if (impl.getCurMode() == CurMode.HLL) {
+      return impl.toCompactByteArray();
+    }
+    return ToByteArrayImpl.toCompressedCouponByteArray((AbstractCoupons) impl);
+  }
+
   @Override
   public String toString(final boolean summary, final boolean detail, final boolean auxDetail,
       final boolean all) {
@@ -565,7 +648,19 @@ public class HllSketch extends BaseHllSketch {
   @Override
   void couponUpdate(final int coupon) {
     if ((coupon >>> KEY_BITS_26 ) == EMPTY) { return; }
-    hllSketchImpl = hllSketchImpl.couponUpdate(coupon);
+    final HllSketchImpl impl = hllSketchImpl.couponUpdate(coupon);
+    //only written on a change of mode, so threads updating a concurrent sketch do not contend
+    if (impl != hllSketchImpl) { hllSketchImpl = impl; }
+  }
+
+  @Override
+  void couponUpdateAll(final int[] coupons, final int numCoupons) {
+    //the current implementation, which changes only on promotion, is held locally for the block
+    HllSketchImpl impl = hllSketchImpl;
+    for (int i = 0; i < numCoupons; i++) {
+      impl = impl.couponUpdate(coupons[i]);
+    }
+    if (impl != hllSketchImpl) { hllSketchImpl = impl; }
   }
 
 }
@@ -0,0 +1,214 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.hll;
+
+import static org.apache.datasketches.hll.PreambleUtil.extractCurMode;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.datasketches.common.SketchesArgumentException;
+import org.apache.datasketches.memory.Memory;
+
+/**
+ * Computes the union of a large collection of HLL sketches in parallel using a fork-join tree
+ * reduction.
+ *
+ * <p>The inputs are split into batches. Each batch is merged into its own on-heap HLL_8
+ * {@link Union} by a worker thread, and the partial unions are then combined pairwise up the tree
+ * by the same register-max merge that {@link Union#update(HllSketch)} uses.</p>
+ *
+ * <p>The returned Union has the same registers, lgConfigK, mode and out-of-order flag, and
+ * therefore the same estimates and bounds, as a Union with the same lgMaxK that had been updated
+ * with each of the inputs in order. Because the HIP estimator depends on the order of the inputs,
+ * inputs with fewer than two sketches in HLL mode are merged sequentially on the calling thread.
+ * Only the unused HIP accumulator of an out-of-order result may differ.</p>
+ *
+ * <p>Sketch images given as Memory may be on or off-heap, including memory-mapped files. As they
+ * are read by several threads, off-heap images must belong to a shared ResourceScope.</p>
+ */
+public final class ParallelUnion {
+  /**
+   * The number of batches created per thread of the pool when the batch size is not specified.
+   * More batches than threads lets the fork-join pool balance inputs of uneven size.
+   */
+  static final int BATCHES_PER_THREAD = 4;
+
+  private final int lgMaxK_;
+  private final ForkJoinPool pool_;
+  private final int batchSize_;
+
+  /**
+   * Creates a new ParallelUnion that runs on the {@link ForkJoinPool#commonPool()} and chooses
+   * the batch size from the number of inputs and the parallelism of the pool.
+   * @param lgMaxK the maximum log-base-2 of <i>K</i> of the union, between 4 and 21 inclusively.
+   */
+  public ParallelUnion(final int lgMaxK) {
+    this(lgMaxK, ForkJoinPool.commonPool(), 0);
+  }
+
+  /**
+   * Creates a new ParallelUnion that runs on the given pool.
+   * @param lgMaxK the maximum log-base-2 of <i>K</i> of the union, between 4 and 21 inclusively.
+   * @param pool the ForkJoinPool that runs the merge tasks.
+   * @param batchSize the maximum number of inputs merged by one task before the inputs are split.
+   * If zero, the batch size is chosen from the number of inputs and the parallelism of the pool.
+   */
+  public ParallelUnion(final int lgMaxK, final ForkJoinPool pool, final int batchSize) {
+    lgMaxK_ = HllUtil.checkLgK(lgMaxK);
+    pool_ = Objects.requireNonNull(pool, "ForkJoinPool must not be null");
+    if (batchSize < 0) {
+      throw new SketchesArgumentException("Batch size must not be negative: " + batchSize);
+    }
+    batchSize_ = batchSize;
+  }
+
+  /**
+   * Returns an on-heap Union holding the union of the given sketches.
+   * Null and empty sketches are ignored, as they are by {@link Union#update(HllSketch)}.
+   * @param sketches the given sketches.
+   * @return an on-heap Union holding the union of the given sketches.
+   */
+  public Union union(final Collection<? extends HllSketch> sketches) {
+    Objects.requireNonNull(sketches, "Sketches must not be null");
+    return run(new ArrayList<>(sketches), (u, sk) -> u.update(sk), ParallelUnion::isHllMode);
+  }
+
+  /**
+   * Returns an on-heap Union holding the union of the sketches of the given stream.
+   * The stream is fully consumed before the merge starts.
+   * @param sketches the given stream of sketches.
+   * @return an on-heap Union holding the union of the given sketches.
+   */
+  public Union union(final Stream<? extends HllSketch> sketches) {
+    Objects.requireNonNull(sketches, "Sketches must not be null");
+    return run(sketches.collect(Collectors.toList()), (u, sk) -> u.update(sk), ParallelUnion::isHllMode);
+  }
+
+  /**
+   * Returns an on-heap Union holding the union of the given sketch images. Each image may be any
+   * form accepted by {@link HllSketch#wrap(Memory)}. The images are wrapped, not copied.
+   * @param images the given sketch images.
+   * @return an on-heap Union holding the union of the given sketch images.
+   */
+  public Union unionMemory(final Collection<? extends Memory> images) {
+    Objects.requireNonNull(images, "Images must not be null");
+    return run(new ArrayList<>(images), (u, mem) -> u.update(HllSketch.wrap(mem)), ParallelUnion::isHllMode);
+  }
+
+  /**
+   * Returns an on-heap Union holding the union of the sketch images of the given stream.
+   * The stream is fully consumed before the merge starts.
+   * @param images the given stream of sketch images.
+   * @return an on-heap Union holding the union of the given sketch images.
+   */
+  public Union unionMemory(final Stream<? extends Memory> images) {
+    Objects.requireNonNull(images, "Images must not be null");
+    return run(images.collect(Collectors.toList()), (u, mem) -> u.update(HllSketch.wrap(mem)),
+        ParallelUnion::isHllMode);
+  }
+
+  /**
+   * Returns the batch size used for the given number of inputs.
+   * @param numInputs the number of inputs
+   * @return the batch size used for the given number of inputs.
+   */
+  int getBatchSize(final int numInputs) {
+    if (batchSize_ > 0) { return batchSize_; }
+    final int numBatches = pool_.getParallelism() * BATCHES_PER_THREAD;
+    return Math.max(1, (numInputs + numBatches - 1) / numBatches);
+  }
+
+  private <T> Union run(final List<T> inputs, final BiConsumer<Union, T> unionFn,
+      final Predicate<T> isHllMode) {
+    int numHllMode = 0;
+    for (int i = 0; (i < inputs.size()) && (numHllMode < 2); i++) {
+      if (isHllMode.test(inputs.get(i))) { numHllMode++; }
+    }
+    if (numHllMode < 2) {
+      final Union union = new Union(lgMaxK_);
+      for (final T input : inputs) { unionFn.accept(union, input); }
+      return union;
+    }
+    return pool_.invoke(new UnionTask<>(lgMaxK_, inputs, 0, inputs.size(),
+        getBatchSize(inputs.size()), unionFn));
+  }
+
+  private static boolean isHllMode(final HllSketch sketch) {
+    return (sketch != null) && (sketch.getCurMode() == CurMode.HLL);
+  }
+
+  private static boolean isHllMode(final Memory mem) {
+    return extractCurMode(mem) == CurMode.HLL;
+  }
+
+  /**
+   * Merges a range of the inputs into one union, splitting the range in half until it is no
+   * larger than the batch size.
+   */
+  private static final class UnionTask<T> extends RecursiveTask<Union> {
+    private static final long serialVersionUID = 1L;
+    private final int lgMaxK;
+    private final transient List<T> inputs;
+    private final int start;
+    private final int end;
+    private final int batchSize;
+    private final transient BiConsumer<Union, T> unionFn;
+
+    UnionTask(final int lgMaxK, final List<T> inputs, final int start, final int end,
+        final int batchSize, final BiConsumer<Union, T> unionFn) {
+      this.lgMaxK = lgMaxK;
+      this.inputs = inputs;
+      this.start = start;
+      this.end = end;
+      this.batchSize = batchSize;
+      this.unionFn = unionFn;
+    }
+
+    @Override
+    protected Union compute() {
+      if ((end - start) <= batchSize) {
+        final Union union = new Union(lgMaxK);
+        for (int i = start; i < end; i++) {
+          unionFn.accept(union, inputs.get(i));
+        }
+        return union;
+      }
+      final int mid = (start + end) >>> 1;
+      final UnionTask<T> left = new UnionTask<>(lgMaxK, inputs, start, mid, batchSize, unionFn);
+      final UnionTask<T> right = new UnionTask<>(lgMaxK, inputs, mid, end, batchSize, unionFn);
+      left.fork();
+      final Union rightUnion = right.compute();
+      final Union leftUnion = left.join();
+      //the gadget of the right union is merged directly, without the copy made by getResult()
+      leftUnion.update(rightUnion.gadget);
+      return leftUnion;
+    }
+  }
+
+}
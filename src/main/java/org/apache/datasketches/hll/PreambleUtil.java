@@ -59,6 +59,23 @@ import org.apache.datasketches.memory.WritableMemory;
  * </pre>
  *
  * <pre>
+ * Compressed Coupons Layout, SerVer = 2, LIST or SET mode only, always compact
+ * Long || Start Byte Adr, Big Endian Illustration
+ * Adr:
+ *      ||    7   |    6   |    5   |    4   |    3   |    2   |    1   |    0   |
+ *  0   ||  Mode  |        | Flags  |  LgArr |   lgK  | FamID  | SerVer |  PI=4  |
+ *
+ *      ||   15   |   14   |   13   |   12   |   11   |   10   |    9   |    8   |
+ *  1   ||----------Encoded Bytes------------|-----------Coupon Count------------|
+ *
+ *      ||   23   |   22   |   21   |   20   |   19   |   18   |   17   |   16   |
+ *  2   ||...................................|---Start of Encoded Coupon Bytes---|
+ * </pre>
+ * The coupons are sorted by key, then value. Each is encoded as the unsigned varint of
+ * ((key - previous key) &lt;&lt; 2 | min(value - 1, 3)), followed by one byte holding the value if
+ * the value is greater than 3.
+ *
+ * <pre>
  * HllArray Layout
  * Long || Start Byte Adr, Big Endian Illustration
  * Adr:
@@ -122,6 +139,11 @@ final class PreambleUtil {
   static int HASH_SET_COUNT_INT             = 8;
   static int HASH_SET_INT_ARR_START         = 12;
 
+  //Compressed Coupons
+  static int COMPRESSED_COUNT_INT           = 8;
+  static int COMPRESSED_BYTES_INT           = 12;
+  static int COMPRESSED_DATA_START          = 16;
+
   //HLL
   static int HIP_ACCUM_DOUBLE               = 8;
   static int KXQ0_DOUBLE                    = 16;
@@ -144,9 +166,11 @@ final class PreambleUtil {
 
   //Other constants
   static final int SER_VER                  = 1;
+  static final int SER_VER_COMPRESSED       = 2;
   static final int FAMILY_ID                = 7;
   static final int LIST_PREINTS             = 2;
   static final int HASH_SET_PREINTS         = 3;
+  static final int COMPRESSED_PREINTS       = 4;
   static final int HLL_PREINTS              = 10;
   static final boolean NATIVE_ORDER_IS_BIG_ENDIAN  =
       (ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN);
@@ -267,6 +291,10 @@ final class PreambleUtil {
     wmem.putByte(SER_VER_BYTE, (byte) SER_VER);
   }
 
+  static void insertSerVerCompressed(final WritableMemory wmem) {
+    wmem.putByte(SER_VER_BYTE, (byte) SER_VER_COMPRESSED);
+  }
+
   static int extractFamilyId(final Memory mem) {
     return mem.getByte(FAMILY_BYTE) & 0XFF;
   }
@@ -340,6 +368,22 @@ final class PreambleUtil {
     wmem.putInt(HASH_SET_COUNT_INT, hashSetCnt);
   }
 
+  static int extractCompressedCount(final Memory mem) {
+    return mem.getInt(COMPRESSED_COUNT_INT);
+  }
+
+  static void insertCompressedCount(final WritableMemory wmem, final int count) {
+    wmem.putInt(COMPRESSED_COUNT_INT, count);
+  }
+
+  static int extractCompressedBytes(final Memory mem) {
+    return mem.getInt(COMPRESSED_BYTES_INT);
+  }
+
+  static void insertCompressedBytes(final WritableMemory wmem, final int bytes) {
+    wmem.putInt(COMPRESSED_BYTES_INT, bytes);
+  }
+
   static int extractNumAtCurMin(final Memory mem) {
     return mem.getInt(CUR_MIN_COUNT_INT);
   }
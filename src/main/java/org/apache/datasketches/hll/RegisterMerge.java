@@ -0,0 +1,197 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.hll;
+
+import static org.apache.datasketches.hll.PreambleUtil.HLL_BYTE_ARR_START;
+import static org.apache.datasketches.hll.TgtHllType.HLL_4;
+import static org.apache.datasketches.hll.TgtHllType.HLL_6;
+import static org.apache.datasketches.hll.TgtHllType.HLL_8;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
+
+/**
+ * Word-parallel (SWAR) kernels that merge the registers of an HLL mode sketch into an HLL_8 union
+ * gadget, eight registers per 64-bit word.
+ *
+ * <p>Each source word is first unpacked into eight byte lanes, one register per lane. HLL_4
+ * nibbles have curMin added and any AUX_TOKEN lanes are patched from the aux map, HLL_6 fields are
+ * spread out of their 48-bit groups and HLL_8 words are used as is. The lanes are then max-merged
+ * with the target word using borrow-free byte arithmetic, which relies on every register value
+ * being less than 128. Source sketches with a larger lgK are folded onto the target by masking the
+ * slot number, as the scalar merge does.</p>
+ *
+ * <p>The words of both sketches are read as little-endian longs, so these kernels are only used when
+ * any Memory involved is little-endian. Otherwise the caller falls back to the scalar merge.</p>
+ */
+final class RegisterMerge {
+  private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+  private static final long LANE_ONES = 0x0101_0101_0101_0101L;
+  private static final long LANE_HIGH_BITS = 0x8080_8080_8080_8080L;
+  private static final long NIBBLES = 0x0F0F_0F0F_0F0F_0F0FL;
+  private static final long AUX_LANES = 0x1010_1010_1010_1010L;
+  private static final long HLL6_GROUP_MASK = 0xFFFF_FFFF_FFFFL;
+
+  private RegisterMerge() { }
+
+  /**
+   * Returns true if the word-parallel kernels can merge the given source into the given HLL_8 target.
+   * @param src the source sketch, which must be in HLL mode
+   * @param tgt the HLL_8 target sketch, which must be in HLL mode
+   * @param srcLgK the lgConfigK of the source
+   * @param srcIsMem true if the source is backed by Memory
+   * @param tgtIsMem true if the target is backed by WritableMemory
+   * @return true if the word-parallel kernels apply
+   */
+  static boolean canMerge(final HllSketch src, final HllSketch tgt, final int srcLgK,
+      final boolean srcIsMem, final boolean tgtIsMem) {
+    if (tgt.getTgtHllType() != HLL_8) { return false; }
+    //HLL_6 is merged in groups of 32 registers
+    if ((src.getTgtHllType() == HLL_6) && (srcLgK < 5)) { return false; }
+    if (srcIsMem && !src.getMemory().isByteOrderCompatible(ByteOrder.LITTLE_ENDIAN)) { return false; }
+    if (tgtIsMem && !tgt.getWritableMemory().isByteOrderCompatible(ByteOrder.LITTLE_ENDIAN)) { return false; }
+    return true;
+  }
+
+  /**
+   * Merges the registers of the source into the HLL_8 target. The caller must first check
+   * {@link #canMerge(HllSketch, HllSketch, int, boolean, boolean)} and must afterwards rebuild the
+   * curMin, numAtCurMin and KxQ registers of the target.
+   * @param src the source sketch, which must be in HLL mode
+   * @param tgt the HLL_8 target sketch, which must be in HLL mode
+   * @param srcLgK the lgConfigK of the source
+   * @param tgtLgK the lgConfigK of the target, which must not exceed srcLgK
+   * @param srcIsMem true if the source is backed by Memory
+   * @param tgtIsMem true if the target is backed by WritableMemory
+   */
+  static void merge(final HllSketch src, final HllSketch tgt, final int srcLgK, final int tgtLgK,
+      final boolean srcIsMem, final boolean tgtIsMem) {
+    final byte[] srcArr = srcIsMem ? null : ((HllArray) src.hllSketchImpl).hllByteArr;
+    final Memory srcMem = srcIsMem ? src.getMemory() : null;
+    final byte[] tgtArr = tgtIsMem ? null : ((Hll8Array) tgt.hllSketchImpl).hllByteArr;
+    final WritableMemory tgtMem = tgtIsMem ? tgt.getWritableMemory() : null;
+    final int srcK = 1 << srcLgK;
+    final int tgtKmask = (1 << tgtLgK) - 1;
+
+    final TgtHllType srcType = src.getTgtHllType();
+    if (srcType == HLL_8) {
+      mergeHll8(srcArr, srcMem, srcK, tgtArr, tgtMem, tgtKmask);
+    } else if (srcType == HLL_4) {
+      final AbstractHllArray src4 = (AbstractHllArray) src.hllSketchImpl;
+      mergeHll4(srcArr, srcMem, srcK, src4.getCurMin(), src4.getAuxHashMap(), tgtArr, tgtMem, tgtKmask);
+    } else {
+      mergeHll6(srcArr, srcMem, srcK, tgtArr, tgtMem, tgtKmask);
+    }
+  }
+
+  private static void mergeHll8(final byte[] srcArr, final Memory srcMem, final int srcK,
+      final byte[] tgtArr, final WritableMemory tgtMem, final int tgtKmask) {
+    for (int slot = 0; slot < srcK; slot += 8) {
+      final long srcWord = getLong(srcArr, srcMem, slot);
+      maxInto(tgtArr, tgtMem, slot & tgtKmask, srcWord);
+    }
+  }
+
+  private static void mergeHll4(final byte[] srcArr, final Memory srcMem, final int srcK,
+      final int curMin, final AuxHashMap auxHashMap,
+      final byte[] tgtArr, final WritableMemory tgtMem, final int tgtKmask) {
+    final long curMinLanes = curMin * LANE_ONES;
+    //each source long holds 16 nibbles
+    for (int slot = 0; slot < srcK; slot += 16) {
+      final long word = getLong(srcArr, srcMem, slot >>> 1);
+      final long lo = word & NIBBLES;
+      final long hi = (word >>> 4) & NIBBLES;
+      final long nibs0 = spreadBytes(lo & 0xFFFF_FFFFL) | (spreadBytes(hi & 0xFFFF_FFFFL) << 8);
+      final long nibs1 = spreadBytes(lo >>> 32) | (spreadBytes(hi >>> 32) << 8);
+      maxInto(tgtArr, tgtMem, slot & tgtKmask, hll4Values(nibs0, curMinLanes, auxHashMap, slot));
+      maxInto(tgtArr, tgtMem, (slot + 8) & tgtKmask, hll4Values(nibs1, curMinLanes, auxHashMap, slot + 8));
+    }
+  }
+
+  private static void mergeHll6(final byte[] srcArr, final Memory srcMem, final int srcK,
+      final byte[] tgtArr, final WritableMemory tgtMem, final int tgtKmask) {
+    //each group of 3 source longs holds 32 six-bit registers
+    for (int slot = 0; slot < srcK; slot += 32) {
+      final int byteOffset = (slot * 3) >>> 2;
+      final long w0 = getLong(srcArr, srcMem, byteOffset);
+      final long w1 = getLong(srcArr, srcMem, byteOffset + 8);
+      final long w2 = getLong(srcArr, srcMem, byteOffset + 16);
+      maxInto(tgtArr, tgtMem, slot & tgtKmask, spreadHll6(w0));
+      maxInto(tgtArr, tgtMem, (slot + 8) & tgtKmask, spreadHll6((w0 >>> 48) | (w1 << 16)));
+      maxInto(tgtArr, tgtMem, (slot + 16) & tgtKmask, spreadHll6((w1 >>> 32) | (w2 << 32)));
+      maxInto(tgtArr, tgtMem, (slot + 24) & tgtKmask, spreadHll6(w2 >>> 16));
+    }
+  }
+
+  //Converts 8 HLL_4 nibbles, one per byte lane, to register values.
+  private static long hll4Values(final long nibs, final long curMinLanes, final AuxHashMap auxHashMap,
+      final int baseSlot) {
+    long values = nibs + curMinLanes;
+    //a lane holds AUX_TOKEN (15) exactly when adding one carries into bit 4 of the lane
+    long auxLanes = (nibs + LANE_ONES) & AUX_LANES;
+    while (auxLanes != 0) {
+      final int shift = Long.numberOfTrailingZeros(auxLanes) - 4;
+      final long value = auxHashMap.mustFindValueFor(baseSlot + (shift >>> 3));
+      values = (values & ~(0xFFL << shift)) | (value << shift);
+      auxLanes &= auxLanes - 1;
+    }
+    return values;
+  }
+
+  //Moves the 4 low bytes of the given value to the even byte lanes.
+  private static long spreadBytes(final long fourBytes) {
+    long t = (fourBytes | (fourBytes << 16)) & 0x0000_FFFF_0000_FFFFL;
+    t = (t | (t << 8)) & 0x00FF_00FF_00FF_00FFL;
+    return t;
+  }
+
+  //Moves the 8 six-bit fields in the low 48 bits of the given value to separate byte lanes.
+  private static long spreadHll6(final long group) {
+    final long x = group & HLL6_GROUP_MASK;
+    long t = (x & 0xFF_FFFFL) | ((x & 0xFFFF_FF00_0000L) << 8);
+    t = (t & 0x0000_0FFF_0000_0FFFL) | ((t & 0x00FF_F000_00FF_F000L) << 4);
+    t = (t & 0x003F_003F_003F_003FL) | ((t & 0x0FC0_0FC0_0FC0_0FC0L) << 2);
+    return t;
+  }
+
+  //Replaces the 8 target registers starting at tgtSlot with the lane-wise max of them and srcWord.
+  private static void maxInto(final byte[] tgtArr, final WritableMemory tgtMem, final int tgtSlot,
+      final long srcWord) {
+    final long tgtWord = getLong(tgtArr, tgtMem, tgtSlot);
+    //the high bit of each lane is set where src >= tgt, as no lane value reaches 128
+    final long ge = ((srcWord | LANE_HIGH_BITS) - tgtWord) & LANE_HIGH_BITS;
+    final long srcLanes = (ge - (ge >>> 7)) | ge;
+    final long maxWord = tgtWord ^ ((srcWord ^ tgtWord) & srcLanes);
+    if (tgtArr != null) {
+      LONGS.set(tgtArr, tgtSlot, maxWord);
+    } else {
+      tgtMem.putLong(HLL_BYTE_ARR_START + tgtSlot, maxWord);
+    }
+  }
+
+  private static long getLong(final byte[] arr, final Memory mem, final int byteOffset) {
+    return (arr != null) ? (long) LONGS.get(arr, byteOffset) : mem.getLong(HLL_BYTE_ARR_START + byteOffset);
+  }
+}
@@ -0,0 +1,495 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.hll;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.datasketches.common.Util.invPow2;
+import static org.apache.datasketches.hash.MurmurHash3.hash;
+import static org.apache.datasketches.hll.HllUtil.KEY_BITS_26;
+import static org.apache.datasketches.hll.HllUtil.VAL_MASK_6;
+
+import java.util.Objects;
+
+import org.apache.datasketches.common.Family;
+import org.apache.datasketches.common.SketchesArgumentException;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
+import org.apache.datasketches.thetacommon.ThetaUtil;
+
+/**
+ * A sliding-window HLL sketch that estimates the number of distinct items seen in the most recent
+ * buckets of time, for any window length up to a configured maximum.
+ *
+ * <p>Each item is presented together with the bucket it belongs to, for example the minute or the
+ * hour at which it was seen. Instead of the maximum rank of an HLL_8 register, each register keeps
+ * its list of future possible maxima: the (bucket, rank) pairs that could still be the register
+ * value of some window. A pair is dropped when a more recent item of the same register has a
+ * rank that is at least as large, or when it falls out of the maximum window. The list is ordered
+ * from the newest to the oldest bucket with strictly increasing ranks, so the value of the
+ * register for a window is the rank of the oldest pair still inside it.</p>
+ *
+ * <p>An estimate for any window length is therefore answered in a single pass over the registers,
+ * without keeping a sketch per bucket and without rebuilding their union.
+ * {@link #getResult(int)} returns the equivalent HLL_8 sketch of a window, which may be merged
+ * with other sketches by a {@link Union}. Its registers are exactly those of the union of HLL_8
+ * sketches of the buckets in the window, and as the order of the items is not kept its estimates
+ * are those of the composite estimator.</p>
+ *
+ * <p>Each register holds at most 16 pairs, which is 64 bytes per register. The expected length
+ * of a list is about half the base-2 log of the number of items per register in the maximum
+ * window, so a list is only full for extremely large windows; the oldest pair is then dropped,
+ * which can only lower the estimates of the longest windows.</p>
+ *
+ * <p>Buckets are given as non-negative longs and may arrive out of order within the maximum
+ * window. Items of buckets older than the maximum window, relative to the latest bucket seen, are
+ * ignored. The sketch may live on the Java heap or in a WritableMemory, whose image may be wrapped
+ * again later. It is not thread-safe.</p>
+ */
+public final class SlidingHllSketch {
+  /**
+   * The largest maximum window, in buckets.
+   */
+  public static final int MAX_WINDOW_BUCKETS = 1 << 24;
+
+  static final int ENTRIES_PER_REGISTER = 16;
+
+  // Memory image. Each entry is an int of the low 26 bits of its bucket above a 6-bit rank.
+  // An entry of zero marks the end of a list.
+  //   byte 0: preamble ints; byte 1: serialization version; byte 2: family ID; byte 3: lgConfigK
+  //   byte 4: log2 of the entries per register; byte 5: flags
+  //   int 8: maximum window in buckets
+  //   long 16: latest bucket
+  //   byte 24: 2^lgConfigK registers of ENTRIES_PER_REGISTER entries
+  private static final int PREAMBLE_INTS = 6;
+  private static final int SER_VER = 1;
+  private static final int PREAMBLE_INTS_BYTE = 0;
+  private static final int SER_VER_BYTE = 1;
+  private static final int FAMILY_BYTE = 2;
+  private static final int LG_K_BYTE = 3;
+  private static final int LG_ENTRIES_BYTE = 4;
+  private static final int FLAGS_BYTE = 5;
+  private static final int MAX_WINDOW_INT = 8;
+  private static final int LATEST_BUCKET_LONG = 16;
+  private static final int REGISTERS_START = 24;
+  private static final int EMPTY_FLAG_MASK = 4;
+  private static final int LG_ENTRIES = 4;
+
+  private static final int BUCKET_BITS = 26;
+  private static final int BUCKET_MASK = (1 << BUCKET_BITS) - 1;
+  private static final int REGISTER_BYTES = ENTRIES_PER_REGISTER * Integer.BYTES;
+
+  private final int lgConfigK_;
+  private final int maxWindow_;
+  private final WritableMemory wmem_;
+  private final boolean memory_;
+  private final int[] scratch_ = new int[ENTRIES_PER_REGISTER + 1];
+  private long latestBucket_;
+  private boolean empty_;
+
+  /**
+   * Constructs a new sketch on the Java heap.
+   * @param lgConfigK the log-base-2 of <i>K</i>, the number of registers, between 4 and 21
+   * inclusively
+   * @param maxWindowBuckets the longest window, in buckets, that estimates may be asked for,
+   * between 1 and {@link #MAX_WINDOW_BUCKETS} inclusively
+   */
+  public SlidingHllSketch(final int lgConfigK, final int maxWindowBuckets) {
+    this(WritableMemory.allocate(getSerializationBytes(lgConfigK)), false, lgConfigK, maxWindowBuckets);
+  }
+
+  private SlidingHllSketch(final WritableMemory wmem, final boolean memory, final int lgConfigK,
+      final int maxWindowBuckets) {
+    checkMaxWindow(maxWindowBuckets);
+    final long bytes = getSerializationBytes(lgConfigK);
+    HllUtil.checkMemSize(bytes, wmem.getCapacity());
+    wmem.clear(0, bytes);
+    wmem.putByte(PREAMBLE_INTS_BYTE, (byte) PREAMBLE_INTS);
+    wmem.putByte(SER_VER_BYTE, (byte) SER_VER);
+    wmem.putByte(FAMILY_BYTE, (byte) Family.HLL.getID());
+    wmem.putByte(LG_K_BYTE, (byte) lgConfigK);
+    wmem.putByte(LG_ENTRIES_BYTE, (byte) LG_ENTRIES);
+    wmem.putByte(FLAGS_BYTE, (byte) EMPTY_FLAG_MASK);
+    wmem.putInt(MAX_WINDOW_INT, maxWindowBuckets);
+    lgConfigK_ = lgConfigK;
+    maxWindow_ = maxWindowBuckets;
+    wmem_ = wmem;
+    memory_ = memory;
+    latestBucket_ = 0;
+    empty_ = true;
+  }
+
+  private SlidingHllSketch(final WritableMemory wmem, final boolean memory) {
+    checkPreamble(wmem);
+    lgConfigK_ = wmem.getByte(LG_K_BYTE);
+    maxWindow_ = wmem.getInt(MAX_WINDOW_INT);
+    wmem_ = wmem;
+    memory_ = memory;
+    latestBucket_ = wmem.getLong(LATEST_BUCKET_LONG);
+    empty_ = (wmem.getByte(FLAGS_BYTE) & EMPTY_FLAG_MASK) != 0;
+  }
+
+  /**
+   * Writes a new empty sketch to the given WritableMemory and returns a sketch on it.
+   * @param lgConfigK the log-base-2 of <i>K</i>, the number of registers, between 4 and 21
+   * inclusively
+   * @param maxWindowBuckets the longest window, in buckets, that estimates may be asked for,
+   * between 1 and {@link #MAX_WINDOW_BUCKETS} inclusively
+   * @param dstMem the destination memory, which must have at least the capacity given by
+   * {@link #getSerializationBytes(int)}
+   * @return a new sketch on the given memory
+   */
+  public static SlidingHllSketch initialize(final int lgConfigK, final int maxWindowBuckets,
+      final WritableMemory dstMem) {
+    Objects.requireNonNull(dstMem, "Destination Memory must not be null");
+    return new SlidingHllSketch(dstMem, true, lgConfigK, maxWindowBuckets);
+  }
+
+  /**
+   * Wraps the given WritableMemory, which must hold the image of a sliding sketch. Updates of the
+   * returned sketch are written to the memory.
+   * @param srcMem the memory holding the image of a sliding sketch
+   * @return a sketch on the given memory
+   */
+  public static SlidingHllSketch writableWrap(final WritableMemory srcMem) {
+    Objects.requireNonNull(srcMem, "Source Memory must not be null");
+    return new SlidingHllSketch(srcMem, true);
+  }
+
+  /**
+   * Returns a sketch on the Java heap that is a copy of the image in the given Memory.
+   * @param srcMem the memory holding the image of a sliding sketch
+   * @return a sketch on the Java heap
+   */
+  public static SlidingHllSketch heapify(final Memory srcMem) {
+    Objects.requireNonNull(srcMem, "Source Memory must not be null");
+    checkPreamble(srcMem);
+    final int bytes = getSerializationBytes(srcMem.getByte(LG_K_BYTE));
+    final WritableMemory wmem = WritableMemory.allocate(bytes);
+    srcMem.copyTo(0, wmem, 0, bytes);
+    return new SlidingHllSketch(wmem, false);
+  }
+
+  /**
+   * Returns a sketch on the Java heap that is a copy of the given image.
+   * @param byteArray the image of a sliding sketch
+   * @return a sketch on the Java heap
+   */
+  public static SlidingHllSketch heapify(final byte[] byteArray) {
+    return heapify(Memory.wrap(byteArray));
+  }
+
+  /**
+   * Returns the number of bytes of a sketch with the given lgConfigK, on the heap or in memory.
+   * @param lgConfigK the log-base-2 of <i>K</i>, between 4 and 21 inclusively
+   * @return the number of bytes of a sketch with the given lgConfigK
+   */
+  public static int getSerializationBytes(final int lgConfigK) {
+    return REGISTERS_START + ((1 << HllUtil.checkLgK(lgConfigK)) * REGISTER_BYTES);
+  }
+
+  /**
+   * Present the given long as a potential unique item seen in the given bucket.
+   * @param bucket the non-negative bucket of the item
+   * @param datum the given long datum
+   */
+  public void update(final long bucket, final long datum) {
+    final long[] data = { datum };
+    couponUpdate(bucket, BaseHllSketch.coupon(hash(data, ThetaUtil.DEFAULT_UPDATE_SEED)));
+  }
+
+  /**
+   * Present the given String as a potential unique item seen in the given bucket. The string is
+   * converted to a byte array using UTF8 encoding. If the string is null or empty no update
+   * attempt is made and the method returns.
+   * @param bucket the non-negative bucket of the item
+   * @param datum the given String
+   */
+  public void update(final long bucket, final String datum) {
+    if ((datum == null) || datum.isEmpty()) { return; }
+    couponUpdate(bucket, BaseHllSketch.coupon(hash(datum.getBytes(UTF_8), ThetaUtil.DEFAULT_UPDATE_SEED)));
+  }
+
+  /**
+   * Present the given byte array as a potential unique item seen in the given bucket. If the
+   * byte array is null or empty no update attempt is made and the method returns.
+   * @param bucket the non-negative bucket of the item
+   * @param data the given byte array
+   */
+  public void update(final long bucket, final byte[] data) {
+    if ((data == null) || (data.length == 0)) { return; }
+    couponUpdate(bucket, BaseHllSketch.coupon(hash(data, ThetaUtil.DEFAULT_UPDATE_SEED)));
+  }
+
+  /**
+   * Moves the end of the windows to the given bucket, if it is later than the latest bucket seen.
+   * This lets the windows slide forward through buckets without any items.
+   * @param bucket the non-negative bucket that ends the windows
+   */
+  public void advance(final long bucket) {
+    checkBucket(bucket);
+    if (empty_) {
+      empty_ = false;
+      wmem_.putByte(FLAGS_BYTE, (byte) 0);
+    } else if (bucket <= latestBucket_) {
+      return;
+    } else if ((bucket - latestBucket_) >= maxWindow_) {
+      //everything has expired
+      wmem_.clear(REGISTERS_START, (long) (1 << lgConfigK_) * REGISTER_BYTES);
+    } else if ((bucket >>> (BUCKET_BITS - 2)) != (latestBucket_ >>> (BUCKET_BITS - 2))) {
+      //expire the entries of every register once per 2^24 buckets, so that the low 26 bits of
+      //the bucket of any entry are always within 2^26 buckets of the latest bucket
+      latestBucket_ = bucket;
+      expireAll();
+    }
+    latestBucket_ = bucket;
+    wmem_.putLong(LATEST_BUCKET_LONG, bucket);
+  }
+
+  /**
+   * Returns an estimate of the number of distinct items in the given number of buckets that end
+   * with the latest bucket.
+   * @param windowBuckets the length of the window, between 1 and the maximum window inclusively
+   * @return the estimate of the number of distinct items in the window
+   */
+  public double getEstimate(final int windowBuckets) {
+    return getResult(windowBuckets).getEstimate();
+  }
+
+  /**
+   * Returns the approximate lower error bound of the estimate of the given window.
+   * @param windowBuckets the length of the window, between 1 and the maximum window inclusively
+   * @param numStdDev the number of standard deviations, which may be 1, 2 or 3
+   * @return the lower bound of the estimate of the window
+   */
+  public double getLowerBound(final int windowBuckets, final int numStdDev) {
+    return getResult(windowBuckets).getLowerBound(numStdDev);
+  }
+
+  /**
+   * Returns the approximate upper error bound of the estimate of the given window.
+   * @param windowBuckets the length of the window, between 1 and the maximum window inclusively
+   * @param numStdDev the number of standard deviations, which may be 1, 2 or 3
+   * @return the upper bound of the estimate of the window
+   */
+  public double getUpperBound(final int windowBuckets, final int numStdDev) {
+    return getResult(windowBuckets).getUpperBound(numStdDev);
+  }
+
+  /**
+   * Returns an on-heap HLL_8 sketch of the given number of buckets that end with the latest
+   * bucket. Its registers are those of the union of HLL_8 sketches of the buckets in the window.
+   * @param windowBuckets the length of the window, between 1 and the maximum window inclusively
+   * @return an HLL_8 sketch of the window
+   */
+  public HllSketch getResult(final int windowBuckets) {
+    if ((windowBuckets < 1) || (windowBuckets > maxWindow_)) {
+      throw new SketchesArgumentException("Window must be between 1 and " + maxWindow_
+          + " buckets: " + windowBuckets);
+    }
+    final int k = 1 << lgConfigK_;
+    final Hll8Array arr = new Hll8Array(lgConfigK_);
+    int numZeros = 0;
+    double kxq0 = k;
+    double kxq1 = 0;
+    for (int slot = 0; slot < k; slot++) {
+      final int value = empty_ ? 0 : getRegisterValue(slot, windowBuckets);
+      if (value == 0) {
+        numZeros++;
+      } else {
+        arr.hllByteArr[slot] = (byte) value;
+        kxq0 -= 1.0; //the register leaves value zero, whose 1.0 is in kxq0
+        if (value < 32) { kxq0 += invPow2(value); }
+        else            { kxq1 += invPow2(value); }
+      }
+    }
+    if (numZeros == k) { return new HllSketch(lgConfigK_, TgtHllType.HLL_8); }
+    arr.putOutOfOrder(true);
+    arr.putKxQ0(kxq0);
+    arr.putKxQ1(kxq1);
+    arr.putNumAtCurMin(numZeros);
+    return new HllSketch(arr);
+  }
+
+  /**
+   * Gets the lgConfigK.
+   * @return the lgConfigK.
+   */
+  public int getLgConfigK() {
+    return lgConfigK_;
+  }
+
+  /**
+   * Returns the longest window, in buckets, that estimates may be asked for.
+   * @return the maximum window in buckets
+   */
+  public int getMaxWindowBuckets() {
+    return maxWindow_;
+  }
+
+  /**
+   * Returns the latest bucket seen, which ends every window.
+   * @return the latest bucket seen, or zero if the sketch is empty
+   */
+  public long getLatestBucket() {
+    return latestBucket_;
+  }
+
+  /**
+   * Returns true if no bucket has been seen since the sketch was created or reset.
+   * @return true if the sketch is empty
+   */
+  public boolean isEmpty() {
+    return empty_;
+  }
+
+  /**
+   * Returns true if the sketch is in a Memory given by the caller, and false if it is on the
+   * Java heap.
+   * @return true if the sketch is in a Memory given by the caller
+   */
+  public boolean isMemory() {
+    return memory_;
+  }
+
+  /**
+   * Resets the sketch to empty, keeping its lgConfigK and maximum window.
+   */
+  public void reset() {
+    wmem_.clear(REGISTERS_START, (long) (1 << lgConfigK_) * REGISTER_BYTES);
+    wmem_.putByte(FLAGS_BYTE, (byte) EMPTY_FLAG_MASK);
+    wmem_.putLong(LATEST_BUCKET_LONG, 0);
+    latestBucket_ = 0;
+    empty_ = true;
+  }
+
+  /**
+   * Serializes the sketch to a byte array, which may be given to
+   * {@link #heapify(byte[])} or wrapped.
+   * @return the image of the sketch
+   */
+  public byte[] toByteArray() {
+    final byte[] bytes = new byte[getSerializationBytes(lgConfigK_)];
+    wmem_.getByteArray(0, bytes, 0, bytes.length);
+    return bytes;
+  }
+
+  void couponUpdate(final long bucket, final int coupon) {
+    advance(bucket);
+    final long age = latestBucket_ - bucket;
+    if (age >= maxWindow_) { return; } //too old for any window
+    final int slot = coupon & ((1 << lgConfigK_) - 1);
+    final int rank = coupon >>> KEY_BITS_26;
+    final long offset = REGISTERS_START + ((long) slot * REGISTER_BYTES);
+
+    //entries from the newest bucket, ranks strictly increasing. Collect the entries that are
+    //newer than the item, failing fast if one of them has at least the same rank.
+    final int[] entries = scratch_;
+    int n = 0;
+    int i = 0;
+    int entry;
+    while ((i < ENTRIES_PER_REGISTER) && ((entry = wmem_.getInt(offset + ((long) i * Integer.BYTES))) != 0)) {
+      final long entryAge = age(entry);
+      if (entryAge >= maxWindow_) { break; } //this and all older entries have expired
+      if (entryAge <= age) {
+        if ((entry & VAL_MASK_6) >= rank) { return; } //dominated by an item no older
+        if (entryAge < age) { entries[n++] = entry; }
+        //else an item of the same bucket and a smaller rank, dominated by the item
+      } else if ((entry & VAL_MASK_6) > rank) {
+        break; //keep this and all older entries
+      }
+      //else an older entry of no larger rank, dominated by the item
+      i++;
+    }
+    entries[n++] = (int) ((bucket & BUCKET_MASK) << 6) | rank;
+    //the remaining older entries, until the list is full
+    while ((i < ENTRIES_PER_REGISTER) && (n < ENTRIES_PER_REGISTER)
+        && ((entry = wmem_.getInt(offset + ((long) i * Integer.BYTES))) != 0)) {
+      if (age(entry) >= maxWindow_) { break; }
+      entries[n++] = entry;
+      i++;
+    }
+    for (int j = 0; j < ENTRIES_PER_REGISTER; j++) {
+      wmem_.putInt(offset + ((long) j * Integer.BYTES), (j < n) ? entries[j] : 0);
+    }
+  }
+
+  private int getRegisterValue(final int slot, final int windowBuckets) {
+    final long offset = REGISTERS_START + ((long) slot * REGISTER_BYTES);
+    int value = 0;
+    for (int i = 0; i < ENTRIES_PER_REGISTER; i++) {
+      final int entry = wmem_.getInt(offset + ((long) i * Integer.BYTES));
+      if ((entry == 0) || (age(entry) >= windowBuckets)) { break; }
+      value = entry & VAL_MASK_6;
+    }
+    return value;
+  }
+
+  private void expireAll() {
+    final int k = 1 << lgConfigK_;
+    for (int slot = 0; slot < k; slot++) {
+      final long offset = REGISTERS_START + ((long) slot * REGISTER_BYTES);
+      for (int i = 0; i < ENTRIES_PER_REGISTER; i++) {
+        final long entryOffset = offset + ((long) i * Integer.BYTES);
+        final int entry = wmem_.getInt(entryOffset);
+        if (entry == 0) { break; }
+        if (age(entry) >= maxWindow_) {
+          wmem_.clear(entryOffset, (long) (ENTRIES_PER_REGISTER - i) * Integer.BYTES);
+          break;
+        }
+      }
+    }
+  }
+
+  //the number of buckets from the bucket of the given entry to the latest bucket
+  private long age(final int entry) {
+    return (latestBucket_ - (entry >>> 6)) & BUCKET_MASK;
+  }
+
+  private static void checkBucket(final long bucket) {
+    if (bucket < 0) {
+      throw new SketchesArgumentException("Bucket must not be negative: " + bucket);
+    }
+  }
+
+  private static void checkMaxWindow(final int maxWindowBuckets) {
+    if ((maxWindowBuckets < 1) || (maxWindowBuckets > MAX_WINDOW_BUCKETS)) {
+      throw new SketchesArgumentException("Maximum window must be between 1 and "
+          + MAX_WINDOW_BUCKETS + " buckets: " + maxWindowBuckets);
+    }
+  }
+
+  private static void checkPreamble(final Memory mem) {
+    if (mem.getCapacity() < REGISTERS_START) {
+      throw new SketchesArgumentException("Memory too small for a sliding HLL sketch: " + mem.getCapacity());
+    }
+    final int preInts = mem.getByte(PREAMBLE_INTS_BYTE);
+    final int serVer = mem.getByte(SER_VER_BYTE);
+    final int famId = mem.getByte(FAMILY_BYTE);
+    final int lgEntries = mem.getByte(LG_ENTRIES_BYTE);
+    if ((preInts != PREAMBLE_INTS) || (serVer != SER_VER) || (famId != Family.HLL.getID())
+        || (lgEntries != LG_ENTRIES)) {
+      throw new SketchesArgumentException("Not a sliding HLL sketch image: preInts=" + preInts
+          + ", serVer=" + serVer + ", familyId=" + famId + ", lgEntries=" + lgEntries);
+    }
+    HllUtil.checkMemSize(getSerializationBytes(mem.getByte(LG_K_BYTE)), mem.getCapacity());
+    checkMaxWindow(mem.getInt(MAX_WINDOW_INT));
+  }
+
+}
@@ -21,10 +21,15 @@ package org.apache.datasketches.hll;
 
 import static org.apache.datasketches.hll.AbstractCoupons.find;
 import static org.apache.datasketches.hll.HllUtil.LG_AUX_ARR_INTS;
+import static org.apache.datasketches.hll.HllUtil.VAL_MASK_6;
 import static org.apache.datasketches.hll.PreambleUtil.AUX_COUNT_INT;
+import static org.apache.datasketches.hll.PreambleUtil.COMPRESSED_DATA_START;
+import static org.apache.datasketches.hll.PreambleUtil.COMPRESSED_PREINTS;
 import static org.apache.datasketches.hll.PreambleUtil.HLL_BYTE_ARR_START;
 import static org.apache.datasketches.hll.PreambleUtil.insertAuxCount;
 import static org.apache.datasketches.hll.PreambleUtil.insertCompactFlag;
+import static org.apache.datasketches.hll.PreambleUtil.insertCompressedBytes;
+import static org.apache.datasketches.hll.PreambleUtil.insertCompressedCount;
 import static org.apache.datasketches.hll.PreambleUtil.insertCurMin;
 import static org.apache.datasketches.hll.PreambleUtil.insertCurMode;
 import static org.apache.datasketches.hll.PreambleUtil.insertEmptyFlag;
@@ -42,8 +47,11 @@ import static org.apache.datasketches.hll.PreambleUtil.insertOooFlag;
 import static org.apache.datasketches.hll.PreambleUtil.insertPreInts;
 import static org.apache.datasketches.hll.PreambleUtil.insertRebuildCurMinNumKxQFlag;
 import static org.apache.datasketches.hll.PreambleUtil.insertSerVer;
+import static org.apache.datasketches.hll.PreambleUtil.insertSerVerCompressed;
 import static org.apache.datasketches.hll.PreambleUtil.insertTgtHllType;
 
+import java.util.Arrays;
+
 import org.apache.datasketches.common.SketchesStateException;
 import org.apache.datasketches.memory.Memory;
 import org.apache.datasketches.memory.WritableMemory;
@@ -219,6 +227,53 @@ class ToByteArrayImpl {
     return byteArrOut;
   }
 
+  //To compressed byte array for coupons, see the Compressed Coupons Layout in PreambleUtil
+  static final byte[] toCompressedCouponByteArray(final AbstractCoupons impl) {
+    final int couponCount = impl.getCouponCount();
+    final int[] sortKeys = new int[couponCount];
+    final PairIterator itr = impl.iterator();
+    int cnt = 0;
+    while (itr.nextValid()) {
+      //key in the upper 26 bits and value in the lower 6, flipped so that signed order is unsigned order
+      sortKeys[cnt++] = ((itr.getKey() << 6) | itr.getValue()) ^ Integer.MIN_VALUE;
+    }
+    assert cnt == couponCount;
+    Arrays.sort(sortKeys);
+
+    //each coupon takes at most a 4-byte varint of a 28-bit token and 1 byte for a large value
+    final byte[] buf = new byte[COMPRESSED_DATA_START + (5 * couponCount)];
+    int pos = COMPRESSED_DATA_START;
+    int prevKey = 0;
+    for (int i = 0; i < couponCount; i++) {
+      final int sortKey = sortKeys[i] ^ Integer.MIN_VALUE;
+      final int key = sortKey >>> 6;
+      final int value = sortKey & VAL_MASK_6;
+      int token = ((key - prevKey) << 2) | Math.min(value - 1, 3);
+      prevKey = key;
+      while ((token & ~0x7F) != 0) {
+        buf[pos++] = (byte) ((token & 0x7F) | 0x80);
+        token >>>= 7;
+      }
+      buf[pos++] = (byte) token;
+      if (value > 3) { buf[pos++] = (byte) value; }
+    }
+
+    final byte[] byteArrOut = Arrays.copyOf(buf, pos);
+    final WritableMemory memOut = WritableMemory.writableWrap(byteArrOut);
+    insertPreInts(memOut, COMPRESSED_PREINTS);
+    insertSerVerCompressed(memOut);
+    insertFamilyId(memOut);
+    insertLgK(memOut, impl.getLgConfigK());
+    insertLgArr(memOut, impl.getLgCouponArrInts());
+    insertEmptyFlag(memOut, couponCount == 0);
+    insertCompactFlag(memOut, true);
+    insertCurMode(memOut, impl.getCurMode());
+    insertTgtHllType(memOut, impl.getTgtHllType());
+    insertCompressedCount(memOut, couponCount);
+    insertCompressedBytes(memOut, pos - COMPRESSED_DATA_START);
+    return byteArrOut;
+  }
+
   private static final void copyCommonListAndSet(final AbstractCoupons impl,
       final WritableMemory wmem) {
     insertPreInts(wmem, impl.getPreInts());
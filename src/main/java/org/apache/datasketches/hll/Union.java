@@ -68,7 +68,7 @@ import org.apache.datasketches.memory.WritableMemory;
  */
 public class Union extends BaseHllSketch {
   final int lgMaxK;
-  private final HllSketch gadget;
+  final HllSketch gadget;
 
   /**
    * Construct this Union operator with the default maximum log-base-2 of <i>K</i>.
@@ -325,6 +325,11 @@ public class Union extends BaseHllSketch {
     gadget.hllSketchImpl = gadget.hllSketchImpl.couponUpdate(coupon);
   }
 
+  @Override
+  void couponUpdateAll(final int[] coupons, final int numCoupons) {
+    gadget.couponUpdateAll(coupons, numCoupons);
+  }
+
   // Union operator logic
 
   /**
@@ -496,6 +501,12 @@ public class Union extends BaseHllSketch {
 
   private static final void mergeHlltoHLLmode(final HllSketch src, final HllSketch tgt,
       final int srcLgK, final int tgtLgK, final boolean srcIsMem, final boolean tgtIsMem) {
+      if (RegisterMerge.canMerge(src, tgt, srcLgK, srcIsMem, tgtIsMem)) {
+        RegisterMerge.merge(src, tgt, srcLgK, tgtLgK, srcIsMem, tgtIsMem);
+        tgt.hllSketchImpl.putRebuildCurMinNumKxQFlag(true);
+        return;
+      }
+      //scalar fallback
       final int sw = (tgtIsMem ? 1 : 0) | (srcIsMem ? 2 : 0)
           | ((srcLgK > tgtLgK) ? 4 : 0) | ((src.getTgtHllType() != HLL_8) ? 8 : 0);
       final int srcK = 1 << srcLgK;
@@ -0,0 +1,362 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.hllmap;
+
+import static org.apache.datasketches.common.Util.LS;
+import static org.apache.datasketches.common.Util.ceilingPowerOf2;
+import static org.apache.datasketches.common.Util.checkIfPowerOf2;
+
+import java.io.File;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.datasketches.common.SketchesArgumentException;
+import org.apache.datasketches.hash.MurmurHash3;
+
+/**
+ * A thread-safe variant of {@link UniqueCountMap} that any number of threads may update and query
+ * concurrently.
+ *
+ * <p>The key space is striped across a power of 2 number of shards. Each shard is an independent
+ * UniqueCountMap with its own hierarchy of internal maps, guarded by its own read-write lock.
+ * A key always maps to the same shard, so the promotion of a key between internal maps happens
+ * entirely within one shard. Updates of keys in different shards proceed in parallel, and queries
+ * of a shard only wait for updates of that shard. With enough shards, update throughput scales
+ * with the number of threads.
+ *
+ * <p>The shard of a key is chosen with a hash of the key that uses a different seed than the
+ * internal maps, so that the keys of each shard are still spread evenly over its tables.
+ *
+ * <p>The estimates and bounds are exactly those of a UniqueCountMap, since each key is counted
+ * by a single shard.
+ */
+public final class ConcurrentUniqueCountMap implements AutoCloseable {
+  private static final long SHARD_SEED = 9001L;
+  private static final int SHARDS_PER_PROCESSOR = 4;
+  private static final int MAX_NUM_SHARDS = 1 << 16;
+  private static final int INITIAL_NUM_ENTRIES = 1000003;
+  private static final String SHARD_DIR_PREFIX = "shard-";
+
+  private final int keySizeBytes_;
+  private final int shardMask_;
+  private final UniqueCountMap[] shards_;
+  private final ReentrantReadWriteLock[] locks_;
+
+  /**
+   * Constructs a ConcurrentUniqueCountMap with an initial capacity of one million entries and
+   * four shards per available processor, rounded up to a power of 2.
+   * @param keySizeBytes must be at least 4 bytes to have sufficient entropy.
+   */
+  public ConcurrentUniqueCountMap(final int keySizeBytes) {
+    this(defaultNumShards(), INITIAL_NUM_ENTRIES, keySizeBytes);
+  }
+
+  /**
+   * Constructs a ConcurrentUniqueCountMap with a given number of shards and initial number of
+   * entries.
+   *
+   * @param numShards the number of shards, which must be a power of 2. More shards reduce the
+   * contention between threads at the cost of a larger minimum size.
+   * @param initialNumEntries The initial number of entries of the whole map, which is divided
+   * evenly between the shards. See {@link UniqueCountMap#UniqueCountMap(int, int)}.
+   * @param keySizeBytes must be at least 4 bytes to have sufficient entropy
+   */
+  public ConcurrentUniqueCountMap(final int numShards, final int initialNumEntries,
+      final int keySizeBytes) {
+    this(numShards, keySizeBytes);
+    final int shardEntries = initialNumEntries / numShards;
+    for (int i = 0; i < numShards; i++) {
+      shards_[i] = new UniqueCountMap(shardEntries, keySizeBytes);
+    }
+  }
+
+  private ConcurrentUniqueCountMap(final int numShards, final int keySizeBytes) {
+    checkNumShards(numShards);
+    keySizeBytes_ = keySizeBytes;
+    shardMask_ = numShards - 1;
+    shards_ = new UniqueCountMap[numShards];
+    locks_ = new ReentrantReadWriteLock[numShards];
+    for (int i = 0; i < numShards; i++) {
+      locks_[i] = new ReentrantReadWriteLock();
+    }
+  }
+
+  /**
+   * Returns a ConcurrentUniqueCountMap whose shards are kept in memory-mapped files of the given
+   * directory, one subdirectory per shard. If the directory holds the shards of a map that was
+   * closed earlier, that map is mapped again with all of its keys and estimates.
+   * See {@link UniqueCountMap#writableMap(File, int, int)}.
+   *
+   * <p>The returned map must be closed to unmap the files, and must be the only one using the
+   * directory while it is open.
+   *
+   * @param dir the directory of the files of the map
+   * @param numShards the number of shards, which must be a power of 2. If the map exists, it must
+   * be the number of shards of the existing map.
+   * @param initialNumEntries the initial number of entries of a new map
+   * @param keySizeBytes must be at least 4 bytes to have sufficient entropy. If the map exists, it
+   * must be the key size of the existing map.
+   * @return a ConcurrentUniqueCountMap in memory-mapped files of the given directory
+   */
+  public static ConcurrentUniqueCountMap writableMap(final File dir, final int numShards,
+      final int initialNumEntries, final int keySizeBytes) {
+    final ConcurrentUniqueCountMap map = new ConcurrentUniqueCountMap(numShards, keySizeBytes);
+    final File[] shardDirs = dir.listFiles((d, name) -> name.startsWith(SHARD_DIR_PREFIX));
+    if ((shardDirs != null) && (shardDirs.length > 0) && (shardDirs.length != numShards)) {
+      throw new SketchesArgumentException("Number of shards of the existing map is "
+          + shardDirs.length + ": " + numShards);
+    }
+    final int shardEntries = initialNumEntries / numShards;
+    try {
+      for (int i = 0; i < numShards; i++) {
+        map.shards_[i] = UniqueCountMap.writableMap(new File(dir, SHARD_DIR_PREFIX + i),
+            shardEntries, keySizeBytes);
+      }
+    } catch (final RuntimeException e) {
+      map.close();
+      throw e;
+    }
+    return map;
+  }
+
+  /**
+   * Updates the map with a given key and identifier and returns the estimate of the number of
+   * unique identifiers encountered so far for the given key.
+   * @param key the given key
+   * @param identifier the given identifier for unique counting associated with the key
+   * @return the estimate of the number of unique identifiers encountered so far for the given key.
+   * @see UniqueCountMap#update(byte[], byte[])
+   */
+  public double update(final byte[] key, final byte[] identifier) {
+    if (key == null) { return Double.NaN; }
+    final int shard = getShard(key);
+    final Lock lock = locks_[shard].writeLock();
+    lock.lock();
+    try {
+      return shards_[shard].update(key, identifier);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Retrieves the current estimate of unique count for a given key.
+   * @param key given key
+   * @return estimate of unique count so far
+   */
+  public double getEstimate(final byte[] key) {
+    if (key == null) { return Double.NaN; }
+    final int shard = getShard(key);
+    final Lock lock = locks_[shard].readLock();
+    lock.lock();
+    try {
+      return shards_[shard].getEstimate(key);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the upper bound cardinality with respect to {@link #getEstimate(byte[])} associated
+   * with the given key.
+   * @param key the given key
+   * @return the upper bound cardinality with respect to {@link #getEstimate(byte[])} associated
+   * with the given key.
+   */
+  public double getUpperBound(final byte[] key) {
+    if (key == null) { return Double.NaN; }
+    final int shard = getShard(key);
+    final Lock lock = locks_[shard].readLock();
+    lock.lock();
+    try {
+      return shards_[shard].getUpperBound(key);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the lower bound cardinality with respect to {@link #getEstimate(byte[])} associated
+   * with the given key.
+   * @param key the given key
+   * @return the lower bound cardinality with respect to {@link #getEstimate(byte[])} associated
+   * with the given key.
+   */
+  public double getLowerBound(final byte[] key) {
+    if (key == null) { return Double.NaN; }
+    final int shard = getShard(key);
+    final Lock lock = locks_[shard].readLock();
+    lock.lock();
+    try {
+      return shards_[shard].getLowerBound(key);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the number of active, unique keys across all shards. The shards are read one at a
+   * time, so concurrent updates may or may not be included.
+   * @return the number of active, unique keys across all shards
+   */
+  public long getActiveEntries() {
+    long total = 0;
+    for (int i = 0; i < shards_.length; i++) {
+      final Lock lock = locks_[i].readLock();
+      lock.lock();
+      try {
+        total += shards_[i].getActiveEntries();
+      } finally {
+        lock.unlock();
+      }
+    }
+    return total;
+  }
+
+  /**
+   * Returns total bytes used by all shards
+   * @return total bytes used by all shards
+   */
+  public long getMemoryUsageBytes() {
+    long total = 0;
+    for (int i = 0; i < shards_.length; i++) {
+      final Lock lock = locks_[i].readLock();
+      lock.lock();
+      try {
+        total += shards_[i].getMemoryUsageBytes();
+      } finally {
+        lock.unlock();
+      }
+    }
+    return total;
+  }
+
+  /**
+   * Returns total bytes used for key storage
+   * @return total bytes used for key storage
+   */
+  public long getKeyMemoryUsageBytes() {
+    long total = 0;
+    for (int i = 0; i < shards_.length; i++) {
+      final Lock lock = locks_[i].readLock();
+      lock.lock();
+      try {
+        total += shards_[i].getKeyMemoryUsageBytes();
+      } finally {
+        lock.unlock();
+      }
+    }
+    return total;
+  }
+
+  /**
+   * Returns the average memory storage per key that is dedicated to sketching the unique counts.
+   * @return the average memory storage per key that is dedicated to sketching the unique counts.
+   */
+  public double getAverageSketchMemoryPerKey() {
+    return (double) (getMemoryUsageBytes() - getKeyMemoryUsageBytes()) / getActiveEntries();
+  }
+
+  /**
+   * Returns the number of shards of this map
+   * @return the number of shards of this map
+   */
+  public int getNumShards() {
+    return shards_.length;
+  }
+
+  /**
+   * Writes all changes to the map through to its files. This has no effect on a map on the heap.
+   */
+  public void force() {
+    for (int i = 0; i < shards_.length; i++) {
+      final Lock lock = locks_[i].writeLock();
+      lock.lock();
+      try {
+        shards_[i].force();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Writes all changes to the map through to its files and unmaps them. The map cannot be used
+   * after this. This has no effect on a map on the heap.
+   */
+  @Override
+  public void close() {
+    for (int i = 0; i < shards_.length; i++) {
+      if (shards_[i] == null) { continue; }
+      final Lock lock = locks_[i].writeLock();
+      lock.lock();
+      try {
+        shards_[i].close();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Returns a string with a human-readable summary of the ConcurrentUniqueCountMap
+   * @return human-readable summary
+   */
+  @Override
+  public String toString() {
+    final String ksb = Map.fmtLong(keySizeBytes_);
+    final String shards = Map.fmtLong(shards_.length);
+    final String tKeys = Map.fmtLong(getActiveEntries());
+    final String tMem = Map.fmtLong(getMemoryUsageBytes());
+    final String kMem = Map.fmtLong(getKeyMemoryUsageBytes());
+    final String avgValMem = Map.fmtDouble(getAverageSketchMemoryPerKey());
+
+    final StringBuilder sb = new StringBuilder();
+    final String thisSimpleName = this.getClass().getSimpleName();
+    sb.append("## ").append(thisSimpleName).append(" SUMMARY: ").append(LS);
+    sb.append("   Key Size Bytes             : ").append(ksb).append(LS);
+    sb.append("   Shards                     : ").append(shards).append(LS);
+    sb.append("   Total keys                 : ").append(tKeys).append(LS);
+    sb.append("   Total Memory Bytes         : ").append(tMem).append(LS);
+    sb.append("   Total Key Memory Bytes     : ").append(kMem).append(LS);
+    sb.append("   Avg Sketch Memory Bytes/Key: ").append(avgValMem).append(LS);
+    sb.append("## ").append("END CONCURRENT UNIQUE COUNT MAP SUMMARY");
+    sb.append(LS);
+    return sb.toString();
+  }
+
+  private int getShard(final byte[] key) {
+    return (int) (MurmurHash3.hash(key, SHARD_SEED)[0] >>> 1) & shardMask_;
+  }
+
+  private static int defaultNumShards() {
+    return Math.min(ceilingPowerOf2(SHARDS_PER_PROCESSOR
+        * Runtime.getRuntime().availableProcessors()), MAX_NUM_SHARDS);
+  }
+
+  private static void checkNumShards(final int numShards) {
+    checkIfPowerOf2(numShards, "numShards");
+    if ((numShards < 1) || (numShards > MAX_NUM_SHARDS)) {
+      throw new SketchesArgumentException("Required: 1 <= numShards <= " + MAX_NUM_SHARDS
+          + ": " + numShards);
+    }
+  }
+
+}
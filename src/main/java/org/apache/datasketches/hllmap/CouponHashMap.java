@@ -22,10 +22,10 @@ package org.apache.datasketches.hllmap;
 import static org.apache.datasketches.common.Util.checkIfPowerOf2;
 import static org.apache.datasketches.common.Util.invPow2;
 
-import java.util.Arrays;
-
 import org.apache.datasketches.common.SketchesArgumentException;
 import org.apache.datasketches.hash.MurmurHash3;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
 
 /**
  * Implements a key-value map where the value is a hash map of coupons.
@@ -36,6 +36,9 @@ import org.apache.datasketches.hash.MurmurHash3;
  *
  * <p>The inner hash tables are implemented with linear probing or OASH and a load factor of 0.75.
  *
+ * <p>The keys, coupons, HIP registers and counts are tables in the memory of the map, in that
+ * order.
+ *
  * @author Lee Rhodes
  * @author Alexander Saydakov
  * @author Kevin Lang
@@ -56,35 +59,49 @@ final class CouponHashMap extends Map {
   private int numActiveKeys_;
   private int numDeletedKeys_;
 
-  //Arrays
-  private byte[] keysArr_;
-  private short[] couponsArr_;
-  private byte[] curCountsArr_; //also acts as a stateArr: 0 empty, 255 deleted
-  private float[] invPow2SumArr_;
-  private float[] hipEstAccumArr_;
+  // Offsets of the tables in the memory. The keys start at HEADER_BYTES.
+  private long couponsOffset_;
+  private long invPow2SumOffset_;
+  private long hipEstAccumOffset_;
+  private long curCountsOffset_; //also acts as a stateArr: 0 empty, 255 deleted
 
-  private CouponHashMap(final int keySizeBytes, final int maxCouponsPerKey) {
-    super(keySizeBytes);
+  private CouponHashMap(final int keySizeBytes, final int maxCouponsPerKey,
+      final MapStorage storage, final int level) {
+    super(keySizeBytes, storage, level);
     maxCouponsPerKey_ = maxCouponsPerKey;
     capacityCouponsPerKey_ = (int)(maxCouponsPerKey * INNER_LOAD_FACTOR);
     entrySizeBytes_ = keySizeBytes + (maxCouponsPerKey * Short.BYTES) + 1 + 4 + 4;
   }
 
   static CouponHashMap getInstance(final int keySizeBytes, final int maxCouponsPerKey) {
+    return getInstance(MapStorage.HEAP, 0, keySizeBytes, maxCouponsPerKey);
+  }
+
+  static CouponHashMap getInstance(final MapStorage storage, final int level,
+      final int keySizeBytes, final int maxCouponsPerKey) {
     checkMaxCouponsPerKey(maxCouponsPerKey);
     final int tableEntries = COUPON_MAP_MIN_NUM_ENTRIES;
 
-    final CouponHashMap map = new CouponHashMap(keySizeBytes, maxCouponsPerKey);
-    map.tableEntries_ = tableEntries;
-    map.capacityEntries_ = (int)(tableEntries * COUPON_MAP_GROW_TRIGGER_FACTOR);
+    final CouponHashMap map = new CouponHashMap(keySizeBytes, maxCouponsPerKey, storage, level);
+    map.mem_ = map.requestMemory(tableEntries);
+    map.setTableEntries(tableEntries);
     map.numActiveKeys_ = 0;
     map.numDeletedKeys_ = 0;
+    return map;
+  }
 
-    map.keysArr_ = new byte[tableEntries * keySizeBytes];
-    map.couponsArr_ = new short[tableEntries * maxCouponsPerKey];
-    map.curCountsArr_ = new byte[tableEntries];
-    map.invPow2SumArr_ = new float[tableEntries];
-    map.hipEstAccumArr_ = new float[tableEntries];
+  static CouponHashMap wrapInstance(final MapStorage storage, final int level,
+      final WritableMemory mem) {
+    final int maxCouponsPerKey = mem.getInt(PARAM_INT);
+    checkMaxCouponsPerKey(maxCouponsPerKey);
+    final CouponHashMap map = new CouponHashMap(mem.getInt(KEY_SIZE_INT), maxCouponsPerKey,
+        storage, level);
+    final int tableEntries = mem.getInt(TABLE_ENTRIES_INT);
+    checkCapacity(mem, getMemoryBytes(tableEntries, map.keySizeBytes_, maxCouponsPerKey));
+    map.mem_ = mem;
+    map.setTableEntries(tableEntries);
+    map.numActiveKeys_ = mem.getInt(ACTIVE_ENTRIES_INT);
+    map.numDeletedKeys_ = mem.getInt(DELETED_ENTRIES_INT);
     return map;
   }
 
@@ -96,34 +113,39 @@ final class CouponHashMap extends Map {
 
   @Override
   double update(final int entryIndex, final short coupon) {
-    final int couponMapArrEntryIndex = entryIndex * maxCouponsPerKey_;
+    final long couponMapArrEntryOffset = couponOffset(entryIndex);
 
     int innerCouponIndex = (coupon & 0xFFFF) % maxCouponsPerKey_;
 
-    while (couponsArr_[couponMapArrEntryIndex + innerCouponIndex] != 0) {
-      if (couponsArr_[couponMapArrEntryIndex + innerCouponIndex] == coupon) {
-        return hipEstAccumArr_[entryIndex]; //duplicate, returns the estimate
+    short innerCoupon;
+    while ((innerCoupon = mem_.getShort(couponMapArrEntryOffset + (innerCouponIndex * Short.BYTES))) != 0) {
+      if (innerCoupon == coupon) {
+        return getHipEstAccum(entryIndex); //duplicate, returns the estimate
       }
       innerCouponIndex = (innerCouponIndex + 1) % maxCouponsPerKey_; //linear search
     }
-    if (((curCountsArr_[entryIndex] + 1) & BYTE_MASK) > capacityCouponsPerKey_) {
+    final int curCount = getCurCount(entryIndex);
+    if (((curCount + 1) & BYTE_MASK) > capacityCouponsPerKey_) {
       //returns the negative estimate, as signal to promote
-      return -hipEstAccumArr_[entryIndex];
+      return -getHipEstAccum(entryIndex);
     }
 
-    couponsArr_[couponMapArrEntryIndex + innerCouponIndex] = coupon; //insert
-    curCountsArr_[entryIndex]++;
+    mem_.putShort(couponMapArrEntryOffset + (innerCouponIndex * Short.BYTES), coupon); //insert
+    mem_.putByte(curCountsOffset_ + entryIndex, (byte) (curCount + 1));
     //hip +=  k/qt; qt -= 1/2^(val);
-    hipEstAccumArr_[entryIndex] += COUPON_K / invPow2SumArr_[entryIndex];
-    invPow2SumArr_[entryIndex] -= invPow2(coupon16Value(coupon));
-    return hipEstAccumArr_[entryIndex]; //returns the estimate
+    final float invPow2Sum = mem_.getFloat(invPow2SumOffset_ + ((long) entryIndex * Float.BYTES));
+    final float hipEstAccum = getHipEstAccum(entryIndex) + (COUPON_K / invPow2Sum);
+    mem_.putFloat(hipEstAccumOffset_ + ((long) entryIndex * Float.BYTES), hipEstAccum);
+    mem_.putFloat(invPow2SumOffset_ + ((long) entryIndex * Float.BYTES),
+        (float) (invPow2Sum - invPow2(coupon16Value(coupon))));
+    return hipEstAccum; //returns the estimate
   }
 
   @Override
   double getEstimate(final byte[] key) {
     final int index = findKey(key);
     if (index < 0) { return 0; }
-    return hipEstAccumArr_[index];
+    return getHipEstAccum(index);
   }
 
   @Override
@@ -136,12 +158,80 @@ final class CouponHashMap extends Map {
     return getEstimate(key) * (1 - RSE);
   }
 
+  @Override
+  double getEstimate(final int entryIndex) {
+    return getHipEstAccum(entryIndex);
+  }
+
+  @Override
+  double getUpperBound(final int entryIndex) {
+    return getEstimate(entryIndex) * (1 + RSE);
+  }
+
+  @Override
+  double getLowerBound(final int entryIndex) {
+    return getEstimate(entryIndex) * (1 - RSE);
+  }
+
+  @Override
+  boolean isActive(final int entryIndex) {
+    final byte curCount = mem_.getByte(curCountsOffset_ + entryIndex);
+    return (curCount != 0) && (curCount != DELETED_KEY_MARKER);
+  }
+
+  //a byte with the number of coupons, the two HIP registers, then the coupons
+  @Override
+  int getSerializedValueBytes(final int entryIndex) {
+    return 1 + (2 * Float.BYTES) + (getCurCount(entryIndex) * Short.BYTES);
+  }
+
+  @Override
+  long putValue(final int entryIndex, final WritableMemory dst, final long offset) {
+    dst.putByte(offset, mem_.getByte(curCountsOffset_ + entryIndex));
+    dst.putFloat(offset + 1, mem_.getFloat(invPow2SumOffset_ + ((long) entryIndex * Float.BYTES)));
+    dst.putFloat(offset + 1 + Float.BYTES, getHipEstAccum(entryIndex));
+    long couponOffset = offset + 1 + (2 * Float.BYTES);
+    final long entryOffset = couponOffset(entryIndex);
+    for (int i = 0; i < maxCouponsPerKey_; i++) {
+      final short coupon = mem_.getShort(entryOffset + ((long) i * Short.BYTES));
+      if (coupon != 0) {
+        dst.putShort(couponOffset, coupon);
+        couponOffset += Short.BYTES;
+      }
+    }
+    return couponOffset;
+  }
+
+  @Override
+  long getValue(final int entryIndex, final Memory src, final long offset) {
+    final int count = src.getByte(offset) & BYTE_MASK;
+    if ((count == 0) || (count > capacityCouponsPerKey_)) {
+      throw new SketchesArgumentException("Invalid number of coupons: " + count);
+    }
+    mem_.putFloat(invPow2SumOffset_ + ((long) entryIndex * Float.BYTES), src.getFloat(offset + 1));
+    mem_.putFloat(hipEstAccumOffset_ + ((long) entryIndex * Float.BYTES),
+        src.getFloat(offset + 1 + Float.BYTES));
+    final long entryOffset = couponOffset(entryIndex);
+    long couponOffset = offset + 1 + (2 * Float.BYTES);
+    for (int i = 0; i < count; i++) {
+      final short coupon = src.getShort(couponOffset);
+      couponOffset += Short.BYTES;
+      int innerCouponIndex = (coupon & 0xFFFF) % maxCouponsPerKey_;
+      while (mem_.getShort(entryOffset + ((long) innerCouponIndex * Short.BYTES)) != 0) {
+        innerCouponIndex = (innerCouponIndex + 1) % maxCouponsPerKey_; //linear search
+      }
+      mem_.putShort(entryOffset + ((long) innerCouponIndex * Short.BYTES), coupon);
+    }
+    mem_.putByte(curCountsOffset_ + entryIndex, (byte) count);
+    return couponOffset;
+  }
+
   @Override
   void updateEstimate(final int entryIndex, final double estimate) {
     if (entryIndex < 0) {
       throw new SketchesArgumentException("Key not found.");
     }
-    hipEstAccumArr_[entryIndex] = (float) estimate;
+    mem_.putFloat(hipEstAccumOffset_ + ((long) entryIndex * Float.BYTES), (float) estimate);
   }
 
   /**
@@ -157,14 +247,15 @@ final class CouponHashMap extends Map {
     int firstDeletedIndex = -1;
     final int loopIndex = entryIndex;
     do {
-      if (curCountsArr_[entryIndex] == 0) {
+      final byte curCount = mem_.getByte(curCountsOffset_ + entryIndex);
+      if (curCount == 0) {
         return firstDeletedIndex == -1 ? ~entryIndex : ~firstDeletedIndex; // found empty or deleted
       }
-      if (curCountsArr_[entryIndex] == DELETED_KEY_MARKER) {
+      if (curCount == DELETED_KEY_MARKER) {
         if (firstDeletedIndex == -1) {
           firstDeletedIndex = entryIndex;
         }
-      } else if (Map.arraysEqual(keysArr_, entryIndex * keySizeBytes_, key, 0, keySizeBytes_)) {
+      } else if (Map.keyEquals(mem_, HEADER_BYTES + ((long) entryIndex * keySizeBytes_), key)) {
         return entryIndex; // found key
       }
       entryIndex = (entryIndex + getStride(hash[1], tableEntries_)) % tableEntries_;
@@ -177,10 +268,9 @@ final class CouponHashMap extends Map {
     int entryIndex = findKey(key);
     if (entryIndex < 0) { //key not found
       entryIndex = ~entryIndex;
-      if (curCountsArr_[entryIndex] == DELETED_KEY_MARKER) { // reusing slot from a deleted key
-        Arrays.fill(couponsArr_, entryIndex * maxCouponsPerKey_,
-            (entryIndex + 1) *  maxCouponsPerKey_, (short) 0);
-        curCountsArr_[entryIndex] = 0;
+      if (mem_.getByte(curCountsOffset_ + entryIndex) == DELETED_KEY_MARKER) { // reusing slot from a deleted key
+        mem_.clear(couponOffset(entryIndex), (long) maxCouponsPerKey_ * Short.BYTES);
+        mem_.putByte(curCountsOffset_ + entryIndex, (byte) 0);
         numDeletedKeys_--;
       }
       if ((numActiveKeys_ + numDeletedKeys_) >= capacityEntries_) {
@@ -189,20 +279,22 @@ final class CouponHashMap extends Map {
         assert entryIndex >= 0;
       }
       //insert new key
-      System.arraycopy(key, 0, keysArr_, entryIndex * keySizeBytes_, keySizeBytes_);
+      mem_.putByteArray(HEADER_BYTES + ((long) entryIndex * keySizeBytes_), key, 0, keySizeBytes_);
       //initialize HIP:  qt <- k; hip <- 0;
-      invPow2SumArr_[entryIndex] = COUPON_K;
-      hipEstAccumArr_[entryIndex] = 0;
+      mem_.putFloat(invPow2SumOffset_ + ((long) entryIndex * Float.BYTES), COUPON_K);
+      mem_.putFloat(hipEstAccumOffset_ + ((long) entryIndex * Float.BYTES), 0);
       numActiveKeys_++;
+      putEntryCounts();
     }
     return entryIndex;
   }
 
   @Override
   void deleteKey(final int entryIndex) {
-    curCountsArr_[entryIndex] = DELETED_KEY_MARKER;
+    mem_.putByte(curCountsOffset_ + entryIndex, DELETED_KEY_MARKER);
     numActiveKeys_--;
     numDeletedKeys_++;
+    putEntryCounts();
     if ((numActiveKeys_ > COUPON_MAP_MIN_NUM_ENTRIES)
         && (numActiveKeys_ < (tableEntries_ * COUPON_MAP_SHRINK_TRIGGER_FACTOR))) {
       resize();
@@ -211,7 +303,7 @@ final class CouponHashMap extends Map {
 
   @Override
   CouponsIterator getCouponsIterator(final int entryIndex) {
-    return new CouponsIterator(couponsArr_, entryIndex * maxCouponsPerKey_, maxCouponsPerKey_);
+    return new CouponsIterator(mem_, couponOffset(entryIndex), maxCouponsPerKey_);
   }
 
   @Override
@@ -236,13 +328,7 @@ final class CouponHashMap extends Map {
 
   @Override
   long getMemoryUsageBytes() {
-    final long arrays = keysArr_.length
-        + ((long) couponsArr_.length * Short.BYTES)
-        + curCountsArr_.length
-        + ((long) invPow2SumArr_.length * Float.BYTES)
-        + ((long) hipEstAccumArr_.length * Float.BYTES);
-    final long other = 4 * 5;
-    return arrays + other;
+    return mem_.getCapacity();
   }
 
   @Override
@@ -255,6 +341,11 @@ final class CouponHashMap extends Map {
     return numDeletedKeys_;
   }
 
+  @Override
+  void compact() {
+    if (numDeletedKeys_ > 0) { resize(); }
+  }
+
   @Override
   int getMaxCouponsPerEntry() {
     return maxCouponsPerKey_;
@@ -275,41 +366,43 @@ final class CouponHashMap extends Map {
   }
 
   private void resize() {
-    final byte[] oldKeysArr = keysArr_;
-    final short[] oldCouponMapArr = couponsArr_;
-    final byte[] oldCurCountsArr = curCountsArr_;
-    final float[] oldInvPow2SumArr = invPow2SumArr_;
-    final float[] oldHipEstAccumArr = hipEstAccumArr_;
+    final WritableMemory oldMem = mem_;
+    final long oldCouponsOffset = couponsOffset_;
+    final long oldInvPow2SumOffset = invPow2SumOffset_;
+    final long oldHipEstAccumOffset = hipEstAccumOffset_;
+    final long oldCurCountsOffset = curCountsOffset_;
     final int oldNumEntries = tableEntries_;
-    tableEntries_ = Math.max(
+    final int newTableEntries = Math.max(
       nextPrime((int) (numActiveKeys_ / COUPON_MAP_TARGET_FILL_FACTOR)),
       COUPON_MAP_MIN_NUM_ENTRIES
     );
-    capacityEntries_ = (int)(tableEntries_ * COUPON_MAP_GROW_TRIGGER_FACTOR);
-    keysArr_ = new byte[tableEntries_ * keySizeBytes_];
-    couponsArr_ = new short[tableEntries_ * maxCouponsPerKey_];
-    curCountsArr_ = new byte[tableEntries_];
-    invPow2SumArr_ = new float[tableEntries_];
-    hipEstAccumArr_ = new float[tableEntries_];
+    mem_ = requestMemory(newTableEntries);
+    setTableEntries(newTableEntries);
     numActiveKeys_ = 0;
     numDeletedKeys_ = 0;
+    final long entryCouponBytes = (long) maxCouponsPerKey_ * Short.BYTES;
+    final byte[] key = new byte[keySizeBytes_];
     for (int i = 0; i < oldNumEntries; i++) {
-      if ((oldCurCountsArr[i] != 0) && (oldCurCountsArr[i] != DELETED_KEY_MARKER)) {
+      final byte oldCurCount = oldMem.getByte(oldCurCountsOffset + i);
+      if ((oldCurCount != 0) && (oldCurCount != DELETED_KEY_MARKER)) {
         //extract an old valid key
-        final byte[] key =
-            Arrays.copyOfRange(oldKeysArr, i * keySizeBytes_, (i * keySizeBytes_) + keySizeBytes_);
+        oldMem.getByteArray(HEADER_BYTES + ((long) i * keySizeBytes_), key, 0, keySizeBytes_);
         //insert the key and get its index
         final int index = insertKey(key);
         //copy the coupons array into that index
-        System.arraycopy(oldCouponMapArr, i * maxCouponsPerKey_, couponsArr_,
-            index * maxCouponsPerKey_, maxCouponsPerKey_);
+        oldMem.copyTo(oldCouponsOffset + (i * entryCouponBytes), mem_, couponOffset(index),
+            entryCouponBytes);
         //transfer the count
-        curCountsArr_[index] = oldCurCountsArr[i];
+        mem_.putByte(curCountsOffset_ + index, oldCurCount);
         //transfer the HIP registers
-        invPow2SumArr_[index] = oldInvPow2SumArr[i];
-        hipEstAccumArr_[index] = oldHipEstAccumArr[i];
+        mem_.putFloat(invPow2SumOffset_ + ((long) index * Float.BYTES),
+            oldMem.getFloat(oldInvPow2SumOffset + ((long) i * Float.BYTES)));
+        mem_.putFloat(hipEstAccumOffset_ + ((long) index * Float.BYTES),
+            oldMem.getFloat(oldHipEstAccumOffset + ((long) i * Float.BYTES)));
       }
     }
+    putEntryCounts();
+    storage_.release(level_, oldMem);
   }
 
   // for internal use by resize, no resize check and no deleted key check here
@@ -319,8 +412,8 @@ final class CouponHashMap extends Map {
     int entryIndex = getIndex(hash[0], tableEntries_);
     final int loopIndex = entryIndex;
     do {
-      if (curCountsArr_[entryIndex] == 0) {
-        System.arraycopy(key, 0, keysArr_, entryIndex * keySizeBytes_, keySizeBytes_);
+      if (mem_.getByte(curCountsOffset_ + entryIndex) == 0) {
+        mem_.putByteArray(HEADER_BYTES + ((long) entryIndex * keySizeBytes_), key, 0, keySizeBytes_);
         numActiveKeys_++;
         return entryIndex;
       }
@@ -329,4 +422,44 @@ final class CouponHashMap extends Map {
     throw new SketchesArgumentException("Key not found and no empty slots!");
   }
 
+  private int getCurCount(final int entryIndex) {
+    return mem_.getByte(curCountsOffset_ + entryIndex) & BYTE_MASK;
+  }
+
+  private float getHipEstAccum(final int entryIndex) {
+    return mem_.getFloat(hipEstAccumOffset_ + ((long) entryIndex * Float.BYTES));
+  }
+
+  private long couponOffset(final int entryIndex) {
+    return couponsOffset_ + ((long) entryIndex * maxCouponsPerKey_ * Short.BYTES);
+  }
+
+  private void putEntryCounts() {
+    mem_.putInt(ACTIVE_ENTRIES_INT, numActiveKeys_);
+    mem_.putInt(DELETED_ENTRIES_INT, numDeletedKeys_);
+  }
+
+  private WritableMemory requestMemory(final int tableEntries) {
+    return requestMemory(COUPON_HASH_MAP_ID, maxCouponsPerKey_, tableEntries,
+        getMemoryBytes(tableEntries, keySizeBytes_, maxCouponsPerKey_));
+  }
+
+  private void setTableEntries(final int tableEntries) {
+    tableEntries_ = tableEntries;
+    capacityEntries_ = (int)(tableEntries * COUPON_MAP_GROW_TRIGGER_FACTOR);
+    couponsOffset_ = align8(HEADER_BYTES + ((long) tableEntries * keySizeBytes_));
+    invPow2SumOffset_ = align8(couponsOffset_ + ((long) tableEntries * maxCouponsPerKey_ * Short.BYTES));
+    hipEstAccumOffset_ = align8(invPow2SumOffset_ + ((long) tableEntries * Float.BYTES));
+    curCountsOffset_ = align8(hipEstAccumOffset_ + ((long) tableEntries * Float.BYTES));
+  }
+
+  private static long getMemoryBytes(final int tableEntries, final int keySizeBytes,
+      final int maxCouponsPerKey) {
+    final long couponsOffset = align8(HEADER_BYTES + ((long) tableEntries * keySizeBytes));
+    final long invPow2SumOffset = align8(couponsOffset + ((long) tableEntries * maxCouponsPerKey * Short.BYTES));
+    final long hipEstAccumOffset = align8(invPow2SumOffset + ((long) tableEntries * Float.BYTES));
+    final long curCountsOffset = align8(hipEstAccumOffset + ((long) tableEntries * Float.BYTES));
+    return align8(curCountsOffset + tableEntries);
+  }
+
 }
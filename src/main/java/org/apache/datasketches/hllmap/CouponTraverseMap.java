@@ -19,10 +19,10 @@
 
 package org.apache.datasketches.hllmap;
 
-import java.util.Arrays;
-
 import org.apache.datasketches.common.SketchesArgumentException;
 import org.apache.datasketches.hash.MurmurHash3;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
 
 /**
  * Implements a key-value map where the value is a simple array of coupons. Search operations are a
@@ -32,6 +32,8 @@ import org.apache.datasketches.hash.MurmurHash3;
  * <p>The map is implemented as a prime-sized, Open Address, Double Hash, with deletes and a 1-bit
  * state array. The size of this map can grow or shrink.
  *
+ * <p>The keys, coupons and state array are tables in the memory of the map, in that order.
+ *
  * @author Lee Rhodes
  * @author Alexander Saydakov
  * @author Kevin Lang
@@ -47,9 +49,8 @@ final class CouponTraverseMap extends Map {
   private int numDeletedKeys_;
   private double entrySizeBytes_;
 
-  //Arrays
-  private byte[] keysArr_;
-  private short[] couponsArr_;
+  // Offsets of the tables in the memory. The keys start at HEADER_BYTES.
+  private long couponsOffset_;
 
   /**
    * <ul><li>State: 0: Empty always, don't need to look at 1st coupon. Coupons could be dirty.</li>
@@ -57,24 +58,38 @@ final class CouponTraverseMap extends Map {
    * If first coupon != 0 means valid entry; first coupon == 0: dirty (we set to 0 when deleted)</li>
    * </ul>
    */
-  private byte[] stateArr_;
+  private long stateOffset_;
 
-  private CouponTraverseMap(final int keySizeBytes, final int maxCouponsPerKey) {
-    super(keySizeBytes);
+  private CouponTraverseMap(final int keySizeBytes, final int maxCouponsPerKey,
+      final MapStorage storage, final int level) {
+    super(keySizeBytes, storage, level);
     maxCouponsPerKey_ = maxCouponsPerKey;
   }
 
   static CouponTraverseMap getInstance(final int keySizeBytes, final int maxCouponsPerKey) {
-    final CouponTraverseMap map = new CouponTraverseMap(keySizeBytes, maxCouponsPerKey);
-    map.tableEntries_ = COUPON_MAP_MIN_NUM_ENTRIES;
-    map.capacityEntries_ = (int)(map.tableEntries_ * COUPON_MAP_GROW_TRIGGER_FACTOR);
+    return getInstance(MapStorage.HEAP, 0, keySizeBytes, maxCouponsPerKey);
+  }
+
+  static CouponTraverseMap getInstance(final MapStorage storage, final int level,
+      final int keySizeBytes, final int maxCouponsPerKey) {
+    final CouponTraverseMap map = new CouponTraverseMap(keySizeBytes, maxCouponsPerKey, storage, level);
+    map.mem_ = map.requestMemory(COUPON_MAP_MIN_NUM_ENTRIES);
+    map.setTableEntries(COUPON_MAP_MIN_NUM_ENTRIES);
     map.numActiveKeys_ = 0;
     map.numDeletedKeys_ = 0;
-    map.entrySizeBytes_ = updateEntrySizeBytes(map.tableEntries_, keySizeBytes, maxCouponsPerKey);
+    return map;
+  }
 
-    map.keysArr_ = new byte[COUPON_MAP_MIN_NUM_ENTRIES * keySizeBytes];
-    map.couponsArr_ = new short[COUPON_MAP_MIN_NUM_ENTRIES * maxCouponsPerKey];
-    map.stateArr_ = new byte[COUPON_MAP_MIN_NUM_ENTRIES_ARR_SIZE];
+  static CouponTraverseMap wrapInstance(final MapStorage storage, final int level,
+      final WritableMemory mem) {
+    final CouponTraverseMap map = new CouponTraverseMap(mem.getInt(KEY_SIZE_INT),
+        mem.getInt(PARAM_INT), storage, level);
+    final int tableEntries = mem.getInt(TABLE_ENTRIES_INT);
+    checkCapacity(mem, getMemoryBytes(tableEntries, map.keySizeBytes_, map.maxCouponsPerKey_));
+    map.mem_ = mem;
+    map.setTableEntries(tableEntries);
+    map.numActiveKeys_ = mem.getInt(ACTIVE_ENTRIES_INT);
+    map.numDeletedKeys_ = mem.getInt(DELETED_ENTRIES_INT);
     return map;
   }
 
@@ -86,15 +101,16 @@ final class CouponTraverseMap extends Map {
 
   @Override
   double update(final int entryIndex, final short value) {
-    final int offset = entryIndex * maxCouponsPerKey_;
+    final long offset = couponOffset(entryIndex);
     boolean wasFound = false;
     for (int i = 0; i < maxCouponsPerKey_; i++) {
-      if (couponsArr_[offset + i] == 0) {
+      final short coupon = mem_.getShort(offset + ((long) i * Short.BYTES));
+      if (coupon == 0) {
         if (wasFound) { return i; }
-        couponsArr_[offset + i] = value;
+        mem_.putShort(offset + ((long) i * Short.BYTES), value);
         return i + 1;
       }
-      if (couponsArr_[offset + i] == value) {
+      if (coupon == value) {
         wasFound = true;
       }
     }
@@ -119,6 +135,50 @@ final class CouponTraverseMap extends Map {
     return getEstimate(key) * (1 - RSE);
   }
 
+  @Override
+  double getEstimate(final int entryIndex) {
+    return getCouponCount(entryIndex);
+  }
+
+  @Override
+  double getUpperBound(final int entryIndex) {
+    return getEstimate(entryIndex) * (1 + RSE);
+  }
+
+  @Override
+  double getLowerBound(final int entryIndex) {
+    return getEstimate(entryIndex) * (1 - RSE);
+  }
+
+  @Override
+  boolean isActive(final int entryIndex) {
+    return isBitSet(mem_, stateOffset_, entryIndex) && (mem_.getShort(couponOffset(entryIndex)) != 0);
+  }
+
+  //a byte with the number of coupons followed by the coupons
+  @Override
+  int getSerializedValueBytes(final int entryIndex) {
+    return 1 + (getCouponCount(entryIndex) * Short.BYTES);
+  }
+
+  @Override
+  long putValue(final int entryIndex, final WritableMemory dst, final long offset) {
+    final int count = getCouponCount(entryIndex);
+    dst.putByte(offset, (byte) count);
+    mem_.copyTo(couponOffset(entryIndex), dst, offset + 1, (long) count * Short.BYTES);
+    return offset + 1 + ((long) count * Short.BYTES);
+  }
+
+  @Override
+  long getValue(final int entryIndex, final Memory src, final long offset) {
+    final int count = src.getByte(offset) & 0XFF;
+    if ((count == 0) || (count > maxCouponsPerKey_)) {
+      throw new SketchesArgumentException("Invalid number of coupons: " + count);
+    }
+    src.copyTo(offset + 1, mem_, couponOffset(entryIndex), (long) count * Short.BYTES);
+    return offset + 1 + ((long) count * Short.BYTES);
+  }
+
   /**
    * Returns entryIndex if the given key is found. If not found, returns one's complement entryIndex
    * of an empty slot for insertion, which may be over a deleted key.
@@ -132,12 +192,12 @@ final class CouponTraverseMap extends Map {
     int firstDeletedIndex = -1;
     final int loopIndex = entryIndex;
     do {
-      if (isBitClear(stateArr_, entryIndex)) {
+      if (isBitClear(mem_, stateOffset_, entryIndex)) {
         return firstDeletedIndex == -1 ? ~entryIndex : ~firstDeletedIndex; // found empty or deleted
       }
-      if (couponsArr_[entryIndex * maxCouponsPerKey_] == 0) { //found deleted
+      if (mem_.getShort(couponOffset(entryIndex)) == 0) { //found deleted
         if (firstDeletedIndex == -1) { firstDeletedIndex = entryIndex; }
-      } else if (Map.arraysEqual(keysArr_, entryIndex * keySizeBytes_, key, 0, keySizeBytes_)) {
+      } else if (Map.keyEquals(mem_, HEADER_BYTES + ((long) entryIndex * keySizeBytes_), key)) {
         return entryIndex; // found key
       }
       entryIndex = (entryIndex + getStride(hash[1], tableEntries_)) % tableEntries_;
@@ -150,7 +210,7 @@ final class CouponTraverseMap extends Map {
     int entryIndex = findKey(key);
     if (entryIndex < 0) {
       entryIndex = ~entryIndex;
-      if (isBitSet(stateArr_, entryIndex)) { // reusing slot from a deleted key
+      if (isBitSet(mem_, stateOffset_, entryIndex)) { // reusing slot from a deleted key
         clearCouponArea(entryIndex);
         numDeletedKeys_--;
       }
@@ -159,18 +219,20 @@ final class CouponTraverseMap extends Map {
         entryIndex = ~findKey(key);
         assert entryIndex >= 0;
       }
-      System.arraycopy(key, 0, keysArr_, entryIndex * keySizeBytes_, keySizeBytes_);
-      setBit(stateArr_, entryIndex);
+      mem_.putByteArray(HEADER_BYTES + ((long) entryIndex * keySizeBytes_), key, 0, keySizeBytes_);
+      setBit(mem_, stateOffset_, entryIndex);
       numActiveKeys_++;
+      putEntryCounts();
     }
     return entryIndex;
   }
 
   @Override
   void deleteKey(final int entryIndex) {
-    couponsArr_[entryIndex * maxCouponsPerKey_] = 0;
+    mem_.putShort(couponOffset(entryIndex), (short) 0);
     numActiveKeys_--;
     numDeletedKeys_++;
+    putEntryCounts();
     if ((numActiveKeys_ > COUPON_MAP_MIN_NUM_ENTRIES)
         && (numActiveKeys_ < (tableEntries_ * COUPON_MAP_SHRINK_TRIGGER_FACTOR))) {
       resize();
@@ -178,9 +240,9 @@ final class CouponTraverseMap extends Map {
   }
 
   private int getCouponCount(final int entryIndex) {
-    final int offset = entryIndex * maxCouponsPerKey_;
+    final long offset = couponOffset(entryIndex);
     for (int i = 0; i < maxCouponsPerKey_; i++) {
-      if (couponsArr_[offset + i] == 0) {
+      if (mem_.getShort(offset + ((long) i * Short.BYTES)) == 0) {
         return i;
       }
     }
@@ -189,7 +251,7 @@ final class CouponTraverseMap extends Map {
 
   @Override
   CouponsIterator getCouponsIterator(final int entryIndex) {
-    return new CouponsIterator(couponsArr_, entryIndex * maxCouponsPerKey_, maxCouponsPerKey_);
+    return new CouponsIterator(mem_, couponOffset(entryIndex), maxCouponsPerKey_);
   }
 
   @Override
@@ -214,9 +276,7 @@ final class CouponTraverseMap extends Map {
 
   @Override
   long getMemoryUsageBytes() {
-    return keysArr_.length
-        + ((long)couponsArr_.length * Short.BYTES)
-        + stateArr_.length + (4L * Integer.BYTES);
+    return mem_.getCapacity();
   }
 
   @Override
@@ -229,6 +289,11 @@ final class CouponTraverseMap extends Map {
     return numDeletedKeys_;
   }
 
+  @Override
+  void compact() {
+    if (numDeletedKeys_ > 0) { resize(); }
+  }
+
   @Override
   int getMaxCouponsPerEntry() {
     return maxCouponsPerKey_;
@@ -240,33 +305,32 @@ final class CouponTraverseMap extends Map {
   }
 
   private void resize() { //can grow or shrink
-    final byte[] oldKeysArr = keysArr_;
-    final short[] oldCouponsArr = couponsArr_;
-    final byte[] oldStateArr = stateArr_;
+    final WritableMemory oldMem = mem_;
+    final long oldCouponsOffset = couponsOffset_;
+    final long oldStateOffset = stateOffset_;
     final int oldSizeKeys = tableEntries_;
-    tableEntries_ = Math.max(
+    final int newTableEntries = Math.max(
       nextPrime((int) (numActiveKeys_ / COUPON_MAP_TARGET_FILL_FACTOR)),
       COUPON_MAP_MIN_NUM_ENTRIES
     );
-    capacityEntries_ = (int)(tableEntries_ * COUPON_MAP_GROW_TRIGGER_FACTOR);
+    mem_ = requestMemory(newTableEntries);
+    setTableEntries(newTableEntries);
     numActiveKeys_ = 0;
     numDeletedKeys_ = 0;
-    entrySizeBytes_ = updateEntrySizeBytes(tableEntries_, keySizeBytes_, maxCouponsPerKey_);
-
-    keysArr_ = new byte[tableEntries_ * keySizeBytes_];
-    couponsArr_ = new short[tableEntries_ * maxCouponsPerKey_];
-    stateArr_ = new byte[(int) Math.ceil(tableEntries_ / 8.0)];
 
     //move data
+    final long entryCouponBytes = (long) maxCouponsPerKey_ * Short.BYTES;
+    final byte[] key = new byte[keySizeBytes_];
     for (int i = 0; i < oldSizeKeys; i++) {
-      if (isBitSet(oldStateArr, i) && (oldCouponsArr[i * maxCouponsPerKey_] != 0)) {
-        final byte[] key =
-            Arrays.copyOfRange(oldKeysArr, i * keySizeBytes_, (i * keySizeBytes_) + keySizeBytes_);
+      final long oldOffset = oldCouponsOffset + (i * entryCouponBytes);
+      if (isBitSet(oldMem, oldStateOffset, i) && (oldMem.getShort(oldOffset) != 0)) {
+        oldMem.getByteArray(HEADER_BYTES + ((long) i * keySizeBytes_), key, 0, keySizeBytes_);
         final int index = insertKey(key);
-        System.arraycopy(oldCouponsArr, i * maxCouponsPerKey_, couponsArr_,
-            index * maxCouponsPerKey_, maxCouponsPerKey_);
+        oldMem.copyTo(oldOffset, mem_, couponOffset(index), entryCouponBytes);
       }
     }
+    putEntryCounts();
+    storage_.release(level_, oldMem);
   }
 
   // for internal use during resize, so no resize check here
@@ -275,9 +339,9 @@ final class CouponTraverseMap extends Map {
     int entryIndex = getIndex(hash[0], tableEntries_);
     final int loopIndex = entryIndex;
     do {
-      if (isBitClear(stateArr_, entryIndex)) {
-        System.arraycopy(key, 0, keysArr_, entryIndex * keySizeBytes_, keySizeBytes_);
-        setBit(stateArr_, entryIndex);
+      if (isBitClear(mem_, stateOffset_, entryIndex)) {
+        mem_.putByteArray(HEADER_BYTES + ((long) entryIndex * keySizeBytes_), key, 0, keySizeBytes_);
+        setBit(mem_, stateOffset_, entryIndex);
         numActiveKeys_++;
         return entryIndex;
       }
@@ -287,10 +351,36 @@ final class CouponTraverseMap extends Map {
   }
 
   private void clearCouponArea(final int entryIndex) {
-    final int couponAreaIndex = entryIndex * maxCouponsPerKey_;
-    for (int i = 0; i < maxCouponsPerKey_; i++) {
-      couponsArr_[couponAreaIndex + i] = 0;
-    }
+    mem_.clear(couponOffset(entryIndex), (long) maxCouponsPerKey_ * Short.BYTES);
+  }
+
+  private long couponOffset(final int entryIndex) {
+    return couponsOffset_ + ((long) entryIndex * maxCouponsPerKey_ * Short.BYTES);
+  }
+
+  private void putEntryCounts() {
+    mem_.putInt(ACTIVE_ENTRIES_INT, numActiveKeys_);
+    mem_.putInt(DELETED_ENTRIES_INT, numDeletedKeys_);
+  }
+
+  private WritableMemory requestMemory(final int tableEntries) {
+    return requestMemory(COUPON_TRAVERSE_MAP_ID, maxCouponsPerKey_, tableEntries,
+        getMemoryBytes(tableEntries, keySizeBytes_, maxCouponsPerKey_));
+  }
+
+  private void setTableEntries(final int tableEntries) {
+    tableEntries_ = tableEntries;
+    capacityEntries_ = (int)(tableEntries * COUPON_MAP_GROW_TRIGGER_FACTOR);
+    entrySizeBytes_ = updateEntrySizeBytes(tableEntries, keySizeBytes_, maxCouponsPerKey_);
+    couponsOffset_ = align8(HEADER_BYTES + ((long) tableEntries * keySizeBytes_));
+    stateOffset_ = align8(couponsOffset_ + ((long) tableEntries * maxCouponsPerKey_ * Short.BYTES));
+  }
+
+  private static long getMemoryBytes(final int tableEntries, final int keySizeBytes,
+      final int maxCouponsPerKey) {
+    final long couponsOffset = align8(HEADER_BYTES + ((long) tableEntries * keySizeBytes));
+    final long stateOffset = align8(couponsOffset + ((long) tableEntries * maxCouponsPerKey * Short.BYTES));
+    return align8(stateOffset + ((tableEntries + 7) / 8));
   }
 
   private static final double updateEntrySizeBytes(final int tableEntries, final int keySizeBytes,
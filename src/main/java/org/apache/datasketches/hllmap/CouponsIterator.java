@@ -19,6 +19,8 @@
 
 package org.apache.datasketches.hllmap;
 
+import org.apache.datasketches.memory.Memory;
+
 /**
  * Common iterator class for maps that need one.
  *
@@ -26,15 +28,21 @@ package org.apache.datasketches.hllmap;
  */
 class CouponsIterator {
 
-  private final int offset_;
+  private final long offset_;
   private final int maxEntries_;
-  private final short[] couponsArr_;
+  private final Memory mem_;
   private int index_;
 
-  CouponsIterator(final short[] couponsArr, final int offset, final int maxEntries) {
+  /**
+   * Iterates over the coupons of one entry of a map.
+   * @param mem the memory of the map
+   * @param offset the offset in bytes of the first coupon of the entry
+   * @param maxEntries the number of coupons of the entry
+   */
+  CouponsIterator(final Memory mem, final long offset, final int maxEntries) {
     offset_ = offset;
     maxEntries_ = maxEntries;
-    couponsArr_ = couponsArr;
+    mem_ = mem;
     index_ = -1;
   }
 
@@ -45,7 +53,7 @@ class CouponsIterator {
   boolean next() {
     index_++;
     while (index_ < maxEntries_) {
-      if (couponsArr_[offset_ + index_] != 0) { return true; }
+      if (getValue() != 0) { return true; }
       index_++;
     }
     return false;
@@ -56,7 +64,7 @@ class CouponsIterator {
    * @return the value at the current index.
    */
   short getValue() {
-    return couponsArr_[offset_ + index_];
+    return mem_.getShort(offset_ + ((long) index_ * Short.BYTES));
   }
 
 }
@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.hllmap;
+
+/**
+ * Receives the keys that a {@link UniqueCountMap} with a memory budget evicts, so that they can be
+ * spilled to secondary storage instead of being lost.
+ *
+ * <p>Each evicted key comes with a serialized UniqueCountMap that holds only that key, with its
+ * coupons or HLL array. It can be written to a file as is, and the key can be restored later with
+ * {@link UniqueCountMap#heapify(org.apache.datasketches.memory.Memory)} followed by
+ * {@link UniqueCountMap#merge(UniqueCountMap)}.</p>
+ */
+public interface EvictionListener {
+
+  /**
+   * Called for each key that is evicted, before it is removed from the map. The map must not be
+   * used by this method.
+   * @param key the evicted key. The array is reused for the following evictions, so it must be
+   * copied if it is needed after this method returns.
+   * @param estimate the estimate of the number of unique identifiers of the key
+   * @param image a serialized UniqueCountMap that holds only the evicted key
+   */
+  void onEviction(byte[] key, double estimate, byte[] image);
+
+}
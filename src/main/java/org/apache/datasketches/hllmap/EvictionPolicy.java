@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.hllmap;
+
+/**
+ * The policy that a {@link UniqueCountMap} with a memory budget uses to choose the keys to evict.
+ *
+ * <p>Each key of such a map has a 32-bit access stamp that is set each time the key is updated.
+ * When the map is over its budget, it samples a few keys and evicts the coldest of them, as
+ * defined by the policy. This approximates the exact policy closely with a constant cost per
+ * eviction.</p>
+ */
+public enum EvictionPolicy {
+
+  /**
+   * Evicts the least recently updated keys. The access stamp is the low 32 bits of the count of
+   * updates of the map at the last update of the key.
+   */
+  LRU {
+    @Override
+    int touch(final int access, final boolean isNew, final long clock, final double random) {
+      return (int) clock;
+    }
+
+    @Override
+    long coldness(final int access, final long clock) {
+      return ((int) clock - access) & 0XFFFFFFFFL;
+    }
+  },
+
+  /**
+   * Evicts the least frequently updated keys. The access stamp holds an 8-bit logarithmic counter
+   * of updates in the low byte and the time of its last decay in the upper 24 bits. The counter
+   * is incremented with a probability that decreases as it grows, so that it can count many
+   * updates, and is decremented once for each period of updates of the map in which the key was
+   * not updated, so that keys that were hot long ago can be evicted. New keys start with a small
+   * count, so that they are not evicted before they had a chance to be updated again.
+   */
+  LFU {
+    @Override
+    int touch(final int access, final boolean isNew, final long clock, final double random) {
+      final int period = (int) (clock >>> LFU_DECAY_PERIOD_LG) & LFU_PERIOD_MASK;
+      int counter = isNew ? LFU_INIT_COUNT : decayedCount(access, clock);
+      if (counter < LFU_MAX_COUNT) {
+        final int base = Math.max(counter - LFU_INIT_COUNT, 0);
+        if (random < (1.0 / ((base * LFU_LOG_FACTOR) + 1))) { counter++; }
+      }
+      return (period << 8) | counter;
+    }
+
+    @Override
+    long coldness(final int access, final long clock) {
+      return LFU_MAX_COUNT - decayedCount(access, clock);
+    }
+  };
+
+  static final int LFU_INIT_COUNT = 5;
+  static final int LFU_MAX_COUNT = 255;
+  static final int LFU_LOG_FACTOR = 10;
+  static final int LFU_DECAY_PERIOD_LG = 16; //updates of the map per decay period
+  static final int LFU_PERIOD_MASK = 0XFFFFFF;
+
+  /**
+   * Returns the new access stamp of a key that is updated.
+   * @param access the current access stamp of the key
+   * @param isNew true if the key has just been inserted, in which case its access stamp is not set
+   * @param clock the count of updates of the map, including this one
+   * @param random a uniform random number in [0, 1)
+   * @return the new access stamp of the key
+   */
+  abstract int touch(int access, boolean isNew, long clock, double random);
+
+  /**
+   * Returns how cold a key is. Of the sampled keys, the one with the largest coldness is evicted.
+   * @param access the access stamp of the key
+   * @param clock the count of updates of the map
+   * @return how cold the key is
+   */
+  abstract long coldness(int access, long clock);
+
+  //the LFU counter less the number of periods since its last decay
+  static int decayedCount(final int access, final long clock) {
+    final int period = (int) (clock >>> LFU_DECAY_PERIOD_LG) & LFU_PERIOD_MASK;
+    final int elapsed = (period - (access >>> 8)) & LFU_PERIOD_MASK;
+    return Math.max((access & 0XFF) - elapsed, 0);
+  }
+
+}
@@ -23,11 +23,11 @@ import static java.lang.Math.log;
 import static java.lang.Math.sqrt;
 import static org.apache.datasketches.common.Util.invPow2;
 
-import java.util.Arrays;
-
 import org.apache.datasketches.common.SketchesArgumentException;
 import org.apache.datasketches.common.SuppressFBWarnings;
 import org.apache.datasketches.hash.MurmurHash3;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
 
 /**
  * Implements a key-value map where the value is a compact HLL sketch of size k.
@@ -40,6 +40,12 @@ import org.apache.datasketches.hash.MurmurHash3;
  * estimators and the early estimators in this implementation are quite novel and provide superior
  * error performance over most other HLL implementations.
  *
+ * <p>The keys, HLL arrays, the 3 double registers and the state array are tables in the memory
+ * of the map, in that order.
+ *
+ * <p>Keys can be deleted for eviction. A deleted entry keeps its state bit set and has a negative
+ * HIP estimate until the next resize.
+ *
  * @author Lee Rhodes
  * @author KevinLang
  * @author Alexander Saydakov
@@ -47,52 +53,64 @@ import org.apache.datasketches.hash.MurmurHash3;
 final class HllMap extends Map {
   private static final double LOAD_FACTOR = 15.0 / 16.0;
   private static final int HLL_INIT_NUM_ENTRIES = 157;
-  private static final int HLL_INIT_NUM_ENTRIES_ARR_SIZE = (int) Math.ceil(HLL_INIT_NUM_ENTRIES / 8.0);
   private static final float HLL_RESIZE_FACTOR = 2.0F;
   private static final double RSE = sqrt(log(2.0)) / 32.0;
+  private static final double DELETED_KEY_MARKER = -1.0;
   private final int k_;
   private final int hllArrLongs_; //# of longs required to store the HLL array
 
   private int tableEntries_;      //Full size of the table
   private int capacityEntries_;   //max capacity entries defined by Load factor
   private int curCountEntries_;   //current count of valid entries
+  private int numDeletedEntries_;
   private float growthFactor_;    //e.g., 1.2 to 2.0
   private double entrySizeBytes_;
 
-  //Arrays
-  private byte[] keysArr_; //keys of zero are allowed
-  private long[] arrOfHllArr_;
-  private double[] invPow2SumHiArr_;
-  private double[] invPow2SumLoArr_;
-  private double[] hipEstAccumArr_;
-  private byte[] stateArr_;
+  // Offsets of the tables in the memory. The keys start at HEADER_BYTES; keys of zero are allowed.
+  private long arrOfHllArrOffset_;
+  private long invPow2SumHiOffset_;
+  private long invPow2SumLoOffset_;
+  private long hipEstAccumOffset_;
+  private long stateOffset_;
 
   /**
    * Private constructor used to set all finals
    * @param keySizeBytes size of key in bytes
    * @param k size of HLL sketch
+   * @param storage the storage of the memory of the map
+   * @param level the level of the map
    */
-  private HllMap(final int keySizeBytes, final int k) {
-    super(keySizeBytes);
+  private HllMap(final int keySizeBytes, final int k, final MapStorage storage, final int level) {
+    super(keySizeBytes, storage, level);
     k_ = k;
     hllArrLongs_ = (k / 10) + 1;
   }
 
   static HllMap getInstance(final int keySizeBytes, final int k) {
+    return getInstance(MapStorage.HEAP, 0, keySizeBytes, k);
+  }
 
-    final HllMap map = new HllMap(keySizeBytes, k);
-    map.tableEntries_ = HLL_INIT_NUM_ENTRIES;
-    map.capacityEntries_ = (int)(HLL_INIT_NUM_ENTRIES * LOAD_FACTOR);
+  static HllMap getInstance(final MapStorage storage, final int level, final int keySizeBytes,
+      final int k) {
+    final HllMap map = new HllMap(keySizeBytes, k, storage, level);
+    map.mem_ = map.requestMemory(HLL_INIT_NUM_ENTRIES);
+    map.setTableEntries(HLL_INIT_NUM_ENTRIES);
     map.curCountEntries_ = 0;
+    map.numDeletedEntries_ = 0;
+    map.growthFactor_ = HLL_RESIZE_FACTOR;
+    return map;
+  }
+
+  static HllMap wrapInstance(final MapStorage storage, final int level, final WritableMemory mem) {
+    final int k = mem.getInt(PARAM_INT);
+    final HllMap map = new HllMap(mem.getInt(KEY_SIZE_INT), k, storage, level);
+    final int tableEntries = mem.getInt(TABLE_ENTRIES_INT);
+    checkCapacity(mem, getMemoryBytes(tableEntries, map.keySizeBytes_, map.hllArrLongs_));
+    map.mem_ = mem;
+    map.setTableEntries(tableEntries);
+    map.curCountEntries_ = mem.getInt(ACTIVE_ENTRIES_INT);
+    map.numDeletedEntries_ = mem.getInt(DELETED_ENTRIES_INT);
     map.growthFactor_ = HLL_RESIZE_FACTOR;
-    map.entrySizeBytes_ = updateEntrySizeBytes(map.tableEntries_, keySizeBytes, map.hllArrLongs_);
-
-    map.keysArr_ = new byte[HLL_INIT_NUM_ENTRIES * map.keySizeBytes_];
-    map.arrOfHllArr_ = new long[HLL_INIT_NUM_ENTRIES * map.hllArrLongs_];
-    map.invPow2SumHiArr_ = new double[HLL_INIT_NUM_ENTRIES];
-    map.invPow2SumLoArr_ = new double[HLL_INIT_NUM_ENTRIES];
-    map.hipEstAccumArr_ = new double[HLL_INIT_NUM_ENTRIES];
-    map.stateArr_ = new byte[HLL_INIT_NUM_ENTRIES_ARR_SIZE];
     return map;
   }
 
@@ -105,7 +123,7 @@ final class HllMap extends Map {
   @Override
   double update(final int entryIndex, final short coupon) {
     updateHll(entryIndex, coupon); //update HLL array, updates HIP
-    return hipEstAccumArr_[entryIndex];
+    return getHipEstAccum(entryIndex);
   }
 
   @Override
@@ -115,7 +133,7 @@ final class HllMap extends Map {
     if (entryIndex < 0) {
       return 0;
     }
-    return hipEstAccumArr_[entryIndex];
+    return getHipEstAccum(entryIndex);
   }
 
   @Override
@@ -128,9 +146,137 @@ final class HllMap extends Map {
     return getEstimate(key) * (1 - RSE);
   }
 
+  @Override
+  double getEstimate(final int entryIndex) {
+    return getHipEstAccum(entryIndex);
+  }
+
+  @Override
+  double getUpperBound(final int entryIndex) {
+    return getEstimate(entryIndex) * (1 + RSE);
+  }
+
+  @Override
+  double getLowerBound(final int entryIndex) {
+    return getEstimate(entryIndex) * (1 - RSE);
+  }
+
   @Override
   void updateEstimate(final int entryIndex, final double estimate) {
-    hipEstAccumArr_[entryIndex] = estimate;
+    mem_.putDouble(hipEstAccumOffset_ + ((long) entryIndex * Double.BYTES), estimate);
+  }
+
+  @Override
+  boolean isActive(final int entryIndex) {
+    return isBitSet(mem_, stateOffset_, entryIndex) && !isDeleted(entryIndex);
+  }
+
+  @Override
+  void deleteKey(final int entryIndex) {
+    updateEstimate(entryIndex, DELETED_KEY_MARKER);
+    curCountEntries_--;
+    numDeletedEntries_++;
+    putEntryCounts();
+  }
+
+  //the HLL array followed by the 3 double registers
+  @Override
+  int getSerializedValueBytes(final int entryIndex) {
+    return (hllArrLongs_ + 3) * Long.BYTES;
+  }
+
+  @Override
+  long putValue(final int entryIndex, final WritableMemory dst, final long offset) {
+    final long hllArrBytes = (long) hllArrLongs_ * Long.BYTES;
+    mem_.copyTo(arrOfHllArrOffset_ + (entryIndex * hllArrBytes), dst, offset, hllArrBytes);
+    long off = offset + hllArrBytes;
+    dst.putDouble(off, mem_.getDouble(invPow2SumHiOffset_ + ((long) entryIndex * Double.BYTES)));
+    off += Double.BYTES;
+    dst.putDouble(off, mem_.getDouble(invPow2SumLoOffset_ + ((long) entryIndex * Double.BYTES)));
+    off += Double.BYTES;
+    dst.putDouble(off, getHipEstAccum(entryIndex));
+    return off + Double.BYTES;
+  }
+
+  @Override
+  long getValue(final int entryIndex, final Memory src, final long offset) {
+    final long hllArrBytes = (long) hllArrLongs_ * Long.BYTES;
+    src.copyTo(offset, mem_, arrOfHllArrOffset_ + (entryIndex * hllArrBytes), hllArrBytes);
+    long off = offset + hllArrBytes;
+    mem_.putDouble(invPow2SumHiOffset_ + ((long) entryIndex * Double.BYTES), src.getDouble(off));
+    off += Double.BYTES;
+    mem_.putDouble(invPow2SumLoOffset_ + ((long) entryIndex * Double.BYTES), src.getDouble(off));
+    off += Double.BYTES;
+    mem_.putDouble(hipEstAccumOffset_ + ((long) entryIndex * Double.BYTES), src.getDouble(off));
+    return off + Double.BYTES;
+  }
+
+  /**
+   * Copies the HLL array and registers of an entry of another HllMap with the same K into the
+   * newly inserted key at the given index.
+   * @param entryIndex the index of a newly inserted key
+   * @param src the other HllMap
+   * @param srcIndex the index of the active entry of the other HllMap
+   */
+  void copyEntry(final int entryIndex, final HllMap src, final int srcIndex) {
+    checkSameK(src);
+    final long hllArrBytes = (long) hllArrLongs_ * Long.BYTES;
+    src.mem_.copyTo(src.arrOfHllArrOffset_ + (srcIndex * hllArrBytes), mem_,
+        arrOfHllArrOffset_ + (entryIndex * hllArrBytes), hllArrBytes);
+    mem_.putDouble(invPow2SumHiOffset_ + ((long) entryIndex * Double.BYTES),
+        src.mem_.getDouble(src.invPow2SumHiOffset_ + ((long) srcIndex * Double.BYTES)));
+    mem_.putDouble(invPow2SumLoOffset_ + ((long) entryIndex * Double.BYTES),
+        src.mem_.getDouble(src.invPow2SumLoOffset_ + ((long) srcIndex * Double.BYTES)));
+    updateEstimate(entryIndex, src.getHipEstAccum(srcIndex));
+  }
+
+  /**
+   * Merges the HLL array of an entry of another HllMap with the same K into the HLL array of the
+   * entry at the given index, keeping the maximum of each bin.
+   *
+   * <p>The HIP estimator is not valid for a union, so the estimate of the merged entry is the HLL
+   * estimate of the merged array, with linear counting for small cardinalities. It is never less
+   * than the HIP estimates of the two entries, which remain the best estimates when one of the
+   * entries contains the other. Further updates of the entry accumulate HIP from there.</p>
+   *
+   * @param entryIndex the index of the active entry of this map
+   * @param src the other HllMap
+   * @param srcIndex the index of the active entry of the other HllMap
+   */
+  @SuppressFBWarnings(value = "IM_MULTIPLYING_RESULT_OF_IREM", justification = "False Positive")
+  void mergeEntry(final int entryIndex, final HllMap src, final int srcIndex) {
+    checkSameK(src);
+    final long hllArrBytes = (long) hllArrLongs_ * Long.BYTES;
+    final long dstArrOffset = arrOfHllArrOffset_ + (entryIndex * hllArrBytes);
+    final long srcArrOffset = src.arrOfHllArrOffset_ + (srcIndex * hllArrBytes);
+    double invPow2SumHi = 0;
+    double invPow2SumLo = 0;
+    int numZeros = 0;
+    for (int hllIdx = 0; hllIdx < k_; hllIdx++) {
+      final long longOffset = (hllIdx / 10) * (long) Long.BYTES;
+      final int shift = ((hllIdx % 10) * 6) & SIX_BIT_MASK;
+      final long dstLong = mem_.getLong(dstArrOffset + longOffset);
+      final int dstValue = (int) (dstLong >>> shift) & SIX_BIT_MASK;
+      final int srcValue = (int) (src.mem_.getLong(srcArrOffset + longOffset) >>> shift) & SIX_BIT_MASK;
+      final int value = Math.max(dstValue, srcValue);
+      if (value > dstValue) {
+        mem_.putLong(dstArrOffset + longOffset, (dstLong & ~(0X3FL << shift)) | ((long) value << shift));
+      }
+      if (value == 0) { numZeros++; }
+      if (value < 32) { invPow2SumHi += invPow2(value); }
+      else            { invPow2SumLo += invPow2(value); }
+    }
+    mem_.putDouble(invPow2SumHiOffset_ + ((long) entryIndex * Double.BYTES), invPow2SumHi);
+    mem_.putDouble(invPow2SumLoOffset_ + ((long) entryIndex * Double.BYTES), invPow2SumLo);
+
+    final double alpha = 0.7213 / (1.0 + (1.079 / k_));
+    double hllEstimate = (alpha * k_ * k_) / (invPow2SumHi + invPow2SumLo);
+    if ((hllEstimate <= (2.5 * k_)) && (numZeros > 0)) {
+      hllEstimate = k_ * log((double) k_ / numZeros);
+    }
+    final double estimate = Math.max(hllEstimate,
+        Math.max(getHipEstAccum(entryIndex), src.getHipEstAccum(srcIndex)));
+    updateEstimate(entryIndex, estimate);
   }
 
   /**
@@ -145,17 +291,21 @@ final class HllMap extends Map {
     final long[] hash = MurmurHash3.hash(key, SEED);
     int entryIndex  = getIndex(hash[0], tableEntries_);
     final int stride = getStride(hash[1], tableEntries_);
+    int firstDeletedIndex = -1;
     final int loopIndex = entryIndex;
 
     do {
-      if (isBitClear(stateArr_, entryIndex)) { //check if slot is empty
-        return ~entryIndex;
+      if (isBitClear(mem_, stateOffset_, entryIndex)) { //check if slot is empty
+        return firstDeletedIndex == -1 ? ~entryIndex : ~firstDeletedIndex;
       }
-      if (arraysEqual(key, 0, keysArr_, entryIndex * keyLen, keyLen)) { //check for key match
+      if (isDeleted(entryIndex)) {
+        if (firstDeletedIndex == -1) { firstDeletedIndex = entryIndex; }
+      } else if (keyEquals(mem_, HEADER_BYTES + ((long) entryIndex * keyLen), key)) { //check for key match
         return entryIndex;
       }
       entryIndex = (entryIndex + stride) % tableEntries_;
     } while (entryIndex != loopIndex);
+    if (firstDeletedIndex != -1) { return ~firstDeletedIndex; }
     throw new SketchesArgumentException("Key not found and no empty slots!");
   }
 
@@ -164,14 +314,20 @@ final class HllMap extends Map {
     int entryIndex = findKey(key);
     if (entryIndex < 0) { //key not found, initialize new row
       entryIndex = ~entryIndex;
-      System.arraycopy(key, 0, keysArr_, entryIndex * keySizeBytes_, keySizeBytes_);
-      setBit(stateArr_, entryIndex);
-      invPow2SumHiArr_[entryIndex] = k_;
-      invPow2SumLoArr_[entryIndex] = 0;
-      hipEstAccumArr_[entryIndex] = 0;
+      if (isBitSet(mem_, stateOffset_, entryIndex)) { // reusing slot from a deleted key
+        mem_.clear(arrOfHllArrOffset_ + ((long) entryIndex * hllArrLongs_ * Long.BYTES),
+            (long) hllArrLongs_ * Long.BYTES);
+        numDeletedEntries_--;
+      }
+      mem_.putByteArray(HEADER_BYTES + ((long) entryIndex * keySizeBytes_), key, 0, keySizeBytes_);
+      setBit(mem_, stateOffset_, entryIndex);
+      mem_.putDouble(invPow2SumHiOffset_ + ((long) entryIndex * Double.BYTES), k_);
+      mem_.putDouble(invPow2SumLoOffset_ + ((long) entryIndex * Double.BYTES), 0);
+      mem_.putDouble(hipEstAccumOffset_ + ((long) entryIndex * Double.BYTES), 0);
       curCountEntries_++;
-      if (curCountEntries_ > capacityEntries_) {
-        resize();
+      putEntryCounts();
+      if ((curCountEntries_ + numDeletedEntries_) > capacityEntries_) {
+        resize(growthFactor_);
         entryIndex = findKey(key);
         assert entryIndex >= 0;
       }
@@ -201,14 +357,7 @@ final class HllMap extends Map {
 
   @Override
   long getMemoryUsageBytes() {
-    final long arrays = keysArr_.length
-        + ((long) arrOfHllArr_.length * Long.BYTES)
-        + ((long) invPow2SumLoArr_.length * Double.BYTES)
-        + ((long) invPow2SumHiArr_.length * Double.BYTES)
-        + ((long) hipEstAccumArr_.length * Double.BYTES)
-        + stateArr_.length;
-    final long other = (5L * Integer.BYTES) + Float.BYTES + Double.BYTES;
-    return arrays + other;
+    return mem_.getCapacity();
   }
 
   @Override
@@ -236,7 +385,12 @@ final class HllMap extends Map {
 
   @Override
   int getDeletedEntries() {
-    return 0;
+    return numDeletedEntries_;
+  }
+
+  @Override
+  void compact() {
+    if (numDeletedEntries_ > 0) { resize(1.0F); }
   }
 
   /**
@@ -244,21 +398,19 @@ final class HllMap extends Map {
    * Only used by resize, where it is known that the key does not exist in the table.
    * Throws an exception if no empty slots.
    * @param key the given key
-   * @param tableEntries prime size of table
-   * @param stateArr the valid bit array
    * @return the first empty slot for the given key
    */
-  private static final int findEmpty(final byte[] key, final int tableEntries, final byte[] stateArr) {
+  private final int findEmpty(final byte[] key) {
     final long[] hash = MurmurHash3.hash(key, SEED);
-    int entryIndex  = getIndex(hash[0], tableEntries);
-    final int stride = getStride(hash[1], tableEntries);
+    int entryIndex  = getIndex(hash[0], tableEntries_);
+    final int stride = getStride(hash[1], tableEntries_);
     final int loopIndex = entryIndex;
 
     do {
-      if (isBitClear(stateArr, entryIndex)) { //check if slot is empty
+      if (isBitClear(mem_, stateOffset_, entryIndex)) { //check if slot is empty
         return entryIndex;
       }
-      entryIndex = (entryIndex + stride) % tableEntries;
+      entryIndex = (entryIndex + stride) % tableEntries_;
     } while (entryIndex != loopIndex);
     throw new SketchesArgumentException("No empty slots.");
   }
@@ -272,67 +424,121 @@ final class HllMap extends Map {
     final int longIdx = hllIdx / 10;
     final int shift = ((hllIdx % 10) * 6) & SIX_BIT_MASK;
 
-    long hllLong = arrOfHllArr_[(entryIndex * hllArrLongs_) + longIdx];
+    final long hllLongOffset = arrOfHllArrOffset_
+        + ((((long) entryIndex * hllArrLongs_) + longIdx) * Long.BYTES);
+    long hllLong = mem_.getLong(hllLongOffset);
     final int oldValue = (int)(hllLong >>> shift) & SIX_BIT_MASK;
     if (newValue <= oldValue) { return false; }
     // newValue > oldValue
 
     //update hipEstAccum BEFORE updating invPow2Sum
-    final double invPow2Sum = invPow2SumHiArr_[entryIndex] + invPow2SumLoArr_[entryIndex];
-    final double oneOverQ = k_ / invPow2Sum;
-    hipEstAccumArr_[entryIndex] += oneOverQ;
+    final long hiOffset = invPow2SumHiOffset_ + ((long) entryIndex * Double.BYTES);
+    final long loOffset = invPow2SumLoOffset_ + ((long) entryIndex * Double.BYTES);
+    final long hipOffset = hipEstAccumOffset_ + ((long) entryIndex * Double.BYTES);
+    double invPow2SumHi = mem_.getDouble(hiOffset);
+    double invPow2SumLo = mem_.getDouble(loOffset);
+    final double oneOverQ = k_ / (invPow2SumHi + invPow2SumLo);
+    mem_.putDouble(hipOffset, mem_.getDouble(hipOffset) + oneOverQ);
 
     //update invPow2Sum
-    if (oldValue < 32) { invPow2SumHiArr_[entryIndex] -= invPow2(oldValue); }
-    else               { invPow2SumLoArr_[entryIndex] -= invPow2(oldValue); }
-    if (newValue < 32) { invPow2SumHiArr_[entryIndex] += invPow2(newValue); }
-    else               { invPow2SumLoArr_[entryIndex] += invPow2(newValue); }
+    if (oldValue < 32) { invPow2SumHi -= invPow2(oldValue); }
+    else               { invPow2SumLo -= invPow2(oldValue); }
+    if (newValue < 32) { invPow2SumHi += invPow2(newValue); }
+    else               { invPow2SumLo += invPow2(newValue); }
+    mem_.putDouble(hiOffset, invPow2SumHi);
+    mem_.putDouble(loOffset, invPow2SumLo);
 
     //insert the new value
     hllLong &= ~(0X3FL << shift);  //zero out the 6-bit field
     hllLong |=  ((long)newValue) << shift; //insert
-    arrOfHllArr_[(entryIndex * hllArrLongs_) + longIdx] = hllLong;
+    mem_.putLong(hllLongOffset, hllLong);
     return true;
   }
 
-  private final void resize() {
-    final int newTableEntries = nextPrime((int)(tableEntries_ * growthFactor_));
-    final int newCapacityEntries = (int)(newTableEntries * LOAD_FACTOR);
-
-    final byte[] newKeysArr = new byte[newTableEntries * keySizeBytes_];
-    final long[] newArrOfHllArr = new long[newTableEntries * hllArrLongs_];
-    final double[] newInvPow2Sum1 = new double[newTableEntries];
-    final double[] newInvPow2Sum2 = new double[newTableEntries];
-    final double[] newHipEstAccum = new double[newTableEntries];
-    final byte[] newStateArr = new byte[(int) Math.ceil(newTableEntries / 8.0)];
-
-    for (int oldIndex = 0; oldIndex < tableEntries_; oldIndex++) {
-      if (isBitClear(stateArr_, oldIndex)) { continue; }
+  private final void resize(final float growthFactor) {
+    final WritableMemory oldMem = mem_;
+    final long oldArrOfHllArrOffset = arrOfHllArrOffset_;
+    final long oldInvPow2SumHiOffset = invPow2SumHiOffset_;
+    final long oldInvPow2SumLoOffset = invPow2SumLoOffset_;
+    final long oldHipEstAccumOffset = hipEstAccumOffset_;
+    final long oldStateOffset = stateOffset_;
+    final int oldTableEntries = tableEntries_;
+    //the growth is in proportion to the valid entries, deleted entries are dropped
+    final double validFraction = (double) curCountEntries_ / (curCountEntries_ + numDeletedEntries_);
+    final int newTableEntries = Math.max(
+        nextPrime((int)(tableEntries_ * growthFactor * validFraction)), HLL_INIT_NUM_ENTRIES);
+    mem_ = requestMemory(newTableEntries);
+    setTableEntries(newTableEntries);
+    //curCountEntries_, growthFactor_  unchanged
+    numDeletedEntries_ = 0;
+    putEntryCounts();
+
+    final long hllArrBytes = (long) hllArrLongs_ * Long.BYTES;
+    final byte[] key = new byte[keySizeBytes_];
+    for (int oldIndex = 0; oldIndex < oldTableEntries; oldIndex++) {
+      if (isBitClear(oldMem, oldStateOffset, oldIndex)
+          || (oldMem.getDouble(oldHipEstAccumOffset + ((long) oldIndex * Double.BYTES)) < 0)) {
+        continue;
+      }
       // extract an old key
-      final byte[] key =
-          Arrays.copyOfRange(keysArr_, oldIndex * keySizeBytes_, (oldIndex + 1) * keySizeBytes_);
-      final int newIndex = findEmpty(key, newTableEntries, newStateArr);
-      System.arraycopy(key, 0, newKeysArr, newIndex * keySizeBytes_, keySizeBytes_); //put key
+      oldMem.getByteArray(HEADER_BYTES + ((long) oldIndex * keySizeBytes_), key, 0, keySizeBytes_);
+      final int newIndex = findEmpty(key);
+      mem_.putByteArray(HEADER_BYTES + ((long) newIndex * keySizeBytes_), key, 0, keySizeBytes_); //put key
       //put the rest of the row
-      System.arraycopy(arrOfHllArr_, oldIndex * hllArrLongs_, newArrOfHllArr,
-          newIndex * hllArrLongs_, hllArrLongs_);
-      newInvPow2Sum1[newIndex] = invPow2SumHiArr_[oldIndex];
-      newInvPow2Sum2[newIndex] = invPow2SumLoArr_[oldIndex];
-      newHipEstAccum[newIndex] = hipEstAccumArr_[oldIndex];
-      setBit(newStateArr, newIndex);
+      oldMem.copyTo(oldArrOfHllArrOffset + (oldIndex * hllArrBytes), mem_,
+          arrOfHllArrOffset_ + (newIndex * hllArrBytes), hllArrBytes);
+      mem_.putDouble(invPow2SumHiOffset_ + ((long) newIndex * Double.BYTES),
+          oldMem.getDouble(oldInvPow2SumHiOffset + ((long) oldIndex * Double.BYTES)));
+      mem_.putDouble(invPow2SumLoOffset_ + ((long) newIndex * Double.BYTES),
+          oldMem.getDouble(oldInvPow2SumLoOffset + ((long) oldIndex * Double.BYTES)));
+      mem_.putDouble(hipEstAccumOffset_ + ((long) newIndex * Double.BYTES),
+          oldMem.getDouble(oldHipEstAccumOffset + ((long) oldIndex * Double.BYTES)));
+      setBit(mem_, stateOffset_, newIndex);
     }
-    //restore into sketch
-    tableEntries_ = newTableEntries;
-    capacityEntries_ = newCapacityEntries;
-    //curCountEntries_, growthFactor_  unchanged
-    entrySizeBytes_ = updateEntrySizeBytes(tableEntries_, keySizeBytes_, hllArrLongs_);
-
-    keysArr_ = newKeysArr;
-    arrOfHllArr_ = newArrOfHllArr;
-    invPow2SumHiArr_ = newInvPow2Sum1; //init to k
-    invPow2SumLoArr_ = newInvPow2Sum2; //init to 0
-    hipEstAccumArr_ = newHipEstAccum;  //init to 0
-    stateArr_ = newStateArr;
+    storage_.release(level_, oldMem);
+  }
+
+  private double getHipEstAccum(final int entryIndex) {
+    return mem_.getDouble(hipEstAccumOffset_ + ((long) entryIndex * Double.BYTES));
+  }
+
+  private boolean isDeleted(final int entryIndex) {
+    return getHipEstAccum(entryIndex) < 0;
+  }
+
+  private void putEntryCounts() {
+    mem_.putInt(ACTIVE_ENTRIES_INT, curCountEntries_);
+    mem_.putInt(DELETED_ENTRIES_INT, numDeletedEntries_);
+  }
+
+  private void checkSameK(final HllMap other) {
+    if (other.k_ != k_) {
+      throw new SketchesArgumentException("K of the HLL maps must be equal: " + k_ + ", " + other.k_);
+    }
+  }
+
+  private WritableMemory requestMemory(final int tableEntries) {
+    return requestMemory(HLL_MAP_ID, k_, tableEntries,
+        getMemoryBytes(tableEntries, keySizeBytes_, hllArrLongs_));
+  }
+
+  private void setTableEntries(final int tableEntries) {
+    tableEntries_ = tableEntries;
+    capacityEntries_ = (int)(tableEntries * LOAD_FACTOR);
+    entrySizeBytes_ = updateEntrySizeBytes(tableEntries, keySizeBytes_, hllArrLongs_);
+    arrOfHllArrOffset_ = align8(HEADER_BYTES + ((long) tableEntries * keySizeBytes_));
+    invPow2SumHiOffset_ = arrOfHllArrOffset_ + ((long) tableEntries * hllArrLongs_ * Long.BYTES);
+    invPow2SumLoOffset_ = invPow2SumHiOffset_ + ((long) tableEntries * Double.BYTES);
+    hipEstAccumOffset_ = invPow2SumLoOffset_ + ((long) tableEntries * Double.BYTES);
+    stateOffset_ = hipEstAccumOffset_ + ((long) tableEntries * Double.BYTES);
+  }
+
+  private static long getMemoryBytes(final int tableEntries, final int keySizeBytes,
+      final int hllArrLongs) {
+    final long arrOfHllArrOffset = align8(HEADER_BYTES + ((long) tableEntries * keySizeBytes));
+    final long stateOffset = arrOfHllArrOffset
+        + ((long) tableEntries * (hllArrLongs + 3) * Long.BYTES);
+    return align8(stateOffset + ((tableEntries + 7) / 8));
   }
 
   private static final double updateEntrySizeBytes(final int tableEntries, final int keySizeBytes,
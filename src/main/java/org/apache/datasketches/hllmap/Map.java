@@ -21,9 +21,15 @@ package org.apache.datasketches.hllmap;
 
 import static org.apache.datasketches.common.Util.LS;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.math.BigInteger;
+import java.nio.ByteOrder;
 
+import org.apache.datasketches.common.SketchesArgumentException;
 import org.apache.datasketches.hash.MurmurHash3;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
 
 /**
  * Base class and API for all the maps.
@@ -44,12 +50,81 @@ abstract class Map {
   static final double COUPON_MAP_SHRINK_TRIGGER_FACTOR = 0.5;
   static final double COUPON_MAP_GROW_TRIGGER_FACTOR = 15.0 / 16.0;
   static final double COUPON_MAP_TARGET_FILL_FACTOR = 2.0 / 3.0;
-  static final int COUPON_MAP_MIN_NUM_ENTRIES_ARR_SIZE = (int)Math.ceil(COUPON_MAP_MIN_NUM_ENTRIES / 8.0);
+
+  // The tables of a map live in one WritableMemory, which starts with the state of the map so
+  // that the map can be wrapped again from its memory. The tables follow the header, each one
+  // starting at a multiple of 8 bytes. A map only wraps a memory of its own layout version.
+  static final int MAP_ID_BYTE = 0;          //identifies the class of the map
+  static final int LAYOUT_VERSION_BYTE = 1;
+  static final int KEY_SIZE_INT = 4;
+  static final int TABLE_ENTRIES_INT = 8;
+  static final int ACTIVE_ENTRIES_INT = 12;  //or the current count of entries
+  static final int DELETED_ENTRIES_INT = 16;
+  static final int PARAM_INT = 20;           //max coupons per key, or K of the HLL map
+  static final int FLAGS_INT = 24;
+  static final int HEADER_BYTES = 32;
+
+  static final int LAYOUT_VERSION = 1;
+
+  static final int ACCESS_TABLE_FLAG = 1;    //the base map has a table of access stamps
+
+  static final int SINGLE_COUPON_MAP_ID = 1;
+  static final int COUPON_TRAVERSE_MAP_ID = 2;
+  static final int COUPON_HASH_MAP_ID = 3;
+  static final int HLL_MAP_ID = 4;
+
+  private static final VarHandle LONGS_LE =
+      MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+  private static final VarHandle INTS_LE =
+      MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
 
   final int keySizeBytes_;
+  final MapStorage storage_;
+  final int level_;
+  WritableMemory mem_;
 
-  Map(final int keySizeBytes) {
+  Map(final int keySizeBytes, final MapStorage storage, final int level) {
     keySizeBytes_ = keySizeBytes;
+    storage_ = storage;
+    level_ = level;
+  }
+
+  /**
+   * Wraps the memory of a map of any class, as written by that map.
+   * @param storage the storage that provided the memory
+   * @param level the level of the map
+   * @param mem the memory of the map
+   * @return the map on the given memory
+   */
+  static Map wrap(final MapStorage storage, final int level, final WritableMemory mem) {
+    if (mem.getCapacity() < HEADER_BYTES) {
+      throw new SketchesArgumentException("Memory too small for a map: " + mem.getCapacity());
+    }
+    final int layoutVersion = mem.getByte(LAYOUT_VERSION_BYTE);
+    if (layoutVersion != LAYOUT_VERSION) {
+      throw new SketchesArgumentException("Unsupported map layout version: " + layoutVersion
+          + ", expected " + LAYOUT_VERSION);
+    }
+    final int mapId = mem.getByte(MAP_ID_BYTE);
+    switch (mapId) {
+      case SINGLE_COUPON_MAP_ID: return SingleCouponMap.wrapInstance(storage, level, mem);
+      case COUPON_TRAVERSE_MAP_ID: return CouponTraverseMap.wrapInstance(storage, level, mem);
+      case COUPON_HASH_MAP_ID: return CouponHashMap.wrapInstance(storage, level, mem);
+      case HLL_MAP_ID: return HllMap.wrapInstance(storage, level, mem);
+      default: throw new SketchesArgumentException("Unknown map ID: " + mapId);
+    }
+  }
+
+  /**
+   * Checks that the memory of a map that is wrapped again holds all of its tables.
+   * @param mem the memory of the map
+   * @param tableBytes the size of the header and the tables of the map
+   */
+  static void checkCapacity(final Memory mem, final long tableBytes) {
+    if (mem.getCapacity() < tableBytes) {
+      throw new SketchesArgumentException("Memory too small for its map: " + mem.getCapacity()
+          + " < " + tableBytes);
+    }
   }
 
   /**
@@ -104,6 +179,74 @@ abstract class Map {
    */
   abstract double getLowerBound(byte[] key);
 
+  /**
+   * Returns the estimate of the cardinality of identifiers associated with the key at the given
+   * index, which must be active.
+   * @param index the given index
+   * @return the estimate of the cardinality of identifiers associated with the key
+   */
+  abstract double getEstimate(int index);
+
+  /**
+   * Returns the upper bound cardinality with respect to {@link #getEstimate(int)} associated with
+   * the key at the given index, which must be active.
+   * @param index the given index
+   * @return the upper bound cardinality associated with the key
+   */
+  abstract double getUpperBound(int index);
+
+  /**
+   * Returns the lower bound cardinality with respect to {@link #getEstimate(int)} associated with
+   * the key at the given index, which must be active.
+   * @param index the given index
+   * @return the lower bound cardinality associated with the key
+   */
+  abstract double getLowerBound(int index);
+
+  /**
+   * Returns true if the entry at the given index holds a key whose coupons or HLL array are in
+   * this map. In the base map, promoted keys are not active.
+   * @param index the given index
+   * @return true if the entry at the given index holds a key that is active in this map
+   */
+  abstract boolean isActive(int index);
+
+  /**
+   * Returns the number of bytes of the serialized value of the active entry at the given index,
+   * not including the key.
+   * @param index the given index
+   * @return the number of bytes of the serialized value of the entry
+   */
+  abstract int getSerializedValueBytes(int index);
+
+  /**
+   * Writes the value of the active entry at the given index, not including the key.
+   * @param index the given index
+   * @param dst the destination memory
+   * @param offset the offset in bytes in the destination memory
+   * @return the offset just after the written value
+   */
+  abstract long putValue(int index, WritableMemory dst, long offset);
+
+  /**
+   * Reads the value of an entry, as written by {@link #putValue(int, WritableMemory, long)}, into
+   * the newly inserted key at the given index.
+   * @param index the index of a newly inserted key
+   * @param src the source memory
+   * @param offset the offset in bytes of the value in the source memory
+   * @return the offset just after the value
+   */
+  abstract long getValue(int index, Memory src, long offset);
+
+  /**
+   * Copies the key at the given index into the given array.
+   * @param index the given index
+   * @param key the destination array of the size of the keys of this map
+   */
+  final void getKey(final int index, final byte[] key) {
+    mem_.getByteArray(HEADER_BYTES + ((long) index * keySizeBytes_), key, 0, keySizeBytes_);
+  }
+
   abstract int findKey(byte[] key);
 
   abstract int findOrInsertKey(byte[] key);
@@ -118,6 +261,11 @@ abstract class Map {
 
   abstract int getDeletedEntries();
 
+  /**
+   * Rebuilds the table of this map without its deleted entries, if it has any.
+   */
+  abstract void compact();
+
   abstract double getEntrySizeBytes();
 
   abstract int getTableEntries();
@@ -139,24 +287,25 @@ abstract class Map {
   void deleteKey(final int index) {}
 
   /**
-   * Returns <code>true</code> if the two specified sub-arrays of bytes are <i>equal</i> to one another.
-   * Two arrays are considered equal if all corresponding pairs of elements in the two arrays are
-   * equal. In other words, two arrays are equal if and only if they contain the same elements
-   * in the same order.
-   *
-   * @param a one sub-array to be tested for equality
-   * @param offsetA the offset in bytes of the start of sub-array <i>a</i>.
-   * @param b the other sub-array to be tested for equality
-   * @param offsetB the offset in bytes of the start of sub-array <i>b</i>.
-   * @param length the length in bytes of the two sub-arrays.
-   * @return <code>true</code> if the two sub-arrays are equal
+   * Returns <code>true</code> if the key in the given memory at the given offset is equal to the
+   * given key. The keys are compared 8 bytes at a time, which requires a little-endian memory.
+   * @param mem the given little-endian memory
+   * @param offset the offset in bytes of the key in the memory
+   * @param key the given key
+   * @return <code>true</code> if the two keys are equal
    */
-  static final boolean arraysEqual(final byte[] a, final int offsetA, final byte[] b,
-      final int offsetB, final int length) {
-    for (int i = 0; i < length; i++) {
-      if (a[i + offsetA] != b[i + offsetB]) {
-        return false;
-      }
+  static final boolean keyEquals(final Memory mem, final long offset, final byte[] key) {
+    final int len = key.length;
+    int i = 0;
+    for (; i <= (len - Long.BYTES); i += Long.BYTES) {
+      if (mem.getLong(offset + i) != (long) LONGS_LE.get(key, i)) { return false; }
+    }
+    if (i <= (len - Integer.BYTES)) {
+      if (mem.getInt(offset + i) != (int) INTS_LE.get(key, i)) { return false; }
+      i += Integer.BYTES;
+    }
+    for (; i < len; i++) {
+      if (mem.getByte(offset + i) != key[i]) { return false; }
     }
     return true;
   }
@@ -187,28 +336,60 @@ abstract class Map {
     return (int) ((hash >>> 1) % (tableEntries - 2L) + 1L);
   }
 
-  static boolean isBitSet(final byte[] byteArr, final int bitIndex) {
-    final int byteIndex = bitIndex / 8;
+  static boolean isBitSet(final Memory mem, final long offset, final int bitIndex) {
     final int mask = 1 << (bitIndex % 8);
-    return (byteArr[byteIndex] & mask) > 0;
+    return (mem.getByte(offset + (bitIndex / 8)) & mask) != 0;
   }
 
-  static boolean isBitClear(final byte[] byteArr, final int bitIndex) {
-    final int byteIndex = bitIndex / 8;
-    final int mask = 1 << (bitIndex % 8);
-    return (byteArr[byteIndex] & mask) == 0;
+  static boolean isBitClear(final Memory mem, final long offset, final int bitIndex) {
+    return !isBitSet(mem, offset, bitIndex);
   }
 
-  static void clearBit(final byte[] byteArr, final int index) {
-    final int byteIndex = index / 8;
+  static void clearBit(final WritableMemory mem, final long offset, final int index) {
+    final long byteOffset = offset + (index / 8);
     final int mask = 1 << (index % 8);
-    byteArr[byteIndex] &= ~mask;
+    mem.putByte(byteOffset, (byte) (mem.getByte(byteOffset) & ~mask));
   }
 
-  static void setBit(final byte[] bits, final int index) {
-    final int byteIndex = index / 8;
+  static void setBit(final WritableMemory mem, final long offset, final int index) {
+    final long byteOffset = offset + (index / 8);
     final int mask = 1 << (index % 8);
-    bits[byteIndex] |= mask;
+    mem.putByte(byteOffset, (byte) (mem.getByte(byteOffset) | mask));
+  }
+
+  /**
+   * Returns the given number of bytes rounded up to a multiple of 8.
+   * @param bytes the given number of bytes
+   * @return the given number of bytes rounded up to a multiple of 8
+   */
+  static long align8(final long bytes) {
+    return (bytes + 7) & ~7L;
+  }
+
+  /**
+   * Requests the memory of a new table of this map from the storage and writes the header.
+   * @param mapId the ID of the class of this map
+   * @param param the max coupons per key, or K of the HLL map
+   * @param tableEntries the number of entries of the table
+   * @param capacityBytes the size of the memory in bytes
+   * @return the new memory, which must be assigned to mem_ once the contents have been moved
+   */
+  final WritableMemory requestMemory(final int mapId, final int param, final int tableEntries,
+      final long capacityBytes) {
+    final WritableMemory mem = storage_.request(level_, capacityBytes);
+    mem.putByte(MAP_ID_BYTE, (byte) mapId);
+    mem.putByte(LAYOUT_VERSION_BYTE, (byte) LAYOUT_VERSION);
+    mem.putInt(KEY_SIZE_INT, keySizeBytes_);
+    mem.putInt(TABLE_ENTRIES_INT, tableEntries);
+    mem.putInt(PARAM_INT, param);
+    return mem;
+  }
+
+  /**
+   * Releases the memory of this map to the storage. The map may not be used afterwards.
+   */
+  void release() {
+    storage_.release(level_, mem_);
   }
 
   /**
@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.datasketches.hllmap;
+
+import java.nio.ByteOrder;
+
+import org.apache.datasketches.common.SketchesArgumentException;
+import org.apache.datasketches.memory.WritableMemory;
+
+/**
+ * Provides the WritableMemory that holds the tables of each internal map of a
+ * {@link UniqueCountMap}. Each map keeps all of its tables in one memory, which it requests when
+ * it is created and each time it is resized, and releases once its contents have been moved.
+ * The maps are identified by their level in the UniqueCountMap. The memory must be
+ * little-endian, as the maps compare their keys as little-endian longs.
+ */
+abstract class MapStorage {
+
+  /**
+   * Storage of the maps on the Java heap.
+   */
+  static final MapStorage HEAP = new MapStorage() {
+    @Override
+    WritableMemory request(final int level, final long capacityBytes) {
+      if (capacityBytes > Integer.MAX_VALUE) {
+        throw new SketchesArgumentException("Map tables on the heap are limited to "
+            + Integer.MAX_VALUE + " bytes: " + capacityBytes);
+      }
+      return WritableMemory.allocate((int) capacityBytes, ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    void release(final int level, final WritableMemory mem) { }
+  };
+
+  /**
+   * Returns a new zeroed memory of the given capacity for the map of the given level. The
+   * memory that the map currently uses, if any, remains valid until it is released.
+   * @param level the level of the map
+   * @param capacityBytes the capacity of the memory in bytes
+   * @return a new zeroed memory for the map of the given level
+   */
+  abstract WritableMemory request(int level, long capacityBytes);
+
+  /**
+   * Releases a memory that the map of the given level no longer uses.
+   * @param level the level of the map
+   * @param mem the memory to release
+   */
+  abstract void release(int level, WritableMemory mem);
+
+  /**
+   * Returns the memory of the map of the given level kept by this storage from an earlier
+   * session, or null if there is none.
+   * @param level the level of the map
+   * @return the memory of the map of the given level, or null
+   */
+  WritableMemory existing(final int level) {
+    return null;
+  }
+
+  /**
+   * Writes any changes to the memory of the maps through to the underlying storage.
+   */
+  void force() { }
+
+  /**
+   * Releases the resources of the storage. The maps may not be used afterwards.
+   */
+  void close() { }
+
+}
@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.datasketches.hllmap;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.IdentityHashMap;
+
+import org.apache.datasketches.common.SketchesArgumentException;
+import org.apache.datasketches.common.SketchesException;
+import org.apache.datasketches.memory.WritableMemory;
+
+import jdk.incubator.foreign.ResourceScope;
+
+/**
+ * Storage of the maps in memory-mapped files of a directory, one file per map.
+ *
+ * <p>The file of the map of level <i>L</i> is named <code>level-L-G.map</code>, where <i>G</i>
+ * is a generation number that grows each time the map is resized. A resize maps a new file,
+ * moves the contents of the map into it, and only then unmaps and deletes the file of the previous
+ * generation. If the process stops during a resize, both files remain and the older one, which is
+ * complete, is used when the directory is mapped again.</p>
+ *
+ * <p>The files are mapped in shared scopes, so the maps may be used by any thread.</p>
+ */
+final class MappedMapStorage extends MapStorage {
+  private static final String PREFIX = "level-";
+  private static final String SUFFIX = ".map";
+
+  private final File dir_;
+  private final long[] generations_;
+  private final IdentityHashMap<WritableMemory, File> files_ = new IdentityHashMap<>();
+
+  /**
+   * Creates a storage in the given directory, which is created if it does not exist.
+   * @param dir the directory of the files of the maps
+   * @param numLevels the number of levels of maps
+   */
+  MappedMapStorage(final File dir, final int numLevels) {
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new SketchesArgumentException("Cannot create directory: " + dir);
+    }
+    dir_ = dir;
+    generations_ = new long[numLevels];
+  }
+
+  @Override
+  WritableMemory request(final int level, final long capacityBytes) {
+    final File file = new File(dir_, PREFIX + level + "-" + ++generations_[level] + SUFFIX);
+    if (file.exists() && !file.delete()) {
+      throw new SketchesException("Cannot delete stale file: " + file);
+    }
+    return map(file, capacityBytes);
+  }
+
+  @Override
+  void release(final int level, final WritableMemory mem) {
+    final File file = files_.remove(mem);
+    mem.close();
+    if ((file != null) && !file.delete()) {
+      throw new SketchesException("Cannot delete file: " + file);
+    }
+  }
+
+  @Override
+  WritableMemory existing(final int level) {
+    final String prefix = PREFIX + level + "-";
+    final File[] files = dir_.listFiles((d, name) -> name.startsWith(prefix) && name.endsWith(SUFFIX));
+    if ((files == null) || (files.length == 0)) { return null; }
+    File oldest = null;
+    long oldestGen = Long.MAX_VALUE;
+    final long[] gens = new long[files.length];
+    for (int i = 0; i < files.length; i++) {
+      gens[i] = generation(files[i].getName(), prefix);
+      if (gens[i] < 0) { continue; }
+      generations_[level] = Math.max(generations_[level], gens[i]);
+      if (gens[i] < oldestGen) {
+        oldest = files[i];
+        oldestGen = gens[i];
+      }
+    }
+    if (oldest == null) { return null; }
+    //newer generations are left over from an unfinished resize
+    for (int i = 0; i < files.length; i++) {
+      if ((gens[i] > oldestGen) && !files[i].delete()) {
+        throw new SketchesException("Cannot delete file of unfinished resize: " + files[i]);
+      }
+    }
+    if (oldest.length() == 0) { //the process stopped right after creating the file
+      if (!oldest.delete()) { throw new SketchesException("Cannot delete empty file: " + oldest); }
+      return null;
+    }
+    return map(oldest, oldest.length());
+  }
+
+  @Override
+  void force() {
+    for (final WritableMemory mem : files_.keySet()) { mem.force(); }
+  }
+
+  @Override
+  void close() {
+    for (final WritableMemory mem : files_.keySet()) {
+      mem.force();
+      mem.close();
+    }
+    files_.clear();
+  }
+
+  //the generation in the given file name, or -1 if the name is not that of a map file
+  private static long generation(final String name, final String prefix) {
+    try {
+      return Long.parseLong(name.substring(prefix.length(), name.length() - SUFFIX.length()));
+    } catch (final NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private WritableMemory map(final File file, final long capacityBytes) {
+    final WritableMemory mem;
+    try {
+      if (!file.exists() && !file.createNewFile()) {
+        throw new SketchesException("Cannot create file: " + file);
+      }
+      //the file is extended with zeros to the capacity
+      mem = WritableMemory.writableMap(file, 0, capacityBytes, ResourceScope.newSharedScope(),
+          ByteOrder.LITTLE_ENDIAN);
+    } catch (final IOException e) {
+      throw new SketchesException("Cannot map file: " + file, e);
+    }
+    files_.put(mem, file);
+    return mem;
+  }
+
+}
@@ -19,10 +19,10 @@
 
 package org.apache.datasketches.hllmap;
 
-import java.util.Arrays;
-
 import org.apache.datasketches.common.SketchesArgumentException;
 import org.apache.datasketches.hash.MurmurHash3;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
 
 /**
  * Implements a key-value map where the value is a single coupon or a map reference.
@@ -30,6 +30,13 @@ import org.apache.datasketches.hash.MurmurHash3;
  * This map is implemented with a prime sized Open Address, Double Hash, with a 1-bit state array,
  * which indicates the contents of the value.
  *
+ * <p>The keys, coupons and state array are tables in the memory of the map, in that order.
+ * A map that tracks the access to its keys for eviction has a table of 32-bit access stamps after
+ * these, whose meaning is given by the {@link EvictionPolicy}.
+ *
+ * <p>Keys can be removed for eviction. A removed key leaves a deleted entry, which has a zero
+ * coupon but the state of a promoted key, until the next resize.
+ *
  * @author Lee Rhodes
  * @author Alexander Saydakov
  * @author Kevin Lang
@@ -40,11 +47,12 @@ final class SingleCouponMap extends Map {
   private int tableEntries_;
   private int capacityEntries_;
   private int curCountEntries_;
+  private int numDeletedEntries_;
   private double entrySizeBytes_;
+  private final boolean hasAccessTable_;
 
-  // Arrays
-  private byte[] keysArr_;
-  private short[] couponsArr_;
+  // Offsets of the tables in the memory. The keys start at HEADER_BYTES.
+  private long couponsOffset_;
 
   /**
    * <ul><li>state: 0: empty or valid; empty if coupon is 0, otherwise valid.</li>
@@ -52,24 +60,42 @@ final class SingleCouponMap extends Map {
    * reference instead.</li>
    * </ul>
    */
-  private byte[] stateArr_;
+  private long stateOffset_;
+  private long accessOffset_;
 
-  private SingleCouponMap(final int keySizeBytes) {
-    super(keySizeBytes);
+  private SingleCouponMap(final int keySizeBytes, final MapStorage storage, final int level,
+      final boolean hasAccessTable) {
+    super(keySizeBytes, storage, level);
+    hasAccessTable_ = hasAccessTable;
   }
 
   static SingleCouponMap getInstance(final int initialNumEntries, final int keySizeBytes) {
+    return getInstance(MapStorage.HEAP, 0, initialNumEntries, keySizeBytes, false);
+  }
+
+  static SingleCouponMap getInstance(final MapStorage storage, final int level,
+      final int initialNumEntries, final int keySizeBytes, final boolean hasAccessTable) {
     final int tableEntries = nextPrime(initialNumEntries);
 
-    final SingleCouponMap map = new SingleCouponMap(keySizeBytes);
-    map.tableEntries_ = tableEntries;
-    map.capacityEntries_ = (int)(tableEntries * COUPON_MAP_GROW_TRIGGER_FACTOR);
+    final SingleCouponMap map = new SingleCouponMap(keySizeBytes, storage, level, hasAccessTable);
+    map.mem_ = map.requestMemory(tableEntries);
+    map.setTableEntries(tableEntries);
     map.curCountEntries_ = 0;
-    map.entrySizeBytes_ = updateEntrySizeBytes(tableEntries, keySizeBytes);
+    map.numDeletedEntries_ = 0;
+    return map;
+  }
 
-    map.keysArr_ = new byte[tableEntries * map.keySizeBytes_];
-    map.couponsArr_ = new short[tableEntries];
-    map.stateArr_ = new byte[(int) Math.ceil(tableEntries / 8.0)];
+  static SingleCouponMap wrapInstance(final MapStorage storage, final int level,
+      final WritableMemory mem) {
+    final boolean hasAccessTable = (mem.getInt(FLAGS_INT) & ACCESS_TABLE_FLAG) != 0;
+    final SingleCouponMap map = new SingleCouponMap(mem.getInt(KEY_SIZE_INT), storage, level,
+        hasAccessTable);
+    final int tableEntries = mem.getInt(TABLE_ENTRIES_INT);
+    checkCapacity(mem, getMemoryBytes(tableEntries, map.keySizeBytes_, hasAccessTable));
+    map.mem_ = mem;
+    map.setTableEntries(tableEntries);
+    map.curCountEntries_ = mem.getInt(ACTIVE_ENTRIES_INT);
+    map.numDeletedEntries_ = mem.getInt(DELETED_ENTRIES_INT);
     return map;
   }
 
@@ -81,17 +107,18 @@ final class SingleCouponMap extends Map {
 
   @Override
   double update(final int entryIndex, final short coupon) {
-    if (couponsArr_[entryIndex] == 0) {
-      couponsArr_[entryIndex] = coupon;
+    final short value = getCoupon(entryIndex);
+    if (value == 0) {
+      mem_.putShort(couponsOffset_ + ((long) entryIndex * Short.BYTES), coupon);
       return 1;
     }
     if (isCoupon(entryIndex)) {
-      if (couponsArr_[entryIndex] == coupon) { //duplicate
+      if (value == coupon) { //duplicate
         return 1;
       }
       return 0; // signal to promote
     }
-    return -couponsArr_[entryIndex]; // negative level number
+    return -value; // negative level number
   }
 
   @Override
@@ -112,6 +139,43 @@ final class SingleCouponMap extends Map {
     return getEstimate(key) * (1 - RSE);
   }
 
+  @Override
+  double getEstimate(final int entryIndex) {
+    return 1;
+  }
+
+  @Override
+  double getUpperBound(final int entryIndex) {
+    return 1 + RSE;
+  }
+
+  @Override
+  double getLowerBound(final int entryIndex) {
+    return 1 - RSE;
+  }
+
+  @Override
+  boolean isActive(final int entryIndex) {
+    return (getCoupon(entryIndex) != 0) && isCoupon(entryIndex);
+  }
+
+  @Override
+  int getSerializedValueBytes(final int entryIndex) {
+    return Short.BYTES;
+  }
+
+  @Override
+  long putValue(final int entryIndex, final WritableMemory dst, final long offset) {
+    dst.putShort(offset, getCoupon(entryIndex));
+    return offset + Short.BYTES;
+  }
+
+  @Override
+  long getValue(final int entryIndex, final Memory src, final long offset) {
+    setCoupon(entryIndex, src.getShort(offset), false);
+    return offset + Short.BYTES;
+  }
+
   /**
    * Returns entryIndex if the given key is found. The coupon may be valid or contain a table index.
    * If not found, returns one's complement entryIndex
@@ -124,17 +188,21 @@ final class SingleCouponMap extends Map {
     final long[] hash = MurmurHash3.hash(key, SEED);
     int entryIndex = getIndex(hash[0], tableEntries_);
     final int stride = getStride(hash[1], tableEntries_);
+    int firstDeletedIndex = -1;
     final int loopIndex = entryIndex;
 
     do {
-      if (couponsArr_[entryIndex] == 0) {
-        return ~entryIndex; //empty
-      }
-      if (Map.arraysEqual(key, 0, keysArr_, entryIndex * keySizeBytes_, keySizeBytes_)) {
+      if (getCoupon(entryIndex) == 0) {
+        if (isCoupon(entryIndex)) { // found empty
+          return firstDeletedIndex == -1 ? ~entryIndex : ~firstDeletedIndex;
+        }
+        if (firstDeletedIndex == -1) { firstDeletedIndex = entryIndex; } //found deleted
+      } else if (Map.keyEquals(mem_, HEADER_BYTES + ((long) entryIndex * keySizeBytes_), key)) {
         return entryIndex;
       }
       entryIndex = (entryIndex + stride) % tableEntries_;
     } while (entryIndex != loopIndex);
+    if (firstDeletedIndex != -1) { return ~firstDeletedIndex; }
     throw new SketchesArgumentException("Key not found and no empty slots!");
   }
 
@@ -142,21 +210,61 @@ final class SingleCouponMap extends Map {
   int findOrInsertKey(final byte[] key) {
     int entryIndex = findKey(key);
     if (entryIndex < 0) {
-      if (curCountEntries_ + 1 > capacityEntries_) {
+      if (curCountEntries_ + numDeletedEntries_ + 1 > capacityEntries_) {
         resize();
         entryIndex = findKey(key);
         assert entryIndex < 0;
       }
       entryIndex = ~entryIndex;
-      System.arraycopy(key, 0, keysArr_, entryIndex * keySizeBytes_, keySizeBytes_);
+      if (!isCoupon(entryIndex)) { // reusing slot from a deleted key
+        clearBit(mem_, stateOffset_, entryIndex);
+        numDeletedEntries_--;
+      }
+      mem_.putByteArray(HEADER_BYTES + ((long) entryIndex * keySizeBytes_), key, 0, keySizeBytes_);
       curCountEntries_++;
+      putEntryCounts();
     }
     return entryIndex;
   }
 
+  /**
+   * Removes the key at the given index, whether its coupon is in this map or it has been promoted.
+   * Unlike {@link #deleteKey(int)}, which is a no-op for this map since a promoted key remains in
+   * it, this leaves a deleted entry.
+   * @param entryIndex the index of the key
+   */
+  void removeKey(final int entryIndex) {
+    setCoupon(entryIndex, (short) 0, true);
+    curCountEntries_--;
+    numDeletedEntries_++;
+    putEntryCounts();
+  }
+
+  /**
+   * Returns the access stamp of the key at the given index. See {@link EvictionPolicy}.
+   * @param entryIndex the index of the key
+   * @return the access stamp of the key
+   */
+  int getAccess(final int entryIndex) {
+    return mem_.getInt(accessOffset_ + ((long) entryIndex * Integer.BYTES));
+  }
+
+  /**
+   * Sets the access stamp of the key at the given index. See {@link EvictionPolicy}.
+   * @param entryIndex the index of the key
+   * @param access the access stamp of the key
+   */
+  void setAccess(final int entryIndex, final int access) {
+    mem_.putInt(accessOffset_ + ((long) entryIndex * Integer.BYTES), access);
+  }
+
+  boolean hasAccessTable() {
+    return hasAccessTable_;
+  }
+
   @Override
   CouponsIterator getCouponsIterator(final int entryIndex) {
-    return new CouponsIterator(couponsArr_, entryIndex, 1);
+    return new CouponsIterator(mem_, couponsOffset_ + ((long) entryIndex * Short.BYTES), 1);
   }
 
   @Override
@@ -176,29 +284,33 @@ final class SingleCouponMap extends Map {
 
   @Override
   int getDeletedEntries() {
-    return 0;
+    return numDeletedEntries_;
+  }
+
+  @Override
+  void compact() {
+    if (numDeletedEntries_ > 0) { resize(); }
   }
 
   boolean isCoupon(final int entryIndex) {
-    return !isBitSet(stateArr_, entryIndex);
+    return !isBitSet(mem_, stateOffset_, entryIndex);
   }
 
   short getCoupon(final int entryIndex) {
-    return couponsArr_[entryIndex];
+    return mem_.getShort(couponsOffset_ + ((long) entryIndex * Short.BYTES));
   }
 
   void setCoupon(final int entryIndex, final short coupon, final boolean isLevel) {
-    couponsArr_[entryIndex] = coupon;
+    mem_.putShort(couponsOffset_ + ((long) entryIndex * Short.BYTES), coupon);
     if (isLevel) {
-      setBit(stateArr_, entryIndex);
+      setBit(mem_, stateOffset_, entryIndex);
     } else {
-      clearBit(stateArr_, entryIndex);
+      clearBit(mem_, stateOffset_, entryIndex);
     }
   }
 
   void setLevel(final int entryIndex, final int level) {
-    couponsArr_[entryIndex] = (short) level;
-    setBit(stateArr_, entryIndex);
+    setCoupon(entryIndex, (short) level, true);
   }
 
   @Override
@@ -223,54 +335,85 @@ final class SingleCouponMap extends Map {
 
   @Override
   long getMemoryUsageBytes() {
-    final long arrays = keysArr_.length
-        + (long)couponsArr_.length * Short.BYTES
-        + stateArr_.length;
-    final long other = 4 * 4 + 8;
-    return arrays + other;
+    return mem_.getCapacity();
   }
 
   private void resize() {
-    final byte[] oldKeysArr = keysArr_;
-    final short[] oldCouponsArr = couponsArr_;
-    final byte[] oldStateArr = stateArr_;
+    final WritableMemory oldMem = mem_;
+    final long oldCouponsOffset = couponsOffset_;
+    final long oldStateOffset = stateOffset_;
+    final long oldAccessOffset = accessOffset_;
     final int oldTableEntries = tableEntries_;
-    tableEntries_ = nextPrime((int) (curCountEntries_ / COUPON_MAP_TARGET_FILL_FACTOR));
-    capacityEntries_ = (int)(tableEntries_ * COUPON_MAP_GROW_TRIGGER_FACTOR);
-    keysArr_ = new byte[tableEntries_ * keySizeBytes_];
-    couponsArr_ = new short[tableEntries_];
-    stateArr_ = new byte[(int) Math.ceil(tableEntries_ / 8.0)];
-    entrySizeBytes_ = updateEntrySizeBytes(tableEntries_, keySizeBytes_);
-    //move the data
+    final int newTableEntries = nextPrime((int) (curCountEntries_ / COUPON_MAP_TARGET_FILL_FACTOR));
+    mem_ = requestMemory(newTableEntries);
+    setTableEntries(newTableEntries);
+    numDeletedEntries_ = 0;
+    putEntryCounts();
+    //move the data, deleted entries are dropped
+    final byte[] key = new byte[keySizeBytes_];
     for (int i = 0; i < oldTableEntries; i++) {
-      if (oldCouponsArr[i] != 0) {
-        final byte[] key =
-            Arrays.copyOfRange(oldKeysArr, i * keySizeBytes_, i * keySizeBytes_ + keySizeBytes_);
-        insertEntry(key, oldCouponsArr[i], isBitSet(oldStateArr, i));
+      final short coupon = oldMem.getShort(oldCouponsOffset + ((long) i * Short.BYTES));
+      if (coupon != 0) {
+        oldMem.getByteArray(HEADER_BYTES + ((long) i * keySizeBytes_), key, 0, keySizeBytes_);
+        final int index = insertEntry(key, coupon, isBitSet(oldMem, oldStateOffset, i));
+        if (hasAccessTable_) {
+          setAccess(index, oldMem.getInt(oldAccessOffset + ((long) i * Integer.BYTES)));
+        }
       }
     }
+    storage_.release(level_, oldMem);
   }
 
   // for internal use during resize, so no resize check here
-  private void insertEntry(final byte[] key, final int coupon, final boolean setStateOne) {
+  private int insertEntry(final byte[] key, final int coupon, final boolean setStateOne) {
     final long[] hash = MurmurHash3.hash(key, SEED);
     int entryIndex = getIndex(hash[0], tableEntries_);
     final int stride = getStride(hash[1], tableEntries_);
     final int loopIndex = entryIndex;
     do {
-      if (couponsArr_[entryIndex] == 0) {
-        System.arraycopy(key, 0, keysArr_, entryIndex * keySizeBytes_, keySizeBytes_);
+      if (getCoupon(entryIndex) == 0) {
+        mem_.putByteArray(HEADER_BYTES + ((long) entryIndex * keySizeBytes_), key, 0, keySizeBytes_);
         setCoupon(entryIndex, (short)coupon, setStateOne);
-        return;
+        return entryIndex;
       }
       entryIndex = (entryIndex + stride) % tableEntries_;
     } while (entryIndex != loopIndex);
     throw new SketchesArgumentException("Key not found and no empty slots!");
   }
 
-  private static final double updateEntrySizeBytes(final int tableEntries, final int keySizeBytes) {
+  private void putEntryCounts() {
+    mem_.putInt(ACTIVE_ENTRIES_INT, curCountEntries_);
+    mem_.putInt(DELETED_ENTRIES_INT, numDeletedEntries_);
+  }
+
+  private WritableMemory requestMemory(final int tableEntries) {
+    final WritableMemory mem = requestMemory(SINGLE_COUPON_MAP_ID, 1, tableEntries,
+        getMemoryBytes(tableEntries, keySizeBytes_, hasAccessTable_));
+    mem.putInt(FLAGS_INT, hasAccessTable_ ? ACCESS_TABLE_FLAG : 0);
+    return mem;
+  }
+
+  private void setTableEntries(final int tableEntries) {
+    tableEntries_ = tableEntries;
+    capacityEntries_ = (int)(tableEntries * COUPON_MAP_GROW_TRIGGER_FACTOR);
+    entrySizeBytes_ = updateEntrySizeBytes(tableEntries, keySizeBytes_, hasAccessTable_);
+    couponsOffset_ = align8(HEADER_BYTES + ((long) tableEntries * keySizeBytes_));
+    stateOffset_ = align8(couponsOffset_ + ((long) tableEntries * Short.BYTES));
+    accessOffset_ = align8(stateOffset_ + ((tableEntries + 7) / 8));
+  }
+
+  private static long getMemoryBytes(final int tableEntries, final int keySizeBytes,
+      final boolean hasAccessTable) {
+    final long couponsOffset = align8(HEADER_BYTES + ((long) tableEntries * keySizeBytes));
+    final long stateOffset = align8(couponsOffset + ((long) tableEntries * Short.BYTES));
+    final long accessOffset = align8(stateOffset + ((tableEntries + 7) / 8));
+    return hasAccessTable ? accessOffset + ((long) tableEntries * Integer.BYTES) : accessOffset;
+  }
+
+  private static final double updateEntrySizeBytes(final int tableEntries, final int keySizeBytes,
+      final boolean hasAccessTable) {
     final double byteFraction = Math.ceil(tableEntries / 8.0) / tableEntries;
-    return keySizeBytes + Short.BYTES + byteFraction;
+    return keySizeBytes + Short.BYTES + byteFraction + (hasAccessTable ? Integer.BYTES : 0);
   }
 
 }
@@ -21,7 +21,12 @@ package org.apache.datasketches.hllmap;
 
 import static org.apache.datasketches.common.Util.LS;
 
+import java.io.File;
+import java.nio.ByteOrder;
+
 import org.apache.datasketches.common.SketchesArgumentException;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
 
 /**
  * This is a real-time, key-value HLL mapping sketch that tracks approximate unique counts of
@@ -72,6 +77,24 @@ import org.apache.datasketches.common.SketchesArgumentException;
  * <p>The sketch estimator algorithms are unbiased with a Relative Standard Error (RSE)
  * of about 2.6% with 68% confidence, or equivalently, about 5.2% with a 95% confidence.
  *
+ * <p>Each internal map keeps all of its tables in a single WritableMemory. By default this memory
+ * is on the Java heap. A map created with {@link #writableMap(File, int, int)} instead keeps the
+ * tables of each internal map in a memory-mapped file of a given directory, so the map may be much
+ * larger than the heap and can be mapped again by a later process. Changes are guaranteed to be in
+ * the files only after {@link #force()} or {@link #close()}. If the process stops at any other
+ * time, the files hold a usable map, but the last updates may be lost or partially applied.
+ *
+ * <p>A map on the heap can be given a memory budget, in which case it evicts keys that were least
+ * recently or least frequently updated, as chosen by an {@link EvictionPolicy}, so that it can run
+ * in a long-lived service with a hard memory ceiling. Evicted keys can be spilled to an
+ * {@link EvictionListener}. See {@link #UniqueCountMap(int, int, long, EvictionPolicy,
+ * EvictionListener)}.
+ *
+ * <p>A map can be serialized with {@link #toByteArray()} and restored with
+ * {@link #heapify(Memory)}, so that the maps of many servers can be shipped to an aggregator and
+ * combined with {@link #merge(UniqueCountMap)}. The keys and their estimates can be read with
+ * {@link #iterator()}.
+ *
  * <p>In a parallel package in the sketches-misc repository, there are 2 classes  that can be used
  * from the command line to feed this mapping sketch piped from standard-in for experimental
  * evaluation. The first is ProcessIpStream, which processes simple IP/ID pairs and the second,
@@ -83,13 +106,48 @@ import org.apache.datasketches.common.SketchesArgumentException;
  * @author Alexander Saydakov
  * @author Kevin Lang
  */
-public final class UniqueCountMap {
+public final class UniqueCountMap implements AutoCloseable {
   private static final int NUM_LEVELS = 10; // total of single coupon + traverse + coupon maps + hll
   private static final int NUM_TRAVERSE_MAPS = 3;
   private static final int HLL_K = 1024;
   private static final int INITIAL_NUM_ENTRIES = 1000003;
   private static final int MIN_INITIAL_NUM_ENTRIES = 157;
+
+  // Serialization format, little-endian:
+  //  byte 0: serialization version
+  //  byte 1: number of levels
+  //  bytes 2-3: unused
+  //  int 4: key size in bytes
+  //  int 8 + 4 * L: number of keys active in the map of level L, for each level L
+  //  then, level by level, each key followed by its value as written by the map of its level
+  private static final int SER_VER = 1;
+  private static final int SER_VER_BYTE = 0;
+  private static final int NUM_LEVELS_BYTE = 1;
+  private static final int KEY_SIZE_INT = 4;
+  private static final int LEVEL_COUNTS_INT = 8;
+  private static final int PREAMBLE_BYTES = LEVEL_COUNTS_INT + (NUM_LEVELS * Integer.BYTES);
+
+  // The live and deleted entries are kept within this fraction of the memory budget, which leaves
+  // room for the free slots of the hash tables. The HLL map, which has the largest entries, is at
+  // most about 2.1 times the size of its live and deleted entries.
+  private static final double ENTRIES_FRACTION_OF_BUDGET = 0.4;
+  // The deleted entries of the evicted keys hold their slots until the tables are compacted, which
+  // happens once they take this fraction of the bytes of the entries. The cost of the compactions
+  // is then constant per evicted key.
+  private static final double DELETED_FRACTION_OF_ENTRIES = 0.25;
+  private static final long MIN_MAX_MEMORY_BYTES = 1L << 22;
+  private static final int EVICTION_SAMPLES = 5;
+
   private final int keySizeBytes_;
+  private final MapStorage storage_;
+
+  // Eviction, only when there is a memory budget
+  private final long maxEntryBytes_;
+  private final EvictionPolicy evictionPolicy_;
+  private final EvictionListener evictionListener_;
+  private final byte[] evictionKey_;
+  private long clock_;  //count of updates
+  private long random_; //xorshift state
 
   /** TraverseCouponMap or HashCouponMap instances */
   private final Map[] maps_;
@@ -110,11 +168,169 @@ public final class UniqueCountMap {
    * @param keySizeBytes must be at least 4 bytes to have sufficient entropy
    */
   public UniqueCountMap(final int initialNumEntries, final int keySizeBytes) {
+    this(MapStorage.HEAP, initialNumEntries, keySizeBytes, 0, null, null);
+  }
+
+  /**
+   * Constructs a UniqueCountMap with a memory budget. When an update or a merge takes the map over
+   * its budget, the map evicts keys, chosen by the given policy among a few sampled keys, until it
+   * is within the budget again. The cost of the evictions is constant per key inserted.
+   *
+   * <p>The budget applies to the entries of the keys: the live entries of the internal maps and
+   * the deleted entries left by evicted keys are kept within 40% of the budget, which leaves room
+   * for the free slots of their hash tables, so that the memory of the map stays within the budget
+   * once it is larger than the initial size of its tables. The tables are compacted when the
+   * deleted entries take a quarter of that. Each key also costs 4 bytes to track its updates.</p>
+   *
+   * @param initialNumEntries the initial number of entries. See {@link #UniqueCountMap(int, int)}.
+   * @param keySizeBytes must be at least 4 bytes to have sufficient entropy
+   * @param maxMemoryBytes the memory budget of the map in bytes, at least 4 MB
+   * @param evictionPolicy the policy that chooses the keys to evict
+   * @param evictionListener receives the evicted keys, so that they can be spilled.
+   * It may be null, in which case the evicted keys are dropped.
+   */
+  public UniqueCountMap(final int initialNumEntries, final int keySizeBytes,
+      final long maxMemoryBytes, final EvictionPolicy evictionPolicy,
+      final EvictionListener evictionListener) {
+    this(MapStorage.HEAP, initialNumEntries, keySizeBytes, maxMemoryBytes,
+        checkEvictionPolicy(evictionPolicy), evictionListener);
+    if (maxMemoryBytes < MIN_MAX_MEMORY_BYTES) {
+      throw new SketchesArgumentException("maxMemoryBytes must be >= " + MIN_MAX_MEMORY_BYTES
+          + ": " + maxMemoryBytes);
+    }
+  }
+
+  private UniqueCountMap(final MapStorage storage, final int initialNumEntries,
+      final int keySizeBytes, final long maxMemoryBytes, final EvictionPolicy evictionPolicy,
+      final EvictionListener evictionListener) {
     checkConstructorKeySize(keySizeBytes);
     final int initEntries = Math.max(initialNumEntries, MIN_INITIAL_NUM_ENTRIES);
     keySizeBytes_ = keySizeBytes;
+    storage_ = storage;
+    maxEntryBytes_ = (long) (maxMemoryBytes * ENTRIES_FRACTION_OF_BUDGET);
+    evictionPolicy_ = evictionPolicy;
+    evictionListener_ = evictionListener;
+    evictionKey_ = (evictionPolicy == null) ? null : new byte[keySizeBytes];
+    random_ = System.nanoTime() | 1L;
     maps_ = new Map[NUM_LEVELS]; // includes base level and top level
-    maps_[0] = SingleCouponMap.getInstance(initEntries, keySizeBytes);
+    maps_[0] = SingleCouponMap.getInstance(storage, 0, initEntries, keySizeBytes,
+        evictionPolicy != null);
+  }
+
+  private UniqueCountMap(final MapStorage storage, final Map[] maps) {
+    keySizeBytes_ = maps[0].keySizeBytes_;
+    storage_ = storage;
+    maxEntryBytes_ = 0;
+    evictionPolicy_ = null;
+    evictionListener_ = null;
+    evictionKey_ = null;
+    maps_ = maps;
+  }
+
+  /**
+   * Returns a UniqueCountMap whose internal maps are kept in memory-mapped files of the given
+   * directory. If the directory holds the files of a map that was closed earlier, that map is
+   * mapped again with all of its keys and estimates. Otherwise a new map is created in the
+   * directory, which is created if it does not exist.
+   *
+   * <p>The returned map must be closed to unmap the files, and must be the only one using the
+   * directory while it is open.
+   *
+   * @param dir the directory of the files of the map
+   * @param initialNumEntries the initial number of entries of a new map.
+   * See {@link #UniqueCountMap(int, int)}.
+   * @param keySizeBytes must be at least 4 bytes to have sufficient entropy. If the map exists, it
+   * must be the key size of the existing map.
+   * @return a UniqueCountMap in memory-mapped files of the given directory
+   */
+  public static UniqueCountMap writableMap(final File dir, final int initialNumEntries,
+      final int keySizeBytes) {
+    checkConstructorKeySize(keySizeBytes);
+    final MapStorage storage = new MappedMapStorage(dir, NUM_LEVELS);
+    try {
+      final WritableMemory baseMem = storage.existing(0);
+      if (baseMem == null) {
+        return new UniqueCountMap(storage, initialNumEntries, keySizeBytes, 0, null, null);
+      }
+      final Map[] maps = new Map[NUM_LEVELS];
+      maps[0] = Map.wrap(storage, 0, baseMem);
+      if (!(maps[0] instanceof SingleCouponMap)) {
+        throw new SketchesArgumentException("The base map of the directory is not valid: " + dir);
+      }
+      if (maps[0].keySizeBytes_ != keySizeBytes) {
+        throw new SketchesArgumentException("Key size of the existing map is "
+            + maps[0].keySizeBytes_ + " bytes: " + keySizeBytes);
+      }
+      for (int level = 1; level < NUM_LEVELS; level++) {
+        final WritableMemory mem = storage.existing(level);
+        if (mem == null) { continue; }
+        //the process stopped before the new map of this level wrote its header
+        if (mem.getByte(Map.MAP_ID_BYTE) == 0) {
+          storage.release(level, mem);
+          continue;
+        }
+        maps[level] = Map.wrap(storage, level, mem);
+      }
+      return new UniqueCountMap(storage, maps);
+    } catch (final RuntimeException e) {
+      storage.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Heapifies the given Memory, as written by {@link #toByteArray()}, into a UniqueCountMap on the
+   * Java heap.
+   * @param srcMem the given Memory
+   * @return a UniqueCountMap with the keys and estimates of the serialized map
+   */
+  public static UniqueCountMap heapify(final Memory srcMem) {
+    final Memory mem = srcMem.getTypeByteOrder() == ByteOrder.LITTLE_ENDIAN
+        ? srcMem : srcMem.region(0, srcMem.getCapacity(), ByteOrder.LITTLE_ENDIAN);
+    if (mem.getCapacity() < PREAMBLE_BYTES) {
+      throw new SketchesArgumentException("Memory too small for a UniqueCountMap: "
+          + mem.getCapacity());
+    }
+    final int serVer = mem.getByte(SER_VER_BYTE);
+    if (serVer != SER_VER) {
+      throw new SketchesArgumentException("Unsupported serialization version: " + serVer);
+    }
+    final int numLevels = mem.getByte(NUM_LEVELS_BYTE);
+    if (numLevels != NUM_LEVELS) {
+      throw new SketchesArgumentException("Number of levels must be " + NUM_LEVELS + ": "
+          + numLevels);
+    }
+    final int keySizeBytes = mem.getInt(KEY_SIZE_INT);
+    final int[] counts = new int[NUM_LEVELS];
+    long numKeys = 0;
+    for (int level = 0; level < NUM_LEVELS; level++) {
+      counts[level] = mem.getInt(LEVEL_COUNTS_INT + ((long) level * Integer.BYTES));
+      if (counts[level] < 0) {
+        throw new SketchesArgumentException("Invalid number of keys: " + counts[level]);
+      }
+      numKeys += counts[level];
+    }
+    final int initialNumEntries =
+        (int) Math.min(numKeys / Map.COUPON_MAP_TARGET_FILL_FACTOR, Integer.MAX_VALUE - 1);
+    final UniqueCountMap map = new UniqueCountMap(initialNumEntries, keySizeBytes);
+
+    final byte[] key = new byte[keySizeBytes];
+    long offset = PREAMBLE_BYTES;
+    for (int level = 0; level < NUM_LEVELS; level++) {
+      for (int i = 0; i < counts[level]; i++) {
+        mem.getByteArray(offset, key, 0, keySizeBytes);
+        offset += keySizeBytes;
+        final int baseMapIndex = map.maps_[0].findOrInsertKey(key);
+        if (level == 0) {
+          offset = map.maps_[0].getValue(baseMapIndex, mem, offset);
+        } else {
+          final Map levelMap = map.getMapForLevel(level);
+          offset = levelMap.getValue(levelMap.findOrInsertKey(key), mem, offset);
+          map.setLevelInBaseMap(baseMapIndex, level);
+        }
+      }
+    }
+    return map;
   }
 
   /**
@@ -128,9 +344,15 @@ public final class UniqueCountMap {
     if (key == null) { return Double.NaN; }
     checkMethodKeySize(key);
     if (identifier == null) { return getEstimate(key); }
-    final short coupon = (short) Map.coupon16(identifier);
+    final double estimate = update(key, (short) Map.coupon16(identifier), true);
+    if (evictionPolicy_ != null) { evictWhileOverBudget(); }
+    return estimate;
+  }
 
+  //updates the key with the coupon, and its access stamp if touch is true
+  private double update(final byte[] key, final short coupon, final boolean touch) {
     final int baseMapIndex = maps_[0].findOrInsertKey(key);
+    if (touch && (evictionPolicy_ != null)) { touch(baseMapIndex); }
     final double baseMapEstimate = maps_[0].update(baseMapIndex, coupon);
     if (baseMapEstimate > 0) { return baseMapEstimate; }
     final int level = -(int) baseMapEstimate; // base map is level 0
@@ -145,6 +367,80 @@ public final class UniqueCountMap {
     return promote(key, coupon, map, index, level, baseMapIndex, -estimate);
   }
 
+  /**
+   * Merges the given UniqueCountMap into this one, key by key. The identifiers of each key of the
+   * given map are added to the identifiers of the same key in this map, or to a new key.
+   *
+   * <p>The coupons of keys that are not yet in the final HLL map are added as if their identifiers
+   * were updated in this map. The HLL arrays of keys that are in the final HLL map of the given map
+   * are unioned bin by bin with the HLL array of the key in this map, which is promoted to the
+   * final HLL map if needed.</p>
+   *
+   * @param other the given UniqueCountMap, which must have the same key size. It is not modified.
+   */
+  public void merge(final UniqueCountMap other) {
+    if ((other == null) || (other == this)) { return; }
+    if (other.keySizeBytes_ != keySizeBytes_) {
+      throw new SketchesArgumentException("Key size of the other map must be " + keySizeBytes_
+          + ": " + other.keySizeBytes_);
+    }
+    final int hllLevel = maps_.length - 1;
+    final UniqueCountMapIterator it = other.iterator();
+    while (it.next()) {
+      final byte[] key = it.getKey();
+      if (it.getLevel() == hllLevel) {
+        mergeHll(key, (HllMap) it.getMap(), it.getIndex());
+      } else {
+        //the key is touched once, as for the merged HLL arrays
+        final CouponsIterator couponsIt = it.getMap().getCouponsIterator(it.getIndex());
+        boolean first = true;
+        while (couponsIt.next()) {
+          update(key, couponsIt.getValue(), first);
+          first = false;
+        }
+      }
+      if (evictionPolicy_ != null) { evictWhileOverBudget(); }
+    }
+  }
+
+  /**
+   * Returns an iterator over the keys of this map with their estimates and bounds.
+   * @return an iterator over the keys of this map
+   */
+  public UniqueCountMapIterator iterator() {
+    return new UniqueCountMapIterator(maps_, keySizeBytes_);
+  }
+
+  /**
+   * Serializes this map, with all of its keys and estimates, into a compact byte array that holds
+   * only the active keys. See {@link #heapify(Memory)}.
+   * @return this map serialized into a byte array
+   */
+  public byte[] toByteArray() {
+    final int[] counts = new int[NUM_LEVELS];
+    long bytes = PREAMBLE_BYTES;
+    UniqueCountMapIterator it = iterator();
+    while (it.next()) {
+      counts[it.getLevel()]++;
+      bytes += keySizeBytes_ + it.getMap().getSerializedValueBytes(it.getIndex());
+    }
+    if (bytes > Integer.MAX_VALUE) {
+      throw new SketchesArgumentException("Map too large for a byte array: " + bytes);
+    }
+    final byte[] byteArr = new byte[(int) bytes];
+    final WritableMemory wmem = WritableMemory.writableWrap(byteArr, ByteOrder.LITTLE_ENDIAN);
+    putPreamble(wmem, counts);
+    long offset = PREAMBLE_BYTES;
+    it = iterator();
+    while (it.next()) {
+      wmem.putByteArray(offset, it.getKey(), 0, keySizeBytes_);
+      offset += keySizeBytes_;
+      offset = it.getMap().putValue(it.getIndex(), wmem, offset);
+    }
+    assert offset == bytes;
+    return byteArr;
+  }
+
   /**
    * Retrieves the current estimate of unique count for a given key.
    * @param key given key
@@ -241,6 +537,22 @@ public final class UniqueCountMap {
     return (double) (getMemoryUsageBytes() - getKeyMemoryUsageBytes()) / getActiveEntries();
   }
 
+  /**
+   * Writes all changes to the map through to its files. This has no effect on a map on the heap.
+   */
+  public void force() {
+    storage_.force();
+  }
+
+  /**
+   * Writes all changes to the map through to its files and unmaps them. The map cannot be used
+   * after this. This has no effect on a map on the heap.
+   */
+  @Override
+  public void close() {
+    storage_.close();
+  }
+
   /**
    * Returns the number of active internal maps so far.
    * Only the base map is initialized in the constructor, so this method would return 1.
@@ -314,6 +626,129 @@ public final class UniqueCountMap {
     return sb.toString();
   }
 
+  private void putPreamble(final WritableMemory wmem, final int[] counts) {
+    wmem.putByte(SER_VER_BYTE, (byte) SER_VER);
+    wmem.putByte(NUM_LEVELS_BYTE, (byte) NUM_LEVELS);
+    wmem.putInt(KEY_SIZE_INT, keySizeBytes_);
+    for (int level = 0; level < NUM_LEVELS; level++) {
+      wmem.putInt(LEVEL_COUNTS_INT + ((long) level * Integer.BYTES), counts[level]);
+    }
+  }
+
+  //serializes a map that holds only the given key of the map of the given level
+  private byte[] toByteArray(final byte[] key, final int level, final Map map, final int index) {
+    final int[] counts = new int[NUM_LEVELS];
+    counts[level] = 1;
+    final byte[] byteArr = new byte[PREAMBLE_BYTES + keySizeBytes_
+        + map.getSerializedValueBytes(index)];
+    final WritableMemory wmem = WritableMemory.writableWrap(byteArr, ByteOrder.LITTLE_ENDIAN);
+    putPreamble(wmem, counts);
+    wmem.putByteArray(PREAMBLE_BYTES, key, 0, keySizeBytes_);
+    map.putValue(index, wmem, PREAMBLE_BYTES + keySizeBytes_);
+    return byteArr;
+  }
+
+  //used for test
+  long getClock() {
+    return clock_;
+  }
+
+  //sets the access stamp of the key at the given index of the base map, which is being updated
+  private void touch(final int baseMapIndex) {
+    final SingleCouponMap baseMap = (SingleCouponMap) maps_[0];
+    final boolean isNew = baseMap.getCoupon(baseMapIndex) == 0;
+    final int access = isNew ? 0 : baseMap.getAccess(baseMapIndex);
+    baseMap.setAccess(baseMapIndex, evictionPolicy_.touch(access, isNew, ++clock_, nextRandom()));
+  }
+
+  //the bytes of the entries of all keys in all internal maps
+  private long getLiveBytes() {
+    double bytes = 0;
+    for (int i = 0; i < maps_.length; i++) {
+      if (maps_[i] != null) {
+        bytes += maps_[i].getActiveEntries() * maps_[i].getEntrySizeBytes();
+      }
+    }
+    return (long) bytes;
+  }
+
+  //the bytes of the deleted entries in all internal maps
+  private long getDeletedBytes() {
+    double bytes = 0;
+    for (int i = 0; i < maps_.length; i++) {
+      if (maps_[i] != null) {
+        bytes += maps_[i].getDeletedEntries() * maps_[i].getEntrySizeBytes();
+      }
+    }
+    return (long) bytes;
+  }
+
+  //keeps the live entries within the part of the budget that is not left to the deleted entries
+  private void evictWhileOverBudget() {
+    final double maxDeletedBytes = maxEntryBytes_ * DELETED_FRACTION_OF_ENTRIES;
+    while ((getLiveBytes() > (maxEntryBytes_ - maxDeletedBytes)) && (getActiveEntries() > 0)) {
+      evict(sampleColdest());
+    }
+    if (getDeletedBytes() > maxDeletedBytes) {
+      for (int i = 0; i < maps_.length; i++) {
+        if (maps_[i] != null) { maps_[i].compact(); }
+      }
+    }
+  }
+
+  //returns the index in the base map of the coldest of a few sampled keys
+  private int sampleColdest() {
+    final SingleCouponMap baseMap = (SingleCouponMap) maps_[0];
+    final int tableEntries = baseMap.getTableEntries();
+    int coldestIndex = -1;
+    long maxColdness = -1;
+    for (int s = 0; s < EVICTION_SAMPLES; s++) {
+      int index = (int) ((nextLong() >>> 1) % tableEntries);
+      while (baseMap.getCoupon(index) == 0) { //skip empty and deleted entries
+        index = (index + 1) % tableEntries;
+      }
+      final long coldness = evictionPolicy_.coldness(baseMap.getAccess(index), clock_);
+      if (coldness > maxColdness) {
+        maxColdness = coldness;
+        coldestIndex = index;
+      }
+    }
+    return coldestIndex;
+  }
+
+  //evicts the key at the given index of the base map
+  private void evict(final int baseMapIndex) {
+    final SingleCouponMap baseMap = (SingleCouponMap) maps_[0];
+    baseMap.getKey(baseMapIndex, evictionKey_);
+    final int level = baseMap.isCoupon(baseMapIndex) ? 0 : baseMap.getCoupon(baseMapIndex);
+    final Map map = maps_[level];
+    final int index = (level == 0) ? baseMapIndex : map.findKey(evictionKey_);
+    if (evictionListener_ != null) {
+      evictionListener_.onEviction(evictionKey_, map.getEstimate(index),
+          toByteArray(evictionKey_, level, map, index));
+    }
+    if (level > 0) { map.deleteKey(index); }
+    baseMap.removeKey(baseMapIndex);
+  }
+
+  private double nextRandom() {
+    return (nextLong() >>> 11) * 0x1.0p-53;
+  }
+
+  private long nextLong() {
+    random_ ^= random_ << 13;
+    random_ ^= random_ >>> 7;
+    random_ ^= random_ << 17;
+    return random_;
+  }
+
+  private static EvictionPolicy checkEvictionPolicy(final EvictionPolicy evictionPolicy) {
+    if (evictionPolicy == null) {
+      throw new SketchesArgumentException("The eviction policy must not be null.");
+    }
+    return evictionPolicy;
+  }
+
   private void setLevelInBaseMap(final int index, final int level) {
     ((SingleCouponMap) maps_[0]).setLevel(index, level);
   }
@@ -321,29 +756,60 @@ public final class UniqueCountMap {
   private double promote(final byte[] key, final short coupon, final Map fromMap, final int fromIndex,
       final int fromLevel, final int baseMapIndex, final double estimate) {
     final Map newMap = getMapForLevel(fromLevel + 1);
-    final int newMapIndex = newMap.findOrInsertKey(key);
+    final int newMapIndex = moveKey(key, fromMap, fromIndex, newMap, estimate);
+    final double newEstimate = newMap.update(newMapIndex, coupon);
+    setLevelInBaseMap(baseMapIndex, fromLevel + 1);
+    assert newEstimate > 0; // this must be positive since we have just promoted
+    return newEstimate;
+  }
+
+  //moves the coupons of the key from one map to another and returns the index in the other map
+  private static int moveKey(final byte[] key, final Map fromMap, final int fromIndex,
+      final Map toMap, final double estimate) {
+    final int toIndex = toMap.findOrInsertKey(key);
     final CouponsIterator it = fromMap.getCouponsIterator(fromIndex);
     while (it.next()) {
-      final double est = newMap.update(newMapIndex, it.getValue());
+      final double est = toMap.update(toIndex, it.getValue());
       assert est > 0;
     }
     fromMap.deleteKey(fromIndex);
-    newMap.updateEstimate(newMapIndex, estimate);
-    final double newEstimate = newMap.update(newMapIndex, coupon);
-    setLevelInBaseMap(baseMapIndex, fromLevel + 1);
-    assert newEstimate > 0; // this must be positive since we have just promoted
-    return newEstimate;
+    toMap.updateEstimate(toIndex, estimate);
+    return toIndex;
+  }
+
+  //merges an entry of the HLL map of another UniqueCountMap, promoting the key to the HLL map
+  private void mergeHll(final byte[] key, final HllMap srcMap, final int srcIndex) {
+    final int hllLevel = maps_.length - 1;
+    final SingleCouponMap baseMap = (SingleCouponMap) maps_[0];
+    final int baseMapIndex = baseMap.findOrInsertKey(key);
+    final HllMap hllMap = (HllMap) getMapForLevel(hllLevel);
+    final short value = baseMap.getCoupon(baseMapIndex);
+    if (evictionPolicy_ != null) { touch(baseMapIndex); }
+    if (value == 0) { //new key
+      hllMap.copyEntry(hllMap.findOrInsertKey(key), srcMap, srcIndex);
+    } else {
+      final int level = baseMap.isCoupon(baseMapIndex) ? 0 : value;
+      if (level < hllLevel) {
+        final Map fromMap = maps_[level];
+        final int fromIndex = (level == 0) ? baseMapIndex : fromMap.findKey(key);
+        moveKey(key, fromMap, fromIndex, hllMap, fromMap.getEstimate(fromIndex));
+      }
+      hllMap.mergeEntry(hllMap.findKey(key), srcMap, srcIndex);
+    }
+    setLevelInBaseMap(baseMapIndex, hllLevel);
   }
 
   private Map getMapForLevel(final int level) {
     if (maps_[level] == null) {
       final int newLevelCapacity = 1 << level;
       if (level <= NUM_TRAVERSE_MAPS) {
-        maps_[level] = CouponTraverseMap.getInstance(keySizeBytes_, newLevelCapacity);
+        maps_[level] = CouponTraverseMap.getInstance(storage_, level, keySizeBytes_,
+            newLevelCapacity);
       } else if (level < (maps_.length - 1)) {
-        maps_[level] = CouponHashMap.getInstance(keySizeBytes_, newLevelCapacity);
+        maps_[level] = CouponHashMap.getInstance(storage_, level, keySizeBytes_,
+            newLevelCapacity);
       } else {
-        maps_[level] = HllMap.getInstance(keySizeBytes_, HLL_K);
+        maps_[level] = HllMap.getInstance(storage_, level, keySizeBytes_, HLL_K);
       }
     }
     return maps_[level];
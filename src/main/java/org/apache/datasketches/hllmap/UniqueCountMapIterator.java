@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.hllmap;
+
+/**
+ * Iterator over the keys of a {@link UniqueCountMap} with their estimates and bounds.
+ *
+ * <p>The iterator visits each key once, map level by map level, and does not allocate while
+ * iterating: the key is copied into an array that is reused for every key.
+ * The UniqueCountMap must not be updated during the iteration.</p>
+ *
+ * <p>Usage:</p>
+ * <pre>
+ * UniqueCountMapIterator it = map.iterator();
+ * while (it.next()) {
+ *   byte[] key = it.getKey();
+ *   double estimate = it.getEstimate();
+ * }
+ * </pre>
+ */
+public final class UniqueCountMapIterator {
+  private final Map[] maps_;
+  private final byte[] key_;
+  private int level_;
+  private int index_;
+
+  UniqueCountMapIterator(final Map[] maps, final int keySizeBytes) {
+    maps_ = maps;
+    key_ = new byte[keySizeBytes];
+    level_ = 0;
+    index_ = -1;
+  }
+
+  /**
+   * Advances the iterator to the next key.
+   * Must be called before the first call to any getter.
+   * @return true if there is a next key
+   */
+  public boolean next() {
+    while (level_ < maps_.length) {
+      final Map map = maps_[level_];
+      if (map != null) {
+        final int tableEntries = map.getTableEntries();
+        while (++index_ < tableEntries) {
+          if (map.isActive(index_)) {
+            map.getKey(index_, key_);
+            return true;
+          }
+        }
+      }
+      level_++;
+      index_ = -1;
+    }
+    return false;
+  }
+
+  /**
+   * Returns the current key. The returned array is reused for the following keys, so it must be
+   * copied if the key is needed after the next call to {@link #next()}.
+   * @return the current key
+   */
+  public byte[] getKey() {
+    return key_;
+  }
+
+  /**
+   * Returns the estimate of the number of unique identifiers of the current key.
+   * @return the estimate of the number of unique identifiers of the current key
+   */
+  public double getEstimate() {
+    return maps_[level_].getEstimate(index_);
+  }
+
+  /**
+   * Returns the upper bound of the number of unique identifiers of the current key.
+   * See {@link UniqueCountMap#getUpperBound(byte[])}.
+   * @return the upper bound of the number of unique identifiers of the current key
+   */
+  public double getUpperBound() {
+    return (level_ == 0) ? getEstimate() : maps_[level_].getUpperBound(index_);
+  }
+
+  /**
+   * Returns the lower bound of the number of unique identifiers of the current key.
+   * See {@link UniqueCountMap#getLowerBound(byte[])}.
+   * @return the lower bound of the number of unique identifiers of the current key
+   */
+  public double getLowerBound() {
+    return (level_ == 0) ? getEstimate() : maps_[level_].getLowerBound(index_);
+  }
+
+  /**
+   * Returns the level of the internal map of the current key
+   * @return the level of the internal map of the current key
+   */
+  int getLevel() {
+    return level_;
+  }
+
+  /**
+   * Returns the index of the current key in its internal map
+   * @return the index of the current key in its internal map
+   */
+  int getIndex() {
+    return index_;
+  }
+
+  /**
+   * Returns the internal map of the current key
+   * @return the internal map of the current key
+   */
+  Map getMap() {
+    return maps_[level_];
+  }
+
+}
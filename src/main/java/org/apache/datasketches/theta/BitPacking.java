@@ -19,7 +19,11 @@
 
 package org.apache.datasketches.theta;
 
+import java.nio.ByteOrder;
+
 import org.apache.datasketches.common.SketchesArgumentException;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
 
 /**
  * Used as part of Theta compression.
@@ -82,6 +86,107 @@ public class BitPacking {
     }
   }
 
+  /**
+   * Packs the deltas between consecutive values of the given ascending array, starting from zero,
+   * into the given WritableMemory using the layout of the compressed (Serialization Version 4)
+   * Theta format. That layout, blocks of 8 deltas followed by the remaining deltas packed bit by
+   * bit, is a single big-endian bit stream, so it is written here 64 bits at a time rather than
+   * one byte at a time.
+   * @param values the ascending values, none of which may be negative
+   * @param count the number of values to pack
+   * @param bits the number of bits of each delta, from 1 to 63
+   * @param wmem the destination WritableMemory
+   * @param offsetBytes the byte offset of the first packed delta
+   * @return the number of bytes written
+   */
+  static int packDeltas(final long[] values, final int count, final int bits,
+      final WritableMemory wmem, final long offsetBytes) {
+    final int totalBytes = packedBytes(count, bits);
+    if (totalBytes == 0) { return 0; }
+    final WritableMemory out = wmem.writableRegion(offsetBytes, totalBytes, ByteOrder.BIG_ENDIAN);
+    long previous = 0;
+    long word = 0;
+    int wordBits = 0; //number of bits already in the word, from the top
+    long pos = 0;
+    for (int i = 0; i < count; i++) {
+      final long delta = values[i] - previous;
+      previous = values[i];
+      final int free = 64 - wordBits;
+      if (bits < free) {
+        word |= delta << (free - bits);
+        wordBits += bits;
+      } else {
+        word |= delta >>> (bits - free);
+        out.putLong(pos, word);
+        pos += Long.BYTES;
+        wordBits = bits - free;
+        word = (wordBits == 0) ? 0 : delta << (64 - wordBits);
+      }
+    }
+    for (; wordBits > 0; wordBits -= 8) {
+      out.putByte(pos++, (byte) (word >>> 56));
+      word <<= 8;
+    }
+    return totalBytes;
+  }
+
+  /**
+   * Unpacks deltas written by {@link #packDeltas(long[], int, int, WritableMemory, long)} from the
+   * given Memory, 64 bits at a time, and restores the ascending values.
+   * @param values the destination array
+   * @param count the number of values to unpack
+   * @param bits the number of bits of each delta, from 1 to 63
+   * @param mem the source Memory
+   * @param offsetBytes the byte offset of the first packed delta
+   */
+  static void unpackDeltas(final long[] values, final int count, final int bits,
+      final Memory mem, final long offsetBytes) {
+    final int totalBytes = packedBytes(count, bits);
+    if (totalBytes == 0) { return; }
+    final Memory in = mem.region(offsetBytes, totalBytes, ByteOrder.BIG_ENDIAN);
+    final long mask = -1L >>> (64 - bits);
+    long previous = 0;
+    long word = readWord(in, 0, totalBytes);
+    int avail = 64; //number of unread bits at the bottom of the word
+    long pos = Long.BYTES;
+    for (int i = 0; i < count; i++) {
+      long delta;
+      if (bits <= avail) {
+        avail -= bits;
+        delta = (word >>> avail) & mask;
+      } else {
+        final int need = bits - avail;
+        delta = (word & ((1L << avail) - 1)) << need;
+        word = readWord(in, pos, totalBytes);
+        pos += Long.BYTES;
+        avail = 64 - need;
+        delta |= word >>> avail;
+      }
+      previous += delta;
+      values[i] = previous;
+    }
+  }
+
+  /**
+   * Returns the number of whole bytes that hold the given number of packed values.
+   * @param count the number of values
+   * @param bits the number of bits of each value
+   * @return the number of whole bytes that hold the given number of packed values
+   */
+  static int packedBytes(final int count, final int bits) {
+    return (int) (((long) count * bits + 7) >>> 3);
+  }
+
+  //Reads the big-endian word at the given position, padding with zeros past the end.
+  private static long readWord(final Memory in, final long pos, final long totalBytes) {
+    if (pos + Long.BYTES <= totalBytes) { return in.getLong(pos); }
+    long word = 0;
+    for (int b = 0; (pos + b) < totalBytes; b++) {
+      word |= (in.getByte(pos + b) & 0XFFL) << (56 - (b << 3));
+    }
+    return word;
+  }
+
   // pack given number of bits from a block of 8 64-bit values into bytes
   // we don't need 0 and 64 bits
   // we assume that higher bits (which we are not packing) are zeros
@@ -714,7 +819,7 @@ public class BitPacking {
     buf[off] = (byte) (values[i + 3] << 4);
     buf[off++] |= values[i + 4] >>> 15;
 
-    buf[off++] |= values[i + 4] >>> 7;
+    buf[off++] = (byte) (values[i + 4] >>> 7);
 
     buf[off] = (byte) (values[i + 4] << 1);
     buf[off++] |= values[i + 5] >>> 18;
@@ -129,7 +129,9 @@ public abstract class CompactSketch extends Sketch {
    * The wrap operation enables fast read-only merging and access to all the public read-only API.
    *
    * <p>Only "Direct" Serialization Version 3 (i.e, OpenSource) sketches that have
-   * been explicitly stored as direct sketches can be wrapped.
+   * been explicitly stored as direct sketches and Serialization Version 4 (compressed) sketches
+   * can be wrapped. A wrapped compressed sketch answers the estimate and bounds from its preamble
+   * and decodes its hash values lazily as they are iterated.
    * Wrapping earlier serial version sketches will result in a heapify operation.
    * These early versions were never designed to "wrap".</p>
    *
@@ -155,7 +157,9 @@ public abstract class CompactSketch extends Sketch {
    * The wrap operation enables fast read-only merging and access to all the public read-only API.
    *
    * <p>Only "Direct" Serialization Version 3 (i.e, OpenSource) sketches that have
-   * been explicitly stored as direct sketches can be wrapped.
+   * been explicitly stored as direct sketches and Serialization Version 4 (compressed) sketches
+   * can be wrapped. A wrapped compressed sketch answers the estimate and bounds from its preamble
+   * and decodes its hash values lazily as they are iterated.
    * Wrapping earlier serial version sketches will result in a heapify operation.
    * These early versions were never designed to "wrap".</p>
    *
@@ -187,9 +191,8 @@ public abstract class CompactSketch extends Sketch {
     final short seedHash = ThetaUtil.computeSeedHash(seed);
 
     if (serVer == 4) {
-      // not wrapping the compressed format since currently we cannot take advantage of
-      // decompression during iteration because set operations reach into memory directly
-      return heapifyV4(srcMem, seed, enforceSeed);
+      return DirectCompactCompressedSketch.wrapInstance(srcMem,
+          enforceSeed ? seedHash : (short) extractSeedHash(srcMem));
     }
     else if (serVer == 3) {
       if (PreambleUtil.isEmptyFlag(srcMem)) {
@@ -260,16 +263,14 @@ public abstract class CompactSketch extends Sketch {
     return toByteArrayV4();
   }
 
-  private int computeMinLeadingZeros() {
+  private static int computeMinLeadingZeros(final long[] hashes, final int count) {
     // compression is based on leading zeros in deltas between ordered hash values
     // assumes ordered sketch
     long previous = 0;
     long ored = 0;
-    final HashIterator it = iterator();
-    while (it.next()) {
-      final long delta = it.get() - previous;
-      ored |= delta;
-      previous = it.get();
+    for (int i = 0; i < count; i++) {
+      ored |= hashes[i] - previous;
+      previous = hashes[i];
     }
     return Long.numberOfLeadingZeros(ored);
   }
@@ -280,11 +281,13 @@ public abstract class CompactSketch extends Sketch {
 
   private byte[] toByteArrayV4() {
     final int preambleLongs = isEstimationMode() ? 2 : 1;
-    final int entryBits = 64 - computeMinLeadingZeros();
-    final int compressedBits = entryBits * getRetainedEntries();
+    final int numEntries = getRetainedEntries();
+    final long[] hashes = getCache(); //ordered, and not a copy if on the heap
+    final int entryBits = 64 - computeMinLeadingZeros(hashes, numEntries);
+    final int compressedBits = entryBits * numEntries;
 
     // store num_entries as whole bytes since whole-byte blocks will follow (most probably)
-    final int numEntriesBytes = wholeBytesToHoldBits(32 - Integer.numberOfLeadingZeros(getRetainedEntries()));
+    final int numEntriesBytes = wholeBytesToHoldBits(32 - Integer.numberOfLeadingZeros(numEntries));
 
     final int size = preambleLongs * Long.BYTES + numEntriesBytes + wholeBytesToHoldBits(compressedBits);
     final byte[] bytes = new byte[size];
@@ -302,33 +305,12 @@ public abstract class CompactSketch extends Sketch {
       mem.putLong(offsetBytes, getThetaLong());
       offsetBytes += Long.BYTES;
     }
-    int numEntries = getRetainedEntries();
+    int n = numEntries;
     for (int i = 0; i < numEntriesBytes; i++) {
-      mem.putByte(offsetBytes++, (byte) (numEntries & 0xff));
-      numEntries >>>= 8;
-    }
-    long previous = 0;
-    final long[] deltas = new long[8];
-    final HashIterator it = iterator();
-    int i;
-    for (i = 0; i + 7 < getRetainedEntries(); i += 8) {
-      for (int j = 0; j < 8; j++) {
-        it.next();
-        deltas[j] = it.get() - previous;
-        previous = it.get();
-      }
-      BitPacking.packBitsBlock8(deltas, 0, bytes, offsetBytes, entryBits);
-      offsetBytes += entryBits;
-    }
-    int offsetBits = 0;
-    for (; i < getRetainedEntries(); i++) {
-      it.next();
-      final long delta = it.get() - previous;
-      previous = it.get();
-      BitPacking.packBits(delta, entryBits, bytes, offsetBytes, offsetBits);
-      offsetBytes += (offsetBits + entryBits) >>> 3;
-      offsetBits = (offsetBits + entryBits) & 7;
+      mem.putByte(offsetBytes++, (byte) (n & 0xff));
+      n >>>= 8;
     }
+    BitPacking.packDeltas(hashes, numEntries, entryBits, mem, offsetBytes);
     return bytes;
   }
 
@@ -351,29 +333,7 @@ public abstract class CompactSketch extends Sketch {
       numEntries |= Byte.toUnsignedInt(srcMem.getByte(offsetBytes++)) << (i << 3);
     }
     final long[] entries = new long[numEntries];
-    final byte[] bytes = new byte[entryBits]; // temporary buffer for unpacking
-    int i;
-    for (i = 0; i + 7 < numEntries; i += 8) {
-      srcMem.getByteArray(offsetBytes, bytes, 0, entryBits);
-      BitPacking.unpackBitsBlock8(entries, i, bytes, 0, entryBits);
-      offsetBytes += entryBits;
-    }
-    if (i < numEntries) {
-      srcMem.getByteArray(offsetBytes, bytes, 0, wholeBytesToHoldBits((numEntries - i) * entryBits));
-      int offsetBits = 0;
-      offsetBytes = 0;
-      for (; i < numEntries; i++) {
-        BitPacking.unpackBits(entries, i, entryBits, bytes, offsetBytes, offsetBits);
-        offsetBytes += (offsetBits + entryBits) >>> 3;
-        offsetBits = (offsetBits + entryBits) & 7;
-      }
-    }
-    // undo deltas
-    long previous = 0;
-    for (i = 0; i < numEntries; i++) {
-      entries[i] += previous;
-      previous = entries[i];
-    }
+    BitPacking.unpackDeltas(entries, numEntries, entryBits, srcMem, offsetBytes);
     return new HeapCompactSketch(entries, isEmpty, seedHash, numEntries, theta, true);
   }
 
@@ -45,6 +45,13 @@ final class ConcurrentDirectQuickSelectSketch extends DirectQuickSelectSketch
   // The propagation thread
   private ExecutorService executorService_;
 
+  // The caller supplied propagation executor. If null, the shared ConcurrentPropagationService is used.
+  private final ConcurrentPropagationExecutor propagationExecutor_;
+
+  // The propagation tasks of this sketch submitted to the propagationExecutor_, which are run
+  // one at a time.
+  private final ConcurrentPropagationExecutor.SerialQueue propagationQueue_;
+
   // A flag to coordinate between several eager propagation threads
   private final AtomicBoolean sharedPropagationInProgress_;
 
@@ -69,9 +76,12 @@ final class ConcurrentDirectQuickSelectSketch extends DirectQuickSelectSketch
    * @param seed       <a href="{@docRoot}/resources/dictionary.html#seed">See Update Hash Seed</a>.
    * @param maxConcurrencyError the max error value including error induced by concurrency.
    * @param dstMem     the given Memory object destination. It cannot be null.
+   * @param propagationExecutor the caller supplied propagation executor, or null to use the
+   * default propagation service.
    */
   ConcurrentDirectQuickSelectSketch(final int lgNomLongs, final long seed,
-      final double maxConcurrencyError, final WritableMemory dstMem) {
+      final double maxConcurrencyError, final WritableMemory dstMem,
+      final ConcurrentPropagationExecutor propagationExecutor) {
     super(lgNomLongs, seed, 1.0F, //p
       ResizeFactor.X1, //rf,
       null, dstMem, false); //unionGadget
@@ -82,11 +92,14 @@ final class ConcurrentDirectQuickSelectSketch extends DirectQuickSelectSketch
         maxConcurrencyError);
     sharedPropagationInProgress_ = new AtomicBoolean(false);
     epoch_ = 0;
+    propagationExecutor_ = propagationExecutor;
+    propagationQueue_ = new ConcurrentPropagationExecutor.SerialQueue();
     initBgPropagationService();
   }
 
   ConcurrentDirectQuickSelectSketch(final UpdateSketch sketch, final long seed,
-      final double maxConcurrencyError, final WritableMemory dstMem) {
+      final double maxConcurrencyError, final WritableMemory dstMem,
+      final ConcurrentPropagationExecutor propagationExecutor) {
     super(sketch.getLgNomLongs(), seed, 1.0F, //p
         ResizeFactor.X1, //rf,
         null, //mem Req Svr
@@ -97,6 +110,8 @@ final class ConcurrentDirectQuickSelectSketch extends DirectQuickSelectSketch
         maxConcurrencyError);
     sharedPropagationInProgress_ = new AtomicBoolean(false);
     epoch_ = 0;
+    propagationExecutor_ = propagationExecutor;
+    propagationQueue_ = new ConcurrentPropagationExecutor.SerialQueue();
     initBgPropagationService();
     for (final long hashIn : sketch.getCache()) {
       propagate(hashIn);
@@ -149,9 +164,12 @@ final class ConcurrentDirectQuickSelectSketch extends DirectQuickSelectSketch
 
   @Override
   UpdateReturnState hashUpdate(final long hash) {
-    final String msg = "No update method should be called directly to a shared theta sketch."
-        + " Updating the shared sketch is only permitted through propagation from local sketches.";
-    throw new UnsupportedOperationException(msg);
+    throw new UnsupportedOperationException(UPDATE_NOT_PERMITTED_MSG);
+  }
+
+  @Override
+  void hashUpdateAll(final long[] hashes, final int numHashes, final int[] counts) {
+    throw new UnsupportedOperationException(UPDATE_NOT_PERMITTED_MSG);
   }
 
   //ConcurrentSharedThetaSketch declarations
@@ -187,6 +205,10 @@ final class ConcurrentDirectQuickSelectSketch extends DirectQuickSelectSketch
 
   @Override
   public void awaitBgPropagationTermination() {
+    if (propagationExecutor_ != null) {
+      ConcurrentPropagationExecutor.awaitPending(propagationQueue_);
+      return;
+    }
     try {
       executorService_.shutdown();
       while (!executorService_.awaitTermination(1, TimeUnit.MILLISECONDS)) {
@@ -199,6 +221,7 @@ final class ConcurrentDirectQuickSelectSketch extends DirectQuickSelectSketch
 
   @Override
   public final void initBgPropagationService() {
+    if (propagationExecutor_ != null) { return; } //the caller owns the executor
     executorService_ = ConcurrentPropagationService.getExecutorService(Thread.currentThread().getId());
   }
 
@@ -223,7 +246,11 @@ final class ConcurrentDirectQuickSelectSketch extends DirectQuickSelectSketch
     // otherwise, be nonblocking, let background thread do the work
     final ConcurrentBackgroundThetaPropagation job = new ConcurrentBackgroundThetaPropagation(
         this, localPropagationInProgress, sketchIn, singleHash, epoch);
-    executorService_.execute(job);
+    if (propagationExecutor_ != null) {
+      propagationExecutor_.execute(job, propagationQueue_);
+    } else {
+      executorService_.execute(job);
+    }
     return true;
   }
 
@@ -258,7 +285,9 @@ final class ConcurrentDirectQuickSelectSketch extends DirectQuickSelectSketch
   private void advanceEpoch() {
     awaitBgPropagationTermination();
     startEagerPropagation();
-    ConcurrentPropagationService.resetExecutorService(Thread.currentThread().getId());
+    if (propagationExecutor_ == null) {
+      ConcurrentPropagationService.resetExecutorService(Thread.currentThread().getId());
+    }
     //no inspection NonAtomicOperationOnVolatileField
     // this increment of a volatile field is done within the scope of the propagation
     // synchronization and hence is done by a single thread.
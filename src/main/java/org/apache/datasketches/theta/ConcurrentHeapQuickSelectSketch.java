@@ -42,6 +42,13 @@ final class ConcurrentHeapQuickSelectSketch extends HeapQuickSelectSketch
   // The propagation thread
   private volatile ExecutorService executorService_;
 
+  // The caller supplied propagation executor. If null, the shared ConcurrentPropagationService is used.
+  private final ConcurrentPropagationExecutor propagationExecutor_;
+
+  // The propagation tasks of this sketch submitted to the propagationExecutor_, which are run
+  // one at a time.
+  private final ConcurrentPropagationExecutor.SerialQueue propagationQueue_;
+
   //A flag to coordinate between several eager propagation threads
   private final AtomicBoolean sharedPropagationInProgress_;
 
@@ -65,10 +72,12 @@ final class ConcurrentHeapQuickSelectSketch extends HeapQuickSelectSketch
    * @param lgNomLongs <a href="{@docRoot}/resources/dictionary.html#lgNomLogs">See lgNomLongs</a>.
    * @param seed       <a href="{@docRoot}/resources/dictionary.html#seed">See seed</a>
    * @param maxConcurrencyError the max error value including error induced by concurrency
-   *
+   * @param propagationExecutor the caller supplied propagation executor, or null to use the
+   * default propagation service.
    */
   ConcurrentHeapQuickSelectSketch(final int lgNomLongs, final long seed,
-      final double maxConcurrencyError) {
+      final double maxConcurrencyError,
+      final ConcurrentPropagationExecutor propagationExecutor) {
     super(lgNomLongs, seed, 1.0F, //p
         ResizeFactor.X1, //rf,
         false); //unionGadget
@@ -79,11 +88,14 @@ final class ConcurrentHeapQuickSelectSketch extends HeapQuickSelectSketch
         maxConcurrencyError);
     sharedPropagationInProgress_ = new AtomicBoolean(false);
     epoch_ = 0;
+    propagationExecutor_ = propagationExecutor;
+    propagationQueue_ = new ConcurrentPropagationExecutor.SerialQueue();
     initBgPropagationService();
   }
 
   ConcurrentHeapQuickSelectSketch(final UpdateSketch sketch, final long seed,
-      final double maxConcurrencyError) {
+      final double maxConcurrencyError,
+      final ConcurrentPropagationExecutor propagationExecutor) {
     super(sketch.getLgNomLongs(), seed, 1.0F, //p
         ResizeFactor.X1, //rf,
         false); //unionGadget
@@ -92,6 +104,8 @@ final class ConcurrentHeapQuickSelectSketch extends HeapQuickSelectSketch
         maxConcurrencyError);
     sharedPropagationInProgress_ = new AtomicBoolean(false);
     epoch_ = 0;
+    propagationExecutor_ = propagationExecutor;
+    propagationQueue_ = new ConcurrentPropagationExecutor.SerialQueue();
     initBgPropagationService();
     for (final long hashIn : sketch.getCache()) {
       propagate(hashIn);
@@ -144,9 +158,12 @@ final class ConcurrentHeapQuickSelectSketch extends HeapQuickSelectSketch
 
   @Override
   UpdateReturnState hashUpdate(final long hash) {
-    final String msg = "No update method should be called directly to a shared theta sketch."
-        + " Updating the shared sketch is only permitted through propagation from local sketches.";
-    throw new UnsupportedOperationException(msg);
+    throw new UnsupportedOperationException(UPDATE_NOT_PERMITTED_MSG);
+  }
+
+  @Override
+  void hashUpdateAll(final long[] hashes, final int numHashes, final int[] counts) {
+    throw new UnsupportedOperationException(UPDATE_NOT_PERMITTED_MSG);
   }
 
   //ConcurrentSharedThetaSketch declarations
@@ -182,6 +199,10 @@ final class ConcurrentHeapQuickSelectSketch extends HeapQuickSelectSketch
 
   @Override
   public void awaitBgPropagationTermination() {
+    if (propagationExecutor_ != null) {
+      ConcurrentPropagationExecutor.awaitPending(propagationQueue_);
+      return;
+    }
     try {
       executorService_.shutdown();
       while (!executorService_.awaitTermination(1, TimeUnit.MILLISECONDS)) {
@@ -194,6 +215,7 @@ final class ConcurrentHeapQuickSelectSketch extends HeapQuickSelectSketch
 
   @Override
   public void initBgPropagationService() {
+    if (propagationExecutor_ != null) { return; } //the caller owns the executor
     executorService_ = ConcurrentPropagationService.getExecutorService(Thread.currentThread().getId());
   }
 
@@ -218,7 +240,11 @@ final class ConcurrentHeapQuickSelectSketch extends HeapQuickSelectSketch
     // otherwise, be nonblocking, let background thread do the work
     final ConcurrentBackgroundThetaPropagation job = new ConcurrentBackgroundThetaPropagation(
         this, localPropagationInProgress, sketchIn, singleHash, epoch);
-    executorService_.execute(job);
+    if (propagationExecutor_ != null) {
+      propagationExecutor_.execute(job, propagationQueue_);
+    } else {
+      executorService_.execute(job);
+    }
     return true;
   }
 
@@ -253,7 +279,9 @@ final class ConcurrentHeapQuickSelectSketch extends HeapQuickSelectSketch
   private void advanceEpoch() {
     awaitBgPropagationTermination();
     startEagerPropagation();
-    ConcurrentPropagationService.resetExecutorService(Thread.currentThread().getId());
+    if (propagationExecutor_ == null) {
+      ConcurrentPropagationService.resetExecutorService(Thread.currentThread().getId());
+    }
     //no inspection NonAtomicOperationOnVolatileField
     // this increment of a volatile field is done within the scope of the propagation
     // synchronization and hence is done by a single thread
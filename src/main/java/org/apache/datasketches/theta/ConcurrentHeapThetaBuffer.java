@@ -220,4 +220,15 @@ final class ConcurrentHeapThetaBuffer extends HeapQuickSelectSketch {
     return state;
   }
 
+  /**
+   * Every hash must go through {@link #hashUpdate(long)}, which maintains the exact mode flag and
+   * triggers propagation to the shared sketch.
+   */
+  @Override
+  void hashUpdateAll(final long[] hashes, final int numHashes, final int[] counts) {
+    for (int i = 0; i < numHashes; i++) {
+      counts[hashUpdate(hashes[i]).ordinal()]++;
+    }
+  }
+
 }
@@ -0,0 +1,277 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.theta;
+
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A caller-supplied executor for the background propagation of concurrent theta sketches,
+ * which replaces the small, process-wide pool of the default propagation service.
+ *
+ * <p>The wrapped executor is owned by the caller: it can be sized, named and monitored as the
+ * application requires, and it is never shut down by a sketch. Any executor can be used, including
+ * a thread pool shared by all sketches of one tenant, or a virtual-thread-per-task executor on
+ * JDK 21 and later. One instance of this class may be shared by many shared concurrent sketches,
+ * in which case the metrics below are aggregated over all of them.</p>
+ *
+ * <p>The propagation tasks of one sketch are never run at the same time, since they update the
+ * same hash table. Each sketch queues its tasks in its own {@link SerialQueue}, which is drained
+ * by at most one task of the wrapped executor at a time. The tasks of different sketches run in
+ * parallel as far as the wrapped executor allows.</p>
+ *
+ * <p>The metrics are:</p>
+ * <ul>
+ * <li>Queue depth: the number of propagation tasks submitted but not yet started.</li>
+ * <li>Active count: the number of propagation tasks currently running.</li>
+ * <li>Completed count: the number of propagation tasks that have finished.</li>
+ * <li>Propagation latency: the time from submission of a task to its completion,
+ * as a total and as a maximum over all completed tasks.</li>
+ * </ul>
+ *
+ * @see UpdateSketchBuilder#setPropagationExecutor(Executor)
+ */
+public final class ConcurrentPropagationExecutor implements Executor {
+  private final Executor executor_;
+  private final AtomicLong queued_ = new AtomicLong();
+  private final AtomicLong active_ = new AtomicLong();
+  private final LongAdder completed_ = new LongAdder();
+  private final LongAdder totalLatencyNanos_ = new LongAdder();
+  private final AtomicLong maxLatencyNanos_ = new AtomicLong();
+
+  /**
+   * Creates a propagation executor that runs propagation tasks on the given executor.
+   * @param executor the caller owned executor that runs the propagation tasks. It cannot be null.
+   */
+  public ConcurrentPropagationExecutor(final Executor executor) {
+    executor_ = Objects.requireNonNull(executor, "Parameter 'executor' must not be null");
+  }
+
+  /**
+   * Returns the given executor as a ConcurrentPropagationExecutor, wrapping it if required.
+   * @param executor the given executor, which may be null.
+   * @return the given executor as a ConcurrentPropagationExecutor, or null if the given executor is null.
+   */
+  static ConcurrentPropagationExecutor of(final Executor executor) {
+    if (executor == null || executor instanceof ConcurrentPropagationExecutor) {
+      return (ConcurrentPropagationExecutor) executor;
+    }
+    return new ConcurrentPropagationExecutor(executor);
+  }
+
+  /**
+   * Submits the given task to the wrapped executor and records its metrics.
+   * @param task the task to run
+   */
+  @Override
+  public void execute(final Runnable task) {
+    execute(task, null);
+  }
+
+  /**
+   * Queues the given propagation task of a sketch on the given per-sketch queue, and records its
+   * metrics. The task runs on the wrapped executor after all tasks queued before it on the same
+   * queue have completed.
+   * @param task the task to run
+   * @param queue the per-sketch queue, which may be null, in which case the task is submitted
+   * directly to the wrapped executor.
+   */
+  void execute(final Runnable task, final SerialQueue queue) {
+    final long startNanos = System.nanoTime();
+    queued_.incrementAndGet();
+    final Runnable timedTask = () -> {
+      queued_.decrementAndGet();
+      active_.incrementAndGet();
+      try {
+        task.run();
+      } finally {
+        active_.decrementAndGet();
+        final long latency = System.nanoTime() - startNanos;
+        totalLatencyNanos_.add(latency);
+        maxLatencyNanos_.accumulateAndGet(latency, Math::max);
+        completed_.increment();
+      }
+    };
+    if (queue == null) {
+      try {
+        executor_.execute(timedTask);
+      } catch (final RuntimeException e) { //e.g., RejectedExecutionException
+        queued_.decrementAndGet();
+        throw e;
+      }
+      return;
+    }
+    queue.pending_.incrementAndGet();
+    queue.tasks_.add(timedTask);
+    try {
+      queue.schedule(executor_);
+    } catch (final RuntimeException e) { //e.g., RejectedExecutionException
+      if (queue.tasks_.remove(timedTask)) {
+        queued_.decrementAndGet();
+        queue.pending_.decrementAndGet();
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Blocks until all tasks of the given per-sketch queue have completed.
+   * @param queue the per-sketch queue
+   */
+  static void awaitPending(final SerialQueue queue) {
+    try {
+      while (queue.pending_.get() > 0) {
+        Thread.sleep(1);
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * The queue of the propagation tasks of one sketch. Its tasks are run one at a time, in the order
+   * they were queued, by a single drain task submitted to the wrapped executor whenever the queue
+   * becomes non-empty.
+   */
+  static final class SerialQueue {
+    private final Queue<Runnable> tasks_ = new ConcurrentLinkedQueue<>();
+    // The number of tasks queued that have not completed yet
+    private final AtomicLong pending_ = new AtomicLong();
+    // True while a drain task is submitted or running
+    private final AtomicBoolean draining_ = new AtomicBoolean();
+
+    /**
+     * Returns the number of tasks queued that have not completed yet.
+     * @return the number of tasks queued that have not completed yet.
+     */
+    long getPending() {
+      return pending_.get();
+    }
+
+    private void schedule(final Executor executor) {
+      if (!tasks_.isEmpty() && draining_.compareAndSet(false, true)) {
+        try {
+          executor.execute(() -> drain(executor));
+        } catch (final RuntimeException e) {
+          draining_.set(false);
+          throw e;
+        }
+      }
+    }
+
+    private void drain(final Executor executor) {
+      try {
+        Runnable task;
+        while ((task = tasks_.poll()) != null) {
+          try {
+            task.run();
+          } finally {
+            pending_.decrementAndGet();
+          }
+        }
+      } finally {
+        draining_.set(false);
+        //picks up a task queued after the last poll, whose own schedule found this drain running
+        schedule(executor);
+      }
+    }
+  }
+
+  /**
+   * Returns the wrapped executor.
+   * @return the wrapped executor.
+   */
+  public Executor getExecutor() {
+    return executor_;
+  }
+
+  /**
+   * Returns the number of propagation tasks submitted but not yet started.
+   * @return the number of propagation tasks submitted but not yet started.
+   */
+  public long getQueueDepth() {
+    return queued_.get();
+  }
+
+  /**
+   * Returns the number of propagation tasks currently running.
+   * @return the number of propagation tasks currently running.
+   */
+  public long getActiveCount() {
+    return active_.get();
+  }
+
+  /**
+   * Returns the number of propagation tasks that have completed.
+   * @return the number of propagation tasks that have completed.
+   */
+  public long getCompletedCount() {
+    return completed_.sum();
+  }
+
+  /**
+   * Returns the sum of the latencies, from submission to completion, of all completed tasks.
+   * @return the sum of the latencies of all completed tasks, in nanoseconds.
+   */
+  public long getTotalLatencyNanos() {
+    return totalLatencyNanos_.sum();
+  }
+
+  /**
+   * Returns the maximum latency, from submission to completion, of all completed tasks.
+   * @return the maximum latency of all completed tasks, in nanoseconds.
+   */
+  public long getMaxLatencyNanos() {
+    return maxLatencyNanos_.get();
+  }
+
+  /**
+   * Returns the mean latency, from submission to completion, of all completed tasks.
+   * @return the mean latency of all completed tasks, in nanoseconds, or zero if no task has completed.
+   */
+  public double getMeanLatencyNanos() {
+    final long completed = completed_.sum();
+    return (completed == 0) ? 0.0 : (double) totalLatencyNanos_.sum() / completed;
+  }
+
+  /**
+   * Resets the completed count and the latency metrics to zero.
+   * The queue depth and active count are not affected.
+   */
+  public void resetLatencyMetrics() {
+    completed_.reset();
+    totalLatencyNanos_.reset();
+    maxLatencyNanos_.set(0);
+  }
+
+  @Override
+  public String toString() {
+    return "ConcurrentPropagationExecutor(queueDepth=" + getQueueDepth()
+        + ", active=" + getActiveCount()
+        + ", completed=" + getCompletedCount()
+        + ", meanLatencyNanos=" + getMeanLatencyNanos()
+        + ", maxLatencyNanos=" + getMaxLatencyNanos() + ")";
+  }
+}
@@ -35,6 +35,8 @@ interface ConcurrentSharedThetaSketch extends MemoryStatus {
 
   long NOT_SINGLE_HASH = -1L;
   double MIN_ERROR = 0.0000001;
+  String UPDATE_NOT_PERMITTED_MSG = "No update method should be called directly to a shared theta sketch."
+      + " Updating the shared sketch is only permitted through propagation from local sketches.";
 
   static long computeExactLimit(long k, double error) {
     return 2 * Math.min(k, (long) Math.ceil(1.0 / Math.pow(Math.max(error,MIN_ERROR), 2.0)));
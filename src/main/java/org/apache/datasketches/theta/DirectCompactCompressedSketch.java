@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.theta;
+
+import static org.apache.datasketches.theta.CompactOperations.computeCompactPreLongs;
+import static org.apache.datasketches.theta.PreambleUtil.extractEntryBitsV4;
+import static org.apache.datasketches.theta.PreambleUtil.extractNumEntriesBytesV4;
+import static org.apache.datasketches.theta.PreambleUtil.extractNumEntriesV4;
+import static org.apache.datasketches.theta.PreambleUtil.extractPreLongs;
+import static org.apache.datasketches.theta.PreambleUtil.extractSeedHash;
+import static org.apache.datasketches.theta.PreambleUtil.extractThetaLongV4;
+
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
+import org.apache.datasketches.thetacommon.ThetaUtil;
+
+/**
+ * An off-heap (Direct), compact, ordered, read-only sketch that wraps a Serialization Version 4
+ * (compressed) binary image as written by {@link CompactSketch#toByteArrayCompressed()}.
+ *
+ * <p>The estimate, bounds, theta and retained entries are read from the preamble alone.
+ * The hash values are decoded lazily by the {@link #iterator()}, which the Union and Intersection
+ * use to stream the hashes without first copying them into an array on the java heap.
+ * Only {@link #getCache()}, {@link #compact(boolean, WritableMemory)} and {@link #toByteArray()}
+ * decode the full image.</p>
+ */
+class DirectCompactCompressedSketch extends DirectCompactSketch {
+
+  /**
+   * Construct this sketch with the given memory.
+   * @param mem Read-only Memory object holding a Serialization Version 4 image.
+   */
+  DirectCompactCompressedSketch(final Memory mem) {
+    super(mem);
+  }
+
+  /**
+   * Wraps the given Memory, which must be a SerVer 4 compressed CompactSketch image.
+   * Must check the validity of the Memory before calling.
+   * @param srcMem <a href="{@docRoot}/resources/dictionary.html#mem">See Memory</a>
+   * @param seedHash The update seedHash.
+   * <a href="{@docRoot}/resources/dictionary.html#seedHash">See Seed Hash</a>.
+   * @return this sketch
+   */
+  static DirectCompactCompressedSketch wrapInstance(final Memory srcMem, final short seedHash) {
+    ThetaUtil.checkSeedHashes((short) extractSeedHash(srcMem), seedHash);
+    return new DirectCompactCompressedSketch(srcMem);
+  }
+
+  //Sketch Overrides
+
+  @Override
+  public CompactSketch compact(final boolean dstOrdered, final WritableMemory dstMem) {
+    return CompactOperations.componentsToCompact(getThetaLong(), getRetainedEntries(true),
+        getSeedHash(), isEmpty(), true, true, dstOrdered, dstMem, getCache());
+  }
+
+  /**
+   * Returns the number of bytes of the equivalent Serialization Version 3 image, which is what
+   * {@link #toByteArray()} returns.
+   */
+  @Override
+  public int getCurrentBytes() {
+    return (getCurrentPreambleLongs() + getRetainedEntries(true)) << 3;
+  }
+
+  @Override
+  public double getEstimate() {
+    return Sketch.estimate(getThetaLong(), getRetainedEntries(true));
+  }
+
+  @Override
+  public int getRetainedEntries(final boolean valid) { //compact is always valid
+    return extractNumEntriesV4(mem_);
+  }
+
+  @Override
+  public long getThetaLong() {
+    return (extractPreLongs(mem_) > 1) ? extractThetaLongV4(mem_) : Long.MAX_VALUE;
+  }
+
+  @Override
+  public boolean isOrdered() {
+    return true;
+  }
+
+  @Override
+  public HashIterator iterator() {
+    return new MemoryCompressedHashIterator(mem_, extractEntryBitsV4(mem_),
+        getRetainedEntries(true), getDataOffsetBytes());
+  }
+
+  @Override
+  public byte[] toByteArray() {
+    final byte[] byteArrOut = new byte[getCurrentBytes()];
+    compact(true, WritableMemory.writableWrap(byteArrOut));
+    return byteArrOut;
+  }
+
+  /**
+   * Returns a copy of the wrapped compressed image.
+   */
+  @Override
+  public byte[] toByteArrayCompressed() {
+    final long packedBits = (long) extractEntryBitsV4(mem_) * getRetainedEntries(true);
+    final int outBytes = (int) (getDataOffsetBytes() + ((packedBits + 7) >>> 3));
+    final byte[] byteArrOut = new byte[outBytes];
+    mem_.getByteArray(0, byteArrOut, 0, outBytes);
+    return byteArrOut;
+  }
+
+  //restricted methods
+
+  @Override
+  long[] getCache() {
+    final int curCount = getRetainedEntries(true);
+    final long[] cache = new long[curCount];
+    final HashIterator it = iterator();
+    for (int i = 0; i < curCount; i++) {
+      it.next();
+      cache[i] = it.get();
+    }
+    return cache;
+  }
+
+  /**
+   * Returns the preamble longs of the equivalent Serialization Version 3 image.
+   */
+  @Override
+  int getCompactPreambleLongs() {
+    return computeCompactPreLongs(isEmpty(), getRetainedEntries(true), getThetaLong());
+  }
+
+  @Override
+  int getCurrentPreambleLongs() {
+    return getCompactPreambleLongs();
+  }
+
+  private int getDataOffsetBytes() {
+    return (extractPreLongs(mem_) << 3) + extractNumEntriesBytesV4(mem_);
+  }
+}
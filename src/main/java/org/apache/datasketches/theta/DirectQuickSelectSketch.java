@@ -266,6 +266,26 @@ class DirectQuickSelectSketch extends DirectQuickSelectSketchR {
 
   //restricted methods
 
+  @Override
+  void hashUpdateAll(final long[] hashes, final int numHashes, final int[] counts) {
+    if (numHashes == 0) { return; }
+    wmem_.putByte(FLAGS_BYTE, (byte) (wmem_.getByte(FLAGS_BYTE) & ~EMPTY_FLAG_MASK));
+    long thetaLong = getThetaLong();
+    for (int i = 0; i < numHashes; i++) {
+      final long hash = hashes[i];
+      //The over-theta test, done here so most hashes in estimation mode never reach the table.
+      if (HashOperations.continueCondition(thetaLong, hash)) {
+        counts[RejectedOverTheta.ordinal()]++;
+        continue;
+      }
+      final UpdateReturnState state = hashUpdate(hash);
+      if (state == InsertedCountIncrementedRebuilt) {
+        thetaLong = getThetaLong(); //only a rebuild changes theta
+      }
+      counts[state.ordinal()]++;
+    }
+  }
+
   @Override
   UpdateReturnState hashUpdate(final long hash) {
     HashOperations.checkHashCorruption(hash);
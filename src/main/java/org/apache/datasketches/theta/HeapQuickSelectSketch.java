@@ -244,7 +244,27 @@ class HeapQuickSelectSketch extends HeapUpdateSketch {
     if (HashOperations.continueCondition(thetaLong_, hash)) {
       return RejectedOverTheta; //signal that hash was rejected due to theta.
     }
+    return insertHash(hash);
+  }
+
+  @Override
+  void hashUpdateAll(final long[] hashes, final int numHashes, final int[] counts) {
+    if (numHashes == 0) { return; }
+    empty_ = false;
+    for (int i = 0; i < numHashes; i++) {
+      final long hash = hashes[i];
+      //The over-theta test, which also rejects zero and corrupted hashes.
+      //thetaLong_ is reread for every hash as it changes with each rebuild.
+      if (HashOperations.continueCondition(thetaLong_, hash)) {
+        counts[RejectedOverTheta.ordinal()]++;
+        continue;
+      }
+      counts[insertHash(hash).ordinal()]++;
+    }
+  }
 
+  //Inserts a hash that passed the over-theta test
+  private UpdateReturnState insertHash(final long hash) {
     //The duplicate test
     if (HashOperations.hashSearchOrInsert(cache_, lgArrLongs_, hash) >= 0) {
       return RejectedDuplicate; //Duplicate, not inserted
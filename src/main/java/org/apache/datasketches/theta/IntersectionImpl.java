@@ -73,6 +73,13 @@ import org.apache.datasketches.thetacommon.ThetaUtil;
  * @author Kevin Lang
  */
 class IntersectionImpl extends Intersection {
+  /**
+   * In the stateless intersection of two ordered compact sketches, the minimum ratio of the
+   * larger to the smaller number of hashes below theta at which galloping search is used instead
+   * of a linear merge.
+   */
+  static final int GALLOP_RATIO = 8;
+
   protected final short seedHash_;
   protected final boolean readOnly_; //True if this sketch is to be treated as read only
   protected final WritableMemory wmem_;
@@ -218,6 +225,9 @@ class IntersectionImpl extends Intersection {
      final WritableMemory dstMem) {
     if (wmem_ != null && readOnly_) { throw new SketchesReadOnlyException(); }
     hardReset();
+    if (dstOrdered && isOrderedCompact(a) && isOrderedCompact(b)) {
+      return intersectOrderedCompact(a, b, dstMem);
+    }
     intersect(a);
     intersect(b);
     final CompactSketch csk = getResult(dstOrdered, dstMem);
@@ -434,8 +444,9 @@ class IntersectionImpl extends Intersection {
   private void performIntersect(final Sketch sketchIn) {
     // curCount and input data are nonzero, match against HT
     assert curCount_ > 0 && !empty_;
-    final long[] cacheIn = sketchIn.getCache();
-    final int arrLongsIn = cacheIn.length;
+    final long[] cacheIn = (sketchIn instanceof DirectCompactCompressedSketch)
+        ? null : sketchIn.getCache();
+    final int arrLongsIn = (cacheIn == null) ? 0 : cacheIn.length;
     final long[] hashTable;
     if (wmem_ != null) {
       final int htLen = 1 << lgArrLongs_;
@@ -448,7 +459,17 @@ class IntersectionImpl extends Intersection {
     final long[] matchSet = new long[ min(curCount_, sketchIn.getRetainedEntries(true)) ];
 
     int matchSetCount = 0;
-    if (sketchIn.isOrdered()) {
+    if (sketchIn instanceof DirectCompactCompressedSketch) {
+      //ordered and decoded lazily, which enables early stop without decoding the remainder
+      final HashIterator it = sketchIn.iterator();
+      while (it.next()) {
+        final long hashIn = it.get();
+        if (hashIn >= thetaLong_) { break; }
+        if (hashSearch(hashTable, lgArrLongs_, hashIn) == -1) { continue; }
+        matchSet[matchSetCount++] = hashIn;
+      }
+    }
+    else if (sketchIn.isOrdered()) {
       //ordered compact, which enables early stop
       for (int i = 0; i < arrLongsIn; i++ ) {
         final long hashIn = cacheIn[i];
@@ -491,6 +512,201 @@ class IntersectionImpl extends Intersection {
     }
   }
 
+  private static boolean isOrderedCompact(final Sketch sketch) {
+    return sketch != null && !sketch.isEmpty() && sketch.isOrdered()
+        && (sketch instanceof CompactSketch);
+  }
+
+  /**
+   * Computes the intersection of two non-empty, ordered compact sketches directly from their
+   * sorted hash arrays, which may be on the heap or in Memory, without building a hash table.
+   * If one sketch has at least {@link #GALLOP_RATIO} times as many hashes below theta as the other,
+   * each hash of the smaller sketch is located in the larger one by exponential (galloping)
+   * search. Otherwise the two arrays are merged linearly.
+   * A compressed sketch in Memory can only be decoded sequentially, so it is always streamed
+   * through its iterator and, if it is the larger side, merged linearly.
+   * The result is identical to intersecting the two sketches one at a time and calling
+   * getResult(true, dstMem).
+   */
+  private CompactSketch intersectOrderedCompact(final Sketch a, final Sketch b,
+      final WritableMemory dstMem) {
+    ThetaUtil.checkSeedHashes(seedHash_, a.getSeedHash());
+    ThetaUtil.checkSeedHashes(seedHash_, b.getSeedHash());
+    final long thetaLong = min(a.getThetaLong(), b.getThetaLong()); //Theta rule
+    final long[] matchSet;
+    final int matchSetCount;
+    final boolean compressedA = a instanceof DirectCompactCompressedSketch;
+    final boolean compressedB = b instanceof DirectCompactCompressedSketch;
+    if (compressedA || compressedB) { //at least one side can only be read sequentially
+      final int countA = a.getRetainedEntries(true);
+      final int countB = b.getRetainedEntries(true);
+      matchSet = new long[min(countA, countB)];
+      if (!compressedA && countA >= (long) countB * GALLOP_RATIO) {
+        final OrderedHashes hashesA = new OrderedHashes(a);
+        matchSetCount = gallopIntersect(b.iterator(), thetaLong, hashesA,
+            hashesA.lowerBound(0, thetaLong), matchSet);
+      } else if (!compressedB && countB >= (long) countA * GALLOP_RATIO) {
+        final OrderedHashes hashesB = new OrderedHashes(b);
+        matchSetCount = gallopIntersect(a.iterator(), thetaLong, hashesB,
+            hashesB.lowerBound(0, thetaLong), matchSet);
+      } else {
+        matchSetCount = mergeIntersect(a.iterator(), b.iterator(), thetaLong, matchSet);
+      }
+      return orderedResult(thetaLong, matchSet, matchSetCount, dstMem);
+    }
+    final OrderedHashes hashesA = new OrderedHashes(a);
+    final OrderedHashes hashesB = new OrderedHashes(b);
+    final int endA = hashesA.lowerBound(0, thetaLong);
+    final int endB = hashesB.lowerBound(0, thetaLong);
+    matchSet = new long[min(endA, endB)];
+    if (endA >= (long) endB * GALLOP_RATIO) {
+      matchSetCount = gallopIntersect(hashesB, endB, hashesA, endA, matchSet);
+    } else if (endB >= (long) endA * GALLOP_RATIO) {
+      matchSetCount = gallopIntersect(hashesA, endA, hashesB, endB, matchSet);
+    } else {
+      matchSetCount = mergeIntersect(hashesA, endA, hashesB, endB, matchSet);
+    }
+    return orderedResult(thetaLong, matchSet, matchSetCount, dstMem);
+  }
+
+  private CompactSketch orderedResult(final long thetaLong, final long[] matchSet,
+      final int matchSetCount, final WritableMemory dstMem) {
+    final boolean empty = (matchSetCount == 0) && (thetaLong == Long.MAX_VALUE);
+    final long[] compactCache = (matchSetCount == matchSet.length)
+        ? matchSet : Arrays.copyOf(matchSet, matchSetCount);
+    return CompactOperations.componentsToCompact(
+        thetaLong, matchSetCount, seedHash_, empty, true, true, true, dstMem, compactCache);
+  }
+
+  private static int mergeIntersect(final OrderedHashes hashesA, final int endA,
+      final OrderedHashes hashesB, final int endB, final long[] matchSet) {
+    int count = 0;
+    int i = 0;
+    int j = 0;
+    while (i < endA && j < endB) {
+      final long hashA = hashesA.get(i);
+      final long hashB = hashesB.get(j);
+      if (hashA == hashB) { matchSet[count++] = hashA; }
+      //advance both on a match, otherwise only the smaller side
+      i += (hashA <= hashB) ? 1 : 0;
+      j += (hashB <= hashA) ? 1 : 0;
+    }
+    return count;
+  }
+
+  //Merges two ordered hash streams, at least one of which is decoded lazily, up to theta.
+  private static int mergeIntersect(final HashIterator itA, final HashIterator itB,
+      final long thetaLong, final long[] matchSet) {
+    int count = 0;
+    boolean hasA = itA.next();
+    boolean hasB = itB.next();
+    while (hasA && hasB) {
+      final long hashA = itA.get();
+      final long hashB = itB.get();
+      if (hashA >= thetaLong || hashB >= thetaLong) { break; } // "early stop"
+      if (hashA == hashB) {
+        matchSet[count++] = hashA;
+        hasA = itA.next();
+        hasB = itB.next();
+      } else if (hashA < hashB) {
+        hasA = itA.next();
+      } else {
+        hasB = itB.next();
+      }
+    }
+    return count;
+  }
+
+  //Locates each hash of a lazily decoded, much smaller stream in the larger sorted array.
+  private static int gallopIntersect(final HashIterator small, final long thetaLong,
+      final OrderedHashes large, final int endLarge, final long[] matchSet) {
+    int count = 0;
+    int j = 0;
+    while (j < endLarge && small.next()) {
+      final long hash = small.get();
+      if (hash >= thetaLong) { break; } // "early stop"
+      j = large.gallop(j, endLarge, hash);
+      if (j < endLarge && large.get(j) == hash) { matchSet[count++] = hash; j++; }
+    }
+    return count;
+  }
+
+  private static int gallopIntersect(final OrderedHashes small, final int endSmall,
+      final OrderedHashes large, final int endLarge, final long[] matchSet) {
+    int count = 0;
+    int j = 0;
+    for (int i = 0; i < endSmall && j < endLarge; i++) {
+      final long hash = small.get(i);
+      j = large.gallop(j, endLarge, hash);
+      if (j < endLarge && large.get(j) == hash) { matchSet[count++] = hash; j++; }
+    }
+    return count;
+  }
+
+  /**
+   * Read access to the sorted hash array of an ordered compact sketch on the heap or in Memory.
+   */
+  private static final class OrderedHashes {
+    private final long[] cache;
+    private final Memory mem;
+    private final int offsetBytes;
+    private final int count;
+
+    OrderedHashes(final Sketch sketch) {
+      count = sketch.getRetainedEntries(true);
+      if (sketch.hasMemory()) {
+        mem = sketch.getMemory();
+        offsetBytes = (mem.getByte(PREAMBLE_LONGS_BYTE) & 0X3F) << 3;
+        cache = null;
+      } else {
+        mem = null;
+        offsetBytes = 0;
+        cache = sketch.getCache(); //not a copy
+      }
+    }
+
+    long get(final int index) {
+      return (cache != null) ? cache[index] : mem.getLong(offsetBytes + ((long) index << 3));
+    }
+
+    /**
+     * Returns the index of the first hash at or after the given start index that is not less
+     * than the given hash, or the count if there is none. Binary search.
+     */
+    int lowerBound(final int start, final long hash) {
+      return lowerBound(start, count, hash);
+    }
+
+    private int lowerBound(final int start, final int end, final long hash) {
+      int lo = start;
+      int hi = end;
+      while (lo < hi) {
+        final int mid = (lo + hi) >>> 1;
+        if (get(mid) < hash) { lo = mid + 1; }
+        else { hi = mid; }
+      }
+      return lo;
+    }
+
+    /**
+     * Returns the index of the first hash in [start, end) that is not less than the given hash,
+     * or end if there is none. Probes at exponentially growing distances from start, then
+     * binary searches the last interval, so the cost grows with the log of the distance moved.
+     */
+    int gallop(final int start, final int end, final long hash) {
+      if (start >= end || get(start) >= hash) { return start; }
+      int lo = start; //get(lo) < hash
+      int step = 1;
+      int hi = start + step;
+      while (hi < end && get(hi) < hash) {
+        lo = hi;
+        step <<= 1;
+        hi = start + step;
+      }
+      return lowerBound(lo + 1, min(hi, end), hash);
+    }
+  }
+
   private void moveDataToTgt(final long[] arr, final int count) {
     final int arrLongsIn = arr.length;
     int tmpCnt = 0;
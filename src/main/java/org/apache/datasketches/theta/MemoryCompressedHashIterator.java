@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.theta;
+
+import org.apache.datasketches.memory.Memory;
+
+/**
+ * Iterates over the ordered hashes of a Serialization Version 4 (compressed) CompactSketch image
+ * in Memory. The bit-packed deltas are decoded one block of 8 at a time, as the iterator advances,
+ * so a consumer that stops early never decodes the rest of the image.
+ */
+class MemoryCompressedHashIterator implements HashIterator {
+  private final Memory mem;
+  private final int entryBits;
+  private final int numEntries;
+  private final long[] block = new long[8];
+  private final byte[] buffer;
+  private long offsetBytes;
+  private int index;
+  private long hash;
+
+  /**
+   * Constructs this iterator.
+   * @param mem the Memory holding the compressed image
+   * @param entryBits the number of bits of each packed delta
+   * @param numEntries the number of entries
+   * @param offsetBytes the byte offset of the first packed delta
+   */
+  MemoryCompressedHashIterator(final Memory mem, final int entryBits, final int numEntries,
+      final long offsetBytes) {
+    this.mem = mem;
+    this.entryBits = entryBits;
+    this.numEntries = numEntries;
+    this.offsetBytes = offsetBytes;
+    buffer = new byte[entryBits];
+    index = -1;
+    hash = 0;
+  }
+
+  @Override
+  public long get() {
+    return hash;
+  }
+
+  @Override
+  public boolean next() {
+    if (index + 1 >= numEntries) { return false; }
+    index++;
+    final int j = index & 7;
+    if (j == 0) { decodeBlock(numEntries - index); }
+    hash += block[j]; //undo delta
+    return true;
+  }
+
+  private void decodeBlock(final int remaining) {
+    if (remaining >= 8) {
+      mem.getByteArray(offsetBytes, buffer, 0, entryBits);
+      BitPacking.unpackBitsBlock8(block, 0, buffer, 0, entryBits);
+      offsetBytes += entryBits;
+      return;
+    }
+    //the last partial block is packed bit by bit
+    final int bytes = ((remaining * entryBits) + 7) >>> 3;
+    mem.getByteArray(offsetBytes, buffer, 0, bytes);
+    int bufOffset = 0;
+    int bitOffset = 0;
+    for (int i = 0; i < remaining; i++) {
+      BitPacking.unpackBits(block, i, entryBits, buffer, bufOffset, bitOffset);
+      bufOffset += (bitOffset + entryBits) >>> 3;
+      bitOffset = (bitOffset + entryBits) & 7;
+    }
+    offsetBytes += bytes;
+  }
+
+}
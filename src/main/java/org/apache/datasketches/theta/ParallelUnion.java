@@ -0,0 +1,216 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.theta;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.datasketches.common.SketchesArgumentException;
+import org.apache.datasketches.memory.Memory;
+
+/**
+ * Computes the union of a large collection of Theta sketches in parallel using a fork-join tree
+ * reduction.
+ *
+ * <p>The inputs are split into batches. Each batch is merged into its own on-heap Union by a
+ * worker thread, and the partial unions are then combined pairwise up the tree. While the batches
+ * are being merged, each worker publishes its current union theta to the other workers, which
+ * use it to skip hashes that cannot appear in the final result.</p>
+ *
+ * <p>The result is identical to merging all of the inputs, in any order, into a single Union
+ * configured by the same {@link SetOperationBuilder} and calling {@link Union#getResult()}.</p>
+ *
+ * <p>The {@link SetOperationBuilder} supplies the nominal entries, seed, sampling probability
+ * and resize factor of the unions. The partial unions are always on the java heap.</p>
+ */
+public final class ParallelUnion {
+  /**
+   * The number of batches created per thread of the pool when the batch size is not specified.
+   * More batches than threads lets the fork-join pool balance inputs of uneven size.
+   */
+  static final int BATCHES_PER_THREAD = 4;
+
+  private final SetOperationBuilder bldr_;
+  private final ForkJoinPool pool_;
+  private final int batchSize_;
+
+  /**
+   * Creates a new ParallelUnion that runs on the {@link ForkJoinPool#commonPool()} and chooses
+   * the batch size from the number of inputs and the parallelism of the pool.
+   * @param bldr the SetOperationBuilder that configures the unions.
+   */
+  public ParallelUnion(final SetOperationBuilder bldr) {
+    this(bldr, ForkJoinPool.commonPool(), 0);
+  }
+
+  /**
+   * Creates a new ParallelUnion that runs on the given pool.
+   * @param bldr the SetOperationBuilder that configures the unions.
+   * @param pool the ForkJoinPool that runs the merge tasks.
+   * @param batchSize the maximum number of inputs merged by one task before the inputs are split.
+   * If zero, the batch size is chosen from the number of inputs and the parallelism of the pool.
+   */
+  public ParallelUnion(final SetOperationBuilder bldr, final ForkJoinPool pool,
+      final int batchSize) {
+    bldr_ = Objects.requireNonNull(bldr, "SetOperationBuilder must not be null");
+    pool_ = Objects.requireNonNull(pool, "ForkJoinPool must not be null");
+    if (batchSize < 0) {
+      throw new SketchesArgumentException("Batch size must not be negative: " + batchSize);
+    }
+    batchSize_ = batchSize;
+  }
+
+  /**
+   * Returns the union of the given sketches as an ordered, on-heap CompactSketch.
+   * Null and empty sketches are ignored, as they are by {@link Union#union(Sketch)}.
+   * @param sketches the given sketches.
+   * @return the union of the given sketches.
+   */
+  public CompactSketch union(final Collection<? extends Sketch> sketches) {
+    Objects.requireNonNull(sketches, "Sketches must not be null");
+    return run(new ArrayList<>(sketches), (u, sk) -> u.union(sk));
+  }
+
+  /**
+   * Returns the union of the sketches of the given stream as an ordered, on-heap CompactSketch.
+   * The stream is fully consumed before the merge starts.
+   * @param sketches the given stream of sketches.
+   * @return the union of the given sketches.
+   */
+  public CompactSketch union(final Stream<? extends Sketch> sketches) {
+    Objects.requireNonNull(sketches, "Sketches must not be null");
+    return run(sketches.collect(Collectors.toList()), (u, sk) -> u.union(sk));
+  }
+
+  /**
+   * Returns the union of the given sketch images as an ordered, on-heap CompactSketch.
+   * Each image may be any form accepted by {@link Union#union(Memory)}.
+   * @param images the given sketch images.
+   * @return the union of the given sketch images.
+   */
+  public CompactSketch unionMemory(final Collection<? extends Memory> images) {
+    Objects.requireNonNull(images, "Images must not be null");
+    return run(new ArrayList<>(images), (u, mem) -> u.union(mem));
+  }
+
+  /**
+   * Returns the union of the sketch images of the given stream as an ordered, on-heap
+   * CompactSketch. The stream is fully consumed before the merge starts.
+   * @param images the given stream of sketch images.
+   * @return the union of the given sketch images.
+   */
+  public CompactSketch unionMemory(final Stream<? extends Memory> images) {
+    Objects.requireNonNull(images, "Images must not be null");
+    return run(images.collect(Collectors.toList()), (u, mem) -> u.union(mem));
+  }
+
+  /**
+   * Returns the batch size used for the given number of inputs.
+   * @param numInputs the number of inputs
+   * @return the batch size used for the given number of inputs.
+   */
+  int getBatchSize(final int numInputs) {
+    if (batchSize_ > 0) { return batchSize_; }
+    final int numBatches = pool_.getParallelism() * BATCHES_PER_THREAD;
+    return Math.max(1, (numInputs + numBatches - 1) / numBatches);
+  }
+
+  private <T> CompactSketch run(final List<T> inputs, final BiConsumer<UnionImpl, T> unionFn) {
+    final AtomicLong sharedThetaLong = new AtomicLong(Long.MAX_VALUE);
+    final UnionTask<T> task = new UnionTask<>(this, inputs, 0, inputs.size(),
+        getBatchSize(inputs.size()), unionFn, sharedThetaLong);
+    return pool_.invoke(task).getResult();
+  }
+
+  private UnionImpl newUnion() {
+    return (UnionImpl) bldr_.buildUnion();
+  }
+
+  /**
+   * Merges a range of the inputs into one union, splitting the range in half until it is no
+   * larger than the batch size.
+   */
+  private static final class UnionTask<T> extends RecursiveTask<UnionImpl> {
+    private static final long serialVersionUID = 1L;
+    private final transient ParallelUnion parent;
+    private final transient List<T> inputs;
+    private final int start;
+    private final int end;
+    private final int batchSize;
+    private final transient BiConsumer<UnionImpl, T> unionFn;
+    private final AtomicLong sharedThetaLong;
+
+    UnionTask(final ParallelUnion parent, final List<T> inputs, final int start, final int end,
+        final int batchSize, final BiConsumer<UnionImpl, T> unionFn,
+        final AtomicLong sharedThetaLong) {
+      this.parent = parent;
+      this.inputs = inputs;
+      this.start = start;
+      this.end = end;
+      this.batchSize = batchSize;
+      this.unionFn = unionFn;
+      this.sharedThetaLong = sharedThetaLong;
+    }
+
+    @Override
+    protected UnionImpl compute() {
+      if ((end - start) <= batchSize) {
+        final UnionImpl union = parent.newUnion();
+        for (int i = start; i < end; i++) {
+          union.lowerUnionThetaLong(sharedThetaLong.get());
+          unionFn.accept(union, inputs.get(i));
+          publish(union);
+        }
+        return union;
+      }
+      final int mid = (start + end) >>> 1;
+      final UnionTask<T> left =
+          new UnionTask<>(parent, inputs, start, mid, batchSize, unionFn, sharedThetaLong);
+      final UnionTask<T> right =
+          new UnionTask<>(parent, inputs, mid, end, batchSize, unionFn, sharedThetaLong);
+      left.fork();
+      final UnionImpl rightUnion = right.compute();
+      final UnionImpl leftUnion = left.join();
+      leftUnion.lowerUnionThetaLong(sharedThetaLong.get());
+      leftUnion.union(rightUnion.getResult());
+      publish(leftUnion);
+      return leftUnion;
+    }
+
+    //Any union theta is an upper bound of the theta of the final result, so the smallest one
+    // seen so far can be shared with all workers without changing the final result.
+    private void publish(final UnionImpl union) {
+      final long thetaLong = union.getUnionThetaLong();
+      long cur = sharedThetaLong.get();
+      while (thetaLong < cur && !sharedThetaLong.compareAndSet(cur, thetaLong)) {
+        cur = sharedThetaLong.get();
+      }
+    }
+  }
+
+}
@@ -415,6 +415,22 @@ final class PreambleUtil {
     return mem.getLong(THETA_LONG_V4);
   }
 
+  /**
+   * Returns the number of entries of a Serialization Version 4 (compressed) image, which is stored
+   * little-endian in the given number of whole bytes immediately after the preamble longs.
+   * @param mem the given Memory
+   * @return the number of entries
+   */
+  static int extractNumEntriesV4(final Memory mem) {
+    final int numEntriesBytes = extractNumEntriesBytesV4(mem);
+    final int offsetBytes = extractPreLongs(mem) << 3;
+    int numEntries = 0;
+    for (int i = 0; i < numEntriesBytes; i++) {
+      numEntries |= Byte.toUnsignedInt(mem.getByte(offsetBytes + i)) << (i << 3);
+    }
+    return numEntries;
+  }
+
   /**
    * Sets PreLongs in the low 6 bits and sets LgRF in the upper 2 bits = 0.
    * @param wmem the target WritableMemory
@@ -413,7 +413,7 @@ public final class Sketches {
     if (serVer == 1) {
       return ((getThetaLong(srcMem) == Long.MAX_VALUE) && (getRetainedEntries(srcMem) == 0));
     }
-    return (srcMem.getByte(FLAGS_BYTE) & EMPTY_FLAG_MASK) != 0; //for SerVer 2 & 3
+    return (srcMem.getByte(FLAGS_BYTE) & EMPTY_FLAG_MASK) != 0; //for SerVer 2, 3 & 4
   }
 
   static int getPreambleLongs(final Memory srcMem) {
@@ -429,6 +429,9 @@ public final class Sketches {
       }
       return entries;
     }
+    if (serVer == 4) {
+      return PreambleUtil.extractNumEntriesV4(srcMem);
+    }
     //SerVer 2 or 3
     final int preLongs = getPreambleLongs(srcMem);
     final boolean empty = (srcMem.getByte(FLAGS_BYTE) & EMPTY_FLAG_MASK) != 0; //for SerVer 2 & 3
@@ -441,6 +444,9 @@ public final class Sketches {
 
   static long getThetaLong(final Memory srcMem) {
     final int preLongs = getPreambleLongs(srcMem);
+    if (srcMem.getByte(SER_VER_BYTE) == 4) {
+      return (preLongs > 1) ? PreambleUtil.extractThetaLongV4(srcMem) : Long.MAX_VALUE;
+    }
     return (preLongs < 3) ? Long.MAX_VALUE : srcMem.getLong(THETA_LONG); //for SerVer 1,2,3
   }
 }
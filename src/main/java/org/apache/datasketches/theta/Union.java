@@ -20,6 +20,7 @@
 package org.apache.datasketches.theta;
 
 import java.nio.ByteBuffer;
+import java.util.Collection;
 
 import org.apache.datasketches.common.Family;
 import org.apache.datasketches.memory.Memory;
@@ -114,6 +115,26 @@ public abstract class Union extends SetOperation {
   public abstract CompactSketch union(Sketch sketchA, Sketch sketchB, boolean dstOrdered,
       WritableMemory dstMem);
 
+  /**
+   * This implements a stateless union of all of the given sketches. The returned sketch will be
+   * cut back to k if required, similar to the regular Union operation.
+   *
+   * <p>If an ordered result is requested and every non-empty input is an ordered CompactSketch,
+   * either on the heap or in Memory, the inputs are combined by a k-way sorted merge that stops as
+   * soon as the result is complete, without using the internal hash table of this union.
+   * Otherwise, the inputs are merged one at a time as by {@link #union(Sketch)}.
+   * Either way the result is the same.</p>
+   *
+   * <p>Nulls and empty sketches are ignored.</p>
+   *
+   * @param sketches the given sketches
+   * @param dstOrdered If true, the returned CompactSketch will be ordered.
+   * @param dstMem If not null, the returned CompactSketch will be placed in this WritableMemory.
+   * @return the result CompactSketch.
+   */
+  public abstract CompactSketch union(Collection<? extends Sketch> sketches, boolean dstOrdered,
+      WritableMemory dstMem);
+
   /**
    * Perform a Union operation with <i>this</i> union and the given on-heap sketch of the Theta Family.
    * This method is not valid for the older SetSketch, which was prior to Open Source (August, 2015).
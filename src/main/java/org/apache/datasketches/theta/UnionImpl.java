@@ -20,6 +20,7 @@
 package org.apache.datasketches.theta;
 
 import static java.lang.Math.min;
+import static org.apache.datasketches.common.Util.LONG_MAX_VALUE_AS_DOUBLE;
 import static org.apache.datasketches.theta.PreambleUtil.COMPACT_FLAG_MASK;
 import static org.apache.datasketches.theta.PreambleUtil.ORDERED_FLAG_MASK;
 import static org.apache.datasketches.theta.PreambleUtil.PREAMBLE_LONGS_BYTE;
@@ -39,6 +40,8 @@ import static org.apache.datasketches.theta.SingleItemSketch.otherCheckForSingle
 import static org.apache.datasketches.thetacommon.QuickSelect.selectExcludingZeros;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
 
 import org.apache.datasketches.common.Family;
 import org.apache.datasketches.common.ResizeFactor;
@@ -302,14 +305,170 @@ final class UnionImpl extends Union {
   @Override //Stateless Union
   public CompactSketch union(final Sketch sketchA, final Sketch sketchB, final boolean dstOrdered,
       final WritableMemory dstMem) {
+    return union(Arrays.asList(sketchA, sketchB), dstOrdered, dstMem);
+  }
+
+  @Override //Stateless Union
+  public CompactSketch union(final Collection<? extends Sketch> sketches, final boolean dstOrdered,
+      final WritableMemory dstMem) {
     reset();
-    union(sketchA);
-    union(sketchB);
+    if (dstOrdered && allOrderedCompact(sketches)) {
+      return mergeOrderedCompact(sketches, dstMem);
+    }
+    for (final Sketch sketchIn : sketches) { union(sketchIn); }
     final CompactSketch csk = getResult(dstOrdered, dstMem);
     reset();
     return csk;
   }
 
+  private static boolean allOrderedCompact(final Collection<? extends Sketch> sketches) {
+    for (final Sketch sketchIn : sketches) {
+      if (sketchIn == null || sketchIn.isEmpty()) { continue; }
+      if (!(sketchIn.isOrdered() && (sketchIn instanceof CompactSketch))) { return false; }
+    }
+    return true;
+  }
+
+  /**
+   * Computes the union of ordered compact sketches with a k-way sorted merge of their hash arrays
+   * directly into the ordered result. This must be called on a reset union, and it produces
+   * exactly what {@link #getResult(boolean, WritableMemory)} would produce after presenting the
+   * same sketches to {@link #union(Sketch)}: the result theta is the smallest of the input thetas,
+   * the theta of the sampling probability p, if the gadget would have seen any hash, and the
+   * (k+1)th smallest distinct hash below those.
+   * @param sketches the given sketches, each of which is null, empty or ordered and compact.
+   * @param dstMem If not null, the returned CompactSketch will be placed in this WritableMemory.
+   * @return the ordered result CompactSketch.
+   */
+  private CompactSketch mergeOrderedCompact(final Collection<? extends Sketch> sketches,
+      final WritableMemory dstMem) {
+    final int numSketches = sketches.size();
+    final long[][] caches = new long[numSketches][]; //for inputs on the heap
+    final Memory[] mems = new Memory[numSketches];   //for inputs in Memory
+    final int[] offsets = new int[numSketches];      //byte offset of the first hash in Memory
+    final HashIterator[] iters = new HashIterator[numSketches]; //for compressed inputs
+    final int[] counts = new int[numSketches];
+    final long[] cur = new long[numSketches];        //current hash of each input
+    long thetaLong = Long.MAX_VALUE;
+    boolean empty = true;
+    boolean gadgetEmpty = true;
+    long totalCount = 0;
+    int numIn = 0;
+    for (final Sketch sketchIn : sketches) {
+      if (sketchIn == null || sketchIn.isEmpty()) { continue; }
+      ThetaUtil.checkSeedHashes(expectedSeedHash_, sketchIn.getSeedHash());
+      if (!(sketchIn instanceof SingleItemSketch)) { Sketch.checkSketchAndMemoryFlags(sketchIn); }
+      empty = false;
+      thetaLong = min(thetaLong, sketchIn.getThetaLong()); //Theta rule
+      final int curCountIn = sketchIn.getRetainedEntries(true);
+      if (curCountIn == 0) { continue; }
+      if (sketchIn instanceof DirectCompactCompressedSketch) {
+        iters[numIn] = sketchIn.iterator(); //decoded lazily
+      } else if (sketchIn.hasMemory()) {
+        final Memory skMem = sketchIn.getMemory();
+        mems[numIn] = skMem;
+        offsets[numIn] = (skMem.getByte(PREAMBLE_LONGS_BYTE) & 0X3F) << 3;
+      } else {
+        caches[numIn] = sketchIn.getCache(); //not a copy!
+      }
+      counts[numIn] = curCountIn;
+      totalCount += curCountIn;
+      cur[numIn] = hashAt(caches, mems, offsets, iters, numIn, 0);
+      //The sampling probability p of the gadget takes effect once any hash has been presented to
+      // it, which the one-at-a-time union does for the first hash below the running union theta.
+      if (gadgetEmpty && ((sketchIn instanceof SingleItemSketch) || (cur[numIn] < thetaLong))) {
+        gadgetEmpty = false;
+      }
+      numIn++;
+    }
+    if (!gadgetEmpty) {
+      thetaLong = min(thetaLong, (long) (gadget_.getP() * LONG_MAX_VALUE_AS_DOUBLE));
+    }
+
+    //Min-heap of input indices keyed by the current hash of each input
+    final int[] heap = new int[numIn];
+    final int[] pos = new int[numIn];
+    int heapSize = 0;
+    for (int i = 0; i < numIn; i++) {
+      if (cur[i] >= thetaLong) { continue; } // "early stop"
+      heap[heapSize] = i;
+      siftUp(heap, cur, heapSize++);
+    }
+
+    final int k = 1 << gadget_.getLgNomLongs();
+    final long[] cacheOut = new long[(int) min(k, totalCount)];
+    int curCount = 0;
+    long prevHash = 0;
+    while (heapSize > 0) {
+      final int i = heap[0];
+      final long hash = cur[i];
+      if (hash >= thetaLong) { break; } //all remaining hashes are at or above theta
+      if (hash != prevHash) {
+        if (curCount == k) { //this is the (k+1)th distinct hash
+          thetaLong = hash;
+          break;
+        }
+        cacheOut[curCount++] = hash;
+        prevHash = hash;
+      }
+      final int next = ++pos[i];
+      final long nextHash = (next < counts[i])
+          ? hashAt(caches, mems, offsets, iters, i, next) : thetaLong;
+      if (nextHash >= thetaLong) {
+        heap[0] = heap[--heapSize];
+      } else {
+        cur[i] = nextHash;
+      }
+      siftDown(heap, cur, heapSize, 0);
+    }
+    final long[] compactCacheOut =
+        (curCount == cacheOut.length) ? cacheOut : Arrays.copyOf(cacheOut, curCount);
+    return CompactOperations.componentsToCompact(thetaLong, curCount, gadget_.getSeedHash(), empty,
+        true, true, true, dstMem, compactCacheOut);
+  }
+
+  //Inputs with an iterator are read sequentially, so each index must be requested once, in order.
+  private static long hashAt(final long[][] caches, final Memory[] mems, final int[] offsets,
+      final HashIterator[] iters, final int input, final int index) {
+    final long[] cache = caches[input];
+    if (cache != null) { return cache[index]; }
+    final HashIterator it = iters[input];
+    if (it != null) {
+      it.next();
+      return it.get();
+    }
+    return mems[input].getLong(offsets[input] + (index << 3));
+  }
+
+  private static void siftUp(final int[] heap, final long[] keys, final int index) {
+    int child = index;
+    final int item = heap[child];
+    while (child > 0) {
+      final int parent = (child - 1) >>> 1;
+      if (keys[heap[parent]] <= keys[item]) { break; }
+      heap[child] = heap[parent];
+      child = parent;
+    }
+    heap[child] = item;
+  }
+
+  private static void siftDown(final int[] heap, final long[] keys, final int heapSize,
+      final int index) {
+    if (heapSize == 0) { return; }
+    int parent = index;
+    final int item = heap[parent];
+    final int half = heapSize >>> 1;
+    while (parent < half) {
+      int child = (2 * parent) + 1;
+      final int right = child + 1;
+      if ((right < heapSize) && (keys[heap[right]] < keys[heap[child]])) { child = right; }
+      if (keys[item] <= keys[heap[child]]) { break; }
+      heap[parent] = heap[child];
+      parent = child;
+    }
+    heap[parent] = item;
+  }
+
   @Override
   public void union(final Sketch sketchIn) {
     //UNION Empty Rule: AND the empty states.
@@ -332,7 +491,15 @@ final class UnionImpl extends Union {
     if (curCountIn > 0) {
       if (sketchIn.isOrdered() && (sketchIn instanceof CompactSketch)) { //Use early stop
         //Ordered, thus compact
-        if (sketchIn.hasMemory()) {
+        if (sketchIn instanceof DirectCompactCompressedSketch) { //decoded lazily, block by block
+          final HashIterator it = sketchIn.iterator();
+          while (it.next()) {
+            final long hashIn = it.get();
+            if (hashIn >= unionThetaLong_) { break; } // "early stop"
+            gadget_.hashUpdate(hashIn); //backdoor update, hash function is bypassed
+          }
+        }
+        else if (sketchIn.hasMemory()) {
           final Memory skMem = sketchIn.getMemory();
           final int preambleLongs = skMem.getByte(PREAMBLE_LONGS_BYTE) & 0X3F;
           for (int i = 0; i < curCountIn; i++ ) {
@@ -378,9 +545,7 @@ final class UnionImpl extends Union {
     final int serVer = extractSerVer(skMem);
     final int fam = extractFamilyID(skMem);
 
-    if (serVer == 4) { // compressed ordered compact
-      // performance can be improved by decompression while performing the union
-      // potentially only partial decompression might be needed
+    if (serVer == 4) { // compressed ordered compact, decoded lazily with early stop
       ThetaUtil.checkSeedHashes(expectedSeedHash_, (short) extractSeedHash(skMem));
       final CompactSketch csk = CompactSketch.wrap(skMem);
       union(csk);
@@ -514,6 +679,29 @@ final class UnionImpl extends Union {
     gadget_.update(data);
   }
 
+  /**
+   * Returns the current union theta as a long. Every hash at or above this value is excluded from
+   * the result of this union, and from the result of any union that includes this union's result.
+   * @return the current union theta as a long.
+   */
+  long getUnionThetaLong() {
+    return unionThetaLong_;
+  }
+
+  /**
+   * Lowers the union theta to the given value, if it is smaller than the current union theta.
+   * The given value must not be smaller than the theta of the final result that this union
+   * contributes to, otherwise hashes that belong to that result would be lost.
+   * @param thetaLong the given theta as a long.
+   */
+  void lowerUnionThetaLong(final long thetaLong) {
+    if (thetaLong >= unionThetaLong_) { return; }
+    unionThetaLong_ = thetaLong;
+    if (gadget_.hasMemory()) {
+      PreambleUtil.insertUnionThetaLong((WritableMemory)gadget_.getMemory(), unionThetaLong_);
+    }
+  }
+
   //Restricted
 
   @Override
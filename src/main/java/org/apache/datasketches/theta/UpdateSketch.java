@@ -41,6 +41,8 @@ import static org.apache.datasketches.theta.PreambleUtil.extractSerVer;
 import static org.apache.datasketches.theta.PreambleUtil.extractThetaLong;
 import static org.apache.datasketches.theta.PreambleUtil.getMemBytes;
 import static org.apache.datasketches.theta.UpdateReturnState.RejectedNullOrEmpty;
+import static org.apache.datasketches.thetacommon.ThetaUtil.checkUpdateHashLength;
+import static org.apache.datasketches.thetacommon.ThetaUtil.checkUpdateHashSeed;
 
 import java.nio.ByteBuffer;
 import java.util.Objects;
@@ -339,8 +341,171 @@ public abstract class UpdateSketch extends Sketch {
     return hashUpdate(hash(data, getSeed())[0] >>> 1);
   }
 
+  /**
+   * Present this sketch with a datum that has already been hashed by the caller with
+   * {@link org.apache.datasketches.hash.MurmurHash3 MurmurHash3} using the given seed.
+   * This produces the same result as calling one of the update methods with the original datum,
+   * and allows a single hash computation to drive several sketches, including the HLL and CPC
+   * sketches, which accept the same 128-bit hash.
+   *
+   * @param hash0 the first 64 bits of the 128-bit MurmurHash3 of the datum.
+   * @param hash1 the second 64 bits of the 128-bit MurmurHash3 of the datum. This sketch only
+   * uses the first 64 bits, but the pair is accepted so that all sketches share one signature.
+   * @param seed the seed used to compute the hash, which must equal the seed of this sketch.
+   * @return
+   * <a href="{@docRoot}/resources/dictionary.html#updateReturnState">See Update Return State</a>
+   */
+  public UpdateReturnState updateHash(final long hash0, final long hash1, final long seed) {
+    checkUpdateHashSeed(seed, getSeed());
+    return hashUpdate(hash0 >>> 1);
+  }
+
+  /**
+   * Present this sketch with a datum that has already been hashed by the caller with
+   * {@link org.apache.datasketches.hash.MurmurHash3 MurmurHash3} using the given seed.
+   * If the hash array is null or empty no update attempt is made and the method returns.
+   *
+   * @param hash the 128-bit MurmurHash3 of the datum as returned by the <i>hash</i> methods of
+   * {@link org.apache.datasketches.hash.MurmurHash3 MurmurHash3}.
+   * @param seed the seed used to compute the hash, which must equal the seed of this sketch.
+   * @return
+   * <a href="{@docRoot}/resources/dictionary.html#updateReturnState">See Update Return State</a>
+   * @see #updateHash(long, long, long)
+   */
+  public UpdateReturnState updateHash(final long[] hash, final long seed) {
+    if ((hash == null) || (hash.length == 0)) {
+      return RejectedNullOrEmpty;
+    }
+    checkUpdateHashLength(hash);
+    return updateHash(hash[0], hash[1], seed);
+  }
+
+  /**
+   * Present this sketch with the given range of longs, each as a separate datum.
+   * This produces the same result as calling {@link #update(long)} for each item of the range,
+   * but hashes the items in blocks and skips items that fall above theta before they reach the
+   * hash table, which is considerably faster for columnar data.
+   *
+   * <p>Note: this is different from {@link #update(long[])}, which treats the whole array
+   * as a single datum.</p>
+   *
+   * @param items the given array of long items.
+   * @param offset the index of the first item to update
+   * @param length the number of items to update
+   * @return the number of occurrences of each
+   * <a href="{@docRoot}/resources/dictionary.html#updateReturnState">Update Return State</a>,
+   * indexed by {@link UpdateReturnState#ordinal()}.
+   */
+  public int[] updateAll(final long[] items, final int offset, final int length) {
+    Objects.requireNonNull(items, "Parameter 'items' must not be null");
+    checkBounds(offset, length, items.length);
+    final long seed = getSeed();
+    final int[] counts = new int[NUM_UPDATE_RETURN_STATES];
+    final long[] hashes = new long[Math.min(length, UPDATE_BLOCK_SIZE)];
+    final long[] hashOut = new long[2];
+    for (int start = offset; start < offset + length; start += UPDATE_BLOCK_SIZE) {
+      final int numHashes = Math.min(UPDATE_BLOCK_SIZE, offset + length - start);
+      for (int i = 0; i < numHashes; i++) {
+        hashes[i] = hash(items[start + i], seed, hashOut)[0] >>> 1;
+      }
+      hashUpdateAll(hashes, numHashes, counts);
+    }
+    return counts;
+  }
+
+  /**
+   * Present this sketch with the given range of doubles, each as a separate datum.
+   * This produces the same result as calling {@link #update(double)} for each item of the range,
+   * including the canonicalization of -0.0 and of NaN values.
+   *
+   * @param items the given array of double items.
+   * @param offset the index of the first item to update
+   * @param length the number of items to update
+   * @return the number of occurrences of each
+   * <a href="{@docRoot}/resources/dictionary.html#updateReturnState">Update Return State</a>,
+   * indexed by {@link UpdateReturnState#ordinal()}.
+   */
+  public int[] updateAll(final double[] items, final int offset, final int length) {
+    Objects.requireNonNull(items, "Parameter 'items' must not be null");
+    checkBounds(offset, length, items.length);
+    final long seed = getSeed();
+    final int[] counts = new int[NUM_UPDATE_RETURN_STATES];
+    final long[] hashes = new long[Math.min(length, UPDATE_BLOCK_SIZE)];
+    final long[] hashOut = new long[2];
+    for (int start = offset; start < offset + length; start += UPDATE_BLOCK_SIZE) {
+      final int numHashes = Math.min(UPDATE_BLOCK_SIZE, offset + length - start);
+      for (int i = 0; i < numHashes; i++) {
+        final double d = items[start + i];
+        final long bits = Double.doubleToLongBits((d == 0.0) ? 0.0 : d); //canonicalize
+        hashes[i] = hash(bits, seed, hashOut)[0] >>> 1;
+      }
+      hashUpdateAll(hashes, numHashes, counts);
+    }
+    return counts;
+  }
+
+  /**
+   * Present this sketch with the given range of Strings, each as a separate datum.
+   * This produces the same result as calling {@link #update(String)} for each item of the range.
+   * Null or empty Strings are counted as {@link UpdateReturnState#RejectedNullOrEmpty}.
+   *
+   * @param items the given array of String items.
+   * @param offset the index of the first item to update
+   * @param length the number of items to update
+   * @return the number of occurrences of each
+   * <a href="{@docRoot}/resources/dictionary.html#updateReturnState">Update Return State</a>,
+   * indexed by {@link UpdateReturnState#ordinal()}.
+   */
+  public int[] updateAll(final String[] items, final int offset, final int length) {
+    Objects.requireNonNull(items, "Parameter 'items' must not be null");
+    checkBounds(offset, length, items.length);
+    final long seed = getSeed();
+    final int[] counts = new int[NUM_UPDATE_RETURN_STATES];
+    final long[] hashes = new long[Math.min(length, UPDATE_BLOCK_SIZE)];
+    for (int start = offset; start < offset + length; start += UPDATE_BLOCK_SIZE) {
+      final int blockLen = Math.min(UPDATE_BLOCK_SIZE, offset + length - start);
+      int numHashes = 0;
+      for (int i = 0; i < blockLen; i++) {
+        final String datum = items[start + i];
+        if ((datum == null) || datum.isEmpty()) {
+          counts[RejectedNullOrEmpty.ordinal()]++;
+          continue;
+        }
+        hashes[numHashes++] = hash(datum.getBytes(UTF_8), seed)[0] >>> 1;
+      }
+      hashUpdateAll(hashes, numHashes, counts);
+    }
+    return counts;
+  }
+
   //restricted methods
 
+  /**
+   * The number of values of UpdateReturnState, which is the length of the array returned by
+   * the updateAll methods.
+   */
+  static final int NUM_UPDATE_RETURN_STATES = UpdateReturnState.values().length;
+
+  /**
+   * The number of items hashed together by the updateAll methods before the hashes are
+   * presented to the hash table.
+   */
+  static final int UPDATE_BLOCK_SIZE = 256;
+
+  /**
+   * Presents the given hashes to this sketch and accumulates the resulting Update Return States.
+   * Subclasses may override this to reject hashes above theta before they reach the hash table.
+   *
+   * @param hashes the given input hash values as would be given to {@link #hashUpdate(long)}
+   * @param numHashes the number of valid hashes at the start of the given array
+   * @param counts the counts of each UpdateReturnState, indexed by ordinal
+   */
+  void hashUpdateAll(final long[] hashes, final int numHashes, final int[] counts) {
+    for (int i = 0; i < numHashes; i++) {
+      counts[hashUpdate(hashes[i]).ordinal()]++;
+    }
+  }
+
   /**
    * All potential updates converge here.
    *
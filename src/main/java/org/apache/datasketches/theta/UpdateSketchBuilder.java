@@ -23,6 +23,8 @@ import static org.apache.datasketches.common.Util.LS;
 import static org.apache.datasketches.common.Util.TAB;
 import static org.apache.datasketches.common.Util.ceilingPowerOf2;
 
+import java.util.concurrent.Executor;
+
 import org.apache.datasketches.common.Family;
 import org.apache.datasketches.common.ResizeFactor;
 import org.apache.datasketches.common.SketchesArgumentException;
@@ -52,6 +54,7 @@ public class UpdateSketchBuilder {
   private boolean bPropagateOrderedCompact;
   private double bMaxConcurrencyError;
   private int bMaxNumLocalThreads;
+  private ConcurrentPropagationExecutor bPropagationExecutor;
 
   /**
    * Constructor for building a new UpdateSketch. The default configuration is
@@ -70,6 +73,7 @@ public class UpdateSketchBuilder {
    * <ul>
    * <li>Number of local Nominal Entries: 4</li>
    * <li>Concurrent NumPoolThreads: 3</li>
+   * <li>Concurrent PropagationExecutor: null, i.e., the shared default propagation service</li>
    * <li>Concurrent PropagateOrderedCompact: true</li>
    * <li>Concurrent MaxConcurrencyError: 0</li>
    * </ul>
@@ -87,6 +91,7 @@ public class UpdateSketchBuilder {
     bPropagateOrderedCompact = true;
     bMaxConcurrencyError = 0;
     bMaxNumLocalThreads = 1;
+    bPropagationExecutor = null;
   }
 
   /**
@@ -283,6 +288,34 @@ public class UpdateSketchBuilder {
     return bNumPoolThreads;
   }
 
+  /**
+   * Sets the executor used for background propagation by the concurrent shared sketches built
+   * after this call. This replaces the small pool of threads that is otherwise shared by all
+   * concurrent sketches in the JVM, so the number of pool threads is ignored.
+   *
+   * <p>The given executor is owned by the caller and is never shut down by a sketch. It can be
+   * any executor, e.g., a pool sized to the number of cores, a pool per tenant, or a
+   * virtual-thread-per-task executor. The propagation tasks of one sketch are run one at a time
+   * whatever the number of threads of the executor. To obtain queue depth and propagation latency metrics,
+   * give a {@link ConcurrentPropagationExecutor} and keep a reference to it, otherwise the given
+   * executor is wrapped in a new one.</p>
+   *
+   * @param executor the given executor, or null to use the default propagation service.
+   * @return this UpdateSketchBuilder
+   */
+  public UpdateSketchBuilder setPropagationExecutor(final Executor executor) {
+    bPropagationExecutor = ConcurrentPropagationExecutor.of(executor);
+    return this;
+  }
+
+  /**
+   * Gets the executor used for background propagation in the concurrent sketches.
+   * @return the propagation executor, or null if the default propagation service is used.
+   */
+  public ConcurrentPropagationExecutor getPropagationExecutor() {
+    return bPropagationExecutor;
+  }
+
   /**
    * Sets the Propagate Ordered Compact flag to the given value. Used with concurrent sketches.
    *
@@ -389,6 +422,7 @@ public class UpdateSketchBuilder {
    * <p>The parameters unique to the shared concurrent sketch are:
    * <ul>
    * <li>Number of Pool Threads (default is 3)</li>
+   * <li>Propagation Executor (default is null, the shared default propagation service)</li>
    * <li>Maximum Concurrency Error</li>
    * </ul>
    *
@@ -411,6 +445,7 @@ public class UpdateSketchBuilder {
    * <p>The parameters unique to the shared concurrent sketch are:
    * <ul>
    * <li>Number of Pool Threads (default is 3)</li>
+   * <li>Propagation Executor (default is null, the shared default propagation service)</li>
    * <li>Maximum Concurrency Error</li>
    * </ul>
    *
@@ -429,9 +464,11 @@ public class UpdateSketchBuilder {
   public UpdateSketch buildShared(final WritableMemory dstMem) {
     ConcurrentPropagationService.NUM_POOL_THREADS = bNumPoolThreads;
     if (dstMem == null) {
-      return new ConcurrentHeapQuickSelectSketch(bLgNomLongs, bSeed, bMaxConcurrencyError);
+      return new ConcurrentHeapQuickSelectSketch(bLgNomLongs, bSeed, bMaxConcurrencyError,
+          bPropagationExecutor);
     } else {
-      return new ConcurrentDirectQuickSelectSketch(bLgNomLongs, bSeed, bMaxConcurrencyError, dstMem);
+      return new ConcurrentDirectQuickSelectSketch(bLgNomLongs, bSeed, bMaxConcurrencyError, dstMem,
+          bPropagationExecutor);
     }
   }
 
@@ -444,6 +481,7 @@ public class UpdateSketchBuilder {
    * <p>The parameters unique to the shared concurrent sketch are:
    * <ul>
    * <li>Number of Pool Threads (default is 3)</li>
+   * <li>Propagation Executor (default is null, the shared default propagation service)</li>
    * <li>Maximum Concurrency Error</li>
    * </ul>
    *
@@ -464,9 +502,11 @@ public class UpdateSketchBuilder {
   public UpdateSketch buildSharedFromSketch(final UpdateSketch sketch, final WritableMemory dstMem) {
     ConcurrentPropagationService.NUM_POOL_THREADS = bNumPoolThreads;
     if (dstMem == null) {
-      return new ConcurrentHeapQuickSelectSketch(sketch, bSeed, bMaxConcurrencyError);
+      return new ConcurrentHeapQuickSelectSketch(sketch, bSeed, bMaxConcurrencyError,
+          bPropagationExecutor);
     } else {
-      return new ConcurrentDirectQuickSelectSketch(sketch, bSeed, bMaxConcurrencyError, dstMem);
+      return new ConcurrentDirectQuickSelectSketch(sketch, bSeed, bMaxConcurrencyError, dstMem,
+          bPropagationExecutor);
     }
   }
 
@@ -508,6 +548,7 @@ public class UpdateSketchBuilder {
     sb.append("MemoryRequestServer:").append(TAB).append(mrsStr).append(LS);
     sb.append("Propagate Ordered Compact").append(TAB).append(bPropagateOrderedCompact).append(LS);
     sb.append("NumPoolThreads").append(TAB).append(bNumPoolThreads).append(LS);
+    sb.append("PropagationExecutor").append(TAB).append(bPropagationExecutor).append(LS);
     sb.append("MaxConcurrencyError").append(TAB).append(bMaxConcurrencyError).append(LS);
     sb.append("MaxNumLocalThreads").append(TAB).append(bMaxNumLocalThreads).append(LS);
     return sb.toString();
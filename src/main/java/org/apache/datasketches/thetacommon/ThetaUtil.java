@@ -117,6 +117,33 @@ public final class ThetaUtil {
     return seedHash;
   }
 
+  /**
+   * Checks that the seed used by the caller to compute a pre-hashed update equals the seed of the
+   * sketch being updated. If not, throw a SketchesArgumentException.
+   * The seeds themselves are not included in the exception message.
+   * @param seed the seed used to compute the given hash
+   * @param sketchSeed the seed of the sketch being updated
+   */
+  public static void checkUpdateHashSeed(final long seed, final long sketchSeed) {
+    if (seed != sketchSeed) {
+      throw new SketchesArgumentException(
+          "The seed used to compute the given hash does not match the seed of the sketch.");
+    }
+  }
+
+  /**
+   * Checks that the given array holds a full 128-bit hash as returned by the <i>hash</i> methods
+   * of {@link org.apache.datasketches.hash.MurmurHash3 MurmurHash3}.
+   * If not, throw a SketchesArgumentException.
+   * @param hash the given hash array, which must not be null
+   */
+  public static void checkUpdateHashLength(final long[] hash) {
+    if (hash.length < 2) {
+      throw new SketchesArgumentException(
+          "A 128-bit hash requires an array of length 2: " + hash.length);
+    }
+  }
+
   /**
    * Gets the smallest allowed exponent of 2 that it is a sub-multiple of the target by zero,
    * one or more resize factors.
@@ -29,6 +29,7 @@ import java.nio.ByteBuffer;
 
 import org.apache.datasketches.common.Family;
 import org.apache.datasketches.common.SketchesArgumentException;
+import org.apache.datasketches.hash.MurmurHash3;
 import org.apache.datasketches.memory.Memory;
 import org.apache.datasketches.thetacommon.ThetaUtil;
 import org.testng.annotations.Test;
@@ -215,6 +216,27 @@ public class CpcSketchTest {
     assertEquals(sk.getFlavor(), Flavor.SPARSE);
   }
 
+  @Test
+  public void checkUpdateHashMatchesUpdate() {
+    final long seed = 123L;
+    final CpcSketch scalar = new CpcSketch(10, seed);
+    final CpcSketch hashed = new CpcSketch(10, seed);
+    final CpcSketch arrays = new CpcSketch(10, seed);
+    for (long i = 0; i < 10000; i++) {
+      final long[] h = MurmurHash3.hash(new long[] { i }, seed);
+      scalar.update(i);
+      hashed.updateHash(h[0], h[1], seed);
+      arrays.updateHash(h, seed);
+    }
+    assertEquals(hashed.toByteArray(), scalar.toByteArray());
+    assertEquals(arrays.toByteArray(), scalar.toByteArray());
+    hashed.updateHash(null, seed);
+    hashed.updateHash(new long[0], seed);
+    assertEquals(hashed.toByteArray(), scalar.toByteArray());
+    try { hashed.updateHash(new long[1], seed); fail(); } catch (final SketchesArgumentException e) { }
+    try { hashed.updateHash(1L, 1L, seed + 1); fail(); } catch (final SketchesArgumentException e) { }
+  }
+
   @Test
   public void checkGetMaxSize() {
     final int size4  = CpcSketch.getMaxSerializedBytes(4);
@@ -95,6 +95,45 @@ public class CpcWrapperTest {
     } catch (AssertionError e) {}
   }
 
+  @Test
+  public void checkStaticMatchesHeapify() {
+    final int lgK = 10;
+    final int k = 1 << lgK;
+    final long[] counts = { 0, 1, 50, (3 * k) / 32, k / 2, 4L * k, 40L * k };
+    long value = 0;
+    final CpcUnion union = new CpcUnion(lgK);
+    for (long n : counts) {
+      final CpcSketch sk = new CpcSketch(lgK);
+      for (long i = 0; i < n; i++) { sk.update(value++); }
+      checkStatic(sk.toByteArray());
+      union.update(sk);
+      checkStatic(union.getResult().toByteArray()); //merged, ICON estimator
+    }
+    checkStatic(new CpcUnion(lgK).getResult().toByteArray()); //empty merged
+  }
+
+  private static void checkStatic(final byte[] byteArr) {
+    final Memory mem = Memory.wrap(byteArr);
+    final CpcSketch sk = CpcSketch.heapify(mem);
+    final CpcWrapper wrapper = new CpcWrapper(mem);
+    assertEquals(CpcWrapper.getEstimate(mem), sk.getEstimate());
+    assertEquals(wrapper.getEstimate(), sk.getEstimate());
+    for (int kappa = 1; kappa <= 3; kappa++) {
+      assertEquals(CpcWrapper.getLowerBound(mem, kappa), sk.getLowerBound(kappa));
+      assertEquals(CpcWrapper.getUpperBound(mem, kappa), sk.getUpperBound(kappa));
+      assertEquals(wrapper.getLowerBound(kappa), sk.getLowerBound(kappa));
+      assertEquals(wrapper.getUpperBound(kappa), sk.getUpperBound(kappa));
+    }
+    println(sk.getFormat() + ": " + CpcWrapper.getEstimate(mem));
+  }
+
+  @Test(expectedExceptions = AssertionError.class)
+  public void checkStaticIsCompressed() {
+    byte[] byteArr = new CpcSketch(10).toByteArray();
+    byteArr[5] &= (byte) -3;
+    CpcWrapper.getEstimate(Memory.wrap(byteArr));
+  }
+
   /**
    * @param format the string to print
    * @param args the arguments
@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.cpc;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import org.apache.datasketches.common.SketchesArgumentException;
+import org.apache.datasketches.memory.DefaultMemoryRequestServer;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.MemoryRequestServer;
+import org.apache.datasketches.memory.WritableMemory;
+import org.testng.annotations.Test;
+
+public class DirectCpcSketchTest {
+  private static final MemoryRequestServer memReqSvr = new DefaultMemoryRequestServer();
+
+  @Test
+  public void checkSameAsHeapSketch() {
+    for (int lgK = 4; lgK <= 12; lgK += 4) {
+      final int k = 1 << lgK;
+      final long[] counts = { 0, 1, (3 * k) / 32, k / 2, 4L * k, 40L * k };
+      for (long n : counts) {
+        final CpcSketch heapSk = new CpcSketch(lgK);
+        final WritableMemory wmem = WritableMemory.allocate(DirectCpcSketch.getMinMemoryBytes());
+        final DirectCpcSketch directSk = DirectCpcSketch.newInstance(lgK, wmem, memReqSvr);
+        for (long i = 0; i < n; i++) {
+          heapSk.update(i);
+          directSk.update(i);
+        }
+        assertEquals(directSk.isEmpty(), n == 0);
+        assertEquals(directSk.getEstimate(), heapSk.getEstimate());
+        assertEquals(directSk.getLowerBound(2), heapSk.getLowerBound(2));
+        assertEquals(directSk.getUpperBound(2), heapSk.getUpperBound(2));
+        assertEquals(directSk.toByteArray(), heapSk.toByteArray());
+        assertTrue(directSk.validate());
+        final CpcSketch heapified = CpcSketch.heapify(directSk.getWritableMemory());
+        assertTrue(TestUtil.specialEquals(heapified, heapSk, false, false));
+        println(lgK + ", " + n + ": " + directSk.getEstimate());
+      }
+    }
+  }
+
+  @Test
+  public void checkGrowthAndWrap() {
+    final int lgK = 10;
+    final WritableMemory wmem = WritableMemory.allocate(DirectCpcSketch.getMinMemoryBytes());
+    DirectCpcSketch sk = DirectCpcSketch.newInstance(lgK, wmem, memReqSvr);
+    assertTrue(sk.isSameResource(wmem));
+    final CpcSketch heapSk = new CpcSketch(lgK);
+    for (int i = 0; i < 1000; i++) { sk.update(i); heapSk.update(i); }
+    assertFalse(sk.isSameResource(wmem));
+
+    sk = DirectCpcSketch.writableWrap(sk.getWritableMemory(), memReqSvr);
+    for (int i = 1000; i < 20_000; i++) { sk.update(i); heapSk.update(i); }
+    assertEquals(sk.getEstimate(), heapSk.getEstimate());
+    assertEquals(sk.toByteArray(), heapSk.toByteArray());
+  }
+
+  @Test
+  public void checkMaxMemoryBytesAvoidsRequests() {
+    final int lgK = 11;
+    final WritableMemory wmem = WritableMemory.allocate(DirectCpcSketch.getMaxMemoryBytes(lgK));
+    final DirectCpcSketch sk = DirectCpcSketch.newInstance(lgK, wmem, memReqSvr);
+    for (int i = 0; i < (100 << lgK); i++) { sk.update(i); }
+    assertTrue(sk.isSameResource(wmem));
+    assertTrue(sk.validate());
+  }
+
+  @Test
+  public void checkReset() {
+    final WritableMemory wmem = WritableMemory.allocate(DirectCpcSketch.getMaxMemoryBytes(8));
+    final DirectCpcSketch sk = DirectCpcSketch.newInstance(8, wmem, memReqSvr);
+    for (int i = 0; i < 10_000; i++) { sk.update(i); }
+    sk.reset();
+    assertTrue(sk.isEmpty());
+    assertEquals(sk.getEstimate(), 0.0);
+    sk.update("a");
+    assertEquals(sk.getEstimate(), 1.0);
+    assertEquals(sk.getLgK(), 8);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkWrapCompressedImage() {
+    final CpcSketch sk = new CpcSketch(10);
+    sk.update(1);
+    DirectCpcSketch.writableWrap(WritableMemory.writableWrap(sk.toByteArray()), memReqSvr);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkWrapWrongSeed() {
+    final WritableMemory wmem = WritableMemory.allocate(DirectCpcSketch.getMinMemoryBytes());
+    DirectCpcSketch.newInstance(10, 123, wmem, memReqSvr).update(1);
+    DirectCpcSketch.writableWrap(wmem, memReqSvr);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkMemoryTooSmall() {
+    DirectCpcSketch.newInstance(10, WritableMemory.allocate(16), memReqSvr);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkHeapifyUnionImage() {
+    final WritableMemory wmem = WritableMemory.allocate(DirectCpcSketch.getMinMemoryBytes());
+    DirectCpcUnion.newInstance(10, wmem, memReqSvr);
+    CpcSketch.heapify((Memory) wmem);
+  }
+
+  @Test
+  public void printlnTest() {
+    println("PRINTING: " + this.getClass().getName());
+  }
+
+  /**
+   * @param s value to print
+   */
+  static void println(final String s) {
+    //System.out.println(s); //disable here
+  }
+
+}
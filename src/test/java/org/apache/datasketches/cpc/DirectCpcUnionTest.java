@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.cpc;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import org.apache.datasketches.common.SketchesArgumentException;
+import org.apache.datasketches.memory.DefaultMemoryRequestServer;
+import org.apache.datasketches.memory.MemoryRequestServer;
+import org.apache.datasketches.memory.WritableMemory;
+import org.testng.annotations.Test;
+
+public class DirectCpcUnionTest {
+  private static final MemoryRequestServer memReqSvr = new DefaultMemoryRequestServer();
+
+  @Test
+  public void checkSameAsHeapUnion() {
+    final int[] lgKs = { 12, 12, 11, 11, 10, 10, 10 };
+    final long[] counts = { 0, 5, 100, 300, 2_000, 50_000, 3 };
+    final CpcUnion heapUnion = new CpcUnion(12);
+    final WritableMemory wmem = WritableMemory.allocate(DirectCpcSketch.getMinMemoryBytes());
+    final DirectCpcUnion directUnion = DirectCpcUnion.newInstance(12, wmem, memReqSvr);
+    long value = 0;
+    for (int s = 0; s < lgKs.length; s++) {
+      final CpcSketch sk = new CpcSketch(lgKs[s]);
+      for (long i = 0; i < counts[s]; i++) { sk.update(value++); }
+      heapUnion.update(sk);
+      directUnion.update(sk);
+      assertEquals(directUnion.getLgK(), heapUnion.getLgK());
+      assertEquals(directUnion.getNumCoupons(), heapUnion.getNumCoupons());
+      checkSameResult(directUnion.getResult(), heapUnion.getResult());
+    }
+    assertFalse(directUnion.isSameResource(wmem));
+  }
+
+  @Test
+  public void checkSparseAndReduceK() {
+    final CpcUnion heapUnion = new CpcUnion(12);
+    final WritableMemory wmem = WritableMemory.allocate(DirectCpcSketch.getMinMemoryBytes());
+    final DirectCpcUnion directUnion = DirectCpcUnion.newInstance(12, wmem, memReqSvr);
+    long value = 0;
+    for (int lgK = 12; lgK >= 8; lgK--) {
+      final CpcSketch sk = new CpcSketch(lgK);
+      for (int i = 0; i < 5; i++) { sk.update(value++); }
+      heapUnion.update(sk);
+      directUnion.update(sk);
+      assertEquals(directUnion.getLgK(), lgK);
+      checkSameResult(directUnion.getResult(), heapUnion.getResult());
+    }
+  }
+
+  @Test
+  public void checkWrapAndDirectSketches() {
+    final int lgK = 10;
+    final WritableMemory wmem = WritableMemory.allocate(DirectCpcUnion.getMaxMemoryBytes(lgK));
+    DirectCpcUnion directUnion = DirectCpcUnion.newInstance(lgK, wmem, memReqSvr);
+    final CpcUnion heapUnion = new CpcUnion(lgK);
+    for (int s = 0; s < 10; s++) {
+      final WritableMemory skMem = WritableMemory.allocate(DirectCpcSketch.getMaxMemoryBytes(lgK));
+      final DirectCpcSketch sk = DirectCpcSketch.newInstance(lgK, skMem, memReqSvr);
+      for (int i = 0; i < (s * 1000); i++) { sk.update((s * 100_000) + i); }
+      directUnion.update(sk);
+      heapUnion.update(sk);
+      directUnion = DirectCpcUnion.writableWrap(wmem, memReqSvr);
+    }
+    assertTrue(directUnion.isSameResource(wmem));
+    checkSameResult(directUnion.getResult(), heapUnion.getResult());
+    assertEquals(directUnion.getResult().getEstimate(), 45_000, 45_000 * 0.1);
+  }
+
+  @Test
+  public void checkDirectSketchesOfEveryFlavor() {
+    final int[] lgKs = { 11, 11, 11, 10, 10, 10, 10 };
+    final long[] counts = { 0, 20, 800, 3_000, 30, 2_000, 200_000 }; //every flavor
+    final CpcUnion heapUnion = new CpcUnion(11);
+    final CpcUnion expectedHeapUnion = new CpcUnion(11);
+    final WritableMemory wmem = WritableMemory.allocate(DirectCpcSketch.getMinMemoryBytes());
+    final DirectCpcUnion directUnion = DirectCpcUnion.newInstance(11, wmem, memReqSvr);
+    final DirectCpcUnion expectedDirectUnion = DirectCpcUnion.newInstance(11,
+        WritableMemory.allocate(DirectCpcSketch.getMinMemoryBytes()), memReqSvr);
+    long value = 0;
+    for (int s = 0; s < lgKs.length; s++) {
+      final WritableMemory skMem = WritableMemory.allocate(DirectCpcSketch.getMinMemoryBytes());
+      final DirectCpcSketch sk = DirectCpcSketch.newInstance(lgKs[s], skMem, memReqSvr);
+      for (long i = 0; i < counts[s]; i++) { sk.update(value++); }
+      heapUnion.update(sk);
+      expectedHeapUnion.update(sk.toHeap());
+      directUnion.update(sk);
+      expectedDirectUnion.update(sk.toHeap());
+      checkSameResult(heapUnion.getResult(), expectedHeapUnion.getResult());
+      checkSameResult(directUnion.getResult(), expectedDirectUnion.getResult());
+      checkSameResult(directUnion.getResult(), heapUnion.getResult());
+    }
+  }
+
+  @Test
+  public void checkEmpty() {
+    final WritableMemory wmem = WritableMemory.allocate(DirectCpcSketch.getMinMemoryBytes());
+    final DirectCpcUnion union = DirectCpcUnion.newInstance(11, wmem, memReqSvr);
+    final CpcSketch result = union.getResult();
+    assertTrue(result.isEmpty());
+    assertEquals(result.getFormat(), Format.EMPTY_MERGED);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkSeedMismatch() {
+    final WritableMemory wmem = WritableMemory.allocate(DirectCpcSketch.getMinMemoryBytes());
+    final DirectCpcUnion union = DirectCpcUnion.newInstance(11, wmem, memReqSvr);
+    final CpcSketch sk = new CpcSketch(11, 1);
+    sk.update(1);
+    union.update(sk);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkWrapSketchImage() {
+    final WritableMemory wmem = WritableMemory.allocate(DirectCpcSketch.getMinMemoryBytes());
+    DirectCpcSketch.newInstance(11, wmem, memReqSvr);
+    DirectCpcUnion.writableWrap(wmem, memReqSvr);
+  }
+
+  private static void checkSameResult(final CpcSketch result, final CpcSketch expected) {
+    assertEquals(result.getLgK(), expected.getLgK());
+    assertEquals(result.numCoupons, expected.numCoupons);
+    assertEquals(result.getEstimate(), expected.getEstimate());
+    assertEquals(CpcUtil.bitMatrixOfSketch(result), CpcUtil.bitMatrixOfSketch(expected));
+    assertEquals(result.toByteArray(), expected.toByteArray());
+  }
+
+}
@@ -0,0 +1,308 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.filters.bloomfilter;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertThrows;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.apache.datasketches.common.Family;
+import org.apache.datasketches.common.SketchesArgumentException;
+import org.apache.datasketches.common.SketchesReadOnlyException;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
+import org.testng.annotations.Test;
+
+public class BlockedBloomFilterTest {
+
+  @Test
+  public void createNewFilterTest() {
+    final long seed = 12345L;
+    final BlockedBloomFilter bf = BloomFilterBuilder.createBlockedBySize(1000, 5, seed);
+    assertTrue(bf.isEmpty());
+    assertFalse(bf.hasMemory());
+    assertFalse(bf.isDirect());
+    assertFalse(bf.isReadOnly());
+    assertFalse(bf.isSplitBlock());
+    assertEquals(bf.getCapacity(), 1024); // rounded up to whole blocks
+    assertEquals(bf.getNumBlocks(), 2);
+    assertEquals(bf.getNumHashes(), 5);
+    assertEquals(bf.getSeed(), seed);
+    assertEquals(bf.getBitsUsed(), 0);
+
+    final BlockedBloomFilter sbf = BloomFilterBuilder.createSplitBlockBySize(1L << 16, seed);
+    assertTrue(sbf.isSplitBlock());
+    assertEquals(sbf.getNumHashes(), BlockedBloomFilter.SPLIT_BLOCK_NUM_HASHES);
+    assertEquals(sbf.getNumBlocks(), (1L << 16) / BlockedBloomFilter.BLOCK_BITS);
+
+    final long numBits = 3000;
+    final WritableMemory wmem = WritableMemory.allocate((int) BloomFilterBuilder.getSerializedBlockedFilterSize(numBits));
+    final BlockedBloomFilter dbf = BloomFilterBuilder.initializeBlockedBySize(numBits, 4, seed, wmem);
+    assertTrue(dbf.isEmpty());
+    assertTrue(dbf.hasMemory());
+    assertEquals(dbf.getCapacity(), 3072);
+    assertEquals(wmem.getByte(2), Family.BLOCKED_BLOOMFILTER.getID());
+  }
+
+  @Test
+  public void invalidArgumentsTest() {
+    assertThrows(SketchesArgumentException.class, () -> BloomFilterBuilder.createBlockedBySize(0, 3, 1L));
+    assertThrows(SketchesArgumentException.class, () -> BloomFilterBuilder.createBlockedBySize(1024, 0, 1L));
+    assertThrows(SketchesArgumentException.class,
+        () -> BloomFilterBuilder.createBlockedBySize(BlockedBloomFilter.MAX_SIZE_BITS + 1, 3, 1L));
+    assertThrows(SketchesArgumentException.class,
+        () -> BloomFilterBuilder.initializeBlockedBySize(4096, 3, 1L, WritableMemory.allocate(256)));
+    assertThrows(SketchesArgumentException.class,
+        () -> BloomFilterBuilder.initializeSplitBlockBySize(4096, 1L, WritableMemory.allocate(256)));
+  }
+
+  @Test
+  public void probesStayInOneBlockTest() {
+    for (final boolean split : new boolean[] {false, true}) {
+      for (long item = 0; item < 100; ++item) {
+        final BlockedBloomFilter bf = split
+            ? BloomFilterBuilder.createSplitBlockBySize(1L << 14, 99L)
+            : BloomFilterBuilder.createBlockedBySize(1L << 14, 12, 99L);
+        bf.update(item);
+        final long[] image = bf.toLongArray();
+        int firstBlock = -1;
+        for (int i = 8; i < image.length; ++i) { // bit data starts at long 8
+          if (image[i] != 0) {
+            final int block = (i - 8) >>> 3;
+            if (firstBlock < 0) { firstBlock = block; }
+            assertEquals(block, firstBlock);
+            // the split-block layout sets exactly one bit in each word of the block
+            if (split) { assertEquals(Long.bitCount(image[i]), 1); }
+          }
+        }
+        assertTrue(firstBlock >= 0);
+        assertTrue(bf.getBitsUsed() <= bf.getNumHashes());
+        if (split) { assertEquals(bf.getBitsUsed(), 8); }
+      }
+    }
+  }
+
+  @Test
+  public void basicFilterOperationsTest() {
+    final int n = 10_000;
+    for (final boolean split : new boolean[] {false, true}) {
+      final BlockedBloomFilter bf = split
+          ? BloomFilterBuilder.createSplitBlockBySize(10L * n, 123L)
+          : BloomFilterBuilder.createBlockedBySize(10L * n, 7, 123L);
+      for (int i = 0; i < n; ++i) {
+        bf.queryAndUpdate(i);
+      }
+      assertFalse(bf.isEmpty());
+      for (int i = 0; i < n; ++i) {
+        assertTrue(bf.query(i)); // no false negatives
+      }
+      int falsePositives = 0;
+      for (int i = n; i < 11 * n; ++i) {
+        if (bf.query(i)) { ++falsePositives; }
+      }
+      // ~1% for a standard filter with 10 bits per item; allow for the blocked penalty
+      assertTrue(falsePositives < 0.03 * 10 * n, "false positives: " + falsePositives);
+
+      final long bitsUsed = bf.getBitsUsed();
+      assertTrue(bf.queryAndUpdate(42));
+      assertEquals(bf.getBitsUsed(), bitsUsed);
+
+      bf.reset();
+      assertTrue(bf.isEmpty());
+      assertFalse(bf.query(42));
+    }
+  }
+
+  @Test
+  public void updateTypesTest() {
+    final BlockedBloomFilter bf = BloomFilterBuilder.createBlockedByAccuracy(1000, 1e-4, 7L);
+    bf.update(1.5);
+    bf.update("abc");
+    bf.update(new StringBuilder("def"));
+    bf.update(new byte[] {1, 2, 3});
+    bf.update(new int[] {4, 5});
+    bf.update(new long[] {6});
+    bf.update(Memory.wrap(new long[] {7, 8}));
+    assertTrue(bf.query(1.5));
+    assertTrue(bf.query("abc"));
+    assertTrue(bf.query("def"));
+    assertTrue(bf.query(new byte[] {1, 2, 3}));
+    assertTrue(bf.query(new int[] {4, 5}));
+    assertTrue(bf.query(new long[] {6}));
+    assertTrue(bf.query(Memory.wrap(new long[] {7, 8})));
+    assertTrue(bf.queryAndUpdate(1.5));
+    assertTrue(bf.queryAndUpdate("abc"));
+    assertTrue(bf.queryAndUpdate(new byte[] {1, 2, 3}));
+    assertTrue(bf.queryAndUpdate(new int[] {4, 5}));
+    assertTrue(bf.queryAndUpdate(new long[] {6}));
+    assertTrue(bf.queryAndUpdate(Memory.wrap(new long[] {7, 8})));
+
+    // null and empty inputs are ignored
+    final long bitsUsed = bf.getBitsUsed();
+    bf.update("");
+    bf.update((CharSequence) null);
+    bf.update((byte[]) null);
+    bf.update((int[]) null);
+    bf.update((long[]) null);
+    bf.update((Memory) null);
+    assertFalse(bf.query((CharSequence) null));
+    assertFalse(bf.queryAndUpdate((long[]) null));
+    assertEquals(bf.getBitsUsed(), bitsUsed);
+  }
+
+  @Test
+  public void serializationTest() {
+    for (final boolean split : new boolean[] {false, true}) {
+      final BlockedBloomFilter bf = split
+          ? BloomFilterBuilder.createSplitBlockBySize(1L << 13, 5L)
+          : BloomFilterBuilder.createBlockedBySize(1L << 13, 3, 5L);
+
+      // empty
+      byte[] bytes = bf.toByteArray();
+      assertEquals(bytes.length, bf.getSerializedSizeBytes());
+      assertEquals(bytes[0], Family.BLOCKED_BLOOMFILTER.getMinPreLongs());
+      BlockedBloomFilter copy = BlockedBloomFilter.heapify(Memory.wrap(bytes));
+      assertTrue(copy.isEmpty());
+      assertTrue(copy.isCompatible(bf));
+      assertEquals(copy.isSplitBlock(), split);
+
+      for (int i = 0; i < 500; ++i) { bf.update(i); }
+      bytes = bf.toByteArray();
+      assertEquals(bytes.length, BlockedBloomFilter.getSerializedSize(1L << 13));
+      assertEquals(bytes[0], Family.BLOCKED_BLOOMFILTER.getMaxPreLongs());
+      final long[] longs = bf.toLongArray();
+      assertEquals(Memory.wrap(longs).getInt(48), bf.getCapacity() / Long.SIZE);
+
+      copy = BlockedBloomFilter.heapify(Memory.wrap(bytes));
+      assertEquals(copy.getBitsUsed(), bf.getBitsUsed());
+      assertEquals(copy.isSplitBlock(), split);
+      assertEquals(BlockedBloomFilter.heapify(Memory.wrap(longs)).toByteArray(), bytes);
+
+      final BlockedBloomFilter wrapped = BlockedBloomFilter.wrap(Memory.wrap(bytes));
+      assertTrue(wrapped.hasMemory());
+      assertTrue(wrapped.isReadOnly());
+      assertEquals(wrapped.toByteArray(), bytes);
+      for (int i = 0; i < 500; ++i) {
+        assertTrue(copy.query(i));
+        assertTrue(wrapped.query(i));
+      }
+      assertThrows(SketchesReadOnlyException.class, () -> wrapped.update(-1L));
+
+      final BlockedBloomFilter writable = BlockedBloomFilter.writableWrap(WritableMemory.writableWrap(bytes));
+      assertFalse(writable.isReadOnly());
+      writable.update(-1L);
+      assertTrue(BlockedBloomFilter.heapify(Memory.wrap(bytes)).query(-1L));
+    }
+  }
+
+  @Test
+  public void directFilterTest() {
+    final long numBits = 1L << 14;
+    final WritableMemory wmem = WritableMemory.allocate((int) BloomFilterBuilder.getSerializedBlockedFilterSize(numBits));
+    final BlockedBloomFilter dbf = BloomFilterBuilder.initializeSplitBlockBySize(numBits, 77L, wmem);
+    final BlockedBloomFilter hbf = BloomFilterBuilder.createSplitBlockBySize(numBits, 77L);
+    for (int i = 0; i < 1000; ++i) {
+      dbf.update(i);
+      hbf.update(i);
+    }
+    assertEquals(dbf.getBitsUsed(), hbf.getBitsUsed());
+    // the stored bit count may be marked unknown in one image, so compare the bit data only
+    final byte[] dBytes = dbf.toByteArray();
+    final byte[] hBytes = hbf.toByteArray();
+    assertEquals(Arrays.copyOfRange(dBytes, 64, dBytes.length), Arrays.copyOfRange(hBytes, 64, hBytes.length));
+
+    final BlockedBloomFilter rewrapped = BlockedBloomFilter.writableWrap(wmem);
+    assertTrue(rewrapped.isSplitBlock());
+    assertTrue(rewrapped.query(999));
+    assertEquals(rewrapped.getBitsUsed(), hbf.getBitsUsed());
+  }
+
+  @Test
+  public void setOperationsTest() {
+    final int n = 1000;
+    final BlockedBloomFilter bf1 = BloomFilterBuilder.createBlockedBySize(1L << 15, 6, 3L);
+    final BlockedBloomFilter bf2 = BloomFilterBuilder.createBlockedBySize(1L << 15, 6, 3L);
+    for (int i = 0; i < n; ++i) {
+      bf1.update(i);
+      bf2.update(i + (n / 2));
+    }
+    final WritableMemory wmem = WritableMemory.allocate((int) BlockedBloomFilter.getSerializedSize(1L << 15));
+    final BlockedBloomFilter union = BloomFilterBuilder.initializeBlockedBySize(1L << 15, 6, 3L, wmem);
+    union.union(bf1);
+    union.union(bf2);
+    union.union(null);
+    for (int i = 0; i < n + (n / 2); ++i) { assertTrue(union.query(i)); }
+
+    bf1.intersect(bf2);
+    for (int i = n / 2; i < n; ++i) { assertTrue(bf1.query(i)); }
+    assertTrue(bf1.getBitsUsed() < union.getBitsUsed());
+
+    assertFalse(bf1.isCompatible(null));
+    assertFalse(bf1.isCompatible(BloomFilterBuilder.createBlockedBySize(1L << 15, 6, 4L)));
+    assertFalse(bf1.isCompatible(BloomFilterBuilder.createBlockedBySize(1L << 15, 5, 3L)));
+    assertFalse(bf1.isCompatible(BloomFilterBuilder.createBlockedBySize(1L << 14, 6, 3L)));
+    assertFalse(BloomFilterBuilder.createSplitBlockBySize(1L << 15, 3L)
+        .isCompatible(BloomFilterBuilder.createBlockedBySize(1L << 15, 8, 3L)));
+    assertThrows(SketchesArgumentException.class,
+        () -> bf1.union(BloomFilterBuilder.createBlockedBySize(1L << 15, 6, 4L)));
+    assertThrows(SketchesArgumentException.class,
+        () -> bf1.intersect(BloomFilterBuilder.createBlockedBySize(1L << 14, 6, 3L)));
+  }
+
+  @Test
+  public void corruptImageTest() {
+    final BlockedBloomFilter bf = BloomFilterBuilder.createBlockedBySize(4096, 3, 1L);
+    bf.update(1L);
+    final byte[] bytes = bf.toByteArray();
+
+    // a standard BloomFilter image is rejected, and vice versa
+    final byte[] bloomBytes = BloomFilterBuilder.createBySize(4096, 3, 1L).toByteArray();
+    assertThrows(SketchesArgumentException.class, () -> BlockedBloomFilter.heapify(Memory.wrap(bloomBytes)));
+    assertThrows(SketchesArgumentException.class, () -> BloomFilter.heapify(Memory.wrap(bytes)));
+
+    final byte[] badSerVer = bytes.clone();
+    badSerVer[1] = 2;
+    assertThrows(SketchesArgumentException.class, () -> BlockedBloomFilter.heapify(Memory.wrap(badSerVer)));
+
+    final byte[] badSplit = bytes.clone();
+    badSplit[3] |= 8; // split-block flag with 3 hashes
+    assertThrows(SketchesArgumentException.class, () -> BlockedBloomFilter.wrap(Memory.wrap(badSplit)));
+
+    final byte[] badLength = bytes.clone();
+    WritableMemory.writableWrap(badLength).putInt(48, 7); // not a whole number of blocks
+    assertThrows(SketchesArgumentException.class, () -> BlockedBloomFilter.heapify(Memory.wrap(badLength)));
+  }
+
+  @Test
+  public void printlnTest() {
+    println("PRINTING: " + this.getClass().getName());
+    println(BloomFilterBuilder.createSplitBlockBySize(1024, 1L).toString());
+  }
+
+  /**
+   * @param s value to print
+   */
+  static void println(final String s) {
+    //System.out.println(s); //disable here
+  }
+}
@@ -24,6 +24,10 @@ import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertThrows;
 import static org.testng.Assert.assertTrue;
 
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
 import org.apache.datasketches.common.Family;
 import org.apache.datasketches.common.SketchesArgumentException;
 import org.apache.datasketches.common.SketchesReadOnlyException;
@@ -507,4 +511,180 @@ public class BloomFilterTest {
     bf.intersect(bfLongs);
     assertEquals(bfLongs.getBitsUsed(), numBitsSet);
   }
+
+  @Test
+  public void testStringAndDoubleHashCompatibility() {
+    final long seed = 7654321L;
+    final String[] keys = { "abc", "key-12345", "\u00e9t\u00e9", "\u4e2d\u6587", "\ud83d\ude00 pair",
+        "lone \ud83d high", "lone \ude00 low", "trailing \ud83d", new String(new char[300]).replace('\0', 'x'),
+        new String(new char[30000]).replace('\0', '\u00e9') };
+    for (final String key : keys) {
+      // the Memory path hashes with the original xxHash implementation and the String.getBytes() encoding
+      final BloomFilter expected = BloomFilterBuilder.createBySize(1 << 12, 3, seed);
+      expected.update(Memory.wrap(key.getBytes(StandardCharsets.UTF_8)));
+      final byte[] expectedBytes = toCleanByteArray(expected);
+
+      final BloomFilter bfString = BloomFilterBuilder.createBySize(1 << 12, 3, seed);
+      bfString.update(key);
+      assertEquals(toCleanByteArray(bfString), expectedBytes);
+      assertTrue(bfString.query(key));
+
+      final BloomFilter bfChars = BloomFilterBuilder.createBySize(1 << 12, 3, seed);
+      final StringBuilder sb = new StringBuilder(key);
+      assertFalse(bfChars.queryAndUpdate(sb));
+      assertEquals(toCleanByteArray(bfChars), expectedBytes);
+      assertTrue(bfChars.query(sb));
+
+      final BloomFilter bfBytes = BloomFilterBuilder.createBySize(1 << 12, 3, seed);
+      bfBytes.update(key.getBytes(StandardCharsets.UTF_8));
+      assertEquals(toCleanByteArray(bfBytes), expectedBytes);
+    }
+
+    final double[] values = { 0.0, -0.0, 1.5, Double.NaN, Double.MIN_VALUE, -1e300 };
+    for (final double d : values) {
+      final BloomFilter expected = BloomFilterBuilder.createBySize(1 << 12, 3, seed);
+      expected.update(new long[] { Double.doubleToLongBits(d) });
+      final BloomFilter bfDouble = BloomFilterBuilder.createBySize(1 << 12, 3, seed);
+      assertFalse(bfDouble.queryAndUpdate(d));
+      assertEquals(toCleanByteArray(bfDouble), toCleanByteArray(expected));
+      assertTrue(bfDouble.query(d));
+    }
+    assertFalse(BloomFilterBuilder.createBySize(64, 3, seed).query((CharSequence) null));
+  }
+
+  @Test
+  public void testBatchQueryMatchesScalar() {
+    final long seed = 321L;
+    final int numBits = 1 << 14;
+    final WritableMemory wmem = WritableMemory.allocate((int) BloomFilter.getSerializedSize(numBits));
+    final BloomFilter[] filters = {
+        BloomFilterBuilder.createBySize(numBits, 5, seed),
+        BloomFilterBuilder.initializeBySize(numBits, 5, seed, wmem) };
+    final long[] items = new long[1000];
+    for (int i = 0; i < items.length; ++i) { items[i] = i * 7L; }
+
+    for (final BloomFilter bf : filters) {
+      for (int i = 0; i < items.length; i += 2) { bf.update(items[i]); }
+      for (final int[] range : new int[][] { {0, 1000}, {3, 1}, {10, 63}, {17, 129}, {999, 0}, {0, 0} }) {
+        final int offset = range[0];
+        final int length = range[1];
+        final boolean[] results = new boolean[length + 1];
+        results[length] = true; // must not be touched
+        final long[] resultBits = new long[(length + 63) >>> 6];
+        final int count = bf.queryAll(items, offset, length, results);
+        assertEquals(bf.queryAll(items, offset, length, resultBits), count);
+        int expectedCount = 0;
+        for (int i = 0; i < length; ++i) {
+          final boolean expected = bf.query(items[offset + i]);
+          if (expected) { ++expectedCount; }
+          assertEquals(results[i], expected);
+          assertEquals((resultBits[i >>> 6] & (1L << i)) != 0, expected);
+          if (((offset + i) & 1) == 0) { assertTrue(results[i]); } // no false negatives
+        }
+        assertTrue(results[length]);
+        assertEquals(count, expectedCount);
+      }
+    }
+
+    final BloomFilter bf = filters[0];
+    assertThrows(SketchesArgumentException.class, () -> bf.queryAll(items, 990, 20, new boolean[20]));
+    assertThrows(SketchesArgumentException.class, () -> bf.queryAll(items, 0, 20, new boolean[10]));
+    assertThrows(SketchesArgumentException.class, () -> bf.queryAll(items, -1, 20, new boolean[20]));
+    assertThrows(SketchesArgumentException.class, () -> bf.queryAll(items, 0, 65, new long[1]));
+    assertThrows(NullPointerException.class, () -> bf.queryAll(null, 0, 0, new boolean[0]));
+    assertThrows(NullPointerException.class, () -> bf.queryAll(items, 0, 0, (long[]) null));
+  }
+
+  @Test
+  public void testConcurrentUpdates() throws Exception {
+    final long seed = 4242L;
+    // large enough that a false positive among the queried items is vanishingly unlikely
+    final long numBits = 1L << 24;
+    final int numHashes = 4;
+    final int numThreads = 8;
+    final int itemsPerThread = 2000;
+    final int numItems = numThreads * itemsPerThread;
+    final double fpp = 1e-9;
+
+    final BloomFilter bySize = BloomFilterBuilder.createBySize(numBits, numHashes, seed);
+    final BloomFilter byAccuracy = BloomFilterBuilder.createByAccuracy(numItems, fpp, seed);
+    for (int i = 0; i < numItems; ++i) {
+      bySize.update(i);
+      byAccuracy.update(i);
+    }
+
+    final WritableMemory heapMem = WritableMemory.allocate((int) BloomFilter.getSerializedSize(numBits));
+    // off-heap memory must be allocated in a shared scope to be accessible from several threads
+    try (ResourceScope scope = ResourceScope.newSharedScope()) {
+      final WritableMemory directMem = WritableMemory.allocateDirect(BloomFilter.getSerializedSize(numBits), 8,
+          scope, ByteOrder.nativeOrder(), null);
+      final BloomFilter[] filters = {
+          BloomFilterBuilder.createConcurrentBySize(numBits, numHashes, seed),
+          BloomFilterBuilder.createConcurrentByAccuracy(numItems, fpp, seed),
+          BloomFilterBuilder.initializeConcurrentBySize(numBits, numHashes, seed, heapMem),
+          BloomFilterBuilder.initializeConcurrentBySize(numBits, numHashes, seed, directMem) };
+      final BloomFilter[] expecteds = { bySize, byAccuracy, bySize, bySize };
+      for (int f = 0; f < filters.length; ++f) {
+        final BloomFilter bf = filters[f];
+        final BloomFilter expected = expecteds[f];
+        assertTrue(bf.isConcurrent());
+        assertTrue(bf.isEmpty());
+        assertEquals(bf.getCapacity(), expected.getCapacity());
+        assertEquals(bf.getNumHashes(), expected.getNumHashes());
+        final Thread[] threads = new Thread[numThreads];
+        final int[] newItems = new int[numThreads];
+        for (int t = 0; t < numThreads; ++t) {
+          final int thread = t;
+          threads[t] = new Thread(() -> {
+            // interleaved items so threads contend for the same words
+            for (int i = thread; i < numItems; i += numThreads) {
+              if ((i & 1) == 0) {
+                bf.update(i);
+              } else if (!bf.queryAndUpdate(i)) {
+                newItems[thread]++;
+              }
+            }
+          });
+          threads[t].start();
+        }
+        for (final Thread thread : threads) { thread.join(); }
+
+        // each odd item is queried once, before any thread sets its bits
+        assertEquals(Arrays.stream(newItems).sum(), numItems / 2);
+        assertEquals(bf.getBitsUsed(), expected.getBitsUsed());
+        for (int i = 0; i < numItems; ++i) { assertTrue(bf.query(i)); }
+        final byte[] bytes = bf.toByteArray();
+        assertEquals(toCleanByteArray(bf), toCleanByteArray(expected));
+        final BloomFilter copy = BloomFilter.heapify(Memory.wrap(bytes));
+        assertFalse(copy.isConcurrent());
+        assertEquals(copy.getBitsUsed(), expected.getBitsUsed());
+
+        // bulk operations keep the count exact
+        bf.union(expected);
+        assertEquals(bf.getBitsUsed(), expected.getBitsUsed());
+        bf.invert();
+        assertEquals(bf.getBitsUsed(), expected.getCapacity() - expected.getBitsUsed());
+        bf.intersect(expected);
+        assertEquals(bf.getBitsUsed(), 0);
+        bf.update(1L);
+        bf.reset();
+        assertTrue(bf.isEmpty());
+      }
+    }
+
+    // the ByteBuffer view used for atomic access is unavailable for memory wrapping a long[]
+    final WritableMemory longMem = WritableMemory.writableWrap(new long[(int) (BloomFilter.getSerializedSize(numBits) >>> 3)]);
+    assertThrows(SketchesArgumentException.class,
+        () -> BloomFilterBuilder.initializeConcurrentBySize(numBits, numHashes, seed, longMem));
+    assertThrows(SketchesArgumentException.class,
+        () -> BloomFilterBuilder.initializeConcurrentBySize(numBits, numHashes, seed, WritableMemory.allocate(64)));
+  }
+
+  // update() and queryAndUpdate() differ in whether the serialized bit count is left marked as
+  // unknown, so blank that field before comparing the images
+  private static byte[] toCleanByteArray(final BloomFilter bf) {
+    final byte[] bytes = bf.toByteArray();
+    Arrays.fill(bytes, 24, 32, (byte) 0);
+    return bytes;
+  }
 }
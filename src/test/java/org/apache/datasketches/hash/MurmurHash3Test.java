@@ -365,6 +365,18 @@ public class MurmurHash3Test {
     Assert.assertEquals(result1[1], h2);
   }
 
+  @Test
+  public void checkLongIntoOutputArray() {
+    final long seed = 9001L;
+    final long[] out = new long[2];
+    for (long key = -1000; key < 1000; key += 7) {
+      final long[] expected = hash(new long[] { key }, seed);
+      Assert.assertEquals(hash(key, seed), expected);
+      Assert.assertSame(hash(key, seed, out), out);
+      Assert.assertEquals(out, expected);
+    }
+  }
+
   @Test
   public void printlnTest() {
     println("PRINTING: "+this.getClass().getName());
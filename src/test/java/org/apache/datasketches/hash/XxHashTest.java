@@ -21,6 +21,8 @@ package org.apache.datasketches.hash;
 
 import static org.testng.Assert.assertEquals;
 
+import java.util.Random;
+
 import org.testng.annotations.Test;
 
 import org.apache.datasketches.memory.Memory;
@@ -41,4 +43,17 @@ public class XxHashTest {
     assertEquals(hash2, hash1);
   }
 
+  @Test
+  public void byteArrayCheck() {
+    final Random rand = new Random(1);
+    for (int len = 0; len <= 100; len++) {
+      final byte[] arr = new byte[len + 3];
+      rand.nextBytes(arr);
+      final long seed = rand.nextLong();
+      assertEquals(XxHash.hashByteArr(arr, 3, len, seed),
+          org.apache.datasketches.memory.XxHash.hashByteArr(arr, 3, len, seed));
+      assertEquals(XxHash.hashByteArr(arr, 3, len, seed), XxHash.hash(Memory.wrap(arr), 3, len, seed));
+    }
+  }
+
 }
@@ -21,10 +21,14 @@ package org.apache.datasketches.hll;
 
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
 
 import org.testng.annotations.Test;
 
+import org.apache.datasketches.common.SketchesArgumentException;
+import org.apache.datasketches.hash.MurmurHash3;
 import org.apache.datasketches.memory.WritableMemory;
+import org.apache.datasketches.thetacommon.ThetaUtil;
 
 import java.nio.ByteBuffer;
 
@@ -107,6 +111,72 @@ public class BaseHllSketchTest {
     assertEquals(BaseHllSketch.getSerializationVersion(wmem), PreambleUtil.SER_VER);
   }
 
+  @Test
+  public void checkUpdateHashMatchesUpdate() {
+    final long seed = ThetaUtil.DEFAULT_UPDATE_SEED;
+    final HllSketch scalar = new HllSketch(10, TgtHllType.HLL_4);
+    final HllSketch hashed = new HllSketch(10, TgtHllType.HLL_4);
+    final Union union = new Union(10);
+    for (long i = 0; i < 10000; i++) {
+      final long[] h = MurmurHash3.hash(new long[] { i }, seed);
+      scalar.update(i);
+      hashed.updateHash(h[0], h[1], seed);
+      union.updateHash(h, seed);
+    }
+    assertEquals(hashed.toCompactByteArray(), scalar.toCompactByteArray());
+    assertEquals(union.getResult(TgtHllType.HLL_4).toCompactByteArray(),
+        scalar.toCompactByteArray());
+    hashed.updateHash(null, seed);
+    hashed.updateHash(new long[0], seed);
+    assertEquals(hashed.toCompactByteArray(), scalar.toCompactByteArray());
+    try { hashed.updateHash(new long[1], seed); fail(); } catch (final SketchesArgumentException e) { }
+    try { hashed.updateHash(1L, 1L, seed + 1); fail(); } catch (final SketchesArgumentException e) { }
+  }
+
+  @Test
+  public void checkUpdateAllMatchesUpdate() {
+    //sizes that cross the LIST, SET and HLL modes and the block size
+    for (final int n : new int[] {0, 5, 100, 1000, 20000}) {
+      for (final TgtHllType type : TgtHllType.values()) {
+        final long[] longs = new long[n + 3];
+        final int[] ints = new int[n + 3];
+        final double[] doubles = new double[n + 3];
+        final String[] strings = new String[n + 3];
+        for (int i = 0; i < longs.length; i++) {
+          longs[i] = i * 0x9E3779B97F4A7C15L;
+          ints[i] = -i;
+          doubles[i] = (i == 7) ? -0.0 : (i == 8) ? Double.NaN : i / 3.0;
+          strings[i] = (i == 9) ? null : (i == 10) ? "" : Integer.toString(i);
+        }
+        final HllSketch scalar = new HllSketch(10, type);
+        final Union scalarUnion = new Union(10);
+        for (final BaseHllSketch sk : new BaseHllSketch[] {scalar, scalarUnion}) {
+          for (int i = 3; i < (n + 3); i++) { sk.update(longs[i]); }
+          for (int i = 3; i < (n + 3); i++) { sk.update(ints[i]); }
+          for (int i = 3; i < (n + 3); i++) { sk.update(doubles[i]); }
+          for (int i = 3; i < (n + 3); i++) { sk.update(strings[i]); }
+        }
+        final HllSketch batch = new HllSketch(10, type);
+        final WritableMemory wmem = WritableMemory.allocate(HllSketch.getMaxUpdatableSerializationBytes(10, type));
+        final HllSketch direct = new HllSketch(10, type, wmem);
+        final Union union = new Union(10);
+        for (final BaseHllSketch sk : new BaseHllSketch[] {batch, direct, union}) {
+          sk.updateAll(longs, 3, n);
+          sk.updateAll(ints, 3, n);
+          sk.updateAll(doubles, 3, n);
+          sk.updateAll(strings, 3, n);
+        }
+        assertEquals(batch.toCompactByteArray(), scalar.toCompactByteArray());
+        assertEquals(direct.toCompactByteArray(), scalar.toCompactByteArray());
+        assertEquals(union.getResult(type).toCompactByteArray(), scalarUnion.getResult(type).toCompactByteArray());
+      }
+    }
+    final HllSketch sk = new HllSketch(10);
+    try { sk.updateAll((long[]) null, 0, 0); fail(); } catch (final NullPointerException e) { }
+    try { sk.updateAll(new long[4], 2, 3); fail(); } catch (final SketchesArgumentException e) { }
+    try { sk.updateAll(new String[4], -1, 1); fail(); } catch (final SketchesArgumentException e) { }
+  }
+
   @Test
   public void printlnTest() {
     println("PRINTING: " + this.getClass().getName());
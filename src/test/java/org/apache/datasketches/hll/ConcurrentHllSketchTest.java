@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.hll;
+
+import static org.apache.datasketches.hll.TgtHllType.HLL_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.nio.ByteOrder;
+
+import org.apache.datasketches.common.SketchesArgumentException;
+import org.apache.datasketches.memory.WritableMemory;
+import org.testng.annotations.Test;
+
+import jdk.incubator.foreign.ResourceScope;
+
+public class ConcurrentHllSketchTest {
+  private static final double TOL = 1e-9;
+
+  @Test
+  public void checkConcurrentUpdates() throws Exception {
+    final int lgK = 10;
+    final int numThreads = 8;
+    final int itemsPerThread = 5000;
+    final HllSketch expected = new HllSketch(lgK, HLL_8);
+    for (int i = 0; i < numThreads * itemsPerThread; i++) { expected.update(i); }
+
+    final int bytes = HllSketch.getMaxUpdatableSerializationBytes(lgK, HLL_8);
+    checkConcurrentUpdates(HllSketch.newConcurrent(lgK), expected, numThreads, itemsPerThread);
+    final WritableMemory heapMem = WritableMemory.allocate(bytes);
+    checkConcurrentUpdates(HllSketch.newConcurrent(lgK, heapMem), expected, numThreads, itemsPerThread);
+    checkImage(heapMem, expected);
+    // off-heap memory must be allocated in a shared scope to be accessible from several threads
+    try (ResourceScope scope = ResourceScope.newSharedScope()) {
+      final WritableMemory directMem = WritableMemory.allocateDirect(bytes, 8, scope,
+          ByteOrder.nativeOrder(), null);
+      final HllSketch direct = HllSketch.newConcurrent(lgK, directMem);
+      assertTrue(direct.isOffHeap());
+      checkConcurrentUpdates(direct, expected, numThreads, itemsPerThread);
+      checkImage(directMem, expected);
+    }
+  }
+
+  @Test
+  public void checkEmptyAndReset() {
+    final WritableMemory wmem = WritableMemory.allocate(HllSketch.getMaxUpdatableSerializationBytes(8, HLL_8));
+    for (final HllSketch sk : new HllSketch[] { HllSketch.newConcurrent(8), HllSketch.newConcurrent(8, wmem) }) {
+      assertTrue(sk.isConcurrent());
+      assertTrue(sk.isEmpty());
+      assertEquals(sk.getCurMode(), CurMode.HLL);
+      assertEquals(sk.getTgtHllType(), HLL_8);
+      assertEquals(sk.getEstimate(), 0.0);
+      for (int i = 0; i < 1000; i++) { sk.update(i); }
+      assertFalse(sk.isEmpty());
+      assertTrue(sk.isOutOfOrder());
+      sk.reset();
+      assertTrue(sk.isConcurrent());
+      assertTrue(sk.isEmpty());
+      assertEquals(sk.getEstimate(), 0.0);
+      sk.update(1);
+      assertEquals(sk.getEstimate(), 1.0, 0.01);
+
+      final HllSketch copy = sk.copy();
+      assertFalse(copy.isConcurrent());
+      assertFalse(copy.isMemory());
+      assertEquals(copy.getEstimate(), sk.getEstimate());
+    }
+    assertFalse(new HllSketch(8, HLL_8).isConcurrent());
+  }
+
+  @Test
+  public void checkBadMemory() {
+    final int bytes = HllSketch.getMaxUpdatableSerializationBytes(8, HLL_8);
+    try {
+      HllSketch.newConcurrent(8, WritableMemory.allocate(bytes - 1));
+      fail();
+    } catch (final SketchesArgumentException e) { }
+    try {
+      HllSketch.newConcurrent(8, WritableMemory.writableWrap(new long[(bytes + 7) / 8]));
+      fail();
+    } catch (final SketchesArgumentException e) { }
+    try {
+      HllSketch.newConcurrent(8, WritableMemory.allocate(bytes + 4).writableRegion(4, bytes));
+      fail();
+    } catch (final SketchesArgumentException e) { }
+    try { HllSketch.newConcurrent(3); fail(); } catch (final SketchesArgumentException e) { }
+  }
+
+  private static void checkConcurrentUpdates(final HllSketch sk, final HllSketch expected,
+      final int numThreads, final int itemsPerThread) throws Exception {
+    assertTrue(sk.isConcurrent());
+    final Thread[] threads = new Thread[numThreads];
+    final boolean[] badEstimate = new boolean[numThreads];
+    for (int t = 0; t < numThreads; t++) {
+      final int thread = t;
+      threads[t] = new Thread(() -> {
+        // interleaved items so threads contend for the same registers
+        for (int i = thread; i < numThreads * itemsPerThread; i += numThreads) {
+          sk.update(i);
+          if ((i % 1000) == 0) { badEstimate[thread] |= !(sk.getEstimate() > 0); }
+        }
+      });
+      threads[t].start();
+    }
+    for (final Thread thread : threads) { thread.join(); }
+    for (final boolean bad : badEstimate) { assertFalse(bad); }
+
+    assertTrue(sk.isOutOfOrder());
+    assertRegisters(sk, expected);
+    final AbstractHllArray arr = (AbstractHllArray) sk.hllSketchImpl;
+    final AbstractHllArray expectedArr = (AbstractHllArray) expected.hllSketchImpl;
+    assertEquals(arr.getNumAtCurMin(), expectedArr.getNumAtCurMin());
+    assertEquals(arr.getKxQ0(), expectedArr.getKxQ0(), TOL);
+    assertEquals(arr.getKxQ1(), expectedArr.getKxQ1(), TOL);
+    assertEquals(sk.getEstimate(), expected.getCompositeEstimate(), TOL);
+    assertEquals(sk.getCompositeEstimate(), expected.getCompositeEstimate(), TOL);
+
+    final HllSketch heapified = HllSketch.heapify(sk.toUpdatableByteArray());
+    assertFalse(heapified.isConcurrent());
+    assertRegisters(heapified, expected);
+    assertEquals(heapified.getEstimate(), sk.getEstimate(), TOL);
+    assertEquals(sk.copy().getEstimate(), sk.getEstimate(), TOL);
+  }
+
+  //the image in memory can be heapified as a non-concurrent sketch
+  private static void checkImage(final WritableMemory wmem, final HllSketch expected) {
+    final HllSketch sk = HllSketch.heapify(wmem);
+    assertFalse(sk.isConcurrent());
+    assertTrue(sk.isOutOfOrder());
+    assertRegisters(sk, expected);
+    assertEquals(sk.getEstimate(), expected.getCompositeEstimate(), TOL);
+  }
+
+  private static void assertRegisters(final HllSketch sk, final HllSketch expected) {
+    final PairIterator itr = sk.iterator();
+    final PairIterator expectedItr = expected.iterator();
+    while (expectedItr.nextAll()) {
+      assertTrue(itr.nextAll());
+      assertEquals(itr.getPair(), expectedItr.getPair());
+    }
+    assertFalse(itr.nextAll());
+  }
+
+}
@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.hll;
+
+import static org.apache.datasketches.hll.PreambleUtil.SER_VER_COMPRESSED;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.Arrays;
+
+import org.apache.datasketches.common.SketchesArgumentException;
+import org.apache.datasketches.common.SketchesReadOnlyException;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
+import org.testng.annotations.Test;
+
+public class DirectCompressedCouponsTest {
+
+  @Test
+  public void checkRoundTrip() {
+    for (final int lgK : new int[] {4, 8, 12, 21}) {
+      for (final TgtHllType type : TgtHllType.values()) {
+        for (final int n : new int[] {0, 1, 7, 100, 1000, 20000}) {
+          final HllSketch sk = new HllSketch(lgK, type);
+          for (int i = 0; i < n; i++) { sk.update(i); }
+          if (sk.getCurMode() == CurMode.HLL) {
+            assertEquals(sk.toCompressedByteArray(), sk.toCompactByteArray());
+            continue;
+          }
+          final byte[] bytes = sk.toCompressedByteArray();
+          assertEquals(bytes[PreambleUtil.SER_VER_BYTE], SER_VER_COMPRESSED);
+          final HllSketch heapified = HllSketch.heapify(bytes);
+          final HllSketch wrapped = HllSketch.wrap(Memory.wrap(bytes));
+          for (final HllSketch copy : new HllSketch[] {heapified, wrapped}) {
+            assertEquals(copy.getLgConfigK(), lgK);
+            assertEquals(copy.getTgtHllType(), type);
+            assertEquals(copy.getCurMode(), sk.getCurMode());
+            assertEquals(copy.isEmpty(), sk.isEmpty());
+            assertEquals(copy.getEstimate(), sk.getEstimate());
+            assertEquals(copy.getUpperBound(2), sk.getUpperBound(2));
+            assertEquals(sortedPairs(copy), sortedPairs(sk));
+            assertEquals(sortedPairs(HllSketch.heapify(copy.toCompactByteArray())), sortedPairs(sk));
+            assertEquals(sortedPairs(HllSketch.heapify(copy.toUpdatableByteArray())), sortedPairs(sk));
+            assertEquals(copy.toCompressedByteArray(), bytes);
+          }
+          assertFalse(heapified.isMemory());
+          assertTrue(wrapped.isMemory());
+          assertTrue(wrapped.isCompact());
+
+          //the promotion to HLL mode does not depend on the order of the coupons
+          final HllSketch more = HllSketch.heapify(bytes);
+          for (int i = n; i < (n + 100000); i++) {
+            sk.update(i);
+            more.update(i);
+          }
+          if (sk.getCurMode() == CurMode.HLL) {
+            assertEquals(more.toCompactByteArray(), sk.toCompactByteArray());
+          } else {
+            assertEquals(sortedPairs(more), sortedPairs(sk));
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void checkSmallerThanCompact() {
+    final HllSketch sk = new HllSketch(21, TgtHllType.HLL_8);
+    int n = 0;
+    while (n < 100000) { sk.update(n++); }
+    assertEquals(sk.getCurMode(), CurMode.SET);
+    final int compactBytes = sk.toCompactByteArray().length;
+    final int compressedBytes = sk.toCompressedByteArray().length;
+    assertTrue(compressedBytes < (compactBytes * 3) / 4, compressedBytes + " vs " + compactBytes);
+  }
+
+  @Test
+  public void checkUnionOfWrappedImages() {
+    final Union expected = new Union(12);
+    final Union actual = new Union(12);
+    for (int s = 0; s < 50; s++) {
+      final HllSketch sk = new HllSketch(8 + (s % 5), TgtHllType.values()[s % 3]);
+      for (int i = 0; i < (s * 20); i++) { sk.update((s * 1000L) + i); }
+      expected.update(sk);
+      actual.update(HllSketch.wrap(Memory.wrap(sk.toCompressedByteArray())));
+    }
+    assertEquals(actual.getCurMode(), CurMode.HLL);
+    final PairIterator itr = actual.getResult(TgtHllType.HLL_8).iterator();
+    final PairIterator expectedItr = expected.getResult(TgtHllType.HLL_8).iterator();
+    while (expectedItr.nextAll()) {
+      assertTrue(itr.nextAll());
+      assertEquals(itr.getPair(), expectedItr.getPair());
+    }
+    assertEquals(actual.getEstimate(), expected.getEstimate(), expected.getEstimate() * 1e-9);
+
+    final Union fromImage = Union.heapify(new HllSketch(12).toCompressedByteArray());
+    assertTrue(fromImage.isEmpty());
+  }
+
+  @Test
+  public void checkReadOnlyAndBadImages() {
+    final HllSketch sk = new HllSketch(10);
+    for (int i = 0; i < 50; i++) { sk.update(i); }
+    final byte[] bytes = sk.toCompressedByteArray();
+    final HllSketch wrapped = HllSketch.wrap(Memory.wrap(bytes));
+    try { wrapped.update(1000); fail(); } catch (final SketchesReadOnlyException e) { }
+    try { wrapped.reset(); fail(); } catch (final SketchesArgumentException e) { }
+    try { HllSketch.writableWrap(WritableMemory.writableWrap(bytes)); fail(); }
+    catch (final SketchesArgumentException e) { }
+
+    final byte[] badPreInts = bytes.clone();
+    badPreInts[PreambleUtil.PREAMBLE_INTS_BYTE] = 2;
+    try { HllSketch.heapify(badPreInts); fail(); } catch (final SketchesArgumentException e) { }
+    final byte[] truncated = Arrays.copyOf(bytes, bytes.length - 1);
+    try { HllSketch.wrap(Memory.wrap(truncated)); fail(); } catch (final SketchesArgumentException e) { }
+  }
+
+  @Test
+  public void checkCorruptCouponStream() {
+    final HllSketch sk = new HllSketch(10);
+    for (int i = 0; i < 50; i++) { sk.update(i); }
+    final byte[] bytes = sk.toCompressedByteArray();
+    final WritableMemory wmem = WritableMemory.writableWrap(bytes);
+    final int count = PreambleUtil.extractCompressedCount(wmem);
+    final int numBytes = PreambleUtil.extractCompressedBytes(wmem);
+
+    //more coupons than the encoded bytes hold
+    final WritableMemory moreCoupons = WritableMemory.writableWrap(bytes.clone());
+    PreambleUtil.insertCompressedCount(moreCoupons, count + 1);
+    checkCorrupt(moreCoupons);
+
+    //fewer encoded bytes than the coupons need, with the image still large enough
+    final WritableMemory fewerBytes = WritableMemory.writableWrap(bytes.clone());
+    PreambleUtil.insertCompressedBytes(fewerBytes, numBytes / 2);
+    checkCorrupt(fewerBytes);
+
+    //a token that never ends
+    final WritableMemory endless = WritableMemory.writableWrap(bytes.clone());
+    endless.fill(PreambleUtil.COMPRESSED_DATA_START, numBytes, (byte) -1);
+    checkCorrupt(endless);
+
+    //one coupon whose escaped value byte is out of range
+    for (final int value : new int[] { 0, 3, -1, 64 }) {
+      final WritableMemory badValue = WritableMemory.writableWrap(bytes.clone());
+      PreambleUtil.insertCompressedCount(badValue, 1);
+      PreambleUtil.insertCompressedBytes(badValue, 2);
+      badValue.putByte(PreambleUtil.COMPRESSED_DATA_START, (byte) ((1 << 2) | 3)); //key 1, escaped
+      badValue.putByte(PreambleUtil.COMPRESSED_DATA_START + 1, (byte) value);
+      checkCorrupt(badValue);
+    }
+  }
+
+  private static void checkCorrupt(final Memory mem) {
+    try { HllSketch.heapify(mem); fail(); } catch (final SketchesArgumentException e) { }
+    final HllSketch wrapped = HllSketch.wrap(mem);
+    try { new Union(12).update(wrapped); fail(); } catch (final SketchesArgumentException e) { }
+  }
+
+  private static int[] sortedPairs(final HllSketch sk) {
+    final int[] pairs = new int[1 << 18];
+    int count = 0;
+    final PairIterator itr = sk.iterator();
+    while (itr.nextValid()) { pairs[count++] = itr.getPair(); }
+    final int[] sorted = Arrays.copyOf(pairs, count);
+    Arrays.sort(sorted);
+    return sorted;
+  }
+
+}
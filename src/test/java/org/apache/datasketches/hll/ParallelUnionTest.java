@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.hll;
+
+import static org.apache.datasketches.hll.TgtHllType.HLL_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.datasketches.common.SketchesArgumentException;
+import org.apache.datasketches.memory.Memory;
+import org.testng.annotations.Test;
+
+public class ParallelUnionTest {
+
+  @Test
+  public void checkMatchesSequentialUnion() {
+    final int lgMaxK = 10;
+    final List<HllSketch> sketches = createSketches(300, 14, 42);
+    final Union expected = sequentialUnion(lgMaxK, sketches);
+    assertEquals(expected.getCurMode(), CurMode.HLL);
+
+    final ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      for (final int batchSize : new int[] {0, 1, 3, 64, 1000}) {
+        final ParallelUnion pu = new ParallelUnion(lgMaxK, pool, batchSize);
+        assertSameUnion(pu.union(sketches), expected);
+        assertSameUnion(pu.union(sketches.stream()), expected);
+      }
+    } finally {
+      pool.shutdown();
+    }
+    final ParallelUnion pu = new ParallelUnion(lgMaxK);
+    assertSameUnion(pu.union(sketches), expected);
+    Collections.shuffle(sketches, new Random(7));
+    assertSameUnion(pu.union(sketches), expected);
+  }
+
+  @Test
+  public void checkMemoryImages() {
+    final int lgMaxK = 12;
+    final List<HllSketch> sketches = createSketches(200, 15, 11);
+    final List<Memory> images = new ArrayList<>();
+    for (int i = 0; i < sketches.size(); i++) {
+      final HllSketch sk = sketches.get(i);
+      images.add(Memory.wrap(((i & 1) == 0) ? sk.toCompactByteArray() : sk.toUpdatableByteArray()));
+    }
+    final Union expected = sequentialUnion(lgMaxK, sketches);
+    final ParallelUnion pu = new ParallelUnion(lgMaxK, ForkJoinPool.commonPool(), 5);
+    assertSameUnion(pu.unionMemory(images), expected);
+    assertSameUnion(pu.unionMemory(images.stream()), expected);
+  }
+
+  @Test
+  public void checkSparseAndEmptyInputs() {
+    //no more than one input in HLL mode, so the merge is sequential and the HIP estimate is kept
+    final List<HllSketch> sketches = createSketches(40, 4, 3);
+    final HllSketch dense = new HllSketch(11);
+    for (int i = 0; i < 10000; i++) { dense.update(-i); }
+    sketches.add(17, dense);
+    sketches.add(null);
+    sketches.add(new HllSketch(8));
+    final Union expected = sequentialUnion(11, sketches);
+    final ParallelUnion pu = new ParallelUnion(11, ForkJoinPool.commonPool(), 2);
+    final Union result = pu.union(sketches);
+    assertEquals(result.toCompactByteArray(), expected.toCompactByteArray());
+    assertEquals(result.getEstimate(), expected.getEstimate());
+
+    final List<HllSketch> empties = new ArrayList<>();
+    empties.add(null);
+    empties.add(new HllSketch(10));
+    assertTrue(pu.union(empties).isEmpty());
+    assertTrue(pu.union(new ArrayList<HllSketch>()).isEmpty());
+  }
+
+  @Test
+  public void checkBatchSize() {
+    final ForkJoinPool pool = new ForkJoinPool(2);
+    try {
+      final ParallelUnion auto = new ParallelUnion(12, pool, 0);
+      assertEquals(auto.getBatchSize(0), 1);
+      assertEquals(auto.getBatchSize(8), 1);
+      assertEquals(auto.getBatchSize(1000), 125);
+      final ParallelUnion fixed = new ParallelUnion(12, pool, 16);
+      assertEquals(fixed.getBatchSize(1000), 16);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void checkBadArgs() {
+    try { new ParallelUnion(3); fail(); } catch (final SketchesArgumentException e) { }
+    try { new ParallelUnion(12, null, 0); fail(); } catch (final NullPointerException e) { }
+    try {
+      new ParallelUnion(12, ForkJoinPool.commonPool(), -1);
+      fail();
+    } catch (final SketchesArgumentException e) { }
+    final ParallelUnion pu = new ParallelUnion(12);
+    try { pu.union((List<HllSketch>) null); fail(); } catch (final NullPointerException e) { }
+    try { pu.unionMemory((List<Memory>) null); fail(); } catch (final NullPointerException e) { }
+  }
+
+  //a mix of types, lgConfigKs and modes, with items drawn from overlapping ranges
+  private static List<HllSketch> createSketches(final int numSketches, final int lgItems,
+      final long seed) {
+    final Random rand = new Random(seed);
+    final TgtHllType[] types = TgtHllType.values();
+    final List<HllSketch> sketches = new ArrayList<>();
+    for (int i = 0; i < numSketches; i++) {
+      final HllSketch sk = new HllSketch(8 + rand.nextInt(6), types[i % types.length]);
+      final int n = rand.nextInt(1 << lgItems);
+      final long base = rand.nextInt(1 << 20);
+      for (int j = 0; j < n; j++) { sk.update(base + j); }
+      sketches.add(sk);
+    }
+    return sketches;
+  }
+
+  private static Union sequentialUnion(final int lgMaxK, final List<HllSketch> sketches) {
+    final Union union = new Union(lgMaxK);
+    for (final HllSketch sk : sketches) { union.update(sk); }
+    return union;
+  }
+
+  private static void assertSameUnion(final Union actual, final Union expected) {
+    assertEquals(actual.getLgConfigK(), expected.getLgConfigK());
+    assertEquals(actual.getCurMode(), expected.getCurMode());
+    assertEquals(actual.isOutOfOrder(), expected.isOutOfOrder());
+    assertEquals(actual.getEstimate(), expected.getEstimate());
+    assertEquals(actual.getCompositeEstimate(), expected.getCompositeEstimate());
+    assertEquals(actual.getLowerBound(2), expected.getLowerBound(2));
+    assertEquals(actual.getUpperBound(2), expected.getUpperBound(2));
+    final HllSketch actualResult = actual.getResult(HLL_8);
+    final HllSketch expectedResult = expected.getResult(HLL_8);
+    final PairIterator actualItr = ((AbstractHllArray) actualResult.hllSketchImpl).iterator();
+    final PairIterator expectedItr = ((AbstractHllArray) expectedResult.hllSketchImpl).iterator();
+    while (expectedItr.nextAll()) {
+      assertTrue(actualItr.nextAll());
+      assertEquals(actualItr.getPair(), expectedItr.getPair());
+    }
+  }
+
+}
@@ -0,0 +1,240 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.hll;
+
+import static org.apache.datasketches.common.Util.invPow2;
+import static org.apache.datasketches.hll.HllUtil.KEY_BITS_26;
+import static org.apache.datasketches.hll.TgtHllType.HLL_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.Random;
+
+import org.apache.datasketches.common.SketchesArgumentException;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
+import org.testng.annotations.Test;
+
+public class SlidingHllSketchTest {
+
+  @Test
+  public void checkWindowsMatchUnionOfBuckets() {
+    final int lgK = 8;
+    final int maxWindow = 20;
+    final int numBuckets = 60;
+    final Random rand = new Random(1);
+    final HllSketch[] buckets = new HllSketch[numBuckets];
+    final SlidingHllSketch heap = new SlidingHllSketch(lgK, maxWindow);
+    final WritableMemory wmem = WritableMemory.allocate(SlidingHllSketch.getSerializationBytes(lgK));
+    final SlidingHllSketch direct = SlidingHllSketch.initialize(lgK, maxWindow, wmem);
+    assertTrue(direct.isMemory());
+    assertFalse(heap.isMemory());
+    for (int b = 0; b < numBuckets; b++) {
+      buckets[b] = new HllSketch(lgK, HLL_8);
+      //bucket sizes from sparse to dense, with items shared by neighbouring buckets
+      final int n = rand.nextInt(b < 10 ? 50 : 3000);
+      for (int i = 0; i < n; i++) {
+        final long item = (b * 1000L) + rand.nextInt(3000);
+        buckets[b].update(item);
+        heap.update(b, item);
+        direct.update(b, item);
+      }
+      heap.advance(b);
+      direct.advance(b);
+      for (final int w : new int[] {1, 2, 7, maxWindow}) {
+        final HllSketch expected = unionOfBuckets(buckets, lgK, b, w);
+        assertWindow(heap, w, expected);
+        assertWindow(direct, w, expected);
+      }
+    }
+    final SlidingHllSketch wrapped = SlidingHllSketch.writableWrap(wmem);
+    final SlidingHllSketch heapified = SlidingHllSketch.heapify(heap.toByteArray());
+    assertEquals(wrapped.getLatestBucket(), numBuckets - 1);
+    assertEquals(heapified.getMaxWindowBuckets(), maxWindow);
+    for (int w = 1; w <= maxWindow; w++) {
+      final HllSketch expected = unionOfBuckets(buckets, lgK, numBuckets - 1, w);
+      assertWindow(wrapped, w, expected);
+      assertWindow(heapified, w, expected);
+    }
+  }
+
+  @Test
+  public void checkKxQOfHighRegisters() {
+    final int lgK = 4;
+    final SlidingHllSketch sk = new SlidingHllSketch(lgK, 4);
+    sk.couponUpdate(0, 40 << KEY_BITS_26); //slot 0, a register value that goes to kxq1
+    sk.couponUpdate(0, (5 << KEY_BITS_26) | 1); //slot 1
+    final AbstractHllArray arr = (AbstractHllArray) sk.getResult(1).hllSketchImpl;
+    assertEquals(arr.getKxQ0(), ((1 << lgK) - 2) + invPow2(5));
+    assertEquals(arr.getKxQ1(), invPow2(40));
+    assertEquals(arr.getNumAtCurMin(), (1 << lgK) - 2);
+  }
+
+  @Test
+  public void checkOutOfOrderBuckets() {
+    final int lgK = 6;
+    final int maxWindow = 10;
+    final SlidingHllSketch inOrder = new SlidingHllSketch(lgK, maxWindow);
+    final SlidingHllSketch outOfOrder = new SlidingHllSketch(lgK, maxWindow);
+    final Random rand = new Random(2);
+    final long[][] items = new long[30][];
+    for (int b = 0; b < items.length; b++) {
+      items[b] = new long[200];
+      for (int i = 0; i < items[b].length; i++) { items[b][i] = rand.nextLong(); }
+    }
+    for (int b = 0; b < items.length; b++) {
+      for (final long item : items[b]) { inOrder.update(b, item); }
+    }
+    //each bucket is seen late, after the next two buckets, and the oldest items are ignored
+    for (int b = 0; b < items.length; b += 3) {
+      for (int d = Math.min(2, items.length - b - 1); d >= 0; d--) {
+        for (final long item : items[b + d]) { outOfOrder.update(b + d, item); }
+      }
+    }
+    outOfOrder.update(items.length - 1 - maxWindow, 123L);
+    for (int w = 1; w <= maxWindow; w++) {
+      assertWindow(outOfOrder, w, inOrder.getResult(w));
+    }
+  }
+
+  @Test
+  public void checkExpiry() {
+    final int lgK = 10;
+    final SlidingHllSketch sk = new SlidingHllSketch(lgK, 5);
+    assertTrue(sk.isEmpty());
+    assertEquals(sk.getEstimate(5), 0.0);
+    for (int i = 0; i < 10; i++) { sk.update(100, i); }
+    assertFalse(sk.isEmpty());
+    assertEquals(sk.getEstimate(1), 10.0, 1.0);
+    sk.advance(104);
+    assertEquals(sk.getEstimate(5), 10.0, 1.0);
+    assertEquals(sk.getEstimate(4), 0.0);
+    assertTrue(sk.getResult(4).isEmpty());
+    sk.advance(105);
+    assertEquals(sk.getEstimate(5), 0.0);
+    sk.update(99, 1L); //older than the maximum window
+    sk.update(101, 1L);
+    assertEquals(sk.getEstimate(5), 1.0, 0.1);
+    sk.advance(1000);
+    assertEquals(sk.getEstimate(5), 0.0);
+    sk.advance(10); //windows do not move back
+    assertEquals(sk.getLatestBucket(), 1000);
+    sk.reset();
+    assertTrue(sk.isEmpty());
+    sk.update(7, 1L);
+    assertEquals(sk.getLatestBucket(), 7);
+    assertEquals(sk.getEstimate(1), 1.0, 0.1);
+  }
+
+  @Test
+  public void checkBucketsCrossingSweepBoundaries() {
+    final int lgK = 5;
+    final int maxWindow = 8;
+    final SlidingHllSketch sk = new SlidingHllSketch(lgK, maxWindow);
+    final SlidingHllSketch shifted = new SlidingHllSketch(lgK, maxWindow);
+    //the low bits of the buckets wrap around at 2^26 and entries are swept every 2^24 buckets
+    final long start = (3L << 26) - 20;
+    for (long b = start; b < (start + 40); b++) {
+      for (int i = 0; i < 50; i++) {
+        final long item = (b * 31) + i;
+        sk.update(b, item);
+        shifted.update(b - start, item);
+      }
+      for (int w = 1; w <= maxWindow; w++) {
+        assertWindow(sk, w, shifted.getResult(w));
+      }
+    }
+    //an entry left untouched for longer than 2^26 buckets is never taken for a recent one
+    final SlidingHllSketch sparse = new SlidingHllSketch(lgK, maxWindow);
+    sparse.update(5, "a");
+    for (long b = 5; b < (5 + (3L << 26)); b += maxWindow - 1) { sparse.advance(b); }
+    sparse.advance(5 + (1L << 26) * 3);
+    assertEquals(sparse.getEstimate(maxWindow), 0.0);
+  }
+
+  @Test
+  public void checkBadArgsAndImages() {
+    try { new SlidingHllSketch(3, 10); fail(); } catch (final SketchesArgumentException e) { }
+    try { new SlidingHllSketch(10, 0); fail(); } catch (final SketchesArgumentException e) { }
+    try {
+      new SlidingHllSketch(10, SlidingHllSketch.MAX_WINDOW_BUCKETS + 1);
+      fail();
+    } catch (final SketchesArgumentException e) { }
+    final SlidingHllSketch sk = new SlidingHllSketch(4, 10);
+    try { sk.update(-1, 1L); fail(); } catch (final SketchesArgumentException e) { }
+    try { sk.getEstimate(0); fail(); } catch (final SketchesArgumentException e) { }
+    try { sk.getEstimate(11); fail(); } catch (final SketchesArgumentException e) { }
+    try {
+      SlidingHllSketch.initialize(4, 10, WritableMemory.allocate(SlidingHllSketch.getSerializationBytes(4) - 1));
+      fail();
+    } catch (final SketchesArgumentException e) { }
+
+    sk.update(1, 1L);
+    final byte[] bytes = sk.toByteArray();
+    try { HllSketch.heapify(bytes); fail(); } catch (final SketchesArgumentException e) { }
+    try {
+      SlidingHllSketch.heapify(new HllSketch(4).toUpdatableByteArray());
+      fail();
+    } catch (final SketchesArgumentException e) { }
+    try {
+      SlidingHllSketch.heapify(Memory.wrap(bytes).region(0, bytes.length - 1));
+      fail();
+    } catch (final SketchesArgumentException e) { }
+  }
+
+  private static HllSketch unionOfBuckets(final HllSketch[] buckets, final int lgK,
+      final int lastBucket, final int window) {
+    final Union union = new Union(lgK);
+    for (int b = Math.max(0, (lastBucket - window) + 1); b <= lastBucket; b++) {
+      union.update(buckets[b]);
+    }
+    return union.getResult(HLL_8);
+  }
+
+  //the register values of a sketch in any mode
+  private static int[] registers(final HllSketch sk, final int lgK) {
+    final int[] registers = new int[1 << lgK];
+    final PairIterator itr = sk.iterator();
+    while (itr.nextValid()) {
+      final int slot = itr.getKey() & ((1 << lgK) - 1);
+      registers[slot] = Math.max(registers[slot], itr.getValue());
+    }
+    return registers;
+  }
+
+  private static void assertWindow(final SlidingHllSketch sk, final int window,
+      final HllSketch expected) {
+    final HllSketch result = sk.getResult(window);
+    assertEquals(result.isEmpty(), expected.isEmpty());
+    if (expected.isEmpty()) { return; }
+    assertEquals(registers(result, sk.getLgConfigK()), registers(expected, sk.getLgConfigK()));
+    assertTrue(result.isOutOfOrder());
+    assertEquals(sk.getEstimate(window), result.getEstimate());
+    final HllSketch rebuilt = new HllSketch(result.hllSketchImpl.copy());
+    rebuilt.hllSketchImpl.putRebuildCurMinNumKxQFlag(true);
+    Union.checkRebuildCurMinNumKxQ(rebuilt);
+    assertEquals(result.getEstimate(), rebuilt.getEstimate(), 1e-9);
+    assertTrue(sk.getLowerBound(window, 2) <= result.getEstimate());
+    assertTrue(sk.getUpperBound(window, 2) >= result.getEstimate());
+  }
+
+}
@@ -486,6 +486,57 @@ public class UnionTest {
    assertTrue(err < rse3);
   }
 
+  @Test
+  public void checkRegisterMergeMatchesSlotMax() {
+    final int[][] lgKs = { {5, 5}, {10, 10}, {12, 10}, {8, 4}, {14, 14} }; //{srcLgK, gadgetLgK}
+    for (final int[] lgK : lgKs) {
+      for (final TgtHllType type : TgtHllType.values()) {
+        for (int storage = 0; storage < 6; storage++) {
+          checkRegisterMerge(lgK[0], lgK[1], type, storage % 3, storage >= 3);
+        }
+      }
+    }
+  }
+
+  //srcStorage: 0 = heap, 1 = wrapped updatable image, 2 = wrapped compact image
+  private static void checkRegisterMerge(final int srcLgK, final int gdtLgK, final TgtHllType type,
+      final int srcStorage, final boolean gdtIsMem) {
+    final int lgMaxK = Math.max(srcLgK, gdtLgK);
+    final HllSketch gdtInput = new HllSketch(gdtLgK, HLL_8);
+    final HllSketch srcSketch = new HllSketch(srcLgK, type);
+    final int n = 1 << 16;
+    for (int i = 0; i < n; i++) { gdtInput.update(i); }
+    //about 8 items per slot keeps curMin near zero while the largest values need HLL_4 aux map entries
+    final int srcN = 1 << (srcLgK + 3);
+    for (int i = 0; i < srcN; i++) { srcSketch.update(i + (n / 2)); }
+    final HllSketch src = (srcStorage == 0) ? srcSketch
+        : HllSketch.wrap(Memory.wrap((srcStorage == 1)
+            ? srcSketch.toUpdatableByteArray() : srcSketch.toCompactByteArray()));
+
+    final int gdtKmask = (1 << gdtLgK) - 1;
+    final int[] expected = new int[1 << gdtLgK];
+    final PairIterator gdtItr = ((AbstractHllArray) gdtInput.hllSketchImpl).iterator();
+    while (gdtItr.nextAll()) { expected[gdtItr.getIndex()] = gdtItr.getValue(); }
+    final PairIterator srcItr = ((AbstractHllArray) srcSketch.hllSketchImpl).iterator();
+    while (srcItr.nextAll()) {
+      final int j = srcItr.getIndex() & gdtKmask;
+      expected[j] = Math.max(expected[j], srcItr.getValue());
+    }
+
+    final Union union = gdtIsMem
+        ? new Union(lgMaxK, WritableMemory.allocate(Union.getMaxSerializationBytes(lgMaxK)))
+        : new Union(lgMaxK);
+    union.update(gdtInput);
+    union.update(src);
+    final HllSketch result = union.getResult(HLL_8);
+    assertEquals(result.getLgConfigK(), gdtLgK);
+    final PairIterator resultItr = ((AbstractHllArray) result.hllSketchImpl).iterator();
+    while (resultItr.nextAll()) {
+      assertEquals(resultItr.getValue(), expected[resultItr.getIndex()],
+          type + " srcLgK=" + srcLgK + " slot=" + resultItr.getIndex());
+    }
+  }
+
   private static HllSketch buildSketch(final int start, final int count) {
    HllSketch sketch = new HllSketch(10);
    for (int i = start; i < (start + count); i++) {
@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.hllmap;
+
+import static org.apache.datasketches.hash.MurmurHash3.hash;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.apache.datasketches.common.SketchesArgumentException;
+import org.apache.datasketches.common.Util;
+
+public class ConcurrentUniqueCountMapTest {
+  private final static int INIT_ENTRIES = 211;
+
+  @Test
+  public void nullKey() {
+    ConcurrentUniqueCountMap map = new ConcurrentUniqueCountMap(4);
+    Assert.assertTrue(Double.isNaN(map.update(null, null)));
+    Assert.assertTrue(Double.isNaN(map.getEstimate(null)));
+    Assert.assertTrue(Double.isNaN(map.getUpperBound(null)));
+    Assert.assertTrue(Double.isNaN(map.getLowerBound(null)));
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void wrongNumShards() {
+    new ConcurrentUniqueCountMap(3, INIT_ENTRIES, 4);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void wrongSizeKeyUpdate() {
+    ConcurrentUniqueCountMap map = new ConcurrentUniqueCountMap(4, INIT_ENTRIES, 4);
+    map.update(new byte[] {0}, null);
+  }
+
+  @Test
+  public void sameEstimatesAsUniqueCountMap() {
+    final int numKeys = 300;
+    ConcurrentUniqueCountMap map = new ConcurrentUniqueCountMap(8, INIT_ENTRIES, 4);
+    UniqueCountMap ref = new UniqueCountMap(INIT_ENTRIES, 4);
+    byte[] key = new byte[4];
+    byte[] id = new byte[8];
+    for (int k = 1; k <= numKeys; k++) {
+      key = Util.intToBytes(k, key);
+      for (int v = 1; v <= k; v++) {
+        id = Util.longToBytes(hash(new long[]{v}, 0L)[0], id);
+        Assert.assertEquals(map.update(key, id), ref.update(key, id));
+      }
+    }
+    Assert.assertEquals(map.getActiveEntries(), numKeys);
+    for (int k = 1; k <= numKeys; k++) {
+      key = Util.intToBytes(k, key);
+      Assert.assertEquals(map.getEstimate(key), ref.getEstimate(key));
+      Assert.assertEquals(map.getUpperBound(key), ref.getUpperBound(key));
+      Assert.assertEquals(map.getLowerBound(key), ref.getLowerBound(key));
+    }
+    Assert.assertEquals(map.getNumShards(), 8);
+    println(map.toString());
+  }
+
+  @Test
+  public void concurrentUpdates() throws InterruptedException {
+    final int numThreads = 4;
+    final int numKeys = 1000;
+    final int idsPerKey = 20;
+    final ConcurrentUniqueCountMap map = new ConcurrentUniqueCountMap(16, INIT_ENTRIES, 4);
+    final Thread[] threads = new Thread[numThreads];
+    for (int t = 0; t < numThreads; t++) {
+      //every thread updates all keys with the same identifiers, in a different order
+      final int offset = t * (numKeys / numThreads);
+      threads[t] = new Thread(() -> {
+        byte[] key = new byte[4];
+        byte[] id = new byte[8];
+        for (int i = 0; i < numKeys; i++) {
+          key = Util.intToBytes(((i + offset) % numKeys) + 1, key);
+          for (int v = 1; v <= idsPerKey; v++) {
+            id = Util.longToBytes(hash(new long[]{v}, 0L)[0], id);
+            map.update(key, id);
+          }
+        }
+      });
+      threads[t].start();
+    }
+    for (int t = 0; t < numThreads; t++) { threads[t].join(); }
+
+    Assert.assertEquals(map.getActiveEntries(), numKeys);
+    byte[] key = new byte[4];
+    for (int k = 1; k <= numKeys; k++) {
+      key = Util.intToBytes(k, key);
+      Assert.assertEquals(map.getEstimate(key), idsPerKey, idsPerKey * 0.1);
+    }
+  }
+
+  @Test
+  public void printlnTest() {
+    println("PRINTING: "+this.getClass().getName());
+  }
+
+  /**
+   * @param s value to print
+   */
+  static void println(String s) {
+   //System.out.println(s); //disable here
+  }
+
+}
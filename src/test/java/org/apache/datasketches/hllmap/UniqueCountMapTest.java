@@ -22,6 +22,14 @@ package org.apache.datasketches.hllmap;
 import static org.apache.datasketches.hash.MurmurHash3.hash;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 import org.apache.datasketches.common.SketchesArgumentException;
@@ -182,6 +190,311 @@ public class UniqueCountMapTest {
 
 
 
+  @Test
+  public void writableMapWarmRestart() throws IOException {
+    final File dir = Files.createTempDirectory("uniqueCountMap").toFile();
+    final int numKeys = 300;
+    final double[] estimates = new double[numKeys];
+    byte[] key = new byte[4];
+    byte[] id = new byte[8];
+    try (UniqueCountMap map = UniqueCountMap.writableMap(dir, INIT_ENTRIES, 4)) {
+      for (int k = 1; k <= numKeys; k++) {
+        key = Util.intToBytes(k, key);
+        for (int v = 1; v <= k; v++) { //key k gets k identifiers, so all levels are used
+          id = Util.longToBytes(hash(new long[]{v}, 0L)[0], id);
+          estimates[k - 1] = map.update(key, id);
+        }
+      }
+      Assert.assertNotNull(map.getHllMap());
+    }
+    try (UniqueCountMap map = UniqueCountMap.writableMap(dir, INIT_ENTRIES, 4)) {
+      Assert.assertEquals(map.getActiveEntries(), numKeys);
+      Assert.assertNotNull(map.getHllMap());
+      for (int k = 1; k <= numKeys; k++) {
+        key = Util.intToBytes(k, key);
+        Assert.assertEquals(map.getEstimate(key), estimates[k - 1], 0.0);
+      }
+      //the map can still be updated after it is mapped again
+      key = Util.intToBytes(numKeys + 1, key);
+      Assert.assertEquals(map.update(key, id), 1.0);
+    } finally {
+      final File[] files = dir.listFiles();
+      if (files != null) {
+        for (final File f : files) { f.delete(); }
+      }
+      dir.delete();
+    }
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void writableMapOtherLayoutVersion() throws IOException {
+    final File dir = Files.createTempDirectory("uniqueCountMap").toFile();
+    try {
+      UniqueCountMap.writableMap(dir, INIT_ENTRIES, 4).close();
+      for (final File f : dir.listFiles()) {
+        try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+          raf.seek(Map.LAYOUT_VERSION_BYTE);
+          raf.write(Map.LAYOUT_VERSION + 1);
+        }
+      }
+      UniqueCountMap.writableMap(dir, INIT_ENTRIES, 4);
+    } finally {
+      final File[] files = dir.listFiles();
+      if (files != null) {
+        for (final File f : files) { f.delete(); }
+      }
+      dir.delete();
+    }
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void writableMapWrongKeySize() throws IOException {
+    final File dir = Files.createTempDirectory("uniqueCountMap").toFile();
+    try {
+      UniqueCountMap.writableMap(dir, INIT_ENTRIES, 4).close();
+      UniqueCountMap.writableMap(dir, INIT_ENTRIES, 8);
+    } finally {
+      final File[] files = dir.listFiles();
+      if (files != null) {
+        for (final File f : files) { f.delete(); }
+      }
+      dir.delete();
+    }
+  }
+
+  @Test
+  public void keyEqualsEveryLengthAndPosition() {
+    final WritableMemory mem = WritableMemory.allocate(64, ByteOrder.LITTLE_ENDIAN);
+    for (int len = 1; len <= 20; len++) {
+      final byte[] key = new byte[len];
+      for (int i = 0; i < len; i++) { key[i] = (byte) ((i * 37) + len); }
+      mem.putByteArray(3, key, 0, len);
+      Assert.assertTrue(Map.keyEquals(mem, 3, key));
+      for (int i = 0; i < len; i++) { //a difference in any byte is found
+        key[i] ^= (byte) 0x80;
+        Assert.assertFalse(Map.keyEquals(mem, 3, key));
+        key[i] ^= (byte) 0x80;
+      }
+    }
+  }
+
+  @Test
+  public void iterateAllLevels() {
+    final int numKeys = 300;
+    UniqueCountMap map = newMapOfAllLevels(numKeys, 0);
+    UniqueCountMapIterator it = map.iterator();
+    int count = 0;
+    while (it.next()) {
+      byte[] key = it.getKey();
+      Assert.assertEquals(it.getEstimate(), map.getEstimate(key));
+      Assert.assertEquals(it.getUpperBound(), map.getUpperBound(key));
+      Assert.assertEquals(it.getLowerBound(), map.getLowerBound(key));
+      count++;
+    }
+    Assert.assertEquals(count, numKeys);
+    Assert.assertEquals(map.getActiveEntries(), numKeys);
+  }
+
+  @Test
+  public void serializeDeserialize() {
+    final int numKeys = 300;
+    UniqueCountMap map = newMapOfAllLevels(numKeys, 0);
+    byte[] bytes = map.toByteArray();
+    UniqueCountMap map2 = UniqueCountMap.heapify(Memory.wrap(bytes));
+    Assert.assertEquals(map2.getActiveEntries(), numKeys);
+    Assert.assertEquals(map2.getActiveMaps(), map.getActiveMaps());
+    byte[] key = new byte[4];
+    for (int k = 1; k <= numKeys; k++) {
+      key = Util.intToBytes(k, key);
+      Assert.assertEquals(map2.getEstimate(key), map.getEstimate(key));
+    }
+    Assert.assertEquals(map2.toByteArray().length, bytes.length);
+
+    //the heapified map can still be updated
+    byte[] id = Util.longToBytes(-1L, new byte[8]);
+    key = Util.intToBytes(1, key);
+    Assert.assertEquals(map2.update(key, id), map.update(key, id));
+    key = Util.intToBytes(numKeys, key);
+    Assert.assertEquals(map2.update(key, id), map.update(key, id));
+  }
+
+  @Test
+  public void serializedBytesAreLittleEndian() {
+    final int numKeys = 300;
+    UniqueCountMap map = newMapOfAllLevels(numKeys, 0);
+    byte[] bytes = map.toByteArray();
+    Assert.assertEquals(bytes[4], 4); //the low byte of the key size comes first
+    UniqueCountMap map2 = UniqueCountMap.heapify(Memory.wrap(bytes, ByteOrder.BIG_ENDIAN));
+    Assert.assertEquals(map2.getActiveEntries(), numKeys);
+    byte[] key = new byte[4];
+    for (int k = 1; k <= numKeys; k++) {
+      key = Util.intToBytes(k, key);
+      Assert.assertEquals(map2.getEstimate(key), map.getEstimate(key));
+    }
+  }
+
+  @Test
+  public void serializeEmpty() {
+    UniqueCountMap map = new UniqueCountMap(INIT_ENTRIES, 4);
+    UniqueCountMap map2 = UniqueCountMap.heapify(Memory.wrap(map.toByteArray()));
+    Assert.assertEquals(map2.getActiveEntries(), 0);
+    Assert.assertFalse(map2.iterator().next());
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void heapifyWrongSerVer() {
+    byte[] bytes = new UniqueCountMap(INIT_ENTRIES, 4).toByteArray();
+    bytes[0] = 2;
+    UniqueCountMap.heapify(Memory.wrap(bytes));
+  }
+
+  @Test
+  public void mergeDisjointIdentifiers() {
+    final int numKeys = 300;
+    UniqueCountMap map1 = newMapOfAllLevels(numKeys, 0);
+    UniqueCountMap map2 = newMapOfAllLevels(numKeys, 100_000);
+    map1.merge(map2);
+    Assert.assertEquals(map1.getActiveEntries(), numKeys);
+    byte[] key = new byte[4];
+    for (int k = 1; k <= numKeys; k++) {
+      key = Util.intToBytes(k, key);
+      Assert.assertEquals(map1.getEstimate(key), 2 * k, 2 * k * 0.15);
+    }
+  }
+
+  @Test
+  public void mergeSameIdentifiersAndNewKeys() {
+    final int numKeys = 300;
+    UniqueCountMap map1 = newMapOfAllLevels(numKeys / 2, 0);
+    UniqueCountMap map2 = newMapOfAllLevels(numKeys, 0);
+    map1.merge(map2);
+    map1.merge(map1);
+    Assert.assertEquals(map1.getActiveEntries(), numKeys);
+    byte[] key = new byte[4];
+    for (int k = 1; k <= numKeys; k++) {
+      key = Util.intToBytes(k, key);
+      Assert.assertEquals(map1.getEstimate(key), k, k * 0.15);
+    }
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void boundedMemoryTooSmall() {
+    new UniqueCountMap(INIT_ENTRIES, 4, 1 << 20, EvictionPolicy.LRU, null);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void boundedMemoryNullPolicy() {
+    new UniqueCountMap(INIT_ENTRIES, 4, 1 << 22, null, null);
+  }
+
+  @Test
+  public void boundedMemorySpillsEvictedKeys() {
+    final long maxMemoryBytes = 1 << 22;
+    final int numKeys = 20_000;
+    final UniqueCountMap spilled = new UniqueCountMap(INIT_ENTRIES, 4);
+    final int[] numEvicted = new int[1];
+    final EvictionListener listener = (key, estimate, image) -> {
+      numEvicted[0]++;
+      UniqueCountMap evicted = UniqueCountMap.heapify(Memory.wrap(image));
+      Assert.assertEquals(evicted.getEstimate(key), estimate);
+      spilled.merge(evicted);
+    };
+    UniqueCountMap map = new UniqueCountMap(INIT_ENTRIES, 4, maxMemoryBytes, EvictionPolicy.LRU,
+        listener);
+    byte[] key = new byte[4];
+    byte[] id = new byte[8];
+    for (int k = 0; k < numKeys; k++) {
+      key = Util.intToBytes(k, key);
+      for (int v = 0; v <= (k % 300); v++) {
+        id = Util.longToBytes(hash(new long[]{v}, 0L)[0], id);
+        map.update(key, id);
+      }
+      Assert.assertTrue(map.getMemoryUsageBytes() <= maxMemoryBytes);
+    }
+    println(map.toString());
+    Assert.assertTrue(numEvicted[0] > 0);
+    Assert.assertEquals(map.getActiveEntries() + numEvicted[0], numKeys);
+    spilled.merge(map);
+    Assert.assertEquals(spilled.getActiveEntries(), numKeys);
+    for (int k = 0; k < numKeys; k++) {
+      key = Util.intToBytes(k, key);
+      final int expected = (k % 300) + 1;
+      Assert.assertEquals(spilled.getEstimate(key), expected, expected * 0.15);
+    }
+  }
+
+  @Test
+  public void boundedMemoryLruKeepsRecentKeys() {
+    final int numKeys = 300_000;
+    final int numRecentKeys = 1000;
+    UniqueCountMap map = new UniqueCountMap(INIT_ENTRIES, 4, 1 << 22, EvictionPolicy.LRU, null);
+    byte[] key = new byte[4];
+    for (int k = 0; k < numKeys; k++) {
+      key = Util.intToBytes(k, key);
+      map.update(key, key);
+    }
+    Assert.assertTrue(map.getActiveEntries() < numKeys);
+    Assert.assertTrue(map.getMemoryUsageBytes() <= (1 << 22));
+    int oldKeys = 0;
+    for (int k = 0; k < numRecentKeys; k++) {
+      if (map.getEstimate(Util.intToBytes(k, key)) > 0) { oldKeys++; }
+    }
+    Assert.assertTrue(oldKeys < (numRecentKeys / 50)); //sampled eviction may keep a few old keys
+    for (int k = numKeys - numRecentKeys; k < numKeys; k++) {
+      key = Util.intToBytes(k, key);
+      Assert.assertEquals(map.getEstimate(key), 1.0);
+    }
+  }
+
+  @Test
+  public void boundedMemoryLfuKeepsFrequentKeys() {
+    final int numHotKeys = 100;
+    final int numKeys = 300_000;
+    UniqueCountMap map = new UniqueCountMap(INIT_ENTRIES, 4, 1 << 22, EvictionPolicy.LFU, null);
+    byte[] key = new byte[4];
+    for (int i = 0; i < 1000; i++) {
+      for (int k = 0; k < numHotKeys; k++) {
+        key = Util.intToBytes(k, key);
+        map.update(key, key);
+      }
+    }
+    for (int k = numHotKeys; k < numKeys; k++) {
+      key = Util.intToBytes(k, key);
+      map.update(key, key);
+    }
+    Assert.assertTrue(map.getActiveEntries() < numKeys);
+    for (int k = 0; k < numHotKeys; k++) {
+      key = Util.intToBytes(k, key);
+      Assert.assertEquals(map.getEstimate(key), 1.0);
+    }
+  }
+
+  @Test
+  public void boundedMemoryMergeTouchesEachKeyOnce() {
+    final int numKeys = 300;
+    UniqueCountMap map = new UniqueCountMap(INIT_ENTRIES, 4, 1 << 22, EvictionPolicy.LFU, null);
+    map.merge(newMapOfAllLevels(numKeys, 0));
+    Assert.assertEquals(map.getClock(), numKeys);
+    map.merge(newMapOfAllLevels(numKeys, numKeys));
+    Assert.assertEquals(map.getClock(), 2 * numKeys);
+    Assert.assertEquals(map.getActiveEntries(), numKeys);
+  }
+
+  //key k gets k identifiers, so all levels are used
+  private static UniqueCountMap newMapOfAllLevels(final int numKeys, final int firstId) {
+    UniqueCountMap map = new UniqueCountMap(INIT_ENTRIES, 4);
+    byte[] key = new byte[4];
+    byte[] id = new byte[8];
+    for (int k = 1; k <= numKeys; k++) {
+      key = Util.intToBytes(k, key);
+      for (int v = 1; v <= k; v++) {
+        id = Util.longToBytes(hash(new long[]{firstId + v}, 0L)[0], id);
+        map.update(key, id);
+      }
+    }
+    return map;
+  }
+
   @Test
   public void printlnTest() {
     println("PRINTING: "+this.getClass().getName());
@@ -21,7 +21,10 @@ package org.apache.datasketches.theta;
 
 import static org.testng.Assert.assertEquals;
 
+import java.util.Arrays;
+
 import org.apache.datasketches.common.Util;
+import org.apache.datasketches.memory.WritableMemory;
 import org.testng.annotations.Test;
 
 public class BitPackingTest {
@@ -91,6 +94,60 @@ public class BitPackingTest {
     }
   }
 
+  @Test
+  public void packUnpackDeltas() {
+    long value = 0xaa55aa55aa55aa55L; // arbitrary starting value
+    final int[] counts = {0, 1, 7, 8, 9, 127, 128, 129, 255, 1000};
+    for (int bits = 1; bits <= 63; bits++) {
+      final long mask = (1L << bits) - 1;
+      for (int count : counts) {
+        // ascending values whose deltas fit in the given bits
+        long[] input = new long[count];
+        long previous = 0;
+        for (int i = 0; i < count; ++i) {
+          final long delta = Math.min(value & mask, (Long.MAX_VALUE - previous) / (count + 1));
+          previous += delta;
+          input[i] = previous;
+          value += Util.INVERSE_GOLDEN_U64;
+        }
+        final int size = (int) (((long) count * bits + 7) >>> 3);
+        final byte[] bytes = new byte[size + 3];
+        final WritableMemory wmem = WritableMemory.writableWrap(bytes);
+        assertEquals(BitPacking.packDeltas(input, count, bits, wmem, 3), size);
+        assertEquals(Arrays.copyOfRange(bytes, 3, bytes.length), packDeltasByBlock8(input, bits, size));
+
+        long[] output = new long[count];
+        BitPacking.unpackDeltas(output, count, bits, wmem, 3);
+        assertEquals(output, input);
+      }
+    }
+  }
+
+  // the layout written by the 8-value block codecs
+  private static byte[] packDeltasByBlock8(final long[] values, final int bits, final int size) {
+    final byte[] bytes = new byte[size];
+    final long[] deltas = new long[8];
+    long previous = 0;
+    int offsetBytes = 0;
+    int i;
+    for (i = 0; i + 7 < values.length; i += 8) {
+      for (int j = 0; j < 8; j++) {
+        deltas[j] = values[i + j] - previous;
+        previous = values[i + j];
+      }
+      BitPacking.packBitsBlock8(deltas, 0, bytes, offsetBytes, bits);
+      offsetBytes += bits;
+    }
+    int offsetBits = 0;
+    for (; i < values.length; i++) {
+      BitPacking.packBits(values[i] - previous, bits, bytes, offsetBytes, offsetBits);
+      previous = values[i];
+      offsetBytes += (offsetBits + bits) >>> 3;
+      offsetBits = (offsetBits + bits) & 7;
+    }
+    return bytes;
+  }
+
   void hexDump(byte[] bytes) {
     for (int i = 0; i < bytes.length; i++) {
       System.out.print(String.format("%02x ", bytes[i]));
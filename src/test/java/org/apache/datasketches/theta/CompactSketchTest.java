@@ -30,6 +30,7 @@ import org.apache.datasketches.common.Family;
 import org.apache.datasketches.common.SketchesArgumentException;
 import org.apache.datasketches.memory.Memory;
 import org.apache.datasketches.memory.WritableMemory;
+import org.apache.datasketches.thetacommon.ThetaUtil;
 import org.testng.annotations.Test;
 
 import jdk.incubator.foreign.ResourceScope;
@@ -587,6 +588,99 @@ public class CompactSketchTest {
     }
   }
 
+  @Test
+  public void checkWrapCompressedV4() {
+    final int[] nArr = {2, 9, 17, 1000, 4096, 10000, 100000};
+    for (int n : nArr) {
+      UpdateSketch sk = Sketches.updateSketchBuilder().build();
+      for (int i = 0; i < n; i++) { sk.update(i); }
+      checkWrapCompressed(sk.compact());
+    }
+    //estimation mode with a single retained entry
+    UpdateSketch sk = Sketches.updateSketchBuilder().setP(0.001f).build();
+    for (int i = 0; sk.getRetainedEntries() == 0; i++) { sk.update(i); }
+    assertTrue(sk.isEstimationMode());
+    checkWrapCompressed(sk.compact());
+  }
+
+  private static void checkWrapCompressed(final CompactSketch csk) {
+    final byte[] bytes = csk.toByteArrayCompressed();
+    final Memory mem = Memory.wrap(bytes);
+    assertEquals(Sketches.getSerializationVersion(mem), 4);
+    final CompactSketch heap = CompactSketch.heapify(mem);
+    final CompactSketch wrapped = CompactSketch.wrap(mem, ThetaUtil.DEFAULT_UPDATE_SEED);
+    assertTrue(wrapped instanceof DirectCompactCompressedSketch);
+    assertTrue(wrapped.hasMemory());
+    assertTrue(wrapped.isOrdered());
+    assertEquals(wrapped.isEmpty(), heap.isEmpty());
+    assertEquals(wrapped.getRetainedEntries(), heap.getRetainedEntries());
+    assertEquals(wrapped.getThetaLong(), heap.getThetaLong());
+    assertEquals(wrapped.getEstimate(), heap.getEstimate());
+    assertEquals(wrapped.getLowerBound(2), heap.getLowerBound(2));
+    assertEquals(wrapped.getUpperBound(2), heap.getUpperBound(2));
+    assertEquals(wrapped.isEstimationMode(), heap.isEstimationMode());
+    assertEquals(Sketches.getEstimate(mem), heap.getEstimate());
+    assertEquals(Sketches.getLowerBound(1, mem), heap.getLowerBound(1));
+    assertEquals(Sketches.getUpperBound(1, mem), heap.getUpperBound(1));
+    assertEquals(wrapped.getCache(), heap.getCache());
+    final HashIterator it = wrapped.iterator();
+    for (long hash : csk.getCache()) {
+      assertTrue(it.next());
+      assertEquals(it.get(), hash);
+    }
+    assertFalse(it.next());
+    assertFalse(it.next());
+    assertEquals(wrapped.toByteArray(), csk.toByteArray());
+    assertEquals(wrapped.getCurrentBytes(), csk.toByteArray().length);
+    assertEquals(wrapped.toByteArrayCompressed(), bytes);
+    assertEquals(wrapped.compact(true, null).toByteArray(), csk.toByteArray());
+    final WritableMemory wmem = WritableMemory.allocate(wrapped.getCompactBytes());
+    assertEquals(wrapped.compact(false, wmem).getEstimate(), heap.getEstimate());
+  }
+
+  @Test
+  public void checkWrapCompressedV4SetOperations() {
+    final int[][] ranges = {{0, 100_000}, {50_000, 150_000}, {0, 3000}, {90_000, 90_500}, {0, 20}};
+    final CompactSketch[] heaps = new CompactSketch[ranges.length];
+    final CompactSketch[] wrapped = new CompactSketch[ranges.length];
+    for (int i = 0; i < ranges.length; i++) {
+      final UpdateSketch sk = Sketches.updateSketchBuilder().build();
+      for (int j = ranges[i][0]; j < ranges[i][1]; j++) { sk.update(j); }
+      heaps[i] = sk.compact();
+      wrapped[i] = CompactSketch.wrap(Memory.wrap(heaps[i].toByteArrayCompressed()));
+    }
+    final SetOperationBuilder bldr = SetOperation.builder().setNominalEntries(1 << 11);
+    for (int i = 0; i < ranges.length; i++) {
+      for (int j = 0; j < ranges.length; j++) {
+        //union, one at a time and stateless
+        final Union u1 = bldr.buildUnion();
+        u1.union(heaps[i]);
+        u1.union(heaps[j]);
+        final byte[] expected = u1.getResult().toByteArray();
+        final Union u2 = bldr.buildUnion();
+        u2.union(wrapped[i]);
+        u2.union(Memory.wrap(wrapped[j].toByteArrayCompressed()));
+        assertEquals(u2.getResult().toByteArray(), expected);
+        assertEquals(bldr.buildUnion().union(wrapped[i], heaps[j]).toByteArray(), expected);
+        assertEquals(bldr.buildUnion().union(wrapped[i], wrapped[j]).toByteArray(), expected);
+
+        //intersection, one at a time and stateless
+        final Intersection i1 = bldr.buildIntersection();
+        i1.intersect(heaps[i]);
+        i1.intersect(heaps[j]);
+        final byte[] expectedInter = i1.getResult().toByteArray();
+        final Intersection i2 = bldr.buildIntersection();
+        i2.intersect(heaps[i]);
+        i2.intersect(wrapped[j]);
+        assertEquals(i2.getResult().toByteArray(), expectedInter);
+        final Intersection i3 = bldr.buildIntersection();
+        assertEquals(i3.intersect(wrapped[i], heaps[j]).toByteArray(), expectedInter);
+        assertEquals(i3.intersect(heaps[i], wrapped[j]).toByteArray(), expectedInter);
+        assertEquals(i3.intersect(wrapped[i], wrapped[j]).toByteArray(), expectedInter);
+      }
+    }
+  }
+
   private static class State {
     String classType = null;
     int count = 0;
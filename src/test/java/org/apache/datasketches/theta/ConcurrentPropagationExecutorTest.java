@@ -0,0 +1,268 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.theta;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.datasketches.memory.WritableMemory;
+import org.testng.annotations.Test;
+
+public class ConcurrentPropagationExecutorTest {
+
+  @Test
+  public void checkHeapSharedSketchWithCallerExecutor() throws Exception {
+    checkSharedSketchWithCallerExecutor(false);
+  }
+
+  @Test
+  public void checkDirectSharedSketchWithCallerExecutor() throws Exception {
+    checkSharedSketchWithCallerExecutor(true);
+  }
+
+  private static void checkSharedSketchWithCallerExecutor(final boolean direct) throws Exception {
+    final int lgK = 12;
+    final int numThreads = 4;
+    final int u = 1 << 16;
+    final ExecutorService pool = Executors.newFixedThreadPool(2);
+    final ConcurrentPropagationExecutor propExec = new ConcurrentPropagationExecutor(pool);
+    try {
+      final UpdateSketchBuilder bldr = new UpdateSketchBuilder()
+          .setLogNominalEntries(lgK).setPropagationExecutor(propExec);
+      assertSame(bldr.getPropagationExecutor(), propExec);
+      final WritableMemory wmem = direct
+          ? WritableMemory.allocate(Sketch.getMaxUpdateSketchBytes(1 << lgK)) : null;
+      final UpdateSketch shared = bldr.buildShared(wmem);
+
+      final Thread[] threads = new Thread[numThreads];
+      for (int t = 0; t < numThreads; t++) {
+        final int offset = t * u;
+        threads[t] = new Thread(() -> {
+          final UpdateSketch local = bldr.buildLocal(shared);
+          for (int i = 0; i < u; i++) { local.update(offset + i); }
+        });
+        threads[t].start();
+      }
+      for (final Thread thread : threads) { thread.join(); }
+      ((ConcurrentSharedThetaSketch) shared).awaitBgPropagationTermination();
+
+      //the caller's executor is still usable after the sketch awaited its own propagations
+      assertFalse(pool.isShutdown());
+      assertEquals(propExec.getQueueDepth(), 0);
+      assertEquals(propExec.getActiveCount(), 0);
+      assertTrue(propExec.getCompletedCount() > 0);
+      assertTrue(propExec.getMaxLatencyNanos() > 0);
+      assertTrue(propExec.getTotalLatencyNanos() >= propExec.getMaxLatencyNanos());
+      assertTrue(propExec.getMeanLatencyNanos() > 0);
+
+      final double est = shared.getEstimate();
+      final double n = (double) numThreads * u;
+      assertEquals(est, n, n * 0.05);
+
+      //reset advances the epoch without shutting down the caller's executor
+      shared.reset();
+      assertTrue(shared.isEmpty());
+      assertFalse(pool.isShutdown());
+      final UpdateSketch local = bldr.buildLocal(shared);
+      for (int i = 0; i < u; i++) { local.update(i); }
+      ((ConcurrentSharedThetaSketch) shared).awaitBgPropagationTermination();
+      assertEquals(shared.getEstimate(), u, u * 0.05);
+
+      propExec.resetLatencyMetrics();
+      assertEquals(propExec.getCompletedCount(), 0);
+      assertEquals(propExec.getMeanLatencyNanos(), 0.0);
+      assertEquals(propExec.getMaxLatencyNanos(), 0);
+    } finally {
+      pool.shutdown();
+      assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+    }
+  }
+
+  @Test
+  public void checkHeapExactModeWithThreadPool() throws Exception {
+    checkExactModeWithThreadPool(false);
+  }
+
+  @Test
+  public void checkDirectExactModeWithThreadPool() throws Exception {
+    checkExactModeWithThreadPool(true);
+  }
+
+  //Many background propagations of one sketch are in flight at once on a multi-thread pool.
+  //They must still be applied one at a time, or entries are lost or duplicated.
+  private static void checkExactModeWithThreadPool(final boolean direct) throws Exception {
+    final int lgK = 12;
+    final int numThreads = 8;
+    final int numItems = 4000; //< k, so the shared sketch keeps every entry
+    final ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+    //counts the tasks running at once, and sleeps inside each one to widen any overlap
+    final AtomicLong running = new AtomicLong();
+    final AtomicLong maxRunning = new AtomicLong();
+    final Executor probe = task -> pool.execute(() -> {
+      maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+      try {
+        Thread.sleep(1);
+        task.run();
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        running.decrementAndGet();
+      }
+    });
+    try {
+      for (int trial = 0; trial < 5; trial++) {
+        //a nonzero error lowers the limit above which hashes propagate in the background
+        final UpdateSketchBuilder bldr = new UpdateSketchBuilder()
+            .setLogNominalEntries(lgK).setPropagationExecutor(probe);
+        bldr.setMaxConcurrencyError(0.1);
+        final WritableMemory wmem = direct
+            ? WritableMemory.allocate(Sketch.getMaxUpdateSketchBytes(1 << lgK)) : null;
+        final UpdateSketch shared = bldr.buildShared(wmem);
+
+        final Thread[] threads = new Thread[numThreads];
+        for (int t = 0; t < numThreads; t++) {
+          final int offset = t * (numItems / numThreads);
+          threads[t] = new Thread(() -> {
+            final UpdateSketch local = bldr.buildLocal(shared);
+            //each thread also repeats half of the items of the next thread
+            for (int i = 0; i < ((numItems * 3) / (numThreads * 2)); i++) {
+              local.update((offset + i) % numItems);
+            }
+          });
+          threads[t].start();
+        }
+        for (final Thread thread : threads) { thread.join(); }
+        ((ConcurrentSharedThetaSketch) shared).awaitBgPropagationTermination();
+
+        assertEquals(maxRunning.get(), 1);
+        assertEquals(shared.getTheta(), 1.0); //no entry was sampled away
+        assertEquals(shared.getRetainedEntries(true), numItems);
+        assertEquals(shared.getEstimate(), numItems);
+        assertEquals(shared.compact().getRetainedEntries(), numItems);
+      }
+    } finally {
+      pool.shutdown();
+      assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+    }
+  }
+
+  @Test
+  public void checkWrapping() {
+    final UpdateSketchBuilder bldr = new UpdateSketchBuilder();
+    assertNull(bldr.getPropagationExecutor());
+    bldr.setPropagationExecutor(Runnable::run);
+    final ConcurrentPropagationExecutor propExec = bldr.getPropagationExecutor();
+    assertTrue(propExec != null);
+    bldr.setPropagationExecutor(propExec);
+    assertSame(bldr.getPropagationExecutor(), propExec);
+    bldr.setPropagationExecutor(null);
+    assertNull(bldr.getPropagationExecutor());
+    println(bldr.toString());
+  }
+
+  @Test
+  public void checkPendingCountAndRejection() {
+    final ConcurrentPropagationExecutor propExec = new ConcurrentPropagationExecutor(Runnable::run);
+    final ConcurrentPropagationExecutor.SerialQueue queue = new ConcurrentPropagationExecutor.SerialQueue();
+    propExec.execute(() -> assertEquals(queue.getPending(), 1), queue);
+    assertEquals(queue.getPending(), 0);
+    assertEquals(propExec.getCompletedCount(), 1);
+    ConcurrentPropagationExecutor.awaitPending(queue);
+
+    final ConcurrentPropagationExecutor rejecting = new ConcurrentPropagationExecutor(task -> {
+      throw new RejectedExecutionException();
+    });
+    try {
+      rejecting.execute(() -> { }, queue);
+      fail();
+    } catch (final RejectedExecutionException e) {
+      //expected
+    }
+    assertEquals(queue.getPending(), 0);
+    assertEquals(rejecting.getQueueDepth(), 0);
+    assertEquals(rejecting.getCompletedCount(), 0);
+    //the queue is still usable after a rejection
+    propExec.execute(() -> { }, queue);
+    assertEquals(queue.getPending(), 0);
+    println(rejecting.toString());
+  }
+
+  @Test
+  public void checkSerialQueueRunsOneTaskAtATime() throws Exception {
+    final int numTasks = 10_000;
+    final ExecutorService pool = Executors.newFixedThreadPool(8);
+    final ConcurrentPropagationExecutor propExec = new ConcurrentPropagationExecutor(pool);
+    final ConcurrentPropagationExecutor.SerialQueue queue = new ConcurrentPropagationExecutor.SerialQueue();
+    final AtomicLong running = new AtomicLong();
+    final AtomicLong maxRunning = new AtomicLong();
+    final long[] count = new long[1]; //not synchronized, so any overlap loses increments
+    try {
+      final Thread[] threads = new Thread[4];
+      for (int t = 0; t < threads.length; t++) {
+        threads[t] = new Thread(() -> {
+          for (int i = 0; i < (numTasks / threads.length); i++) {
+            propExec.execute(() -> {
+              maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+              count[0]++;
+              running.decrementAndGet();
+            }, queue);
+          }
+        });
+        threads[t].start();
+      }
+      for (final Thread thread : threads) { thread.join(); }
+      ConcurrentPropagationExecutor.awaitPending(queue);
+      assertEquals(maxRunning.get(), 1);
+      assertEquals(count[0], numTasks);
+      assertEquals(propExec.getCompletedCount(), numTasks);
+    } finally {
+      pool.shutdown();
+      assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+    }
+  }
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void checkNullExecutor() {
+    new ConcurrentPropagationExecutor(null);
+  }
+
+  @Test
+  public void printlnTest() {
+    println("PRINTING: " + this.getClass().getName());
+  }
+
+  /**
+   * @param s value to print
+   */
+  static void println(final String s) {
+    //System.out.println(s); //disable here
+  }
+}
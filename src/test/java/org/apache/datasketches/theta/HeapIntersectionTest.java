@@ -27,6 +27,8 @@ import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
+import java.util.Random;
+
 import org.apache.datasketches.common.Family;
 import org.apache.datasketches.common.SketchesArgumentException;
 import org.apache.datasketches.common.SketchesStateException;
@@ -518,6 +520,38 @@ public class HeapIntersectionTest {
     assertEquals(csk.getCompactBytes(), 8);
   }
 
+  @Test
+  public void checkOrderedCompactFastPathMatchesIntersect() {
+    final Random rand = new Random(5);
+    for (int trial = 0; trial < 400; trial++) {
+      final Sketch a = randomOrderedSketch(rand, trial);
+      final Sketch b = (trial % 17 == 0) ? a : randomOrderedSketch(rand, trial + 1);
+      final Intersection inter = SetOperation.builder().buildIntersection();
+      inter.intersect(a);
+      inter.intersect(b);
+      final byte[] expected = inter.getResult(true, null).toByteArray();
+      inter.reset();
+      assertEquals(inter.intersect(a, b).toByteArray(), expected);
+      assertEquals(inter.intersect(b, a).toByteArray(), expected);
+      assertFalse(inter.hasResult());
+      final int bytes = Intersection.getMaxIntersectionBytes(1 << 12);
+      final Intersection directInter =
+          SetOperation.builder().buildIntersection(WritableMemory.allocate(bytes));
+      assertEquals(directInter.intersect(a, b).toByteArray(), expected);
+    }
+  }
+
+  private static Sketch randomOrderedSketch(final Random rand, final int trial) {
+    final float p = (rand.nextInt(5) == 0) ? 0.2f : 1.0f;
+    final UpdateSketch sk = UpdateSketch.builder().setP(p).setNominalEntries(1 << 10).build();
+    //sizes range from empty to well into estimation mode so both galloping and merging are used
+    final int n = (rand.nextInt(4) == 0) ? rand.nextInt(3) : 1 << rand.nextInt(14);
+    final int base = rand.nextInt(1 << 12);
+    for (int i = 0; i < n; i++) { sk.update(base + i); }
+    final CompactSketch csk = sk.compact();
+    return ((trial & 1) == 0) ? csk : Sketch.wrap(Memory.wrap(csk.toByteArray()));
+  }
+
   @Test
   public void printlnTest() {
     println("PRINTING: "+this.getClass().getName());
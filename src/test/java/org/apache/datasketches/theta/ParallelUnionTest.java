@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.theta;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.datasketches.common.SketchesArgumentException;
+import org.apache.datasketches.memory.Memory;
+import org.testng.annotations.Test;
+
+public class ParallelUnionTest {
+
+  @Test
+  public void checkMatchesSequentialUnion() {
+    final List<Sketch> sketches = createSketches(500, 1 << 9, 42);
+    final SetOperationBuilder bldr = SetOperation.builder().setNominalEntries(1 << 10);
+    final CompactSketch expected = sequentialUnion(bldr, sketches);
+    assertTrue(expected.isEstimationMode());
+
+    final ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      for (final int batchSize : new int[] {0, 1, 3, 64, 1000}) {
+        final ParallelUnion pu = new ParallelUnion(bldr, pool, batchSize);
+        assertEquals(pu.union(sketches).toByteArray(), expected.toByteArray());
+        assertEquals(pu.union(sketches.stream()).toByteArray(), expected.toByteArray());
+      }
+    } finally {
+      pool.shutdown();
+    }
+    final ParallelUnion pu = new ParallelUnion(bldr);
+    assertEquals(pu.union(sketches).toByteArray(), expected.toByteArray());
+    Collections.shuffle(sketches, new Random(7));
+    assertEquals(pu.union(sketches).toByteArray(), expected.toByteArray());
+  }
+
+  @Test
+  public void checkMemoryImages() {
+    final List<Sketch> sketches = createSketches(200, 1 << 8, 11);
+    final List<Memory> images = new ArrayList<>();
+    for (int i = 0; i < sketches.size(); i++) {
+      final Sketch sk = sketches.get(i);
+      switch (i % 3) {
+        case 0: images.add(Memory.wrap(sk.toByteArray())); break;
+        case 1: images.add(Memory.wrap(sk.compact(false, null).toByteArray())); break;
+        default: images.add(Memory.wrap(sk.compact().toByteArrayCompressed())); break;
+      }
+    }
+    final SetOperationBuilder bldr = SetOperation.builder().setNominalEntries(1 << 9);
+    final CompactSketch expected = sequentialUnion(bldr, sketches);
+    final ParallelUnion pu = new ParallelUnion(bldr, ForkJoinPool.commonPool(), 5);
+    assertEquals(pu.unionMemory(images).toByteArray(), expected.toByteArray());
+    assertEquals(pu.unionMemory(images.stream()).toByteArray(), expected.toByteArray());
+  }
+
+  @Test
+  public void checkSamplingAndEmptyInputs() {
+    final List<Sketch> sketches = createSketches(50, 1 << 6, 3);
+    sketches.add(null);
+    sketches.add(UpdateSketch.builder().build());
+    sketches.add(UpdateSketch.builder().build().compact());
+    final SetOperationBuilder bldr = SetOperation.builder().setNominalEntries(1 << 12).setP(0.5f);
+    final CompactSketch expected = sequentialUnion(bldr, sketches);
+    final ParallelUnion pu = new ParallelUnion(bldr, ForkJoinPool.commonPool(), 2);
+    assertEquals(pu.union(sketches).toByteArray(), expected.toByteArray());
+
+    final List<Sketch> empties = new ArrayList<>();
+    empties.add(null);
+    empties.add(UpdateSketch.builder().build());
+    final CompactSketch emptyResult = pu.union(empties);
+    assertTrue(emptyResult.isEmpty());
+    assertEquals(emptyResult.toByteArray(), sequentialUnion(bldr, empties).toByteArray());
+    assertTrue(pu.union(new ArrayList<Sketch>()).isEmpty());
+  }
+
+  @Test
+  public void checkBatchSize() {
+    final ForkJoinPool pool = new ForkJoinPool(2);
+    try {
+      final ParallelUnion auto = new ParallelUnion(SetOperation.builder(), pool, 0);
+      assertEquals(auto.getBatchSize(0), 1);
+      assertEquals(auto.getBatchSize(8), 1);
+      assertEquals(auto.getBatchSize(1000), 125);
+      final ParallelUnion fixed = new ParallelUnion(SetOperation.builder(), pool, 16);
+      assertEquals(fixed.getBatchSize(1000), 16);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void checkBadArgs() {
+    final SetOperationBuilder bldr = SetOperation.builder();
+    try { new ParallelUnion(null); fail(); } catch (final NullPointerException e) { }
+    try { new ParallelUnion(bldr, null, 0); fail(); } catch (final NullPointerException e) { }
+    try {
+      new ParallelUnion(bldr, ForkJoinPool.commonPool(), -1);
+      fail();
+    } catch (final SketchesArgumentException e) { }
+    final ParallelUnion pu = new ParallelUnion(bldr);
+    try { pu.union((List<Sketch>) null); fail(); } catch (final NullPointerException e) { }
+    try { pu.unionMemory((List<Memory>) null); fail(); } catch (final NullPointerException e) { }
+  }
+
+  private static List<Sketch> createSketches(final int numSketches, final int lgItems,
+      final long seed) {
+    final Random rand = new Random(seed);
+    final List<Sketch> sketches = new ArrayList<>();
+    for (int i = 0; i < numSketches; i++) {
+      final UpdateSketch sk = UpdateSketch.builder().setNominalEntries(1 << 8).build();
+      final int n = rand.nextInt(lgItems);
+      final long base = rand.nextInt(1 << 20);
+      for (int j = 0; j < n; j++) { sk.update(base + j); }
+      sketches.add((i & 1) == 0 ? sk : sk.compact());
+    }
+    return sketches;
+  }
+
+  private static CompactSketch sequentialUnion(final SetOperationBuilder bldr,
+      final List<Sketch> sketches) {
+    final Union union = bldr.buildUnion();
+    for (final Sketch sk : sketches) { union.union(sk); }
+    return union.getResult();
+  }
+
+  @Test
+  public void printlnTest() {
+    println("PRINTING: " + this.getClass().getName());
+  }
+
+  /**
+   * @param s value to print
+   */
+  static void println(final String s) {
+    //System.out.println(s); //disable here
+  }
+}
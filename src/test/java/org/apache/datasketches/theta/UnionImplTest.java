@@ -26,6 +26,10 @@ import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
 
 import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
 
 import org.apache.datasketches.common.SketchesArgumentException;
 import org.apache.datasketches.memory.DefaultMemoryRequestServer;
@@ -300,6 +304,71 @@ public class UnionImplTest {
     //println(csk.toString(true, true, 1, true));
   }
 
+  @Test
+  public void checkOrderedMergeMatchesUnion() {
+    final Random rand = new Random(1);
+    for (int trial = 0; trial < 500; trial++) {
+      final int lgK = 4 + rand.nextInt(6);
+      final float p = (trial % 5 == 0) ? 0.5f : 1.0f;
+      final List<Sketch> sketches = new ArrayList<>();
+      final int numSketches = rand.nextInt(8);
+      for (int i = 0; i < numSketches; i++) {
+        final float skP = (rand.nextInt(4) == 0) ? 0.1f : 1.0f;
+        final UpdateSketch sk = UpdateSketch.builder().setP(skP)
+            .setNominalEntries(1 << (4 + rand.nextInt(6))).build();
+        final int n = rand.nextInt(3) == 0 ? rand.nextInt(3) : rand.nextInt(2000);
+        final long base = rand.nextInt(1000);
+        for (int j = 0; j < n; j++) { sk.update(base + j); }
+        switch (rand.nextInt(4)) {
+          case 0: sketches.add(sk.compact()); break;
+          case 1: sketches.add(Sketch.wrap(Memory.wrap(sk.compact().toByteArray()))); break;
+          case 2: sketches.add(null); break;
+          default: sketches.add(sk.compact(true, WritableMemory.allocate(sk.getCompactBytes()))); break;
+        }
+      }
+      final Union union = SetOperation.builder().setNominalEntries(1 << lgK).setP(p).buildUnion();
+      for (final Sketch sk : sketches) { union.union(sk); }
+      final CompactSketch expected = union.getResult();
+      final byte[] expectedDirect =
+          union.getResult(true, WritableMemory.allocate(union.getMaxUnionBytes())).toByteArray();
+      union.reset();
+      union.update(-1L); //stateless: prior state must not leak into the result
+      final CompactSketch merged = union.union(sketches, true, null);
+      assertEquals(merged.toByteArray(), expected.toByteArray());
+      assertTrue(merged.isOrdered());
+      final WritableMemory dst = WritableMemory.allocate(union.getMaxUnionBytes());
+      assertEquals(union.union(sketches, true, dst).toByteArray(), expectedDirect);
+      assertTrue(union.getResult().isEmpty());
+      if (sketches.size() == 2) {
+        assertEquals(union.union(sketches.get(0), sketches.get(1)).toByteArray(), expected.toByteArray());
+      }
+    }
+  }
+
+  @Test
+  public void checkUnorderedInputsUseUnion() {
+    final UpdateSketch skA = UpdateSketch.builder().build();
+    final UpdateSketch skB = UpdateSketch.builder().build();
+    for (int i = 0; i < 10000; i++) { skA.update(i); skB.update(i + 5000); }
+    final List<Sketch> sketches = Arrays.asList(skA, skB.compact(false, null), skB.compact());
+    final Union union = SetOperation.builder().buildUnion();
+    for (final Sketch sk : sketches) { union.union(sk); }
+    final CompactSketch expected = union.getResult();
+    union.reset();
+    assertEquals(union.union(sketches, true, null).toByteArray(), expected.toByteArray());
+    final CompactSketch unordered = union.union(sketches, false, null);
+    assertFalse(unordered.isOrdered());
+    assertEquals(unordered.getEstimate(), expected.getEstimate());
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkOrderedMergeSeedHash() {
+    final UpdateSketch sk = UpdateSketch.builder().setSeed(123).build();
+    sk.update(1L);
+    sk.update(2L);
+    SetOperation.builder().buildUnion().union(Arrays.asList(sk.compact()), true, null);
+  }
+
   @Test
   public void printlnTest() {
     println("PRINTING: "+this.getClass().getName());
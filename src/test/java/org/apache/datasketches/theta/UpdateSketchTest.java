@@ -35,6 +35,7 @@ import java.nio.ByteBuffer;
 import org.apache.datasketches.common.Family;
 import org.apache.datasketches.common.ResizeFactor;
 import org.apache.datasketches.common.SketchesArgumentException;
+import org.apache.datasketches.hash.MurmurHash3;
 import org.apache.datasketches.memory.DefaultMemoryRequestServer;
 import org.apache.datasketches.memory.MemoryRequestServer;
 import org.apache.datasketches.memory.WritableMemory;
@@ -226,6 +227,134 @@ public class UpdateSketchTest {
     assertTrue(cskwmem1.equalTo(cskwmem3));
   }
 
+  @Test
+  public void checkUpdateAllLongsMatchesUpdate() {
+    final int n = 100_000;
+    final long[] items = new long[n + 10];
+    for (int i = 0; i < items.length; i++) { items[i] = i * 31L - 5000; }
+    for (final Family fam : new Family[] {Family.QUICKSELECT, Family.ALPHA}) {
+      for (final float p : new float[] {1.0f, 0.5f}) {
+        final UpdateSketchBuilder bldr = UpdateSketch.builder().setFamily(fam).setP(p).setNominalEntries(1024);
+        final UpdateSketch scalar = bldr.build();
+        for (int i = 5; i < n + 5; i++) { scalar.update(items[i]); }
+        final UpdateSketch batch = bldr.build();
+        final int[] counts = batch.updateAll(items, 5, n);
+        checkSameSketch(batch, scalar);
+        assertEquals(sum(counts), n);
+      }
+    }
+    //direct
+    final UpdateSketchBuilder bldr = UpdateSketch.builder().setNominalEntries(1024);
+    final UpdateSketch scalar = bldr.build(WritableMemory.allocate(Sketch.getMaxUpdateSketchBytes(1024)));
+    for (int i = 0; i < n; i++) { scalar.update(items[i]); }
+    final UpdateSketch batch = bldr.build(WritableMemory.allocate(Sketch.getMaxUpdateSketchBytes(1024)));
+    final int[] counts = batch.updateAll(items, 0, n);
+    checkSameSketch(batch, scalar);
+    assertEquals(sum(counts), n);
+    assertTrue(counts[UpdateReturnState.RejectedOverTheta.ordinal()] > 0);
+    assertTrue(counts[UpdateReturnState.InsertedCountIncrementedRebuilt.ordinal()] > 0);
+  }
+
+  @Test
+  public void checkUpdateAllReturnStateCounts() {
+    final UpdateSketch sk = UpdateSketch.builder().setNominalEntries(16).build();
+    final long[] items = {1, 2, 3, 1, 2, 3};
+    final int[] counts = sk.updateAll(items, 0, items.length);
+    assertEquals(counts.length, UpdateReturnState.values().length);
+    assertEquals(counts[UpdateReturnState.InsertedCountIncremented.ordinal()]
+        + counts[UpdateReturnState.InsertedCountIncrementedResized.ordinal()], 3);
+    assertEquals(counts[UpdateReturnState.RejectedDuplicate.ordinal()], 3);
+    assertEquals(sk.getRetainedEntries(true), 3);
+
+    final UpdateSketch empty = UpdateSketch.builder().build();
+    assertEquals(sum(empty.updateAll(items, 2, 0)), 0);
+    assertTrue(empty.isEmpty());
+
+    //p sampling rejects everything, but the sketch is no longer empty
+    final UpdateSketch sampled = UpdateSketch.builder().setP(0.001f).build();
+    final UpdateSketch sampledScalar = UpdateSketch.builder().setP(0.001f).build();
+    sampled.updateAll(new long[] {1}, 0, 1);
+    sampledScalar.update(1L);
+    assertEquals(sampled.isEmpty(), sampledScalar.isEmpty());
+  }
+
+  @Test
+  public void checkUpdateAllDoublesAndStrings() {
+    final double[] doubles = {1.5, 0.0, -0.0, Double.NaN, Double.longBitsToDouble(0x7ff8000000000001L),
+        Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, -2.25};
+    final UpdateSketch scalarD = UpdateSketch.builder().build();
+    for (final double d : doubles) { scalarD.update(d); }
+    final UpdateSketch batchD = UpdateSketch.builder().build();
+    batchD.updateAll(doubles, 0, doubles.length);
+    checkSameSketch(batchD, scalarD);
+    assertEquals(batchD.getRetainedEntries(true), 6);
+
+    final String[] strings = new String[1000];
+    for (int i = 0; i < strings.length; i++) { strings[i] = (i % 10 == 0) ? null : "item" + i; }
+    strings[1] = "";
+    final UpdateSketch scalarS = UpdateSketch.builder().setNominalEntries(64).build();
+    for (final String str : strings) { scalarS.update(str); }
+    final UpdateSketch batchS = UpdateSketch.builder().setNominalEntries(64).build();
+    final int[] counts = batchS.updateAll(strings, 0, strings.length);
+    checkSameSketch(batchS, scalarS);
+    assertEquals(counts[UpdateReturnState.RejectedNullOrEmpty.ordinal()], 101);
+    assertEquals(sum(counts), strings.length);
+  }
+
+  @Test
+  public void checkUpdateAllBadArgs() {
+    final UpdateSketch sk = UpdateSketch.builder().build();
+    try { sk.updateAll(new long[4], 2, 3); fail(); } catch (final SketchesArgumentException e) { }
+    try { sk.updateAll(new double[4], -1, 2); fail(); } catch (final SketchesArgumentException e) { }
+    try { sk.updateAll(new String[4], 0, 5); fail(); } catch (final SketchesArgumentException e) { }
+    try { sk.updateAll((long[]) null, 0, 0); fail(); } catch (final NullPointerException e) { }
+  }
+
+  @Test
+  public void checkUpdateAllConcurrent() {
+    final UpdateSketchBuilder bldr = UpdateSketch.builder().setNominalEntries(1024);
+    final UpdateSketch shared = bldr.buildShared();
+    try { shared.updateAll(new long[] {1}, 0, 1); fail(); } catch (final UnsupportedOperationException e) { }
+    final UpdateSketch local = bldr.buildLocal(shared);
+    final long[] items = new long[1000];
+    for (int i = 0; i < items.length; i++) { items[i] = i; }
+    local.updateAll(items, 0, items.length);
+    ConcurrentHeapQuickSelectSketchTest.waitForBgPropagationToComplete(shared);
+    assertEquals(shared.getEstimate(), items.length, items.length * 0.05);
+  }
+
+  @Test
+  public void checkUpdateHashMatchesUpdate() {
+    final long seed = 123L;
+    final UpdateSketch scalar = UpdateSketch.builder().setSeed(seed).setNominalEntries(256).build();
+    final UpdateSketch hashed = UpdateSketch.builder().setSeed(seed).setNominalEntries(256).build();
+    final UpdateSketch arrays = UpdateSketch.builder().setSeed(seed).setNominalEntries(256).build();
+    for (long i = 0; i < 1000; i++) {
+      final long[] h = MurmurHash3.hash(new long[] { i }, seed);
+      assertEquals(hashed.updateHash(h[0], h[1], seed), scalar.update(i));
+      arrays.updateHash(h, seed);
+    }
+    checkSameSketch(hashed, scalar);
+    checkSameSketch(arrays, scalar);
+    assertEquals(hashed.updateHash(null, seed), UpdateReturnState.RejectedNullOrEmpty);
+    assertEquals(hashed.updateHash(new long[0], seed), UpdateReturnState.RejectedNullOrEmpty);
+    try { hashed.updateHash(new long[1], seed); fail(); } catch (final SketchesArgumentException e) { }
+    try { hashed.updateHash(1L, 1L, seed + 1); fail(); } catch (final SketchesArgumentException e) { }
+  }
+
+  private static void checkSameSketch(final UpdateSketch actual, final UpdateSketch expected) {
+    assertEquals(actual.isEmpty(), expected.isEmpty());
+    assertEquals(actual.getThetaLong(), expected.getThetaLong());
+    assertEquals(actual.getRetainedEntries(true), expected.getRetainedEntries(true));
+    assertEquals(actual.compact().toByteArray(), expected.compact().toByteArray());
+  }
+
+  private static int sum(final int[] counts) {
+    int sum = 0;
+    for (final int c : counts) { sum += c; }
+    return sum;
+  }
+
   @Test
   public void printlnTest() {
     println("PRINTING: "+this.getClass().getName());